@@ -251,15 +251,10 @@ public class GeoWebCacheDispatcher extends AbstractController {
         // Break the request into components, {type, service name}
         String[] requestComps = null;
         try {
-            String normalizedURI =
-                    request.getRequestURI().replaceFirst(request.getContextPath(), "");
+            String normalizedURI = removeFirst(request.getRequestURI(), request.getContextPath());
 
             if (servletPrefix != null) {
-                normalizedURI =
-                        normalizedURI.replaceFirst(
-                                servletPrefix,
-                                ""); // getRequestURI().replaceFirst(request.getContextPath()+,
-                // "");
+                normalizedURI = removeFirst(normalizedURI, servletPrefix);
             }
             requestComps = parseRequest(normalizedURI);
             // requestComps = parseRequest(request.getRequestURI());
@@ -362,21 +357,53 @@ public class GeoWebCacheDispatcher extends AbstractController {
      * @param servletPath
      * @return {type, service}ervletPrefix
      */
-    private String[] parseRequest(String servletPath) throws GeoWebCacheException {
-        String[] retStrs = new String[2];
-        String[] splitStr = servletPath.split("/");
-
-        if (splitStr == null || splitStr.length < 2) {
+    static String[] parseRequest(String servletPath) throws GeoWebCacheException {
+        // Same as taking the second and third elements of servletPath.split("/"), but only looks
+        // at the start of the path, tile requests can have many more elements
+        final int typeStart = servletPath.indexOf('/') + 1;
+        if (typeStart == 0 || !hasElementsFrom(servletPath, typeStart)) {
             return null;
         }
+        String[] retStrs = new String[2];
+        int typeEnd = servletPath.indexOf('/', typeStart);
+        if (typeEnd < 0) {
+            typeEnd = servletPath.length();
+        }
+        retStrs[0] = servletPath.substring(typeStart, typeEnd);
 
-        retStrs[0] = splitStr[1];
-        if (splitStr.length > 2) {
-            retStrs[1] = splitStr[2];
+        final int serviceStart = typeEnd + 1;
+        if (serviceStart < servletPath.length() && hasElementsFrom(servletPath, serviceStart)) {
+            int serviceEnd = servletPath.indexOf('/', serviceStart);
+            if (serviceEnd < 0) {
+                serviceEnd = servletPath.length();
+            }
+            retStrs[1] = servletPath.substring(serviceStart, serviceEnd);
         }
         return retStrs;
     }
 
+    /**
+     * Whether String.split("/") would return an element starting at {@code index}, i.e. whether
+     * it's not followed by trailing slashes only
+     */
+    private static boolean hasElementsFrom(String path, int index) {
+        for (int i = index; i < path.length(); i++) {
+            if (path.charAt(i) != '/') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Removes the first occurrence of {@code part}, taken literally, from {@code path} */
+    private static String removeFirst(String path, String part) {
+        int index = part.isEmpty() ? -1 : path.indexOf(part);
+        if (index < 0) {
+            return path;
+        }
+        return path.substring(0, index) + path.substring(index + part.length());
+    }
+
     /**
      * This is the main method for handling service requests. See comments in the code.
      *
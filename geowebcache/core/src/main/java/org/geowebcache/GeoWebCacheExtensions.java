@@ -347,6 +347,19 @@ public class GeoWebCacheExtensions implements ApplicationContextAware, Applicati
         return getProperty(propertyName, context);
     }
 
+    /**
+     * Looks up for a named string property like {@link #getProperty(String)}, falling back to the
+     * given default value.
+     *
+     * @param propertyName The property name to lookup.
+     * @param defaultValue The value to return if the property is not found
+     * @return The property value, or {@code defaultValue} if not found
+     */
+    public static String getPropertyOrDefault(String propertyName, String defaultValue) {
+        String value = getProperty(propertyName);
+        return value == null ? defaultValue : value;
+    }
+
     /**
      * Looks up for a named string property into the following contexts (in order):
      *
@@ -124,6 +124,20 @@ public interface TileLayerConfiguration extends BaseConfiguration {
      */
     void modifyLayer(TileLayer tl) throws NoSuchElementException;
 
+    /**
+     * Replaces several existing tile layers at once, each of them by name. Configurations that
+     * persist their layers should override it to save once for the whole batch.
+     *
+     * @param layers the modified tile layers
+     * @throws NoSuchElementException If no tile layer matches the name of one of them
+     */
+    default void modifyLayers(Collection<? extends TileLayer> layers)
+            throws NoSuchElementException {
+        for (TileLayer tl : layers) {
+            modifyLayer(tl);
+        }
+    }
+
     /**
      * Changes the name of an existing tile layer.
      *
@@ -146,6 +160,20 @@ public interface TileLayerConfiguration extends BaseConfiguration {
      */
     void addLayer(TileLayer tl) throws IllegalArgumentException;
 
+    /**
+     * Adds all the given tile layers to this configuration, provided {@link #canSave(TileLayer)
+     * canSave(tl) == true} for each of them. Configurations that persist their layers should
+     * override it to save once for the whole batch.
+     *
+     * @param layers the tile layers to add to the configuration
+     * @throws IllegalArgumentException under the same conditions as {@link #addLayer(TileLayer)}
+     */
+    default void addLayers(Collection<? extends TileLayer> layers) throws IllegalArgumentException {
+        for (TileLayer tl : layers) {
+            addLayer(tl);
+        }
+    }
+
     /**
      * Whether a tile layer with the given name exists in the configuration.
      *
@@ -170,4 +198,25 @@ public interface TileLayerConfiguration extends BaseConfiguration {
      * @param broker
      */
     void setGridSetBroker(GridSetBroker broker);
+
+    /**
+     * Registers a listener notified of every change to the layers of this configuration, including
+     * the ones not made through the {@link TileLayerDispatcher}, such as reloads.
+     *
+     * @param listener the listener to notify
+     * @return {@code true} if the configuration reports its changes, {@code false} if it does not,
+     *     in which case the listener is ignored
+     */
+    default boolean addLayerListener(TileLayerConfigurationListener listener) {
+        return false;
+    }
+
+    /**
+     * Removes a listener registered with {@link #addLayerListener(TileLayerConfigurationListener)}
+     *
+     * @param listener the listener to remove
+     */
+    default void removeLayerListener(TileLayerConfigurationListener listener) {
+        // no listeners by default
+    }
 }
@@ -0,0 +1,50 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.config;
+
+import org.geowebcache.layer.TileLayer;
+import org.geowebcache.layer.TileLayerDispatcher;
+
+/**
+ * Listens to the tile layer changes made through the {@link TileLayerDispatcher}, or to the ones
+ * of a single {@link TileLayerConfiguration}. Implementations of this class are responsible for
+ * registering themselves via {@link TileLayerDispatcher#addListener(TileLayerConfigurationListener)}
+ * or {@link TileLayerConfiguration#addLayerListener(TileLayerConfigurationListener)}
+ */
+public interface TileLayerConfigurationListener {
+
+    /** @param layer The layer that was added */
+    void handleAddLayer(TileLayer layer);
+
+    /** @param layerName The name of the layer that was removed */
+    void handleRemoveLayer(String layerName);
+
+    /** @param layer The new version of the layer */
+    void handleModifyLayer(TileLayer layer);
+
+    /**
+     * @param oldName The old name of the layer
+     * @param newName The new name of the layer
+     */
+    void handleRenameLayer(String oldName, String newName);
+
+    /**
+     * Called when any layer may have changed at once, e.g. when a configuration is reloaded. Only
+     * configurations report it, the dispatcher reports the changes of each layer.
+     */
+    default void handleReload() {
+        // nothing to do by default
+    }
+}
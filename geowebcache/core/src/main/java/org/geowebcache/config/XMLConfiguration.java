@@ -14,27 +14,52 @@
  */
 package org.geowebcache.config;
 
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.converters.Converter;
+import com.thoughtworks.xstream.converters.MarshallingContext;
+import com.thoughtworks.xstream.converters.UnmarshallingContext;
+import com.thoughtworks.xstream.io.HierarchicalStreamReader;
+import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
 import com.thoughtworks.xstream.io.xml.DomReader;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
+import java.io.Reader;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import javax.annotation.Nullable;
@@ -108,6 +133,22 @@ public class XMLConfiguration
 
     public static final String DEFAULT_CONFIGURATION_FILE_NAME = "geowebcache.xml";
 
+    /**
+     * Number of threads used to initialize the layers on startup, defaults to the number of
+     * available processors. Set it to {@code 1} to initialize the layers one after the other.
+     */
+    public static final String INIT_THREADS_PROPERTY = "GEOWEBCACHE_LAYER_INIT_THREADS";
+
+    /**
+     * When set to {@code true}, the layers are stored one per file in the {@link
+     * #LAYER_FILES_DIRECTORY} directory next to {@code geowebcache.xml}, so that adding, modifying
+     * or removing a layer only writes the file of that layer. Defaults to {@code false}.
+     */
+    public static final String LAYER_FILES_PROPERTY = "GEOWEBCACHE_LAYER_FILES";
+
+    /** Name of the directory holding the layer files, see {@link #LAYER_FILES_PROPERTY} */
+    public static final String LAYER_FILES_DIRECTORY = "layers";
+
     private static Log log = LogFactory.getLog(org.geowebcache.config.XMLConfiguration.class);
 
     /** Web app context, used to look up {@link XMLConfigurationProvider}s. */
@@ -119,10 +160,18 @@ public class XMLConfiguration
 
     private transient Map<String, TileLayer> layers;
 
+    private final List<TileLayerConfigurationListener> layerListeners =
+            new CopyOnWriteArrayList<>();
+
     private transient Map<String, GridSet> gridSets;
 
     private GridSetBroker gridSetBroker;
 
+    private Boolean layerFiles;
+
+    /** The directory of the layer files, {@code null} if the layers are in geowebcache.xml */
+    private File layerDirectory;
+
     private ListenerCollection<BlobStoreConfigurationListener> blobStoreListeners =
             new ListenerCollection<>();
 
@@ -226,6 +275,15 @@ public class XMLConfiguration
         resourceProvider.setTemplate(template);
     }
 
+    /**
+     * Sets whether the layers are stored one per file rather than in {@code geowebcache.xml}, the
+     * default being given by the {@link #LAYER_FILES_PROPERTY} property. Must be called before
+     * {@link #afterPropertiesSet()}.
+     */
+    public void setLayerFiles(boolean layerFiles) {
+        this.layerFiles = layerFiles;
+    }
+
     /**
      * @return The root path where configuration is stored
      * @throws ConfigurationException
@@ -521,6 +579,10 @@ public class XMLConfiguration
         Assert.isTrue(resourceProvider.hasOutput());
         // create the XStream for serializing the configuration
         XStream xs = getConfiguredXStreamWithContext(new GeoWebCacheXStream(), Context.PERSIST);
+        if (layerDirectory != null) {
+            xs.registerLocalConverter(
+                    GeoWebCacheConfiguration.class, "layers", new LayerFilesConverter());
+        }
 
         try (OutputStreamWriter writer = new OutputStreamWriter(resourceProvider.out(), "UTF-8")) {
             // set version to latest
@@ -546,6 +608,75 @@ public class XMLConfiguration
         log.info("Wrote configuration to " + resourceProvider.getId());
     }
 
+    /** Keeps the layers element of geowebcache.xml empty, the layers having their own files */
+    private static class LayerFilesConverter implements Converter {
+
+        @Override
+        public boolean canConvert(@SuppressWarnings("rawtypes") Class type) {
+            return List.class.isAssignableFrom(type);
+        }
+
+        @Override
+        public void marshal(
+                Object source, HierarchicalStreamWriter writer, MarshallingContext context) {}
+
+        @Override
+        public Object unmarshal(HierarchicalStreamReader reader, UnmarshallingContext context) {
+            return new ArrayList<TileLayer>();
+        }
+    }
+
+    /**
+     * Saves a change to the layers: writes the files of the saved layers and deletes the ones of
+     * the removed layers if the layers have their own files, or rewrites geowebcache.xml otherwise.
+     */
+    private void saveLayers(Collection<? extends TileLayer> saved, Collection<String> removed)
+            throws IOException {
+        if (layerDirectory == null) {
+            save();
+            return;
+        }
+        if (!layerDirectory.exists() && !layerDirectory.mkdirs()) {
+            throw new IOException("Unable to create layer directory " + layerDirectory);
+        }
+        XStream xs = getConfiguredXStreamWithContext(new GeoWebCacheXStream(), Context.PERSIST);
+        // write all the layers aside first, so that a failure leaves the previous files untouched
+        Map<File, File> written = new LinkedHashMap<>();
+        try {
+            for (TileLayer tl : saved) {
+                File file = getLayerFile(tl.getName());
+                File temp = new File(layerDirectory, file.getName() + ".tmp");
+                written.put(temp, file);
+                try (Writer writer =
+                        new OutputStreamWriter(
+                                new FileOutputStream(temp), StandardCharsets.UTF_8)) {
+                    writer.write("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n");
+                    xs.toXML(tl, writer);
+                }
+            }
+            for (Map.Entry<File, File> file : written.entrySet()) {
+                Files.move(
+                        file.getKey().toPath(),
+                        file.getValue().toPath(),
+                        StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("Error writing layers to " + layerDirectory, e);
+        } finally {
+            for (File temp : written.keySet()) {
+                Files.deleteIfExists(temp.toPath());
+            }
+        }
+        for (String name : removed) {
+            Files.deleteIfExists(getLayerFile(name).toPath());
+        }
+    }
+
+    private File getLayerFile(String layerName) throws IOException {
+        return new File(layerDirectory, URLEncoder.encode(layerName, "UTF-8") + ".xml");
+    }
+
     /**
      * @return {@code true} only if {@code tl instanceof WMSLayer}
      * @see TileLayerConfiguration#canSave(org.geowebcache.layer.TileLayer)
@@ -588,7 +719,7 @@ public class XMLConfiguration
         getGwcConfig().getLayers().add(tl);
         updateLayers();
         try {
-            save();
+            saveLayers(Collections.singleton(tl), Collections.emptySet());
         } catch (IOException e) {
             // If save fails, try to revert the change to maintain a consistent state.
             if (getGwcConfig().getLayers().remove(tl)) {
@@ -596,6 +727,54 @@ public class XMLConfiguration
             }
             throw new ConfigurationPersistenceException("Unable to add layer " + tl.getName(), e);
         }
+        notifyLayerListeners(l -> l.handleAddLayer(tl));
+    }
+
+    /**
+     * Adds all the given layers and saves the configuration once, rather than once per layer as
+     * {@link #addLayer(TileLayer)} does. Either all the layers are added or none is.
+     *
+     * @param layers the layers to add to this configuration
+     * @throws IllegalArgumentException if any of the layers can't be added
+     * @see TileLayerConfiguration#addLayers(Collection)
+     */
+    public synchronized void addLayers(Collection<? extends TileLayer> layers)
+            throws IllegalArgumentException {
+        Set<String> names = new HashSet<>();
+        for (TileLayer tl : layers) {
+            if (tl == null) {
+                throw new NullPointerException();
+            }
+            if (!canSaveIfNotTransient(tl)) {
+                throw new IllegalArgumentException(
+                        "Can't add layers of type " + tl.getClass().getName());
+            }
+            if (getLayer(tl.getName()).isPresent() || !names.add(tl.getName())) {
+                throw new IllegalArgumentException("Layer '" + tl.getName() + "' already exists");
+            }
+        }
+        if (layers.isEmpty()) {
+            return;
+        }
+
+        for (TileLayer tl : layers) {
+            initialize(tl);
+        }
+        getGwcConfig().getLayers().addAll(layers);
+        updateLayers();
+        try {
+            saveLayers(layers, Collections.emptySet());
+        } catch (IOException e) {
+            // If save fails, try to revert the change to maintain a consistent state.
+            if (getGwcConfig().getLayers().removeAll(layers)) {
+                updateLayers();
+            }
+            throw new ConfigurationPersistenceException(
+                    "Unable to add " + layers.size() + " layers", e);
+        }
+        for (TileLayer tl : layers) {
+            notifyLayerListeners(l -> l.handleAddLayer(tl));
+        }
     }
 
     /**
@@ -617,7 +796,7 @@ public class XMLConfiguration
         getGwcConfig().getLayers().add(tl);
         updateLayers();
         try {
-            save();
+            saveLayers(Collections.singleton(tl), Collections.emptySet());
         } catch (IOException e) {
             // If save fails, try to revert the change to maintain a consistent state.
             getGwcConfig().getLayers().remove(tl);
@@ -626,6 +805,54 @@ public class XMLConfiguration
             updateLayers();
             throw new IllegalArgumentException("Unable to modify layer " + tl.getName(), e);
         }
+        notifyLayerListeners(l -> l.handleModifyLayer(tl));
+    }
+
+    /**
+     * Replaces all the given layers, saving the configuration once. Every layer is checked before
+     * any of them is replaced, and all of them are reverted if the configuration can't be saved.
+     *
+     * @see TileLayerConfiguration#modifyLayers(Collection)
+     */
+    @Override
+    public synchronized void modifyLayers(Collection<? extends TileLayer> layers)
+            throws NoSuchElementException {
+        Map<String, TileLayer> previous = new LinkedHashMap<>();
+        for (TileLayer tl : layers) {
+            if (!canSaveIfNotTransient(tl)) {
+                throw new IllegalArgumentException(
+                        "Can't add layers of type " + tl.getClass().getName());
+            }
+            if (previous.put(tl.getName(), findLayer(tl.getName())) != null) {
+                throw new IllegalArgumentException(
+                        "Layer '" + tl.getName() + "' is modified more than once");
+            }
+        }
+        if (layers.isEmpty()) {
+            return;
+        }
+
+        getGwcConfig().getLayers().removeAll(previous.values());
+        for (TileLayer tl : layers) {
+            initialize(tl);
+        }
+        getGwcConfig().getLayers().addAll(layers);
+        updateLayers();
+        try {
+            saveLayers(layers, Collections.emptySet());
+        } catch (IOException e) {
+            // If save fails, try to revert the change to maintain a consistent state.
+            getGwcConfig().getLayers().removeAll(layers);
+            for (TileLayer tl : previous.values()) {
+                initialize(tl);
+            }
+            getGwcConfig().getLayers().addAll(previous.values());
+            updateLayers();
+            throw new IllegalArgumentException("Unable to modify " + layers.size() + " layers", e);
+        }
+        for (TileLayer tl : layers) {
+            notifyLayerListeners(l -> l.handleModifyLayer(tl));
+        }
     }
 
     protected TileLayer findLayer(String layerName) throws NoSuchElementException {
@@ -660,7 +887,7 @@ public class XMLConfiguration
             throw new NoSuchElementException("Layer " + tileLayer.getName() + " does not exist");
         }
         try {
-            save();
+            saveLayers(Collections.emptySet(), Collections.singleton(layerName));
         } catch (IOException e) {
             // If save fails, try to revert the removal to maintain a consistent state.
             if (getGwcConfig().getLayers().add(tileLayer)) {
@@ -668,6 +895,34 @@ public class XMLConfiguration
             }
             throw new IllegalArgumentException("Unable to remove layer " + tileLayer, e);
         }
+        notifyLayerListeners(l -> l.handleRemoveLayer(layerName));
+    }
+
+    /**
+     * Registers a listener notified of the layers added, modified or removed, and of the reloads
+     *
+     * @see TileLayerConfiguration#addLayerListener(TileLayerConfigurationListener)
+     */
+    @Override
+    public boolean addLayerListener(TileLayerConfigurationListener listener) {
+        layerListeners.add(listener);
+        return true;
+    }
+
+    /** @see TileLayerConfiguration#removeLayerListener(TileLayerConfigurationListener) */
+    @Override
+    public void removeLayerListener(TileLayerConfigurationListener listener) {
+        layerListeners.remove(listener);
+    }
+
+    private void notifyLayerListeners(Consumer<TileLayerConfigurationListener> event) {
+        for (TileLayerConfigurationListener listener : layerListeners) {
+            try {
+                event.accept(listener);
+            } catch (RuntimeException e) {
+                log.warn("Error notifying layer change to " + listener, e);
+            }
+        }
     }
 
     /**
@@ -899,6 +1154,9 @@ public class XMLConfiguration
         if (resourceProvider.hasInput()) {
             this.setGwcConfig(loadConfiguration());
         }
+        if (isLayerFiles()) {
+            loadLayerFiles();
+        }
 
         log.info("Initializing GridSets from " + getIdentifier());
 
@@ -911,10 +1169,180 @@ public class XMLConfiguration
             if (layer == null) {
                 throw new IllegalStateException(getIdentifier() + " contains a null layer");
             }
-            initialize(layer);
         }
+        initializeLayers(getGwcConfig().getLayers());
 
         updateLayers();
+        notifyLayerListeners(TileLayerConfigurationListener::handleReload);
+    }
+
+    /**
+     * Initializes the layers on a pool of {@link #INIT_THREADS_PROPERTY} threads, each layer being
+     * independent from the others.
+     */
+    private void initializeLayers(List<TileLayer> layers) {
+        final int threads = Math.min(getInitThreads(), layers.size());
+        final long start = System.currentTimeMillis();
+        // resolved lazily, make sure it's done once before the layers share it
+        getGwcConfig().getLockProvider();
+        inParallel(
+                layers,
+                layer -> {
+                    initializeTimed(layer);
+                    return null;
+                },
+                threads,
+                "GWC Layer Initializer %d");
+        log.info(
+                "Initialized "
+                        + layers.size()
+                        + " layers from "
+                        + getIdentifier()
+                        + " in "
+                        + (System.currentTimeMillis() - start)
+                        + "ms using "
+                        + Math.max(threads, 1)
+                        + " threads");
+    }
+
+    /**
+     * Applies the task to each item on a pool of the given number of threads, or on the calling
+     * thread if there is only one
+     *
+     * @return the results of the task, in the order of the items
+     */
+    private static <T, R> List<R> inParallel(
+            List<T> items, Function<T, R> task, int threads, String threadNames) {
+        if (threads <= 1) {
+            return items.stream().map(task).collect(Collectors.toList());
+        }
+        ExecutorService pool =
+                Executors.newFixedThreadPool(
+                        threads,
+                        new ThreadFactoryBuilder()
+                                .setDaemon(true)
+                                .setNameFormat(threadNames)
+                                .build());
+        try {
+            List<Future<R>> futures = new ArrayList<>(items.size());
+            for (T item : items) {
+                futures.add(pool.submit(() -> task.apply(item)));
+            }
+            List<R> results = new ArrayList<>(items.size());
+            for (Future<R> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted processing layers", e);
+        } catch (ExecutionException e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private boolean isLayerFiles() {
+        if (layerFiles == null) {
+            layerFiles =
+                    Boolean.parseBoolean(GeoWebCacheExtensions.getProperty(LAYER_FILES_PROPERTY));
+        }
+        return layerFiles;
+    }
+
+    /**
+     * Loads the layer files in parallel, after moving the layers still in geowebcache.xml to their
+     * own files
+     */
+    private void loadLayerFiles() throws ConfigurationException {
+        if (!(resourceProvider instanceof XMLFileResourceProvider)) {
+            log.warn(
+                    "Ignoring "
+                            + LAYER_FILES_PROPERTY
+                            + ", the configuration of "
+                            + getIdentifier()
+                            + " is not stored in a file");
+            return;
+        }
+        try {
+            File configFile = new File(resourceProvider.getLocation());
+            layerDirectory = new File(configFile.getParentFile(), LAYER_FILES_DIRECTORY);
+
+            List<TileLayer> inlineLayers = getGwcConfig().getLayers();
+            if (!inlineLayers.isEmpty()) {
+                log.info(
+                        "Moving "
+                                + inlineLayers.size()
+                                + " layers from "
+                                + configFile
+                                + " to "
+                                + layerDirectory);
+                saveLayers(inlineLayers, Collections.emptySet());
+                inlineLayers.clear();
+                save();
+            }
+        } catch (IOException e) {
+            throw new ConfigurationException("Error moving the layers to their own files", e);
+        }
+
+        File[] files = layerDirectory.listFiles((dir, name) -> name.endsWith(".xml"));
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files);
+        final long start = System.currentTimeMillis();
+        XStream xs = getConfiguredXStreamWithContext(new GeoWebCacheXStream(), Context.PERSIST);
+        List<TileLayer> layers =
+                inParallel(
+                        Arrays.asList(files),
+                        file -> loadLayerFile(xs, file),
+                        Math.min(getInitThreads(), files.length),
+                        "GWC Layer Loader %d");
+        getGwcConfig().getLayers().addAll(layers);
+        log.info(
+                "Loaded "
+                        + layers.size()
+                        + " layers from "
+                        + layerDirectory
+                        + " in "
+                        + (System.currentTimeMillis() - start)
+                        + "ms");
+    }
+
+    private static TileLayer loadLayerFile(XStream xs, File file) {
+        try (Reader reader =
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            return (TileLayer) xs.fromXML(reader);
+        } catch (IOException | RuntimeException e) {
+            throw new IllegalStateException("Error parsing layer file " + file, e);
+        }
+    }
+
+    private void initializeTimed(TileLayer layer) {
+        final long start = System.currentTimeMillis();
+        initialize(layer);
+        if (log.isDebugEnabled()) {
+            log.debug(
+                    "Initialized TileLayer '"
+                            + layer.getName()
+                            + "' in "
+                            + (System.currentTimeMillis() - start)
+                            + "ms");
+        }
+    }
+
+    private int getInitThreads() {
+        String value = GeoWebCacheExtensions.getProperty(INIT_THREADS_PROPERTY);
+        if (value != null) {
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                log.warn("Ignoring invalid " + INIT_THREADS_PROPERTY + " value: " + value);
+            }
+        }
+        return Runtime.getRuntime().availableProcessors();
     }
 
     private void updateLayers() {
@@ -1591,5 +2019,6 @@ public class XMLConfiguration
         this.gridSets = null;
         this.layers = null;
         this.gwcConfig = null;
+        notifyLayerListeners(TileLayerConfigurationListener::handleReload);
     }
 }
@@ -17,7 +17,9 @@ package org.geowebcache.conveyor;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.channels.Channels;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -63,6 +65,9 @@ public class ConveyorTile extends Conveyor implements TileResponseReceiver {
 
     private boolean isMetaTileCacheOnly;
 
+    /** Outcome of {@link #retrieveAll}, used by the next {@link #retrieve(long)} */
+    private Boolean prefetched;
+
     public ConveyorTile(
             StorageBroker sb,
             String layerId,
@@ -262,7 +267,14 @@ public class ConveyorTile extends Conveyor implements TileResponseReceiver {
                 this.setCacheResult(cached ? CacheResult.HIT : CacheResult.MISS);
                 return cached;
             }
-            boolean ret = storageBroker.get((TileObject) stObj);
+            boolean ret;
+            if (prefetched != null) {
+                // looked up already, later calls go back to the storage
+                ret = prefetched;
+                prefetched = null;
+            } else {
+                ret = storageBroker.get((TileObject) stObj);
+            }
 
             // Do we use expiration, and if so, is the tile recent enough ?
             if (ret && maxAge > 0 && stObj.getCreated() + maxAge < System.currentTimeMillis()) {
@@ -283,6 +295,29 @@ public class ConveyorTile extends Conveyor implements TileResponseReceiver {
         }
     }
 
+    /**
+     * Looks up the given tiles in the storage at once, so that the next {@link #retrieve(long)} of
+     * each one of them doesn't have to.
+     *
+     * @param storageBroker the storage the tiles are looked up in
+     * @param tiles the tiles to look up
+     */
+    public static void retrieveAll(StorageBroker storageBroker, List<ConveyorTile> tiles)
+            throws GeoWebCacheException {
+        List<TileObject> tileObjs = new ArrayList<>(tiles.size());
+        for (ConveyorTile tile : tiles) {
+            tileObjs.add(tile.stObj);
+        }
+        try {
+            boolean[] found = storageBroker.getAll(tileObjs);
+            for (int i = 0; i < found.length; i++) {
+                tiles.get(i).prefetched = found[i];
+            }
+        } catch (StorageException se) {
+            throw new GeoWebCacheException(se);
+        }
+    }
+
     public String toString() {
         StringBuilder str = new StringBuilder();
         str.append("ConveyorTile[");
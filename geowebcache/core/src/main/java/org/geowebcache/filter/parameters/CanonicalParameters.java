@@ -0,0 +1,71 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.filter.parameters;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable, normalized set of parameters that carries its {@link ParametersUtils#getId(Map)
+ * identifier}, so that the identifier is hashed once when the parameters are interned by a {@link
+ * ParametersRegistry} rather than on every tile that uses them.
+ */
+public final class CanonicalParameters extends AbstractMap<String, String> {
+
+    private final Map<String, String> parameters;
+
+    private final String id;
+
+    private final int hashCode;
+
+    public CanonicalParameters(Map<String, String> parameters) {
+        this.parameters = Collections.unmodifiableMap(new HashMap<>(parameters));
+        this.id = ParametersUtils.getId(this.parameters);
+        this.hashCode = this.parameters.hashCode();
+    }
+
+    /** @return the parameters identifier, as computed by {@link ParametersUtils#getId(Map)} */
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        return parameters.entrySet();
+    }
+
+    @Override
+    public String get(Object key) {
+        return parameters.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return parameters.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return parameters.size();
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+}
@@ -0,0 +1,151 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.filter.parameters;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.geowebcache.GeoWebCacheException;
+import org.geowebcache.util.ServletUtils;
+
+/**
+ * Interns the parameter sets requested against a list of {@link ParameterFilter}s.
+ *
+ * <p>Requests against a layer tend to repeat the same few parameter combinations. The registry
+ * keys its entries on the raw, undecoded values of the filtered parameters as they come in the
+ * request, so a repeated combination is resolved with a single pass over the request map and a
+ * hash lookup, and the returned {@link CanonicalParameters} already knows its identifier. Only the
+ * first time a combination is seen are the values decoded and run through the filters.
+ *
+ * <p>The registry is bound to the filters it was created for, and must be replaced when they
+ * change, see {@link #isFor(List)}. The number of interned combinations is bounded, the least
+ * recently used being evicted first.
+ */
+public class ParametersRegistry {
+
+    /** Maximum number of parameter combinations interned by a registry */
+    public static final int MAX_ENTRIES = 1000;
+
+    /**
+     * Turns the decoded request values of the filtered parameters into the full, normalized
+     * parameters set.
+     */
+    @FunctionalInterface
+    public interface Normalizer {
+
+        /**
+         * @param requestValues decoded request values, keyed by upper case parameter name.
+         *     Parameters missing from the request are not present.
+         * @return the normalized parameters, keyed by upper case parameter name
+         */
+        Map<String, String> normalize(Map<String, String> requestValues)
+                throws GeoWebCacheException;
+    }
+
+    private final ParameterFilter[] filters;
+
+    private final Map<String, Integer> positions;
+
+    private final String[] keys;
+
+    private final Map<String, String> defaults;
+
+    private final Normalizer normalizer;
+
+    private final Cache<List<String>, Map<String, String>> interned;
+
+    /**
+     * @param filters the filters the parameters are matched against
+     * @param defaults the default parameter values, keyed by upper case parameter name. A
+     *     normalized set equal to it is returned as an empty map
+     * @param normalizer computes the normalized set for a combination not seen before
+     */
+    public ParametersRegistry(
+            List<ParameterFilter> filters, Map<String, String> defaults, Normalizer normalizer) {
+        this.filters = filters.toArray(new ParameterFilter[filters.size()]);
+        this.defaults = defaults;
+        this.normalizer = normalizer;
+        this.keys = new String[filters.size()];
+        this.positions = new HashMap<>();
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = this.filters[i].getKey().toUpperCase();
+            positions.put(keys[i], i);
+        }
+        this.interned = CacheBuilder.newBuilder().maximumSize(MAX_ENTRIES).build();
+    }
+
+    /**
+     * Checks whether this registry was created for the given filters. The filters are compared by
+     * identity, so a filter modified in place is not detected.
+     *
+     * @param filters the filters currently configured
+     * @return {@code true} if the filters are the same ones, in the same order
+     */
+    public boolean isFor(List<ParameterFilter> filters) {
+        if (filters.size() != this.filters.length) {
+            return false;
+        }
+        int i = 0;
+        for (ParameterFilter filter : filters) {
+            if (filter != this.filters[i++]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param map keys are parameter names, values are either a single string or an array of
+     *     strings as they come form httpservletrequest
+     * @param encoding the encoding used to decode the values
+     * @return the normalized parameters, or an empty map if they match the defaults
+     * @throws GeoWebCacheException if the normalizer does, in which case nothing is interned
+     */
+    public Map<String, String> lookup(Map<String, ?> map, String encoding)
+            throws GeoWebCacheException {
+        final String[] raw = new String[keys.length + 1];
+        raw[0] = encoding;
+        for (Map.Entry<String, ?> e : map.entrySet()) {
+            Integer pos = e.getKey() == null ? null : positions.get(e.getKey().toUpperCase());
+            if (pos != null && e.getValue() != null) {
+                Object value = e.getValue();
+                raw[pos + 1] =
+                        value instanceof String[] ? ((String[]) value)[0] : String.valueOf(value);
+            }
+        }
+        final List<String> key = Arrays.asList(raw);
+        Map<String, String> parameters = interned.getIfPresent(key);
+        if (parameters == null) {
+            Map<String, String> requestValues = new HashMap<>();
+            for (int i = 0; i < keys.length; i++) {
+                if (raw[i + 1] != null) {
+                    requestValues.put(keys[i], ServletUtils.URLDecode(raw[i + 1], encoding));
+                }
+            }
+            Map<String, String> normalized = normalizer.normalize(requestValues);
+            if (defaults.equals(normalized)) {
+                parameters = Collections.emptyMap();
+            } else {
+                parameters = new CanonicalParameters(normalized);
+            }
+            interned.put(key, parameters);
+        }
+        return parameters;
+    }
+}
@@ -125,6 +125,9 @@ public class ParametersUtils {
         if (parameters == null || parameters.size() == 0) {
             return null;
         }
+        if (parameters instanceof CanonicalParameters) {
+            return ((CanonicalParameters) parameters).getId();
+        }
         String parametersKvp = getLegacyParametersKvp(parameters);
         return ParametersUtils.buildKey(parametersKvp);
     }
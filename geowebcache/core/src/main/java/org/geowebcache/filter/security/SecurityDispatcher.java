@@ -46,19 +46,25 @@ public class SecurityDispatcher implements ApplicationContextAware {
      */
     public void checkSecurity(final ConveyorTile tile)
             throws SecurityException, GeoWebCacheException {
+        final Collection<SecurityFilter> filters = getFilters();
+        if (filters.isEmpty()) {
+            // no need to work out the tile bounds nobody is going to look at
+            return;
+        }
         final TileLayer layer = tile.getLayer();
         final GridSubset gridSubset = tile.getGridSubset();
         final BoundingBox bounds;
         final SRS srs;
         if (Objects.nonNull(gridSubset)) {
-            bounds = gridSubset.boundsFromIndex(tile.getTileIndex());
+            double[] coords = gridSubset.boundsFromIndex(tile.getTileIndex(), new double[4]);
+            bounds = new BoundingBox(coords[0], coords[1], coords[2], coords[3]);
             srs = gridSubset.getSRS();
         } else {
             bounds = null;
             srs = null;
         }
 
-        checkSecurity(layer, bounds, srs);
+        checkSecurity(filters, layer, bounds, srs);
     }
 
     /**
@@ -71,11 +77,20 @@ public class SecurityDispatcher implements ApplicationContextAware {
      */
     public void checkSecurity(TileLayer layer, @Nullable BoundingBox extent, @Nullable SRS srs)
             throws SecurityException, GeoWebCacheException {
+        checkSecurity(getFilters(), layer, extent, srs);
+    }
+
+    private void checkSecurity(
+            Collection<SecurityFilter> filters,
+            TileLayer layer,
+            @Nullable BoundingBox extent,
+            @Nullable SRS srs)
+            throws SecurityException, GeoWebCacheException {
         if (Objects.isNull(extent) != Objects.isNull(srs)) {
             throw new NullPointerException(
                     "Extent and srs must either both be null or both be non-null");
         }
-        for (SecurityFilter filter : getFilters()) {
+        for (SecurityFilter filter : filters) {
             filter.checkSecurity(layer, extent, srs);
         }
     }
@@ -180,6 +180,14 @@ public class BoundingBox implements Serializable {
     /** Returns a comma separated value String suitable for URL output */
     @Override
     public String toString() {
+        return toString(coords);
+    }
+
+    /**
+     * Formats {minx, miny, maxx, maxy} coordinates as {@link #toString()} does, without creating a
+     * bounding box
+     */
+    public static String toString(double[] coords) {
         StringBuilder buff = new StringBuilder(40);
         buff.append(COORD_FORMATTER.format(coords[0]));
         buff.append(',');
@@ -247,6 +255,17 @@ public class BoundingBox implements Serializable {
                 && Math.abs(getHeight() - other.getHeight()) < threshold;
     }
 
+    /**
+     * Same as {@link #equals(BoundingBox, double)}, comparing with {minx, miny, maxx, maxy}
+     * coordinates
+     */
+    public boolean equals(double[] other, double threshold) {
+        return Math.abs(getMinX() - other[0]) < threshold
+                && Math.abs(getMinY() - other[1]) < threshold
+                && Math.abs(getWidth() - (other[2] - other[0])) < threshold
+                && Math.abs(getHeight() - (other[3] - other[1])) < threshold;
+    }
+
     /**
      * Check whether this bbox contains the bbox
      *
@@ -110,6 +110,19 @@ public class GridSet implements Info {
     }
 
     public BoundingBox boundsFromIndex(long[] tileIndex) {
+        double[] bounds = boundsFromIndex(tileIndex, new double[4]);
+        return new BoundingBox(bounds[0], bounds[1], bounds[2], bounds[3]);
+    }
+
+    /**
+     * Same as {@link #boundsFromIndex(long[])}, writing the bounds in the given array instead of
+     * creating a {@link BoundingBox}
+     *
+     * @param tileIndex the tile index, {x, y, z}
+     * @param bounds receives {minx, miny, maxx, maxy}
+     * @return {@code bounds}
+     */
+    public double[] boundsFromIndex(long[] tileIndex, double[] bounds) {
         final int tileZ = (int) tileIndex[2];
         Grid grid = getGrid(tileZ);
 
@@ -124,14 +137,13 @@ public class GridSet implements Info {
         double width = grid.getResolution() * getTileWidth();
         double height = grid.getResolution() * getTileHeight();
 
-        final double[] tileOrigin = tileOrigin();
-        BoundingBox tileBounds =
-                new BoundingBox(
-                        tileOrigin[0] + width * tileX,
-                        tileOrigin[1] + height * (tileY),
-                        tileOrigin[0] + width * (tileX + 1),
-                        tileOrigin[1] + height * (tileY + 1));
-        return tileBounds;
+        final double originX = tileOriginX();
+        final double originY = tileOriginY();
+        bounds[0] = originX + width * tileX;
+        bounds[1] = originY + height * (tileY);
+        bounds[2] = originX + width * (tileX + 1);
+        bounds[3] = originY + height * (tileY + 1);
+        return bounds;
     }
 
     /**
@@ -154,11 +166,12 @@ public class GridSet implements Info {
             topY = topY - grid.getNumTilesHigh();
         }
 
-        double[] tileOrigin = tileOrigin();
-        double minx = tileOrigin[0] + width * rectangleExtent[0];
-        double miny = tileOrigin[1] + height * (bottomY);
-        double maxx = tileOrigin[0] + width * (rectangleExtent[2] + 1);
-        double maxy = tileOrigin[1] + height * (topY + 1);
+        final double originX = tileOriginX();
+        final double originY = tileOriginY();
+        double minx = originX + width * rectangleExtent[0];
+        double miny = originY + height * (bottomY);
+        double maxx = originX + width * (rectangleExtent[2] + 1);
+        double maxy = originY + height * (topY + 1);
         BoundingBox rectangleBounds = new BoundingBox(minx, miny, maxx, maxy);
 
         return rectangleBounds;
@@ -199,9 +212,9 @@ public class GridSet implements Info {
         double width = grid.getResolution() * getTileWidth();
         double height = grid.getResolution() * getTileHeight();
 
-        double x = (tileBounds.getMinX() - tileOrigin()[0]) / width;
+        double x = (tileBounds.getMinX() - tileOriginX()) / width;
 
-        double y = (tileBounds.getMinY() - tileOrigin()[1]) / height;
+        double y = (tileBounds.getMinY() - tileOriginY()) / height;
 
         long posX = (long) Math.round(x);
 
@@ -262,10 +275,12 @@ public class GridSet implements Info {
         double width = grid.getResolution() * getTileWidth();
         double height = grid.getResolution() * getTileHeight();
 
-        long minX = (long) Math.floor((rectangeBounds.getMinX() - tileOrigin()[0]) / width);
-        long minY = (long) Math.floor((rectangeBounds.getMinY() - tileOrigin()[1]) / height);
-        long maxX = (long) Math.ceil(((rectangeBounds.getMaxX() - tileOrigin()[0]) / width));
-        long maxY = (long) Math.ceil(((rectangeBounds.getMaxY() - tileOrigin()[1]) / height));
+        final double originX = tileOriginX();
+        final double originY = tileOriginY();
+        long minX = (long) Math.floor((rectangeBounds.getMinX() - originX) / width);
+        long minY = (long) Math.floor((rectangeBounds.getMinY() - originY) / height);
+        long maxX = (long) Math.ceil(((rectangeBounds.getMaxX() - originX) / width));
+        long maxY = (long) Math.ceil(((rectangeBounds.getMaxY() - originY) / height));
 
         if (yBaseToggle) {
             minY = minY + grid.getNumTilesHigh();
@@ -432,6 +447,16 @@ public class GridSet implements Info {
         return tileOrigin;
     }
 
+    // the components of tileOrigin(), without allocating an array on each tile computation
+    private double tileOriginX() {
+        return getOriginalExtent().getMinX();
+    }
+
+    private double tileOriginY() {
+        BoundingBox extent = getOriginalExtent();
+        return yBaseToggle ? extent.getMaxY() : extent.getMinY();
+    }
+
     /** @return the yCoordinateFirst */
     public boolean isyCoordinateFirst() {
         return yCoordinateFirst;
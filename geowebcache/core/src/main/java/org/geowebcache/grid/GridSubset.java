@@ -18,6 +18,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.TreeMap;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.commons.lang3.builder.ToStringStyle;
@@ -27,6 +28,53 @@ import org.geowebcache.util.ServletUtils;
 /** A GridSubSet is a GridSet + a coverage area */
 public class GridSubset {
 
+    /**
+     * The tile geometry of a zoom level of the grid set, computed once so that the tile bounds
+     * computations are plain field reads
+     */
+    private static final class LevelGeometry {
+
+        final double resolution;
+
+        /** Width and height of a tile, in the grid set units */
+        final double spanX;
+
+        final double spanY;
+
+        /** Tile origin of the grid set, see {@link GridSet#tileOrigin()} */
+        final double originX;
+
+        final double originY;
+
+        final long numTilesWide;
+
+        final long numTilesHigh;
+
+        /** Subtracted from the row numbers when the tile origin is at the top */
+        final long rowOffset;
+
+        LevelGeometry(GridSet gridSet, Grid grid, double[] tileOrigin) {
+            this.resolution = grid.getResolution();
+            this.spanX = resolution * gridSet.getTileWidth();
+            this.spanY = resolution * gridSet.getTileHeight();
+            this.originX = tileOrigin[0];
+            this.originY = tileOrigin[1];
+            this.numTilesWide = grid.getNumTilesWide();
+            this.numTilesHigh = grid.getNumTilesHigh();
+            this.rowOffset = gridSet.isTopLeftAligned() ? numTilesHigh : 0;
+        }
+
+        /** @return the x coordinate of the left edge of the given column */
+        double x(long column) {
+            return originX + spanX * column;
+        }
+
+        /** @return the y coordinate of the bottom edge of the given row */
+        double y(long row) {
+            return originY + spanY * (row - rowOffset);
+        }
+    }
+
     private final GridSet gridSet;
 
     // {level}{minx,miny,maxx,maxy,z}
@@ -40,6 +88,16 @@ public class GridSubset {
 
     private final Integer maxCachedZoom;
 
+    // the coverages indexed by zoom level, null for the levels out of the subset
+    private final GridCoverage[] coverageTable;
+
+    private final int zoomStart;
+
+    private final int zoomStop;
+
+    // the geometry of all the levels of the grid set, indexed by zoom level
+    private final LevelGeometry[] geometry;
+
     protected GridSubset(
             GridSet gridSet,
             Map<Integer, GridCoverage> coverages,
@@ -61,6 +119,17 @@ public class GridSubset {
         this.fullGridSetCoverage = fullCoverage;
         this.minCachedZoom = minCachedZoom;
         this.maxCachedZoom = maxCachedZoom;
+        this.zoomStart = coverages.isEmpty() ? -1 : Collections.min(coverages.keySet());
+        this.zoomStop = coverages.isEmpty() ? -1 : Collections.max(coverages.keySet());
+        this.coverageTable = new GridCoverage[zoomStop + 1];
+        for (Map.Entry<Integer, GridCoverage> level : coverages.entrySet()) {
+            coverageTable[level.getKey()] = level.getValue();
+        }
+        final double[] tileOrigin = gridSet.tileOrigin();
+        this.geometry = new LevelGeometry[gridSet.getNumLevels()];
+        for (int z = 0; z < geometry.length; z++) {
+            geometry[z] = new LevelGeometry(gridSet, gridSet.getGrid(z), tileOrigin);
+        }
     }
 
     public GridSubset(GridSubset subSet) {
@@ -74,7 +143,29 @@ public class GridSubset {
     }
 
     public BoundingBox boundsFromIndex(long[] tileIndex) {
-        return gridSet.boundsFromIndex(tileIndex);
+        final LevelGeometry level = geometry[(int) tileIndex[2]];
+        return new BoundingBox(
+                level.x(tileIndex[0]),
+                level.y(tileIndex[1]),
+                level.x(tileIndex[0] + 1),
+                level.y(tileIndex[1] + 1));
+    }
+
+    /**
+     * Same as {@link #boundsFromIndex(long[])}, writing the bounds in the given array instead of
+     * creating a {@link BoundingBox}
+     *
+     * @param tileIndex the tile index, {x, y, z}
+     * @param bounds receives {minx, miny, maxx, maxy}
+     * @return {@code bounds}
+     */
+    public double[] boundsFromIndex(long[] tileIndex, double[] bounds) {
+        final LevelGeometry level = geometry[(int) tileIndex[2]];
+        bounds[0] = level.x(tileIndex[0]);
+        bounds[1] = level.y(tileIndex[1]);
+        bounds[2] = level.x(tileIndex[0] + 1);
+        bounds[3] = level.y(tileIndex[1] + 1);
+        return bounds;
     }
 
     /**
@@ -84,7 +175,29 @@ public class GridSubset {
      * @return the spatial bounding box in the coordinates of the SRS used by the GridSet
      */
     public BoundingBox boundsFromRectangle(long[] rectangleExtent) {
-        return gridSet.boundsFromRectangle(rectangleExtent);
+        final LevelGeometry level = geometry[(int) rectangleExtent[4]];
+        return new BoundingBox(
+                level.x(rectangleExtent[0]),
+                level.y(rectangleExtent[1]),
+                level.x(rectangleExtent[2] + 1),
+                level.y(rectangleExtent[3] + 1));
+    }
+
+    /**
+     * Same as {@link #boundsFromRectangle(long[])}, writing the bounds in the given array instead
+     * of creating a {@link BoundingBox}
+     *
+     * @param rectangleExtent the rectangle of tiles, {minx, miny, maxx, maxy, z}
+     * @param bounds receives {minx, miny, maxx, maxy}
+     * @return {@code bounds}
+     */
+    public double[] boundsFromRectangle(long[] rectangleExtent, double[] bounds) {
+        final LevelGeometry level = geometry[(int) rectangleExtent[4]];
+        bounds[0] = level.x(rectangleExtent[0]);
+        bounds[1] = level.y(rectangleExtent[1]);
+        bounds[2] = level.x(rectangleExtent[2] + 1);
+        bounds[3] = level.y(rectangleExtent[3] + 1);
+        return bounds;
     }
 
     public long[] closestIndex(BoundingBox tileBounds) throws GridMismatchException {
@@ -103,11 +216,11 @@ public class GridSubset {
      *     otherwise
      */
     public boolean covers(long[] index) {
-        final int level = (int) index[2];
-        final long[] coverage = getCoverage(level);
-        if (coverage == null) {
+        final GridCoverage gridCoverage = coverageAt(index[2]);
+        if (gridCoverage == null) {
             return false;
         }
+        final long[] coverage = gridCoverage.coverage;
 
         if (index[0] >= coverage[0]
                 && index[0] <= coverage[2]
@@ -167,7 +280,7 @@ public class GridSubset {
     }
 
     public long[] getCoverage(int level) {
-        GridCoverage gridCoverage = gridCoverageLevels.get(Integer.valueOf(level));
+        GridCoverage gridCoverage = coverageAt(level);
         if (gridCoverage == null) {
             return null;
         }
@@ -175,6 +288,31 @@ public class GridSubset {
         return coverage;
     }
 
+    /**
+     * Same as {@link #getCoverage(int)}, copying the coverage in the given array instead of
+     * creating a new one
+     *
+     * @param level the zoom level
+     * @param coverage receives {minx, miny, maxx, maxy, z}
+     * @return {@code false} if the level is not part of this subset, leaving {@code coverage}
+     *     untouched
+     */
+    public boolean getCoverage(int level, long[] coverage) {
+        GridCoverage gridCoverage = coverageAt(level);
+        if (gridCoverage == null) {
+            return false;
+        }
+        System.arraycopy(gridCoverage.coverage, 0, coverage, 0, 5);
+        return true;
+    }
+
+    private GridCoverage coverageAt(long level) {
+        if (level < 0 || level >= coverageTable.length) {
+            return null;
+        }
+        return coverageTable[(int) level];
+    }
+
     public long[][] getCoverages() {
         long[][] ret = new long[gridCoverageLevels.size()][5];
 
@@ -199,8 +337,7 @@ public class GridSubset {
     }
 
     public BoundingBox getCoverageBounds(int level) {
-        long[] coverage = getCoverage(level);
-        return gridSet.boundsFromRectangle(coverage);
+        return boundsFromRectangle(coverageAt(level).coverage);
     }
 
     // Returns the tightest rectangle that covers the data
@@ -229,8 +366,7 @@ public class GridSubset {
     }
 
     public long[] getCoverageIntersection(long[] reqRectangle) {
-        final int level = (int) reqRectangle[4];
-        GridCoverage gridCov = gridCoverageLevels.get(Integer.valueOf(level));
+        GridCoverage gridCov = coverageAt(reqRectangle[4]);
         return gridCov.getIntersection(reqRectangle);
     }
 
@@ -254,8 +390,16 @@ public class GridSubset {
      * @return Array of long, the rectangle in tile coordinates, {minx, miny, maxx, maxy}
      */
     public long[] getCoverageIntersection(int level, BoundingBox reqBounds) {
-        long[] reqRectangle = gridSet.closestRectangle(level, reqBounds);
-        GridCoverage gridCoverage = gridCoverageLevels.get(Integer.valueOf(level));
+        final LevelGeometry geom = geometry[level];
+        // same as GridSet.closestRectangle(level, reqBounds)
+        long minX = (long) Math.floor((reqBounds.getMinX() - geom.originX) / geom.spanX);
+        long minY = (long) Math.floor((reqBounds.getMinY() - geom.originY) / geom.spanY);
+        long maxX = (long) Math.ceil((reqBounds.getMaxX() - geom.originX) / geom.spanX);
+        long maxY = (long) Math.ceil((reqBounds.getMaxY() - geom.originY) / geom.spanY);
+        long[] reqRectangle = {
+            minX, minY + geom.rowOffset, maxX - 1, maxY + geom.rowOffset - 1, level
+        };
+        GridCoverage gridCoverage = coverageAt(level);
         return gridCoverage.getIntersection(reqRectangle);
     }
 
@@ -294,11 +438,11 @@ public class GridSubset {
     }
 
     public long getNumTilesWide(int zoomLevel) {
-        return gridSet.getGridLevels()[zoomLevel].getNumTilesWide();
+        return geometry[zoomLevel].numTilesWide;
     }
 
     public long getNumTilesHigh(int zoomLevel) {
-        return gridSet.getGridLevels()[zoomLevel].getNumTilesHigh();
+        return geometry[zoomLevel].numTilesHigh;
     }
 
     public String getName() {
@@ -318,10 +462,8 @@ public class GridSubset {
         final int zoomStart = getZoomStart();
         final int zoomStop = getZoomStop();
 
-        final Grid[] gridLevels = gridSet.getGridLevels();
         for (int z = zoomStart, i = 0; z <= zoomStop; z++, i++) {
-            Grid grid = gridLevels[z];
-            ret[i] = grid.getResolution();
+            ret[i] = geometry[z].resolution;
         }
 
         return ret;
@@ -428,13 +570,20 @@ public class GridSubset {
     }
 
     public int getZoomStart() {
-        Integer firstLevel = Collections.min(gridCoverageLevels.keySet());
-        return firstLevel.intValue();
+        checkNotEmpty();
+        return zoomStart;
     }
 
     public int getZoomStop() {
-        Integer maxLevel = Collections.max(gridCoverageLevels.keySet());
-        return maxLevel.intValue();
+        checkNotEmpty();
+        return zoomStop;
+    }
+
+    // fails like the former Collections.min/max lookups did on a subset without zoom levels
+    private void checkNotEmpty() {
+        if (coverageTable.length == 0) {
+            throw new NoSuchElementException("The grid subset has no zoom levels");
+        }
     }
 
     public Integer getMinCachedZoom() {
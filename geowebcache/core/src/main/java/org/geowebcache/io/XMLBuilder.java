@@ -69,6 +69,44 @@ public class XMLBuilder {
         return this;
     }
 
+    /**
+     * Append a fragment written with a {@link #fragmentBuilder(Appendable) fragment builder} of
+     * this builder, as content of the current element
+     *
+     * @param fragment the fragment to append, without escaping
+     * @return
+     * @throws IOException thrown if the underlying Appendable throws IOException
+     */
+    public XMLBuilder appendFragment(CharSequence fragment) throws IOException {
+        if (fragment.length() == 0) {
+            return this;
+        }
+        if (startOfElement) appendUnescaped(">");
+        startOfElement = false;
+        if (!nodeStack.isEmpty()) nodeStack.peek().containsIndented = true;
+        builder.append(fragment);
+        return this;
+    }
+
+    /**
+     * Creates a builder writing to the given appendable at the current position of this builder,
+     * so that what it writes can be later added to this or another builder at the same depth with
+     * {@link #appendFragment(CharSequence)}
+     *
+     * @param fragment where the fragment is written
+     * @return
+     */
+    public XMLBuilder fragmentBuilder(Appendable fragment) {
+        XMLBuilder fragmentBuilder = new XMLBuilder(fragment);
+        for (NodeInfo ni : nodeStack) {
+            NodeInfo copy = fragmentBuilder.new NodeInfo();
+            copy.name = ni.name;
+            copy.indented = ni.indented;
+            fragmentBuilder.nodeStack.addLast(copy);
+        }
+        return fragmentBuilder;
+    }
+
     /**
      * Start an XML Element on a new line indented for its depth
      *
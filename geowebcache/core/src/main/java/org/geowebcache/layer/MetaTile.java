@@ -104,6 +104,8 @@ public class MetaTile implements TileResponseReceiver {
 
     protected long expiresHeader = -1;
 
+    protected long renderTime;
+
     protected MimeType responseFormat;
 
     protected FormatModifier formatModifier;
@@ -172,7 +174,7 @@ public class MetaTile implements TileResponseReceiver {
 
         long[] layerCov = gridSubset.getCoverage((int) this.metaGridCov[4]);
 
-        this.metaBbox = gridSubset.boundsFromRectangle(metaGridCov);
+        double[] bounds = gridSubset.boundsFromRectangle(metaGridCov, new double[4]);
 
         this.metaTileWidth = metaX * gridSubset.getTileWidth();
         this.metaTileHeight = metaY * gridSubset.getTileHeight();
@@ -180,8 +182,8 @@ public class MetaTile implements TileResponseReceiver {
         double widthRelDelta = ((1.0 * metaTileWidth + gutterConfig) / metaTileWidth) - 1.0;
         double heightRelDelta = ((1.0 * metaTileHeight + gutterConfig) / metaTileHeight) - 1.0;
 
-        double coordWidth = metaBbox.getWidth();
-        double coordHeight = metaBbox.getHeight();
+        double coordWidth = bounds[2] - bounds[0];
+        double coordHeight = bounds[3] - bounds[1];
 
         double coordWidthDelta = coordWidth * widthRelDelta;
         double coordHeightDelta = coordHeight * heightRelDelta;
@@ -189,23 +191,25 @@ public class MetaTile implements TileResponseReceiver {
         if (layerCov[0] < metaGridCov[0]) {
             metaTileWidth += gutterConfig;
             gutter[0] = gutterConfig;
-            metaBbox.setMinX(metaBbox.getMinX() - coordWidthDelta);
+            bounds[0] -= coordWidthDelta;
         }
         if (layerCov[1] < metaGridCov[1]) {
             metaTileHeight += gutterConfig;
             gutter[1] = gutterConfig;
-            metaBbox.setMinY(metaBbox.getMinY() - coordHeightDelta);
+            bounds[1] -= coordHeightDelta;
         }
         if (layerCov[2] > metaGridCov[2]) {
             metaTileWidth += gutterConfig;
             gutter[2] = gutterConfig;
-            metaBbox.setMaxX(metaBbox.getMaxX() + coordWidthDelta);
+            bounds[2] += coordWidthDelta;
         }
         if (layerCov[3] > metaGridCov[3]) {
             metaTileHeight += gutterConfig;
             gutter[3] = gutterConfig;
-            metaBbox.setMaxY(metaBbox.getMaxY() + coordHeightDelta);
+            bounds[3] += coordHeightDelta;
         }
+
+        this.metaBbox = new BoundingBox(bounds[0], bounds[1], bounds[2], bounds[3]);
     }
 
     public BoundingBox getMetaTileBounds() {
@@ -252,6 +256,15 @@ public class MetaTile implements TileResponseReceiver {
         this.expiresHeader = seconds;
     }
 
+    /** @return the time in milliseconds the backend took to render the meta tile, if known */
+    public long getRenderTime() {
+        return renderTime;
+    }
+
+    public void setRenderTime(long renderTime) {
+        this.renderTime = renderTime;
+    }
+
     public void setImageBytes(Resource buffer) throws GeoWebCacheException {
         Assert.notNull(buffer, "WMSMetaTile.setImageBytes() received null");
         Assert.isTrue(buffer.getSize() > 0, "WMSMetaTile.setImageBytes() received empty contents");
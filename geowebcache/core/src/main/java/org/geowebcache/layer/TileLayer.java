@@ -32,6 +32,7 @@ import org.geowebcache.config.Info;
 import org.geowebcache.config.legends.LegendInfo;
 import org.geowebcache.conveyor.ConveyorTile;
 import org.geowebcache.filter.parameters.ParameterFilter;
+import org.geowebcache.filter.parameters.ParametersRegistry;
 import org.geowebcache.filter.request.RequestFilter;
 import org.geowebcache.filter.request.RequestFilterException;
 import org.geowebcache.grid.BoundingBox;
@@ -73,6 +74,8 @@ public abstract class TileLayer implements Info {
     // cached default parameter filter values
     protected transient Map<String, String> defaultParameterFilterValues;
 
+    private transient volatile ParametersRegistry parametersRegistry;
+
     /**
      * Registers a layer listener to be notified of layer events
      *
@@ -539,15 +542,25 @@ public abstract class TileLayer implements Info {
             return Collections.emptyMap();
         }
 
-        Map<String, String> fullParameters = new HashMap<String, String>();
-
-        final String[] keys =
-                parameterFilters.stream().map(ParameterFilter::getKey).toArray(i -> new String[i]);
-
-        final Map<String, String> requestValues;
-        requestValues = ServletUtils.selectedStringsFromMap(map, encoding, keys);
+        ParametersRegistry registry = parametersRegistry;
+        if (registry == null || !registry.isFor(parameterFilters)) {
+            final Map<String, String> defaults = getDefaultParameterFilters();
+            registry =
+                    new ParametersRegistry(
+                            parameterFilters,
+                            defaults,
+                            values -> applyParameterFilters(parameterFilters, defaults, values));
+            parametersRegistry = registry;
+        }
+        return registry.lookup(map, encoding);
+    }
 
-        final Map<String, String> defaultValues = getDefaultParameterFilters();
+    private Map<String, String> applyParameterFilters(
+            List<ParameterFilter> parameterFilters,
+            Map<String, String> defaultValues,
+            Map<String, String> requestValues)
+            throws GeoWebCacheException {
+        Map<String, String> fullParameters = new HashMap<String, String>();
 
         for (ParameterFilter parameterFilter : parameterFilters) {
             String key = parameterFilter.getKey().toUpperCase();
@@ -564,9 +577,6 @@ public abstract class TileLayer implements Info {
                 fullParameters.put(key, appliedValue);
             }
         }
-        if (defaultValues.equals(fullParameters)) {
-            return Collections.emptyMap();
-        }
         return fullParameters;
     }
 
@@ -630,6 +640,8 @@ public abstract class TileLayer implements Info {
 
         final int zoomLevel = (int) gridLoc[2];
         final boolean store = this.getExpireCache(zoomLevel) != GWCVars.CACHE_DISABLE_CACHE;
+        // the backend renders all the tiles of the meta tile at once, share the time evenly
+        final long tileRenderTime = metaTile.getRenderTime() / gridPositions.length;
 
         Resource resource;
         boolean encode;
@@ -669,6 +681,7 @@ public abstract class TileLayer implements Info {
                                         tileProto.getParameters(),
                                         resource);
                         tile.setCreated(requestTime);
+                        tile.setRenderTime(tileRenderTime);
 
                         try {
                             if (tileProto.isMetaTileCacheOnly()) {
@@ -15,15 +15,24 @@
 package org.geowebcache.layer;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.geowebcache.GeoWebCacheException;
 import org.geowebcache.GeoWebCacheExtensions;
 import org.geowebcache.config.BaseConfiguration;
 import org.geowebcache.config.ConfigurationAggregator;
 import org.geowebcache.config.TileLayerConfiguration;
+import org.geowebcache.config.TileLayerConfigurationListener;
 import org.geowebcache.config.XMLConfiguration;
 import org.geowebcache.config.meta.ServiceInformation;
 import org.geowebcache.grid.GridSet;
@@ -46,8 +55,31 @@ public class TileLayerDispatcher
                 ApplicationContextAware,
                 ConfigurationAggregator<TileLayerConfiguration> {
 
+    private static final Log log = LogFactory.getLog(TileLayerDispatcher.class);
+
     private List<TileLayerConfiguration> configs;
 
+    private final List<TileLayerConfigurationListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Remembers which configuration each layer was found in, so that looking up a layer asks only
+     * that configuration instead of all of them in turn. Entries are dropped on the changes made
+     * through this dispatcher or reported by the configurations. Unless all the configurations
+     * report their changes, an entry is only used if no configuration before it has the layer.
+     */
+    private final Map<String, TileLayerConfiguration> layerIndex = new ConcurrentHashMap<>();
+
+    /** Incremented on each layer change, tells whether {@link #snapshot} is current */
+    private final AtomicLong generation = new AtomicLong();
+
+    /** Whether all the configurations report the changes to their layers */
+    private volatile boolean changesReported;
+
+    /** The layers as of a {@link #generation}, kept when {@link #changesReported} */
+    private volatile LayerSnapshot snapshot;
+
+    private final TileLayerConfigurationListener configurationListener = new ChangeListener();
+
     private GridSetBroker gridSetBroker;
 
     private ServiceInformation serviceInformation;
@@ -67,15 +99,85 @@ public class TileLayerDispatcher
         this.gridSetBroker = gridSetBroker;
     }
 
+    /** @return the gridset broker the layer gridsets are looked up in */
+    public GridSetBroker getGridSetBroker() {
+        return gridSetBroker;
+    }
+
     public boolean layerExists(final String layerName) {
+        return layerName != null && findLayer(layerName) != null;
+    }
+
+    /**
+     * Looks up a layer, first in the configuration it was found in, then in all the configurations
+     * in order.
+     *
+     * @return the layer, or {@code null} if no configuration contains it
+     */
+    private TileLayer findLayer(final String layerName) {
+        TileLayerConfiguration indexed = getIndexed(layerName);
+        if (indexed != null) {
+            Optional<TileLayer> layer = indexed.getLayer(layerName);
+            if (layer.isPresent()) {
+                return layer.get();
+            }
+            layerIndex.remove(layerName, indexed);
+        }
+        final long current = generation.get();
         for (int i = 0; i < configs.size(); i++) {
             TileLayerConfiguration configuration = configs.get(i);
             Optional<TileLayer> layer = configuration.getLayer(layerName);
             if (layer.isPresent()) {
-                return true;
+                index(layerName, configuration, current);
+                return layer.get();
             }
         }
-        return false;
+        return null;
+    }
+
+    /**
+     * @return the configuration the layer was found in, provided no configuration with a higher
+     *     priority may have it now, or {@code null}
+     */
+    private TileLayerConfiguration getIndexed(final String layerName) {
+        TileLayerConfiguration indexed = layerIndex.get(layerName);
+        if (indexed == null || changesReported) {
+            return indexed;
+        }
+        for (int i = 0; i < configs.size(); i++) {
+            TileLayerConfiguration configuration = configs.get(i);
+            if (configuration == indexed) {
+                return indexed;
+            }
+            if (configuration.containsLayer(layerName)) {
+                break;
+            }
+        }
+        layerIndex.remove(layerName, indexed);
+        return null;
+    }
+
+    /**
+     * Indexes a layer found in a configuration, unless a change happened since the lookup started
+     * at the given {@link #generation}, as the entry may then be stale.
+     */
+    private void index(String layerName, TileLayerConfiguration configuration, long lookupStart) {
+        layerIndex.put(layerName, configuration);
+        if (generation.get() != lookupStart) {
+            layerIndex.remove(layerName, configuration);
+        }
+    }
+
+    /** Drops what is known about a layer after it changed */
+    private void invalidate(String layerName) {
+        generation.incrementAndGet();
+        layerIndex.remove(layerName);
+    }
+
+    /** Drops what is known about all the layers after a configuration changed as a whole */
+    private void invalidateAll() {
+        generation.incrementAndGet();
+        layerIndex.clear();
     }
 
     /**
@@ -86,12 +188,9 @@ public class TileLayerDispatcher
     public TileLayer getTileLayer(final String layerName) throws GeoWebCacheException {
         Preconditions.checkNotNull(layerName, "layerName is null");
 
-        for (int i = 0; i < configs.size(); i++) {
-            TileLayerConfiguration configuration = configs.get(i);
-            Optional<TileLayer> layer = configuration.getLayer(layerName);
-            if (layer.isPresent()) {
-                return layer.get();
-            }
+        TileLayer layer = findLayer(layerName);
+        if (layer != null) {
+            return layer;
         }
         throw new GeoWebCacheException(
                 "Thread "
@@ -112,6 +211,9 @@ public class TileLayerDispatcher
     }
 
     public int getLayerCount() {
+        if (changesReported) {
+            return getSnapshot().layers.size();
+        }
         int count = 0;
         for (int i = 0; i < configs.size(); i++) {
             TileLayerConfiguration configuration = configs.get(i);
@@ -120,13 +222,42 @@ public class TileLayerDispatcher
         return count;
     }
 
+    /** @return an unmodifiable set of the names of all the layers */
     public Set<String> getLayerNames() {
+        if (changesReported) {
+            return getSnapshot().names;
+        }
         Set<String> names = new HashSet<String>();
         for (int i = 0; i < configs.size(); i++) {
             TileLayerConfiguration configuration = configs.get(i);
             names.addAll(configuration.getLayerNames());
         }
-        return names;
+        return Collections.unmodifiableSet(names);
+    }
+
+    /**
+     * Returns the layers as they are now, each name once as served by {@link
+     * #getTileLayer(String)}. Unlike {@link #getLayerList()} the list does not follow the changes
+     * made while it is iterated, so it suits documents listing the layers several times. It is
+     * kept between calls while all the configurations report their changes.
+     *
+     * @return an unmodifiable list of all the layers
+     */
+    public List<TileLayer> getLayerSnapshot() {
+        return getSnapshot().layers;
+    }
+
+    private LayerSnapshot getSnapshot() {
+        LayerSnapshot current = snapshot;
+        final long now = generation.get();
+        if (current != null && current.generation == now) {
+            return current;
+        }
+        current = new LayerSnapshot(now, configs);
+        if (changesReported) {
+            snapshot = current;
+        }
+        return current;
     }
 
     /**
@@ -155,7 +286,7 @@ public class TileLayerDispatcher
 
     /** @see org.springframework.beans.factory.DisposableBean#destroy() */
     public void destroy() throws Exception {
-        //
+        unregisterConfigurationListener();
     }
 
     /**
@@ -168,6 +299,8 @@ public class TileLayerDispatcher
         for (TileLayerConfiguration config : configs) {
             if (config.containsLayer(layerName)) {
                 config.removeLayer(layerName);
+                invalidate(layerName);
+                notifyListeners(l -> l.handleRemoveLayer(layerName));
                 return;
             }
         }
@@ -185,12 +318,48 @@ public class TileLayerDispatcher
         for (TileLayerConfiguration c : configs) {
             if (c.canSave(tl)) {
                 c.addLayer(tl);
+                invalidate(tl.getName());
+                notifyListeners(l -> l.handleAddLayer(tl));
                 return;
             }
         }
         throw new IllegalArgumentException("No configuration found capable of saving " + tl);
     }
 
+    /**
+     * Adds several layers at once, letting each configuration save its share of them in one go.
+     * Each layer goes to the first configuration capable of saving it, as in {@link
+     * #addLayer(TileLayer)}.
+     *
+     * @param layers the layers to add
+     * @throws IllegalArgumentException if any of the layers can't be saved by a configuration
+     *     managed by this tile layer dispatcher, which is checked before adding any, or if a
+     *     configuration refuses its batch
+     */
+    public synchronized void addLayers(final Collection<? extends TileLayer> layers)
+            throws IllegalArgumentException {
+        Map<TileLayerConfiguration, List<TileLayer>> batches = new LinkedHashMap<>();
+        for (TileLayer tl : layers) {
+            TileLayerConfiguration target =
+                    configs.stream()
+                            .filter(c -> c.canSave(tl))
+                            .findFirst()
+                            .orElseThrow(
+                                    () ->
+                                            new IllegalArgumentException(
+                                                    "No configuration found capable of saving "
+                                                            + tl));
+            batches.computeIfAbsent(target, c -> new ArrayList<>()).add(tl);
+        }
+        for (Map.Entry<TileLayerConfiguration, List<TileLayer>> batch : batches.entrySet()) {
+            batch.getKey().addLayers(batch.getValue());
+            for (TileLayer tl : batch.getValue()) {
+                invalidate(tl.getName());
+                notifyListeners(l -> l.handleAddLayer(tl));
+            }
+        }
+    }
+
     /**
      * Renames an existing layer.
      *
@@ -202,6 +371,9 @@ public class TileLayerDispatcher
             throws NoSuchElementException, IllegalArgumentException {
         TileLayerConfiguration config = getConfiguration(oldName);
         config.renameLayer(oldName, newName);
+        invalidate(oldName);
+        invalidate(newName);
+        notifyListeners(l -> l.handleRenameLayer(oldName, newName));
     }
 
     /**
@@ -214,6 +386,56 @@ public class TileLayerDispatcher
         TileLayerConfiguration config = getConfiguration(tl);
         // TODO: this won't work with GetCapabilitiesConfiguration
         config.modifyLayer(tl);
+        invalidate(tl.getName());
+        notifyListeners(l -> l.handleModifyLayer(tl));
+    }
+
+    /**
+     * Replaces several existing layers at once. The layers are grouped by the configuration that
+     * holds them, and each configuration replaces its batch as a whole, see {@link
+     * TileLayerConfiguration#modifyLayers(Collection)}.
+     *
+     * @param layers the layers to modify
+     * @throws IllegalArgumentException if any of the layers is not held by a configuration managed
+     *     by this tile layer dispatcher, which is checked before modifying any, or if a
+     *     configuration refuses its batch
+     */
+    public synchronized void modifyLayers(final Collection<? extends TileLayer> layers)
+            throws IllegalArgumentException {
+        Map<TileLayerConfiguration, List<TileLayer>> batches = new LinkedHashMap<>();
+        for (TileLayer tl : layers) {
+            batches.computeIfAbsent(getConfiguration(tl), c -> new ArrayList<>()).add(tl);
+        }
+        for (Map.Entry<TileLayerConfiguration, List<TileLayer>> batch : batches.entrySet()) {
+            batch.getKey().modifyLayers(batch.getValue());
+            for (TileLayer tl : batch.getValue()) {
+                invalidate(tl.getName());
+                notifyListeners(l -> l.handleModifyLayer(tl));
+            }
+        }
+    }
+
+    /**
+     * Adds a listener to be notified of the layers added, removed, renamed or modified through this
+     * dispatcher
+     */
+    public void addListener(TileLayerConfigurationListener listener) {
+        listeners.add(listener);
+    }
+
+    /** Removes a listener added with {@link #addListener(TileLayerConfigurationListener)} */
+    public void removeListener(TileLayerConfigurationListener listener) {
+        listeners.remove(listener);
+    }
+
+    private void notifyListeners(Consumer<TileLayerConfigurationListener> event) {
+        for (TileLayerConfigurationListener listener : listeners) {
+            try {
+                event.accept(listener);
+            } catch (RuntimeException e) {
+                log.warn("Error notifying layer change to " + listener, e);
+            }
+        }
     }
 
     public TileLayerConfiguration getConfiguration(TileLayer tl) throws IllegalArgumentException {
@@ -224,8 +446,14 @@ public class TileLayerDispatcher
     public TileLayerConfiguration getConfiguration(final String tileLayerName)
             throws IllegalArgumentException {
         Assert.notNull(tileLayerName, "tileLayerName is null");
+        TileLayerConfiguration indexed = getIndexed(tileLayerName);
+        if (indexed != null && indexed.containsLayer(tileLayerName)) {
+            return indexed;
+        }
+        final long current = generation.get();
         for (TileLayerConfiguration c : configs) {
             if (c.containsLayer(tileLayerName)) {
+                index(tileLayerName, c, current);
                 return c;
             }
         }
@@ -355,9 +583,25 @@ public class TileLayerDispatcher
 
     @Override
     public void afterPropertiesSet() throws Exception {
+        unregisterConfigurationListener();
         this.configs =
                 GeoWebCacheExtensions.configurations(
                         TileLayerConfiguration.class, applicationContext);
+        boolean reported = true;
+        for (TileLayerConfiguration config : configs) {
+            reported &= config.addLayerListener(configurationListener);
+        }
+        changesReported = reported;
+        invalidateAll();
+    }
+
+    private void unregisterConfigurationListener() {
+        changesReported = false;
+        if (configs != null) {
+            for (TileLayerConfiguration config : configs) {
+                config.removeLayerListener(configurationListener);
+            }
+        }
     }
 
     @Override
@@ -367,4 +611,56 @@ public class TileLayerDispatcher
         Objects.requireNonNull(applicationContext);
         this.applicationContext = applicationContext;
     }
+
+    /** The layers of all the configurations at a point in time, each name once */
+    private static final class LayerSnapshot {
+
+        final long generation;
+
+        final List<TileLayer> layers;
+
+        final Set<String> names;
+
+        LayerSnapshot(long generation, List<TileLayerConfiguration> configs) {
+            this.generation = generation;
+            Map<String, TileLayer> byName = new LinkedHashMap<>();
+            for (TileLayerConfiguration config : configs) {
+                for (TileLayer layer : config.getLayers()) {
+                    byName.putIfAbsent(layer.getName(), layer);
+                }
+            }
+            this.layers = ImmutableList.copyOf(byName.values());
+            this.names = ImmutableSet.copyOf(byName.keySet());
+        }
+    }
+
+    /** Keeps the index and the snapshot current with the changes reported by configurations */
+    private final class ChangeListener implements TileLayerConfigurationListener {
+
+        @Override
+        public void handleAddLayer(TileLayer layer) {
+            invalidate(layer.getName());
+        }
+
+        @Override
+        public void handleRemoveLayer(String layerName) {
+            invalidate(layerName);
+        }
+
+        @Override
+        public void handleModifyLayer(TileLayer layer) {
+            invalidate(layer.getName());
+        }
+
+        @Override
+        public void handleRenameLayer(String oldName, String newName) {
+            invalidate(oldName);
+            invalidate(newName);
+        }
+
+        @Override
+        public void handleReload() {
+            invalidateAll();
+        }
+    }
 }
@@ -0,0 +1,315 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.layer.wms;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.geowebcache.GeoWebCacheExtensions;
+
+/**
+ * Admission control for requests going to the WMS backends, shared by interactive cache misses and
+ * seeding threads.
+ *
+ * <p>Each class of work has its own queue. When the number of in flight backend requests reaches
+ * the configured limit, freed slots are handed out using weighted round robin between the non
+ * empty queues, so that with the default weights interactive requests overtake queued seed
+ * requests while seeding still makes (slow) progress. A limit of zero or less disables queueing
+ * altogether, but wait time statistics are still collected. They are reported along with the
+ * other runtime statistics, see {@link org.geowebcache.stats.RuntimeStats#getHTMLStats()}.
+ *
+ * <p>The shared instance returned by {@link #getDefault()} is configured through the following
+ * properties (looked up as system properties, servlet context parameters or environment variables,
+ * see {@link GeoWebCacheExtensions#getProperty(String)}):
+ *
+ * <ul>
+ *   <li>{@code GWC_BACKEND_CONCURRENCY}: maximum number of concurrent backend requests, defaults to
+ *       0 (unbounded)
+ *   <li>{@code GWC_BACKEND_INTERACTIVE_WEIGHT}: share of freed slots given to interactive requests,
+ *       defaults to 8
+ *   <li>{@code GWC_BACKEND_SEED_WEIGHT}: share of freed slots given to seed requests, defaults to 1
+ * </ul>
+ */
+public class BackendRequestScheduler {
+
+    private static Log log = LogFactory.getLog(BackendRequestScheduler.class);
+
+    static final String GWC_BACKEND_CONCURRENCY = "GWC_BACKEND_CONCURRENCY";
+
+    static final String GWC_BACKEND_INTERACTIVE_WEIGHT = "GWC_BACKEND_INTERACTIVE_WEIGHT";
+
+    static final String GWC_BACKEND_SEED_WEIGHT = "GWC_BACKEND_SEED_WEIGHT";
+
+    /** The classes of work competing for the backend, in decreasing order of priority */
+    public enum RequestClass {
+        /** A cache miss triggered by a client request */
+        INTERACTIVE,
+        /** A seed, reseed or other bulk request */
+        SEED
+    }
+
+    private static volatile BackendRequestScheduler defaultInstance;
+
+    private final int maxConcurrent;
+
+    private final Map<RequestClass, Integer> weights = new EnumMap<>(RequestClass.class);
+
+    private final Map<RequestClass, Integer> credits = new EnumMap<>(RequestClass.class);
+
+    private final Map<RequestClass, ArrayDeque<Waiter>> queues = new EnumMap<>(RequestClass.class);
+
+    private final Map<RequestClass, Stats> stats = new EnumMap<>(RequestClass.class);
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private int active;
+
+    /**
+     * @param maxConcurrent maximum number of concurrent backend requests, zero or less means
+     *     unbounded
+     * @param interactiveWeight relative share of slots given to interactive requests, must be
+     *     positive
+     * @param seedWeight relative share of slots given to seed requests, must be positive
+     */
+    public BackendRequestScheduler(int maxConcurrent, int interactiveWeight, int seedWeight) {
+        if (interactiveWeight <= 0 || seedWeight <= 0) {
+            throw new IllegalArgumentException(
+                    "Weights must be positive: " + interactiveWeight + ", " + seedWeight);
+        }
+        this.maxConcurrent = maxConcurrent;
+        weights.put(RequestClass.INTERACTIVE, interactiveWeight);
+        weights.put(RequestClass.SEED, seedWeight);
+        for (RequestClass rc : RequestClass.values()) {
+            credits.put(rc, weights.get(rc));
+            queues.put(rc, new ArrayDeque<>());
+            stats.put(rc, new Stats());
+        }
+    }
+
+    /** Returns the scheduler shared by all the WMS layers in this JVM */
+    public static BackendRequestScheduler getDefault() {
+        if (defaultInstance == null) {
+            synchronized (BackendRequestScheduler.class) {
+                if (defaultInstance == null) {
+                    defaultInstance =
+                            new BackendRequestScheduler(
+                                    intProperty(GWC_BACKEND_CONCURRENCY, 0),
+                                    intProperty(GWC_BACKEND_INTERACTIVE_WEIGHT, 8),
+                                    intProperty(GWC_BACKEND_SEED_WEIGHT, 1));
+                }
+            }
+        }
+        return defaultInstance;
+    }
+
+    private static int intProperty(String name, int defaultValue) {
+        String value = GeoWebCacheExtensions.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            log.warn("Invalid value for " + name + ": " + value + ", using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Waits until a backend slot is available for the given class of work. Every successful call
+     * must be paired with a call to {@link #release()}.
+     *
+     * @throws InterruptedException if the thread is interrupted while queued, in which case no
+     *     slot is held
+     */
+    public void acquire(RequestClass requestClass) throws InterruptedException {
+        final long start = System.nanoTime();
+        final Waiter waiter;
+        lock.lock();
+        try {
+            if (maxConcurrent <= 0 || (active < maxConcurrent && nothingQueued())) {
+                active++;
+                stats.get(requestClass).record(System.nanoTime() - start);
+                return;
+            }
+            waiter = new Waiter(lock.newCondition());
+            queues.get(requestClass).addLast(waiter);
+            try {
+                while (!waiter.granted) {
+                    waiter.condition.await();
+                }
+            } catch (InterruptedException e) {
+                if (waiter.granted) {
+                    // the slot was handed over to us anyways, pass it on
+                    releaseLocked();
+                } else {
+                    queues.get(requestClass).remove(waiter);
+                }
+                throw e;
+            }
+        } finally {
+            lock.unlock();
+        }
+        long waited = System.nanoTime() - start;
+        stats.get(requestClass).record(waited);
+        if (log.isTraceEnabled()) {
+            log.trace(
+                    requestClass
+                            + " backend request waited "
+                            + TimeUnit.NANOSECONDS.toMillis(waited)
+                            + "ms in queue");
+        }
+    }
+
+    /** Returns a slot obtained through {@link #acquire(RequestClass)} */
+    public void release() {
+        lock.lock();
+        try {
+            releaseLocked();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void releaseLocked() {
+        RequestClass next = nextClass();
+        if (next == null) {
+            active--;
+        } else {
+            // hand the slot over directly, active count stays the same
+            Waiter waiter = queues.get(next).removeFirst();
+            waiter.granted = true;
+            waiter.condition.signal();
+        }
+    }
+
+    /** Weighted round robin among the classes having queued requests */
+    private RequestClass nextClass() {
+        if (nothingQueued()) {
+            return null;
+        }
+        for (int round = 0; round < 2; round++) {
+            for (RequestClass rc : RequestClass.values()) {
+                int credit = credits.get(rc);
+                if (credit > 0 && !queues.get(rc).isEmpty()) {
+                    credits.put(rc, credit - 1);
+                    return rc;
+                }
+            }
+            // every class with queued requests exhausted its credits, start a new round
+            credits.putAll(weights);
+        }
+        throw new IllegalStateException("Unreachable, there are queued requests");
+    }
+
+    private boolean nothingQueued() {
+        for (ArrayDeque<Waiter> queue : queues.values()) {
+            if (!queue.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Maximum number of concurrent backend requests, zero or less if unbounded */
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    /** Number of requests currently holding a backend slot */
+    public int getActiveCount() {
+        lock.lock();
+        try {
+            return active;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Number of requests of the given class currently waiting for a backend slot */
+    public int getQueuedCount(RequestClass requestClass) {
+        lock.lock();
+        try {
+            return queues.get(requestClass).size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Number of requests of the given class that have been admitted so far */
+    public long getRequestCount(RequestClass requestClass) {
+        return stats.get(requestClass).count.get();
+    }
+
+    /** Total time, in milliseconds, requests of the given class spent waiting in queue */
+    public long getTotalWaitMillis(RequestClass requestClass) {
+        return TimeUnit.NANOSECONDS.toMillis(stats.get(requestClass).totalWait.get());
+    }
+
+    /** Average time, in milliseconds, requests of the given class spent waiting in queue */
+    public double getAverageWaitMillis(RequestClass requestClass) {
+        Stats s = stats.get(requestClass);
+        long count = s.count.get();
+        return count == 0 ? 0 : s.totalWait.get() / (count * 1_000_000d);
+    }
+
+    /** Longest time, in milliseconds, a request of the given class spent waiting in queue */
+    public long getMaxWaitMillis(RequestClass requestClass) {
+        return TimeUnit.NANOSECONDS.toMillis(stats.get(requestClass).maxWait.get());
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("BackendRequestScheduler[maxConcurrent=");
+        sb.append(maxConcurrent).append(", active=").append(getActiveCount());
+        for (RequestClass rc : RequestClass.values()) {
+            sb.append(", ").append(rc).append("[queued=").append(getQueuedCount(rc));
+            sb.append(", requests=").append(getRequestCount(rc));
+            sb.append(", avgWaitMs=").append(getAverageWaitMillis(rc));
+            sb.append(", maxWaitMs=").append(getMaxWaitMillis(rc)).append("]");
+        }
+        return sb.append("]").toString();
+    }
+
+    private static class Waiter {
+        final Condition condition;
+
+        boolean granted;
+
+        Waiter(Condition condition) {
+            this.condition = condition;
+        }
+    }
+
+    private static class Stats {
+        final AtomicLong count = new AtomicLong();
+
+        final AtomicLong totalWait = new AtomicLong();
+
+        final AtomicLong maxWait = new AtomicLong();
+
+        void record(long waitNanos) {
+            count.incrementAndGet();
+            totalWait.addAndGet(waitNanos);
+            maxWait.accumulateAndGet(waitNanos, Math::max);
+        }
+    }
+}
@@ -47,6 +47,7 @@ import org.geowebcache.layer.ExpirationRule;
 import org.geowebcache.layer.ProxyLayer;
 import org.geowebcache.layer.meta.LayerMetaInformation;
 import org.geowebcache.layer.meta.MetadataURL;
+import org.geowebcache.layer.wms.BackendRequestScheduler.RequestClass;
 import org.geowebcache.locks.LockProvider;
 import org.geowebcache.locks.LockProvider.Lock;
 import org.geowebcache.mime.FormatModifier;
@@ -119,6 +120,8 @@ public class WMSLayer extends AbstractTileLayer implements ProxyLayer {
 
     private transient LockProvider lockProvider;
 
+    private transient BackendRequestScheduler requestScheduler;
+
     private LegendsRawInfo legends;
 
     private HttpRequestMode httpRequestMode = HttpRequestMode.Get;
@@ -331,9 +334,9 @@ public class WMSLayer extends AbstractTileLayer implements ProxyLayer {
             if (tryCacheFetch(tile)) {
                 returnTile = finalizeTile(tile);
             } else if (mime.supportsTiling()) { // Okay, so we need to go to the backend
-                returnTile = getMetatilingReponse(tile, true);
+                returnTile = getMetatilingReponse(tile, true, RequestClass.INTERACTIVE);
             } else {
-                returnTile = getNonMetatilingReponse(tile, true);
+                returnTile = getNonMetatilingReponse(tile, true, RequestClass.INTERACTIVE);
             }
         } finally {
             cleanUpThreadLocals();
@@ -351,9 +354,9 @@ public class WMSLayer extends AbstractTileLayer implements ProxyLayer {
         if (gridSubset.shouldCacheAtZoom(tile.getTileIndex()[2])) {
             if (tile.getMimeType().supportsTiling()
                     && (metaWidthHeight[0] > 1 || metaWidthHeight[1] > 1)) {
-                getMetatilingReponse(tile, tryCache);
+                getMetatilingReponse(tile, tryCache, RequestClass.SEED);
             } else {
-                getNonMetatilingReponse(tile, tryCache);
+                getNonMetatilingReponse(tile, tryCache, RequestClass.SEED);
             }
         }
     }
@@ -363,9 +366,11 @@ public class WMSLayer extends AbstractTileLayer implements ProxyLayer {
      *
      * @param tile the Tile with all the information
      * @param tryCache whether to try the cache, or seed
+     * @param requestClass the class of work used to schedule the backend request
      * @throws GeoWebCacheException
      */
-    private ConveyorTile getMetatilingReponse(ConveyorTile tile, boolean tryCache)
+    private ConveyorTile getMetatilingReponse(
+            ConveyorTile tile, boolean tryCache, RequestClass requestClass)
             throws GeoWebCacheException {
 
         // int idx = this.getSRSIndex(tile.getSRS());
@@ -397,6 +402,10 @@ public class WMSLayer extends AbstractTileLayer implements ProxyLayer {
         }
 
         String metaKey = buildLockKey(tile, metaTile);
+        // take the backend slot before the lock, so that a request never waits for its slot while
+        // holding a lock other requests, possibly of a higher priority class, are waiting for
+        BackendRequestScheduler scheduler = getRequestScheduler();
+        acquireBackendSlot(scheduler, requestClass);
         Lock lock = null;
         try {
             /** ****************** Acquire lock ******************* */
@@ -421,6 +430,7 @@ public class WMSLayer extends AbstractTileLayer implements ProxyLayer {
             }
             long requestTime = System.currentTimeMillis();
             sourceHelper.makeRequest(metaTile, buffer);
+            metaTile.setRenderTime(System.currentTimeMillis() - requestTime);
 
             if (metaTile.getError()) {
                 throw new GeoWebCacheException(
@@ -438,10 +448,14 @@ public class WMSLayer extends AbstractTileLayer implements ProxyLayer {
 
             /** ****************** Return lock and response ****** */
         } finally {
-            if (lock != null) {
-                lock.release();
+            try {
+                if (lock != null) {
+                    lock.release();
+                }
+            } finally {
+                scheduler.release();
+                metaTile.dispose();
             }
-            metaTile.dispose();
         }
         return finalizeTile(tile);
     }
@@ -477,14 +491,19 @@ public class WMSLayer extends AbstractTileLayer implements ProxyLayer {
      *
      * @param tile the Tile with all the information
      * @param tryCache whether to try the cache, or seed
+     * @param requestClass the class of work used to schedule the backend request
      * @throws GeoWebCacheException
      */
-    private ConveyorTile getNonMetatilingReponse(ConveyorTile tile, boolean tryCache)
+    private ConveyorTile getNonMetatilingReponse(
+            ConveyorTile tile, boolean tryCache, RequestClass requestClass)
             throws GeoWebCacheException {
         // String debugHeadersStr = null;
         long[] gridLoc = tile.getTileIndex();
 
         String lockKey = buildLockKey(tile, null);
+        // slot before lock, as in getMetatilingReponse
+        BackendRequestScheduler scheduler = getRequestScheduler();
+        acquireBackendSlot(scheduler, requestClass);
         Lock lock = null;
         try {
             /** ****************** Acquire lock ******************* */
@@ -517,13 +536,28 @@ public class WMSLayer extends AbstractTileLayer implements ProxyLayer {
 
             /** ****************** Return lock and response ****** */
         } finally {
-            if (lock != null) {
-                lock.release();
+            try {
+                if (lock != null) {
+                    lock.release();
+                }
+            } finally {
+                scheduler.release();
             }
         }
         return finalizeTile(tile);
     }
 
+    private void acquireBackendSlot(BackendRequestScheduler scheduler, RequestClass requestClass)
+            throws GeoWebCacheException {
+        try {
+            scheduler.acquire(requestClass);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GeoWebCacheException(
+                    "Interrupted while waiting for a backend request slot on layer " + name);
+        }
+    }
+
     public boolean tryCacheFetch(ConveyorTile tile) {
         int expireCache = this.getExpireCache((int) tile.getTileIndex()[2]);
         if (expireCache != GWCVars.CACHE_DISABLE_CACHE) {
@@ -843,6 +877,21 @@ public class WMSLayer extends AbstractTileLayer implements ProxyLayer {
         this.lockProvider = lockProvider;
     }
 
+    /**
+     * Returns the scheduler arbitrating backend requests between interactive cache misses and
+     * seeding, defaults to the one shared by all WMS layers
+     */
+    public BackendRequestScheduler getRequestScheduler() {
+        if (requestScheduler == null) {
+            requestScheduler = BackendRequestScheduler.getDefault();
+        }
+        return requestScheduler;
+    }
+
+    public void setRequestScheduler(BackendRequestScheduler requestScheduler) {
+        this.requestScheduler = requestScheduler;
+    }
+
     public void proxyRequest(ConveyorTile tile) throws GeoWebCacheException {
         String queryStr = tile.servletReq.getQueryString();
         String serverStr = getWMSurl()[0];
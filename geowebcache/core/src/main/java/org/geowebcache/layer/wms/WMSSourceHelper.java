@@ -67,9 +67,9 @@ public abstract class WMSSourceHelper {
         wmsParams.put("WIDTH", String.valueOf(gridSubset.getTileWidth()));
         // strBuilder.append("&TILED=").append(requestTiled);
 
-        BoundingBox bbox = gridSubset.boundsFromIndex(tile.getTileIndex());
+        double[] bbox = gridSubset.boundsFromIndex(tile.getTileIndex(), new double[4]);
 
-        wmsParams.put("BBOX", bbox.toString());
+        wmsParams.put("BBOX", BoundingBox.toString(bbox));
 
         Map<String, String> filteringParameters = tile.getFilteringParameters();
         if (filteringParameters.isEmpty()) {
@@ -0,0 +1,234 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.seed;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.geowebcache.seed.SeedChunkState.Status;
+
+/**
+ * {@link SeedLeaseStore} keeping its state in {@link ConcurrentMap}s, relying on {@link
+ * ConcurrentMap#replace(Object, Object, Object)} to move jobs and chunks between states
+ * atomically.
+ *
+ * <p>Each job has a {@link SeedJobState} with a cursor on the first chunk never leased, so that
+ * handing out a fresh chunk takes a single compare and set whatever the size of the job. Chunk
+ * states only exist while a chunk is leased: they are created when the cursor moves past them, and
+ * dropped once the chunk is done, its tiles being accounted for in the job state. Expired leases are
+ * taken over once the cursor reached the end of the job.
+ *
+ * <p>With the default constructor the state is local to the JVM, which is only useful to run
+ * distributed jobs on a single node or for testing. Passing maps shared among the nodes (e.g.,
+ * Hazelcast distributed maps) makes it usable in a cluster.
+ */
+public class ConcurrentMapSeedLeaseStore implements SeedLeaseStore {
+
+    private final ConcurrentMap<String, DistributedSeedJob> jobs;
+
+    private final ConcurrentMap<String, SeedJobState> jobStates;
+
+    private final ConcurrentMap<String, SeedChunkState> chunks;
+
+    public ConcurrentMapSeedLeaseStore() {
+        this(new ConcurrentHashMap<>(), new ConcurrentHashMap<>(), new ConcurrentHashMap<>());
+    }
+
+    /**
+     * @param jobs the map holding the job definitions, by job id
+     * @param jobStates the map holding the job progress, by job id
+     * @param chunks the map holding the states of the leased chunks, by {@code <job id>/<chunk
+     *     index>}
+     */
+    public ConcurrentMapSeedLeaseStore(
+            ConcurrentMap<String, DistributedSeedJob> jobs,
+            ConcurrentMap<String, SeedJobState> jobStates,
+            ConcurrentMap<String, SeedChunkState> chunks) {
+        this.jobs = jobs;
+        this.jobStates = jobStates;
+        this.chunks = chunks;
+    }
+
+    private static String key(String jobId, int chunk) {
+        return jobId + "/" + chunk;
+    }
+
+    /** Current time, overridable for testing */
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    @Override
+    public void createJob(DistributedSeedJob job) {
+        // state first, so that nodes seeing the job also see its state
+        if (jobStates.putIfAbsent(job.getId(), SeedJobState.START) != null
+                || jobs.putIfAbsent(job.getId(), job) != null) {
+            throw new IllegalArgumentException("Job " + job.getId() + " already exists");
+        }
+    }
+
+    @Override
+    public DistributedSeedJob getJob(String jobId) {
+        return jobs.get(jobId);
+    }
+
+    @Override
+    public Collection<DistributedSeedJob> getJobs() {
+        return new ArrayList<>(jobs.values());
+    }
+
+    @Override
+    public SeedLease acquire(String jobId, String nodeId, long durationMillis) {
+        DistributedSeedJob job = jobs.get(jobId);
+        if (job == null) {
+            return null;
+        }
+        SeedJobState jobState = jobStates.get(jobId);
+        while (jobState != null && jobState.getNextChunk() < job.getChunkCount()) {
+            SeedJobState advanced = jobState.advanced();
+            if (jobStates.replace(jobId, jobState, advanced)) {
+                final int chunk = jobState.getNextChunk();
+                SeedChunkState leased =
+                        SeedChunkState.PENDING.leased(nodeId, currentTimeMillis() + durationMillis);
+                chunks.put(key(jobId, chunk), leased);
+                return new SeedLease(jobId, chunk, nodeId, leased.getGeneration());
+            }
+            // lost the race, try the next one
+            jobState = jobStates.get(jobId);
+        }
+        if (jobState == null) {
+            return null;
+        }
+        // all chunks were handed out at least once, look for expired leases
+        for (int chunk : jobState.getLeased()) {
+            final String key = key(jobId, chunk);
+            SeedChunkState state = chunks.get(key);
+            final long now = currentTimeMillis();
+            while (state != null && state.isAvailable(now)) {
+                SeedChunkState leased = state.leased(nodeId, now + durationMillis);
+                if (chunks.replace(key, state, leased)) {
+                    return new SeedLease(jobId, chunk, nodeId, leased.getGeneration());
+                }
+                // lost the race, see if it's still available
+                state = chunks.get(key);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean renew(SeedLease lease, long durationMillis) {
+        final String key = key(lease.getJobId(), lease.getChunk());
+        final long now = currentTimeMillis();
+        SeedChunkState state = chunks.get(key);
+        while (state != null && state.isHeldBy(lease, now)) {
+            if (chunks.replace(key, state, state.renewed(now + durationMillis))) {
+                return true;
+            }
+            state = chunks.get(key);
+        }
+        return false;
+    }
+
+    @Override
+    public boolean complete(SeedLease lease, long tilesDone) {
+        final String jobId = lease.getJobId();
+        final String key = key(jobId, lease.getChunk());
+        SeedChunkState state = chunks.get(key);
+        // an expired lease can still complete as long as no one else took over the chunk
+        while (state != null
+                && state.getStatus() == Status.LEASED
+                && state.isHeldBy(lease, Long.MIN_VALUE)) {
+            SeedChunkState done = state.done(tilesDone);
+            if (chunks.replace(key, state, done)) {
+                recordCompletion(lease, tilesDone);
+                chunks.remove(key, done);
+                return true;
+            }
+            state = chunks.get(key);
+        }
+        return false;
+    }
+
+    private void recordCompletion(SeedLease lease, long tilesDone) {
+        final String jobId = lease.getJobId();
+        DistributedSeedJob job = jobs.get(jobId);
+        SeedJobState jobState = jobStates.get(jobId);
+        while (job != null && jobState != null) {
+            SeedJobState completed =
+                    jobState.completed(
+                            lease.getChunk(),
+                            lease.getNodeId(),
+                            tilesDone,
+                            job.getChunkCount(),
+                            currentTimeMillis());
+            if (jobStates.replace(jobId, jobState, completed)) {
+                return;
+            }
+            jobState = jobStates.get(jobId);
+        }
+    }
+
+    @Override
+    public DistributedSeedProgress getProgress(String jobId) {
+        DistributedSeedJob job = jobs.get(jobId);
+        SeedJobState jobState = jobStates.get(jobId);
+        if (job == null || jobState == null) {
+            return null;
+        }
+        // only the chunks currently leased are looked up, never the whole job
+        final long now = currentTimeMillis();
+        int leased = 0;
+        for (int chunk : jobState.getLeased()) {
+            SeedChunkState state = chunks.get(key(jobId, chunk));
+            if (state != null && state.getStatus() == Status.LEASED && !state.isAvailable(now)) {
+                leased++;
+            }
+        }
+        return new DistributedSeedProgress(
+                job,
+                jobState.getChunksDone(),
+                leased,
+                jobState.getTilesDone(),
+                jobState.getTilesDoneByNode());
+    }
+
+    @Override
+    public void removeJob(String jobId) {
+        jobs.remove(jobId);
+        SeedJobState jobState = jobStates.remove(jobId);
+        if (jobState != null) {
+            for (int chunk : jobState.getLeased()) {
+                chunks.remove(key(jobId, chunk));
+            }
+        }
+    }
+
+    @Override
+    public int removeFinishedJobs(long retentionMillis) {
+        final long limit = currentTimeMillis() - retentionMillis;
+        int removed = 0;
+        for (Map.Entry<String, SeedJobState> entry : jobStates.entrySet()) {
+            long finishedAt = entry.getValue().getFinishedAt();
+            if (finishedAt != 0 && finishedAt <= limit) {
+                removeJob(entry.getKey());
+                removed++;
+            }
+        }
+        return removed;
+    }
+}
@@ -0,0 +1,320 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.seed;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.geowebcache.GeoWebCacheException;
+import org.geowebcache.layer.TileLayer;
+import org.geowebcache.seed.GWCTask.TYPE;
+import org.geowebcache.storage.TileRange;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * Spreads seed jobs over all the GWC nodes sharing the same {@link SeedLeaseStore}.
+ *
+ * <p>A job submitted through {@link #seed(String, SeedRequest)} is split in chunks and registered
+ * in the lease store. Every node periodically polls the store for new jobs and joins them by
+ * dispatching {@link DistributedSeedTask}s on its own {@link TileBreeder}, which then lease chunks
+ * until the job is done. Leases are kept alive by a heartbeat while being worked on; if a node dies
+ * its leases expire and the chunks are picked up again by the surviving nodes.
+ *
+ * <p>The coordinator is not part of the default application context, to enable it declare a bean
+ * like:
+ *
+ * <pre>
+ * <code>
+ *  &lt;bean id="gwcDistributedSeedCoordinator"
+ *      class="org.geowebcache.seed.DistributedSeedCoordinator"&gt;
+ *    &lt;constructor-arg ref="gwcTileBreeder"/&gt;
+ *    &lt;constructor-arg ref="gwcSeedLeaseStore"/&gt;
+ *  &lt;/bean&gt;
+ * </code>
+ * </pre>
+ *
+ * With a {@code gwcSeedLeaseStore} shared by all the nodes, such as the Hazelcast based one in the
+ * {@code gwc-distributed} module.
+ */
+public class DistributedSeedCoordinator implements InitializingBean, DisposableBean {
+
+    private static final Log log = LogFactory.getLog(DistributedSeedCoordinator.class);
+
+    private final TileBreeder breeder;
+
+    private final SeedLeaseStore leaseStore;
+
+    private String nodeId = ManagementFactory.getRuntimeMXBean().getName();
+
+    private long leaseDurationMillis = 60000;
+
+    private long pollIntervalMillis = 5000;
+
+    private long tilesPerChunk = 4096;
+
+    private long finishedJobRetentionMillis = 600000;
+
+    private ScheduledExecutorService scheduler;
+
+    /** The tasks this node is running, by job id */
+    private final Map<String, List<DistributedSeedTask>> localTasks = new ConcurrentHashMap<>();
+
+    /** The leases held by this node, and the task working on them */
+    private final Map<SeedLease, DistributedSeedTask> heldLeases = new ConcurrentHashMap<>();
+
+    public DistributedSeedCoordinator(TileBreeder breeder, SeedLeaseStore leaseStore) {
+        this.breeder = breeder;
+        this.leaseStore = leaseStore;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        scheduler =
+                Executors.newSingleThreadScheduledExecutor(
+                        new ThreadFactoryBuilder()
+                                .setDaemon(true)
+                                .setNameFormat("GWC Distributed Seed Coordinator")
+                                .build());
+        scheduler.scheduleWithFixedDelay(
+                this::safePoll, pollIntervalMillis, pollIntervalMillis, TimeUnit.MILLISECONDS);
+        long heartbeat = Math.max(1, leaseDurationMillis / 3);
+        scheduler.scheduleWithFixedDelay(
+                this::heartbeat, heartbeat, heartbeat, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Registers a seed job in the lease store and starts working on it. Other nodes will join
+     * during their next poll.
+     *
+     * @return the newly created job
+     */
+    public DistributedSeedJob seed(String layerName, SeedRequest sr) throws GeoWebCacheException {
+        TileLayer tl = breeder.findTileLayer(layerName);
+        TileRange tr = TileBreeder.createTileRange(sr, tl);
+        int threadCount =
+                sr.getThreadCount() == null ? 1 : Math.max(1, sr.getThreadCount().intValue());
+        DistributedSeedJob job =
+                DistributedSeedJob.create(
+                        UUID.randomUUID().toString(),
+                        tr,
+                        sr.getType(),
+                        threadCount,
+                        tl.getMetaTilingFactors(),
+                        tilesPerChunk);
+        leaseStore.createJob(job);
+        log.info("Node " + nodeId + " created " + job);
+        join(job);
+        return job;
+    }
+
+    /** Looks for jobs created by other nodes and joins them, and drops the old finished ones */
+    public void poll() {
+        // forget about the local task groups that are over
+        localTasks
+                .values()
+                .removeIf(tasks -> tasks.stream().allMatch(DistributedSeedCoordinator::isOver));
+        int removed = leaseStore.removeFinishedJobs(finishedJobRetentionMillis);
+        if (removed > 0) {
+            log.debug("Removed " + removed + " finished distributed seed jobs");
+        }
+        for (DistributedSeedJob job : leaseStore.getJobs()) {
+            if (localTasks.containsKey(job.getId())) {
+                continue;
+            }
+            DistributedSeedProgress progress = leaseStore.getProgress(job.getId());
+            if (progress != null && !progress.isFinished()) {
+                try {
+                    join(job);
+                } catch (GeoWebCacheException e) {
+                    log.warn("Can't join " + job + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static boolean isOver(GWCTask task) {
+        return task.getState() == GWCTask.STATE.DONE || task.getState() == GWCTask.STATE.DEAD;
+    }
+
+    private void safePoll() {
+        try {
+            poll();
+        } catch (RuntimeException e) {
+            log.error("Error polling for distributed seed jobs", e);
+        }
+    }
+
+    private synchronized void join(DistributedSeedJob job) throws GeoWebCacheException {
+        if (localTasks.containsKey(job.getId())) {
+            return;
+        }
+        TileLayer tl = breeder.findTileLayer(job.getLayerName());
+        DistributedSeedTask[] tasks = new DistributedSeedTask[job.getThreadCount()];
+        AtomicInteger sharedThreadCount = new AtomicInteger();
+        for (int i = 0; i < tasks.length; i++) {
+            tasks[i] = new DistributedSeedTask(this, job, tl);
+            tasks[i].setThreadInfo(sharedThreadCount, i);
+        }
+        localTasks.put(job.getId(), Arrays.asList(tasks));
+        breeder.dispatchTasks(tasks);
+        log.info("Node " + nodeId + " joined " + job + " with " + tasks.length + " threads");
+    }
+
+    /** Renews all the leases held by this node */
+    void heartbeat() {
+        for (Map.Entry<SeedLease, DistributedSeedTask> entry : heldLeases.entrySet()) {
+            SeedLease lease = entry.getKey();
+            try {
+                if (!leaseStore.renew(lease, leaseDurationMillis)) {
+                    heldLeases.remove(lease);
+                    entry.getValue().leaseLost(lease);
+                }
+            } catch (RuntimeException e) {
+                log.warn("Failed to renew " + lease, e);
+            }
+        }
+    }
+
+    /** Leases the next available chunk of the job on behalf of the given task */
+    SeedLease acquire(DistributedSeedJob job, DistributedSeedTask task) {
+        SeedLease lease = leaseStore.acquire(job.getId(), nodeId, leaseDurationMillis);
+        if (lease != null) {
+            heldLeases.put(lease, task);
+            log.debug("Acquired " + lease);
+        }
+        return lease;
+    }
+
+    boolean complete(SeedLease lease, long tilesDone) {
+        heldLeases.remove(lease);
+        return leaseStore.complete(lease, tilesDone);
+    }
+
+    void release(SeedLease lease) {
+        heldLeases.remove(lease);
+    }
+
+    /** Creates the plain seed task used to process a single chunk */
+    GWCTask createChunkTask(TileRange range, TileLayer tl, TYPE type)
+            throws GeoWebCacheException {
+        return breeder.createTasks(range, tl, type, 1, false)[0];
+    }
+
+    /**
+     * Cancels a job on all nodes. Local tasks are terminated right away, other nodes stop as soon
+     * as they try to renew or acquire a lease.
+     *
+     * @return {@code false} if the job does not exist
+     */
+    public boolean cancel(String jobId) {
+        if (leaseStore.getJob(jobId) == null) {
+            return false;
+        }
+        leaseStore.removeJob(jobId);
+        List<DistributedSeedTask> tasks = localTasks.remove(jobId);
+        if (tasks != null) {
+            tasks.forEach(GWCTask::terminateNicely);
+        }
+        return true;
+    }
+
+    /** @return the progress of the given job, aggregated over all nodes */
+    public DistributedSeedProgress getProgress(String jobId) {
+        return leaseStore.getProgress(jobId);
+    }
+
+    /** @return the progress of all the jobs in the lease store, aggregated over all nodes */
+    public List<DistributedSeedProgress> getProgress() {
+        List<DistributedSeedProgress> result = new ArrayList<>();
+        for (DistributedSeedJob job : leaseStore.getJobs()) {
+            DistributedSeedProgress progress = leaseStore.getProgress(job.getId());
+            if (progress != null) {
+                result.add(progress);
+            }
+        }
+        return result;
+    }
+
+    public SeedLeaseStore getLeaseStore() {
+        return leaseStore;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /** Sets the identifier of this node, defaults to {@code <pid>@<hostname>} */
+    public void setNodeId(String nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    public long getLeaseDurationMillis() {
+        return leaseDurationMillis;
+    }
+
+    /** How long a lease lasts without being renewed, defaults to one minute */
+    public void setLeaseDurationMillis(long leaseDurationMillis) {
+        this.leaseDurationMillis = leaseDurationMillis;
+    }
+
+    public long getPollIntervalMillis() {
+        return pollIntervalMillis;
+    }
+
+    /** How often the lease store is polled for new jobs, defaults to five seconds */
+    public void setPollIntervalMillis(long pollIntervalMillis) {
+        this.pollIntervalMillis = pollIntervalMillis;
+    }
+
+    public long getTilesPerChunk() {
+        return tilesPerChunk;
+    }
+
+    /** Target number of tiles in each chunk new jobs are split into */
+    public void setTilesPerChunk(long tilesPerChunk) {
+        this.tilesPerChunk = tilesPerChunk;
+    }
+
+    public long getFinishedJobRetentionMillis() {
+        return finishedJobRetentionMillis;
+    }
+
+    /**
+     * How long a finished job is kept in the lease store, so that its progress can still be
+     * reported, defaults to ten minutes
+     */
+    public void setFinishedJobRetentionMillis(long finishedJobRetentionMillis) {
+        this.finishedJobRetentionMillis = finishedJobRetentionMillis;
+    }
+}
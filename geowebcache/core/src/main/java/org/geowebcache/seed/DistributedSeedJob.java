@@ -0,0 +1,242 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.seed;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.geowebcache.mime.MimeException;
+import org.geowebcache.mime.MimeType;
+import org.geowebcache.seed.GWCTask.TYPE;
+import org.geowebcache.storage.TileRange;
+
+/**
+ * A seed job shared among several GWC nodes. The tile range is split in chunks, each one
+ * covering a band of meta tile rows of a single zoom level, so that every node can rebuild the
+ * {@link TileRange} of a chunk without any further coordination.
+ *
+ * <p>Only the layout of the chunks is kept, one entry per zoom level, and the bounds of each chunk
+ * are computed on demand, so that the job definition stays small however many chunks it has.
+ */
+public class DistributedSeedJob implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String id;
+
+    private final String layerName;
+
+    private final String gridSetId;
+
+    private final String format;
+
+    private final HashMap<String, String> parameters;
+
+    private final TYPE type;
+
+    private final int threadCount;
+
+    // {level}{minx,miny,maxx,maxy,z}, same layout as the TileRange bounds
+    private final long[][] levels;
+
+    // number of tile rows in each chunk of a level
+    private final long[] chunkRows;
+
+    // index of the first chunk of each level
+    private final int[] firstChunk;
+
+    private final int chunkCount;
+
+    private final long tilesTotal;
+
+    private final long creationTime;
+
+    DistributedSeedJob(
+            String id,
+            String layerName,
+            String gridSetId,
+            String format,
+            Map<String, String> parameters,
+            TYPE type,
+            int threadCount,
+            long[][] levels,
+            long[] chunkRows) {
+        this.id = id;
+        this.layerName = layerName;
+        this.gridSetId = gridSetId;
+        this.format = format;
+        this.parameters = parameters == null ? null : new HashMap<>(parameters);
+        this.type = type;
+        this.threadCount = threadCount;
+        this.levels = levels;
+        this.chunkRows = chunkRows;
+        this.firstChunk = new int[levels.length];
+        long chunks = 0;
+        long total = 0;
+        for (int i = 0; i < levels.length; i++) {
+            firstChunk[i] = (int) chunks;
+            long height = 1 + levels[i][3] - levels[i][1];
+            chunks += (height + chunkRows[i] - 1) / chunkRows[i];
+            total += tileCount(levels[i]);
+        }
+        if (chunks > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(
+                    "Too many chunks (" + chunks + "), increase the number of tiles per chunk");
+        }
+        this.chunkCount = (int) chunks;
+        this.tilesTotal = total;
+        this.creationTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Splits a tile range in chunks of about {@code tilesPerChunk} tiles. Chunk boundaries are
+     * aligned to the meta tiling factors so that no meta tile is shared by two chunks.
+     *
+     * @param id the job identifier
+     * @param tr the tile range, already expanded to the meta tiling factors
+     * @param type {@link TYPE#SEED} or {@link TYPE#RESEED}
+     * @param threadCount the number of seeding threads each node dedicates to the job
+     * @param metaTilingFactors the layer meta tiling factors
+     * @param tilesPerChunk the target number of tiles in each chunk
+     */
+    public static DistributedSeedJob create(
+            String id,
+            TileRange tr,
+            TYPE type,
+            int threadCount,
+            int[] metaTilingFactors,
+            long tilesPerChunk) {
+        if (type != TYPE.SEED && type != TYPE.RESEED) {
+            throw new IllegalArgumentException("Only seed and reseed jobs can be distributed");
+        }
+        final int metaY = metaTilingFactors[1];
+        final int levelCount = 1 + tr.getZoomStop() - tr.getZoomStart();
+        long[][] levels = new long[levelCount][];
+        long[] chunkRows = new long[levelCount];
+        for (int i = 0; i < levelCount; i++) {
+            int z = tr.getZoomStart() + i;
+            long[] bounds = tr.rangeBounds(z);
+            long width = 1 + bounds[2] - bounds[0];
+            long rows = Math.max(1, tilesPerChunk / Math.max(1, width));
+            // round to a whole number of meta tile rows
+            rows = Math.max(metaY, (rows / metaY) * metaY);
+            levels[i] = new long[] {bounds[0], bounds[1], bounds[2], bounds[3], z};
+            chunkRows[i] = rows;
+        }
+        MimeType mime = tr.getMimeType();
+        return new DistributedSeedJob(
+                id,
+                tr.getLayerName(),
+                tr.getGridSetId(),
+                mime == null ? null : mime.getFormat(),
+                tr.getParameters(),
+                type,
+                threadCount,
+                levels,
+                chunkRows);
+    }
+
+    private static long tileCount(long[] bounds) {
+        return (1 + bounds[2] - bounds[0]) * (1 + bounds[3] - bounds[1]);
+    }
+
+    /**
+     * @return the bounds of the given chunk, as {@code {minx, miny, maxx, maxy, z}}
+     * @throws IndexOutOfBoundsException if the chunk does not exist
+     */
+    public long[] getChunkBounds(int chunk) {
+        if (chunk < 0 || chunk >= chunkCount) {
+            throw new IndexOutOfBoundsException("Chunk " + chunk + " out of " + chunkCount);
+        }
+        // every level has at least one chunk, so the first chunks are strictly increasing
+        int level = Arrays.binarySearch(firstChunk, chunk);
+        if (level < 0) {
+            level = -level - 2;
+        }
+        long[] bounds = levels[level];
+        long minY = bounds[1] + (chunk - firstChunk[level]) * chunkRows[level];
+        long maxY = Math.min(bounds[3], minY + chunkRows[level] - 1);
+        return new long[] {bounds[0], minY, bounds[2], maxY, bounds[4]};
+    }
+
+    /** Builds the tile range covered by the given chunk */
+    public TileRange getChunkRange(int chunk) throws MimeException {
+        long[] bounds = getChunkBounds(chunk);
+        int z = (int) bounds[4];
+        MimeType mime = format == null ? null : MimeType.createFromFormat(format);
+        return new TileRange(layerName, gridSetId, z, z, new long[][] {bounds}, mime, parameters);
+    }
+
+    /** @return the number of tiles in the given chunk */
+    public long getChunkTiles(int chunk) {
+        return tileCount(getChunkBounds(chunk));
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getLayerName() {
+        return layerName;
+    }
+
+    public String getGridSetId() {
+        return gridSetId;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public Map<String, String> getParameters() {
+        return parameters;
+    }
+
+    public TYPE getType() {
+        return type;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    public int getChunkCount() {
+        return chunkCount;
+    }
+
+    public long getTilesTotal() {
+        return tilesTotal;
+    }
+
+    public long getCreationTime() {
+        return creationTime;
+    }
+
+    @Override
+    public String toString() {
+        return "DistributedSeedJob["
+                + id
+                + ": "
+                + layerName
+                + ", "
+                + type
+                + ", "
+                + chunkCount
+                + " chunks, "
+                + tilesTotal
+                + " tiles]";
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.seed;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Progress of a {@link DistributedSeedJob} aggregated over all the participating nodes */
+public class DistributedSeedProgress {
+
+    private final String jobId;
+
+    private final String layerName;
+
+    private final int chunksTotal;
+
+    private final int chunksDone;
+
+    private final int chunksLeased;
+
+    private final long tilesTotal;
+
+    private final long tilesDone;
+
+    private final Map<String, Long> tilesDoneByNode;
+
+    public DistributedSeedProgress(
+            DistributedSeedJob job,
+            int chunksDone,
+            int chunksLeased,
+            long tilesDone,
+            Map<String, Long> tilesDoneByNode) {
+        this.jobId = job.getId();
+        this.layerName = job.getLayerName();
+        this.chunksTotal = job.getChunkCount();
+        this.tilesTotal = job.getTilesTotal();
+        this.chunksDone = chunksDone;
+        this.chunksLeased = chunksLeased;
+        this.tilesDone = tilesDone;
+        this.tilesDoneByNode = Collections.unmodifiableMap(new TreeMap<>(tilesDoneByNode));
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public String getLayerName() {
+        return layerName;
+    }
+
+    public int getChunksTotal() {
+        return chunksTotal;
+    }
+
+    public int getChunksDone() {
+        return chunksDone;
+    }
+
+    /** @return the number of chunks currently leased and not expired */
+    public int getChunksLeased() {
+        return chunksLeased;
+    }
+
+    /** @return the number of chunks neither done nor currently leased */
+    public int getChunksPending() {
+        return chunksTotal - chunksDone - chunksLeased;
+    }
+
+    public long getTilesTotal() {
+        return tilesTotal;
+    }
+
+    /** @return the number of tiles in completed chunks */
+    public long getTilesDone() {
+        return tilesDone;
+    }
+
+    /** @return number of tiles in completed chunks, by node identifier */
+    public Map<String, Long> getTilesDoneByNode() {
+        return tilesDoneByNode;
+    }
+
+    public boolean isFinished() {
+        return chunksDone == chunksTotal;
+    }
+
+    @Override
+    public String toString() {
+        return "DistributedSeedProgress["
+                + jobId
+                + ": "
+                + chunksDone
+                + "/"
+                + chunksTotal
+                + " chunks, "
+                + tilesDone
+                + "/"
+                + tilesTotal
+                + " tiles]";
+    }
+}
@@ -0,0 +1,168 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.seed;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.geowebcache.GeoWebCacheException;
+import org.geowebcache.layer.TileLayer;
+import org.geowebcache.storage.TileRange;
+
+/**
+ * A GWCTask working on a {@link DistributedSeedJob}: leases chunks of the job from the {@link
+ * SeedLeaseStore} and seeds them one at a time, until no chunk is left to do.
+ */
+class DistributedSeedTask extends GWCTask {
+
+    private static final Log log = LogFactory.getLog(DistributedSeedTask.class);
+
+    private final DistributedSeedCoordinator coordinator;
+
+    private final DistributedSeedJob job;
+
+    private final TileLayer tl;
+
+    private volatile GWCTask chunkTask;
+
+    private volatile SeedLease currentLease;
+
+    private volatile boolean leaseLost;
+
+    private long chunkTilesDone;
+
+    DistributedSeedTask(
+            DistributedSeedCoordinator coordinator, DistributedSeedJob job, TileLayer tl) {
+        this.coordinator = coordinator;
+        this.job = job;
+        this.tl = tl;
+        super.parsedType = job.getType();
+        super.layerName = tl.getName();
+        super.tilesTotal = job.getTilesTotal();
+        super.state = GWCTask.STATE.READY;
+    }
+
+    public DistributedSeedJob getJob() {
+        return job;
+    }
+
+    @Override
+    protected void doActionInternal() throws GeoWebCacheException, InterruptedException {
+        super.state = GWCTask.STATE.RUNNING;
+        final long startTime = System.currentTimeMillis();
+        log.info(
+                Thread.currentThread().getName()
+                        + " joins distributed seed job "
+                        + job
+                        + " on node "
+                        + coordinator.getNodeId());
+
+        while (!terminate) {
+            checkInterrupted();
+            SeedLease lease = coordinator.acquire(job, this);
+            if (lease == null) {
+                DistributedSeedProgress progress = coordinator.getProgress(job.getId());
+                if (progress == null || progress.isFinished()) {
+                    // job finished or cancelled
+                    break;
+                }
+                // chunks are leased by other threads or nodes, wait in case one of them dies
+                Thread.sleep(coordinator.getPollIntervalMillis());
+                continue;
+            }
+            try {
+                currentLease = lease;
+                leaseLost = false;
+                TileRange range = job.getChunkRange(lease.getChunk());
+                GWCTask task = coordinator.createChunkTask(range, tl, job.getType());
+                chunkTask = task;
+                task.doAction();
+
+                if (task.getState() == GWCTask.STATE.DEAD) {
+                    // failure limit reached, the lease will expire and the chunk will be retried
+                    super.state = GWCTask.STATE.DEAD;
+                    return;
+                }
+                if (terminate || leaseLost) {
+                    continue;
+                }
+                long tiles = job.getChunkTiles(lease.getChunk());
+                if (coordinator.complete(lease, tiles)) {
+                    chunkTilesDone += tiles;
+                }
+            } finally {
+                chunkTask = null;
+                currentLease = null;
+                coordinator.release(lease);
+            }
+            updateStatusInfo(startTime);
+        }
+
+        super.state = GWCTask.STATE.DONE;
+        log.info(
+                Thread.currentThread().getName()
+                        + " leaves distributed seed job "
+                        + job.getId()
+                        + " after "
+                        + chunkTilesDone
+                        + " tiles");
+    }
+
+    private void updateStatusInfo(long startTime) {
+        this.tilesDone = chunkTilesDone;
+        this.timeSpent = (System.currentTimeMillis() - startTime) / 1000;
+        DistributedSeedProgress progress = coordinator.getProgress(job.getId());
+        if (progress != null && progress.getTilesDone() > 0) {
+            // estimate using the throughput of the whole cluster
+            long elapsed = (System.currentTimeMillis() - job.getCreationTime()) / 1000;
+            double remaining = progress.getTilesTotal() - progress.getTilesDone();
+            this.timeRemaining = Math.round(elapsed * remaining / progress.getTilesDone());
+        }
+    }
+
+    /** Called by the coordinator when a lease held by this task could not be renewed */
+    void leaseLost(SeedLease lease) {
+        if (lease == currentLease) {
+            log.warn("Lost " + lease + ", stopping work on it");
+            leaseLost = true;
+            GWCTask task = chunkTask;
+            if (task != null) {
+                task.terminateNicely();
+            }
+        }
+    }
+
+    @Override
+    public void terminateNicely() {
+        super.terminateNicely();
+        GWCTask task = chunkTask;
+        if (task != null) {
+            task.terminateNicely();
+        }
+    }
+
+    @Override
+    public long getTilesDone() {
+        GWCTask task = chunkTask;
+        if (task != null && task.getTilesDone() > 0) {
+            return chunkTilesDone + task.getTilesDone();
+        }
+        return chunkTilesDone;
+    }
+
+    @Override
+    protected void dispose() {
+        // chunk tasks dispose of their own resources
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.seed;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Immutable lease state of a single chunk of a {@link DistributedSeedJob}. State changes are
+ * performed by replacing the value with a compare and set, so the class must have value semantics.
+ */
+public final class SeedChunkState implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static enum Status {
+        PENDING,
+        LEASED,
+        DONE
+    }
+
+    static final SeedChunkState PENDING = new SeedChunkState(Status.PENDING, null, 0, 0, 0);
+
+    private final Status status;
+
+    private final String nodeId;
+
+    private final long expiresAt;
+
+    private final long generation;
+
+    private final long tilesDone;
+
+    private SeedChunkState(
+            Status status, String nodeId, long expiresAt, long generation, long tilesDone) {
+        this.status = status;
+        this.nodeId = nodeId;
+        this.expiresAt = expiresAt;
+        this.generation = generation;
+        this.tilesDone = tilesDone;
+    }
+
+    /** @return whether the chunk can be leased at the given time */
+    boolean isAvailable(long now) {
+        return status == Status.PENDING || (status == Status.LEASED && expiresAt < now);
+    }
+
+    /** @return whether the lease is the current, non expired, lease on this chunk */
+    boolean isHeldBy(SeedLease lease, long now) {
+        return status == Status.LEASED
+                && generation == lease.getGeneration()
+                && Objects.equals(nodeId, lease.getNodeId())
+                && expiresAt >= now;
+    }
+
+    SeedChunkState leased(String nodeId, long expiresAt) {
+        return new SeedChunkState(Status.LEASED, nodeId, expiresAt, generation + 1, 0);
+    }
+
+    SeedChunkState renewed(long expiresAt) {
+        return new SeedChunkState(Status.LEASED, nodeId, expiresAt, generation, tilesDone);
+    }
+
+    SeedChunkState done(long tilesDone) {
+        return new SeedChunkState(Status.DONE, nodeId, 0, generation, tilesDone);
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /** @return the node holding or having completed the chunk, {@code null} if pending */
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public long getTilesDone() {
+        return tilesDone;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof SeedChunkState)) {
+            return false;
+        }
+        SeedChunkState other = (SeedChunkState) o;
+        return status == other.status
+                && expiresAt == other.expiresAt
+                && generation == other.generation
+                && tilesDone == other.tilesDone
+                && Objects.equals(nodeId, other.nodeId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(status, nodeId, expiresAt, generation, tilesDone);
+    }
+
+    @Override
+    public String toString() {
+        return status + "[" + nodeId + "#" + generation + ", expires " + expiresAt + "]";
+    }
+}
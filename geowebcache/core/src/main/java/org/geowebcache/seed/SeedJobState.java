@@ -0,0 +1,156 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.seed;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * Immutable progress of a {@link DistributedSeedJob}: the next chunk that was never leased, the
+ * chunks currently leased, and the totals of the completed ones. Like {@link SeedChunkState} it is
+ * updated by replacing the value with a compare and set, so the class must have value semantics,
+ * and a stable serialized form for stores comparing values in binary form.
+ */
+public final class SeedJobState implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    static final SeedJobState START = new SeedJobState(0, new int[0], 0, 0, new TreeMap<>(), 0);
+
+    private final int nextChunk;
+
+    private final int[] leased;
+
+    private final int chunksDone;
+
+    private final long tilesDone;
+
+    private final TreeMap<String, Long> tilesDoneByNode;
+
+    private final long finishedAt;
+
+    private SeedJobState(
+            int nextChunk,
+            int[] leased,
+            int chunksDone,
+            long tilesDone,
+            TreeMap<String, Long> tilesDoneByNode,
+            long finishedAt) {
+        this.nextChunk = nextChunk;
+        this.leased = leased;
+        this.chunksDone = chunksDone;
+        this.tilesDone = tilesDone;
+        this.tilesDoneByNode = tilesDoneByNode;
+        this.finishedAt = finishedAt;
+    }
+
+    /** Moves the cursor past the next chunk, which becomes leased */
+    SeedJobState advanced() {
+        int[] newLeased = Arrays.copyOf(leased, leased.length + 1);
+        newLeased[leased.length] = nextChunk;
+        return new SeedJobState(
+                nextChunk + 1, newLeased, chunksDone, tilesDone, tilesDoneByNode, finishedAt);
+    }
+
+    /**
+     * Records the completion of a leased chunk
+     *
+     * @param chunkCount the number of chunks in the job, to tell whether it is finished
+     * @param now the current time, recorded as the end of the job if it is finished
+     */
+    SeedJobState completed(int chunk, String nodeId, long tiles, int chunkCount, long now) {
+        int[] newLeased = new int[leased.length];
+        int size = 0;
+        for (int c : leased) {
+            if (c != chunk) {
+                newLeased[size++] = c;
+            }
+        }
+        TreeMap<String, Long> byNode = new TreeMap<>(tilesDoneByNode);
+        byNode.merge(nodeId, tiles, Long::sum);
+        int done = chunksDone + 1;
+        return new SeedJobState(
+                nextChunk,
+                Arrays.copyOf(newLeased, size),
+                done,
+                tilesDone + tiles,
+                byNode,
+                done >= chunkCount ? now : 0);
+    }
+
+    /** @return the first chunk that was never leased */
+    public int getNextChunk() {
+        return nextChunk;
+    }
+
+    /** @return the chunks leased and not completed yet, including the expired leases */
+    public int[] getLeased() {
+        return leased.clone();
+    }
+
+    public int getChunksDone() {
+        return chunksDone;
+    }
+
+    public long getTilesDone() {
+        return tilesDone;
+    }
+
+    public Map<String, Long> getTilesDoneByNode() {
+        return Collections.unmodifiableMap(tilesDoneByNode);
+    }
+
+    /** @return when the last chunk was completed, or zero if the job is not finished */
+    public long getFinishedAt() {
+        return finishedAt;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof SeedJobState)) {
+            return false;
+        }
+        SeedJobState other = (SeedJobState) o;
+        return nextChunk == other.nextChunk
+                && chunksDone == other.chunksDone
+                && tilesDone == other.tilesDone
+                && finishedAt == other.finishedAt
+                && Arrays.equals(leased, other.leased)
+                && tilesDoneByNode.equals(other.tilesDoneByNode);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(nextChunk, Arrays.hashCode(leased), chunksDone, tilesDone, finishedAt);
+    }
+
+    @Override
+    public String toString() {
+        return "SeedJobState[next "
+                + nextChunk
+                + ", leased "
+                + Arrays.toString(leased)
+                + ", "
+                + chunksDone
+                + " done]";
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.seed;
+
+import java.io.Serializable;
+
+/** A time limited claim of a node on a chunk of a {@link DistributedSeedJob} */
+public class SeedLease implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String jobId;
+
+    private final int chunk;
+
+    private final String nodeId;
+
+    private final long generation;
+
+    public SeedLease(String jobId, int chunk, String nodeId, long generation) {
+        this.jobId = jobId;
+        this.chunk = chunk;
+        this.nodeId = nodeId;
+        this.generation = generation;
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    /** @return the index of the leased chunk in {@link DistributedSeedJob} */
+    public int getChunk() {
+        return chunk;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * @return the number of times the chunk had been leased when this lease was granted, used to
+     *     tell apart a stale lease from the current one on the same chunk
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    @Override
+    public String toString() {
+        return "SeedLease[" + jobId + "/" + chunk + " -> " + nodeId + "#" + generation + "]";
+    }
+}
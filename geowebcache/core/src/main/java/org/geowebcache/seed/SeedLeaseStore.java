@@ -0,0 +1,84 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.seed;
+
+import java.util.Collection;
+
+/**
+ * Shared state used by {@link DistributedSeedCoordinator} instances running on several GWC nodes to
+ * split a seed job in chunks and hand them out through time limited leases.
+ *
+ * <p>A chunk is available when it has never been leased, or when the lease on it expired without
+ * being renewed or completed (e.g., the node holding it died). Implementations must guarantee a
+ * chunk is never leased to two nodes at the same time.
+ */
+public interface SeedLeaseStore {
+
+    /**
+     * Registers a new job, making all its chunks available for leasing
+     *
+     * @throws IllegalArgumentException if a job with the same id already exists
+     */
+    void createJob(DistributedSeedJob job);
+
+    /** @return the job with the given id, or {@code null} if not found */
+    DistributedSeedJob getJob(String jobId);
+
+    /**
+     * @return all the jobs registered in this store, finished or not, until removed by {@link
+     *     #removeFinishedJobs(long)}
+     */
+    Collection<DistributedSeedJob> getJobs();
+
+    /**
+     * Leases the next available chunk of the given job
+     *
+     * @param jobId the job identifier
+     * @param nodeId the identifier of the node requesting the lease
+     * @param durationMillis how long the lease lasts unless renewed
+     * @return the lease, or {@code null} if no chunk is currently available
+     */
+    SeedLease acquire(String jobId, String nodeId, long durationMillis);
+
+    /**
+     * Extends a lease
+     *
+     * @return {@code false} if the lease was lost in the meantime, e.g. because it expired and the
+     *     chunk got leased to another node
+     */
+    boolean renew(SeedLease lease, long durationMillis);
+
+    /**
+     * Marks the leased chunk as done
+     *
+     * @param tilesDone number of tiles processed in the chunk
+     * @return {@code false} if the lease was lost in the meantime, in which case the chunk is left
+     *     for the current lease holder to complete
+     */
+    boolean complete(SeedLease lease, long tilesDone);
+
+    /** @return the aggregated progress of the job, or {@code null} if not found */
+    DistributedSeedProgress getProgress(String jobId);
+
+    /** Removes the job and all its chunks */
+    void removeJob(String jobId);
+
+    /**
+     * Removes the jobs whose last chunk was completed at least the given time ago
+     *
+     * @return the number of jobs removed
+     */
+    int removeFinishedJobs(long retentionMillis);
+}
@@ -74,6 +74,17 @@ import org.springframework.context.ApplicationContextAware;
  *       is {@code 1000}.
  * </ul>
  *
+ * <p>Truncate tasks delete their tile range with a single storage call, and track the tiles the
+ * blob store reports as deleted along the way. This is tuned with:
+ *
+ * <ul>
+ *   <li>{@code GWC_TRUNCATE_BATCH_SIZE}: number of deleted tiles between progress updates and
+ *       termination checks. Defaults to {@code 1000}, which is also used in place of {@code 0};
+ *   <li>{@code GWC_TRUNCATE_RATE_LIMIT}: maximum number of tiles deleted per second by each
+ *       truncate task, to keep mass truncations from saturating the storage backend. Only the
+ *       tiles actually deleted count towards the limit. Defaults to {@code 0}, meaning no limit.
+ * </ul>
+ *
  * These environment variables can be established by any of the following ways, in order of
  * precedence:
  *
@@ -103,6 +114,10 @@ public class TileBreeder implements ApplicationContextAware {
 
     private static final String GWC_SEED_RETRY_COUNT = "GWC_SEED_RETRY_COUNT";
 
+    private static final String GWC_TRUNCATE_BATCH_SIZE = "GWC_TRUNCATE_BATCH_SIZE";
+
+    private static final String GWC_TRUNCATE_RATE_LIMIT = "GWC_TRUNCATE_RATE_LIMIT";
+
     private static Log log = LogFactory.getLog(TileBreeder.class);
 
     private ThreadPoolExecutor threadPool;
@@ -123,6 +138,12 @@ public class TileBreeder implements ApplicationContextAware {
      */
     private long totalFailuresBeforeAborting = 1000;
 
+    /** How many deleted tiles between truncate progress updates */
+    private int truncateBatchSize = TruncateTask.DEFAULT_BATCH_SIZE;
+
+    /** How many tiles per second each truncate task can delete. 0 = no limit */
+    private long truncateRateLimit = 0;
+
     private Map<Long, SubmittedTask> currentPool = new TreeMap<Long, SubmittedTask>();
 
     private AtomicLong currentId = new AtomicLong();
@@ -156,14 +177,21 @@ public class TileBreeder implements ApplicationContextAware {
         String retryCount = GWCVars.findEnvVar(applicationContext, GWC_SEED_RETRY_COUNT);
         String retryWait = GWCVars.findEnvVar(applicationContext, GWC_SEED_RETRY_WAIT);
         String abortLimit = GWCVars.findEnvVar(applicationContext, GWC_SEED_ABORT_LIMIT);
+        String batchSize = GWCVars.findEnvVar(applicationContext, GWC_TRUNCATE_BATCH_SIZE);
+        String rateLimit = GWCVars.findEnvVar(applicationContext, GWC_TRUNCATE_RATE_LIMIT);
 
         tileFailureRetryCount = (int) toLong(GWC_SEED_RETRY_COUNT, retryCount, 0);
         tileFailureRetryWaitTime = toLong(GWC_SEED_RETRY_WAIT, retryWait, 100);
         totalFailuresBeforeAborting = toLong(GWC_SEED_ABORT_LIMIT, abortLimit, 1000);
+        truncateBatchSize =
+                (int) toLong(GWC_TRUNCATE_BATCH_SIZE, batchSize, TruncateTask.DEFAULT_BATCH_SIZE);
+        truncateRateLimit = toLong(GWC_TRUNCATE_RATE_LIMIT, rateLimit, 0);
 
         checkPositive(tileFailureRetryCount, GWC_SEED_RETRY_COUNT);
         checkPositive(tileFailureRetryWaitTime, GWC_SEED_RETRY_WAIT);
         checkPositive(totalFailuresBeforeAborting, GWC_SEED_ABORT_LIMIT);
+        checkPositive(truncateBatchSize, GWC_TRUNCATE_BATCH_SIZE);
+        checkPositive(truncateRateLimit, GWC_TRUNCATE_RATE_LIMIT);
     }
 
     @SuppressWarnings("serial")
@@ -402,7 +430,10 @@ public class TileBreeder implements ApplicationContextAware {
     private GWCTask createTruncateTask(
             TileRangeIterator trIter, TileLayer tl, boolean doFilterUpdate) {
 
-        return new TruncateTask(storageBroker, trIter.getTileRange(), tl, doFilterUpdate);
+        TruncateTask task =
+                new TruncateTask(storageBroker, trIter.getTileRange(), tl, doFilterUpdate);
+        task.setThrottling(truncateBatchSize, truncateRateLimit);
+        return task;
     }
 
     /**
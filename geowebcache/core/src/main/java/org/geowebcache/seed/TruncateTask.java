@@ -14,6 +14,7 @@
  */
 package org.geowebcache.seed;
 
+import com.google.common.util.concurrent.RateLimiter;
 import java.util.Iterator;
 import java.util.List;
 import org.apache.commons.logging.Log;
@@ -22,11 +23,25 @@ import org.geowebcache.GeoWebCacheException;
 import org.geowebcache.filter.request.RequestFilter;
 import org.geowebcache.layer.TileLayer;
 import org.geowebcache.storage.StorageBroker;
+import org.geowebcache.storage.TileDeletionProgress;
 import org.geowebcache.storage.TileRange;
 
+/**
+ * Deletes the tiles of a {@link TileRange}.
+ *
+ * <p>The range is deleted with a single storage call, so that the blob store lists its contents
+ * only once, passing a {@link TileDeletionProgress} that hears about the tiles of this range only.
+ * Every {@link #setThrottling batchSize} deleted tiles, the task reports progress, checks for
+ * termination and, if a rate limit is set, charges the rate limiter for the tiles deleted. Ranges
+ * over sparse caches are thus not throttled for tiles that were never stored, on the stores that
+ * can tell.
+ */
 class TruncateTask extends GWCTask {
     private static Log log = LogFactory.getLog(TruncateTask.class);
 
+    /** Default number of deleted tiles between progress updates */
+    static final int DEFAULT_BATCH_SIZE = 1000;
+
     private final TileRange tr;
 
     private final TileLayer tl;
@@ -35,6 +50,10 @@ class TruncateTask extends GWCTask {
 
     private final StorageBroker storageBroker;
 
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    private RateLimiter rateLimiter;
+
     public TruncateTask(StorageBroker sb, TileRange tr, TileLayer tl, boolean doFilterUpdate) {
         this.storageBroker = sb;
         this.tr = tr;
@@ -45,12 +64,22 @@ class TruncateTask extends GWCTask {
         super.layerName = tl.getName();
     }
 
+    /**
+     * @param batchSize number of deleted tiles between progress updates and termination checks,
+     *     {@link #DEFAULT_BATCH_SIZE} if not positive
+     * @param tilesPerSecond maximum number of tiles deleted per second, {@code 0} for no limit
+     */
+    void setThrottling(int batchSize, double tilesPerSecond) {
+        this.batchSize = batchSize > 0 ? batchSize : DEFAULT_BATCH_SIZE;
+        this.rateLimiter = tilesPerSecond > 0 ? RateLimiter.create(tilesPerSecond) : null;
+    }
+
     @Override
     protected void doActionInternal() throws GeoWebCacheException, InterruptedException {
         super.state = GWCTask.STATE.RUNNING;
         checkInterrupted();
         try {
-            storageBroker.delete(tr);
+            deleteTracked();
         } catch (Exception e) {
             super.state = GWCTask.STATE.DEAD;
             log.error("During truncate request", e);
@@ -67,6 +96,69 @@ class TruncateTask extends GWCTask {
         }
     }
 
+    private void deleteTracked() throws Exception {
+        DeletionTracker tracker = new DeletionTracker(System.currentTimeMillis());
+        // the range area is an upper bound, the actual count is known only once done
+        super.tilesTotal = tileCount();
+        super.tilesDone = 0;
+        storageBroker.delete(tr, tracker);
+        tracker.flush();
+        if (terminate) {
+            log.info("Truncate task " + getTaskId() + " terminated");
+        } else {
+            super.tilesTotal = tilesDone;
+        }
+        super.timeRemaining = 0;
+    }
+
+    private long tileCount() {
+        long count = 0;
+        for (int z = tr.getZoomStart(); z <= tr.getZoomStop(); z++) {
+            long[] bounds = tr.rangeBounds(z);
+            count += (bounds[2] - bounds[0] + 1) * (bounds[3] - bounds[1] + 1);
+        }
+        return count;
+    }
+
+    /**
+     * Counts the tiles deleted by the blob store. The blob stores report them while deleting, so
+     * throttling here slows the deletion itself down.
+     */
+    private class DeletionTracker implements TileDeletionProgress {
+
+        private final long startTime;
+
+        private long pending;
+
+        DeletionTracker(long startTime) {
+            this.startTime = startTime;
+        }
+
+        @Override
+        public boolean tilesDeleted(long tiles) {
+            pending += tiles;
+            if (pending >= batchSize) {
+                flush();
+            }
+            return !terminate;
+        }
+
+        void flush() {
+            long tiles = pending;
+            pending = 0;
+            if (tiles == 0) {
+                return;
+            }
+            if (rateLimiter != null) {
+                rateLimiter.acquire((int) Math.min(Integer.MAX_VALUE, tiles));
+            }
+            synchronized (TruncateTask.this) {
+                tilesDone += tiles;
+                timeSpent = (System.currentTimeMillis() - startTime) / 1000;
+            }
+        }
+    }
+
     /** Updates any request filters */
     private void runFilterUpdates() {
         // We will assume that all filters that can be updated should be updated
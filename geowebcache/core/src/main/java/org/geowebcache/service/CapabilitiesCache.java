@@ -0,0 +1,440 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.GZIPOutputStream;
+import javax.annotation.Nullable;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.geowebcache.GeoWebCacheExtensions;
+import org.geowebcache.config.TileLayerConfigurationListener;
+import org.geowebcache.grid.GridSet;
+import org.geowebcache.grid.GridSetBroker;
+import org.geowebcache.io.XMLBuilder;
+import org.geowebcache.layer.TileLayer;
+import org.geowebcache.layer.TileLayerDispatcher;
+
+/**
+ * Caches the capabilities documents of a service, keyed by what they depend on besides the layers,
+ * like the base URL they are advertised with. Keys should use the URLs as mangled for the
+ * response, so that a configured proxy base URL makes all the clients share a single document.
+ *
+ * <p>Documents are assembled out of XML fragments, one per layer or gridset, that are written
+ * again only when the layer is changed through the {@link TileLayerDispatcher}, the layer or
+ * gridset is replaced by a different one, or a gridset of the {@link GridSetBroker} changes. A
+ * document is served as is until a layer changes through the dispatcher, or for {@link
+ * #REVALIDATE_MILLIS} at most to catch other changes. It's then assembled again from the
+ * fragments, while the previous one is still served to concurrent requests, and kept along with
+ * its gzip compressed variant and entity tag if its content did not change, allowing clients to
+ * revalidate their copy with {@code If-None-Match}.
+ *
+ * <p>Setting {@link #ENABLED_PROPERTY} to {@code false} builds the whole document on each request.
+ */
+public class CapabilitiesCache implements TileLayerConfigurationListener {
+
+    /** Set to {@code false} to disable the capabilities cache */
+    public static final String ENABLED_PROPERTY = "GEOWEBCACHE_CAPABILITIES_CACHE";
+
+    /**
+     * Maximum size in bytes of the cached documents and their fragments, bounding the memory used
+     * as the base URL can be chosen by the clients
+     */
+    static final long MAX_WEIGHT = 32 * 1024 * 1024;
+
+    /** Time a document is served without assembling it again, unless a layer changes meanwhile */
+    static final long REVALIDATE_MILLIS = 5000;
+
+    private static final String LAYER_PREFIX = "layer/";
+
+    private static final Fragments UNCACHED = new Fragments(null, null);
+
+    private final boolean enabled;
+
+    private final long revalidateMillis;
+
+    private final GridSetBroker gridSetBroker;
+
+    /** Increased on each layer change, fragments written meanwhile are not kept */
+    private final AtomicLong generation = new AtomicLong();
+
+    /** The gridsets the layer fragments were written with */
+    private Map<String, GridSet> gridSets;
+
+    private final Cache<String, Entry> entries =
+            CacheBuilder.newBuilder()
+                    .maximumWeight(MAX_WEIGHT)
+                    .weigher((String key, Entry entry) -> entry.weight)
+                    .build();
+
+    /** Builds the contents of a capabilities document, writing the cacheable parts as fragments */
+    @FunctionalInterface
+    public interface DocumentBuilder {
+        String build(Fragments fragments) throws IOException;
+    }
+
+    /** Writes the content of a fragment */
+    @FunctionalInterface
+    public interface FragmentWriter {
+        void write(XMLBuilder xml) throws IOException;
+    }
+
+    /**
+     * Creates a cache listening to the layer changes of the given dispatcher, enabled unless
+     * {@link #ENABLED_PROPERTY} is {@code false}
+     */
+    public CapabilitiesCache(@Nullable TileLayerDispatcher tld) {
+        this(tld, !"false".equalsIgnoreCase(GeoWebCacheExtensions.getProperty(ENABLED_PROPERTY)));
+    }
+
+    public CapabilitiesCache(@Nullable TileLayerDispatcher tld, boolean enabled) {
+        this(tld, tld == null ? null : tld.getGridSetBroker(), enabled, REVALIDATE_MILLIS);
+    }
+
+    CapabilitiesCache(
+            @Nullable TileLayerDispatcher tld,
+            @Nullable GridSetBroker gridSetBroker,
+            boolean enabled,
+            long revalidateMillis) {
+        this.enabled = enabled;
+        this.gridSetBroker = gridSetBroker;
+        this.revalidateMillis = revalidateMillis;
+        if (enabled && tld != null) {
+            tld.addListener(this);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the document for the given key, as is if still valid, otherwise assembling it again
+     * reusing the fragments written for it the last time, and the encoded document if its content
+     * did not change.
+     *
+     * @param key identifies the document among the others of the same service
+     * @param charset the charset the document is encoded with
+     * @param builder builds the document content
+     */
+    public Document getDocument(String key, Charset charset, DocumentBuilder builder)
+            throws IOException {
+        if (!enabled) {
+            return new Document(builder.build(uncached()).getBytes(charset));
+        }
+        final Entry entry = entries.asMap().computeIfAbsent(key, k -> new Entry());
+        Document document = entry.document;
+        if (document != null && isValid(entry, charset)) {
+            return document;
+        }
+        if (document == null) {
+            entry.lock.lock();
+        } else if (!entry.lock.tryLock()) {
+            // being assembled by another request, the previous document will do meanwhile
+            return document;
+        }
+        try {
+            if (entry.document != null && isValid(entry, charset)) {
+                return entry.document;
+            }
+            checkGridSets();
+            final long startGeneration = generation.get();
+            entry.build++;
+            byte[] content = builder.build(new Fragments(this, entry)).getBytes(charset);
+            entry.fragments.values().removeIf(f -> f.build != entry.build);
+            if (entry.document == null || !Arrays.equals(entry.document.getContent(), content)) {
+                entry.document = new Document(content);
+            }
+            entry.charset = charset;
+            entry.generation = startGeneration;
+            entry.validUntil = System.currentTimeMillis() + revalidateMillis;
+            // put it again so that the cache weighs it with its current content
+            entry.weight = entry.weigh();
+            entries.put(key, entry);
+            return entry.document;
+        } finally {
+            entry.lock.unlock();
+        }
+    }
+
+    private boolean isValid(Entry entry, Charset charset) {
+        return entry.generation == generation.get()
+                && charset.equals(entry.charset)
+                && System.currentTimeMillis() < entry.validUntil;
+    }
+
+    /**
+     * Drops the layer fragments if the gridsets changed since they were written, as they describe
+     * the layer gridsets too
+     */
+    private synchronized void checkGridSets() {
+        if (gridSetBroker == null) {
+            return;
+        }
+        Map<String, GridSet> current = new HashMap<>();
+        for (GridSet gridSet : gridSetBroker.getGridSets()) {
+            current.put(gridSet.getName(), gridSet);
+        }
+        if (gridSets != null && !gridSets.equals(current)) {
+            invalidateLayers("");
+        }
+        gridSets = current;
+    }
+
+    /** @return fragments that are written directly each time, for documents not being cached */
+    public static Fragments uncached() {
+        return UNCACHED;
+    }
+
+    /** Drops all the cached documents and fragments */
+    public void clear() {
+        generation.incrementAndGet();
+        entries.invalidateAll();
+    }
+
+    private void invalidate(String layerName) {
+        invalidateLayers(layerName + "\n");
+    }
+
+    private void invalidateLayers(String layerPrefix) {
+        generation.incrementAndGet();
+        String prefix = LAYER_PREFIX + layerPrefix;
+        for (Entry entry : entries.asMap().values()) {
+            entry.fragments.keySet().removeIf(key -> key.startsWith(prefix));
+        }
+    }
+
+    private static String layerKey(String layerName, String part) {
+        return LAYER_PREFIX + layerName + "\n" + part;
+    }
+
+    @Override
+    public void handleAddLayer(TileLayer layer) {
+        invalidate(layer.getName());
+    }
+
+    @Override
+    public void handleRemoveLayer(String layerName) {
+        invalidate(layerName);
+    }
+
+    @Override
+    public void handleModifyLayer(TileLayer layer) {
+        invalidate(layer.getName());
+    }
+
+    @Override
+    public void handleRenameLayer(String oldName, String newName) {
+        invalidate(oldName);
+        invalidate(newName);
+    }
+
+    /** Gives access to the fragments of the document being built */
+    public static final class Fragments {
+
+        private final CapabilitiesCache cache;
+
+        private final Entry entry;
+
+        private Fragments(@Nullable CapabilitiesCache cache, @Nullable Entry entry) {
+            this.cache = cache;
+            this.entry = entry;
+        }
+
+        /**
+         * Appends the fragment describing the given layer, writing it again only if the layer
+         * changed since the last time
+         */
+        public XMLBuilder appendLayer(XMLBuilder xml, TileLayer layer, FragmentWriter writer)
+                throws IOException {
+            return appendLayer(xml, layer, "", writer);
+        }
+
+        /**
+         * Appends a fragment describing a part of the given layer, for documents describing a
+         * layer in more than one place
+         */
+        public XMLBuilder appendLayer(
+                XMLBuilder xml, TileLayer layer, String part, FragmentWriter writer)
+                throws IOException {
+            return append(xml, layerKey(layer.getName(), part), layer, writer);
+        }
+
+        /**
+         * Appends a fragment, writing it again only if the {@code source} object it's written
+         * from is not equal to the one of the last time. Layers are compared by identity, while
+         * gridsets are copied by their configurations and compared by value.
+         *
+         * @param key identifies the fragment within the document
+         */
+        public XMLBuilder append(XMLBuilder xml, String key, Object source, FragmentWriter writer)
+                throws IOException {
+            if (entry == null) {
+                writer.write(xml);
+                return xml;
+            }
+            Fragment fragment = entry.fragments.get(key);
+            if (fragment == null || !Objects.equals(fragment.source, source)) {
+                long startGeneration = cache.generation.get();
+                StringBuilder content = new StringBuilder();
+                writer.write(xml.fragmentBuilder(content));
+                fragment = new Fragment(source, content.toString());
+                if (cache.generation.get() == startGeneration) {
+                    entry.fragments.put(key, fragment);
+                }
+            }
+            fragment.build = entry.build;
+            return xml.appendFragment(fragment.content);
+        }
+    }
+
+    /** An encoded capabilities document, along with its entity tag and gzip compressed variant */
+    public static class Document {
+
+        private final byte[] content;
+
+        private final String etag;
+
+        private volatile byte[] gzipped;
+
+        public Document(byte[] content) {
+            this.content = content;
+            this.etag = "\"" + Hashing.sha256().hashBytes(content).toString() + "\"";
+        }
+
+        public byte[] getContent() {
+            return content;
+        }
+
+        /** @return the quoted entity tag of the document */
+        public String getETag() {
+            return etag;
+        }
+
+        /** @return the gzip compressed content, computed the first time it's asked for */
+        public byte[] getGzippedContent() throws IOException {
+            byte[] gzipped = this.gzipped;
+            if (gzipped == null) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(content.length / 4);
+                try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+                    out.write(content);
+                }
+                gzipped = bytes.toByteArray();
+                this.gzipped = gzipped;
+            }
+            return gzipped;
+        }
+
+        /**
+         * Writes the document, or a 304 status if the request {@code If-None-Match} header matches
+         * its entity tag, compressing it if the client accepts gzip. The content type and other
+         * headers are left to the caller.
+         *
+         * @return the number of bytes written
+         */
+        public int write(HttpServletRequest request, HttpServletResponse response)
+                throws IOException {
+            response.setHeader("ETag", etag);
+            response.addHeader("Vary", "Accept-Encoding");
+            if (matches(request.getHeader("If-None-Match"))) {
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return 0;
+            }
+            byte[] data = content;
+            String acceptEncoding = request.getHeader("Accept-Encoding");
+            if (acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip")) {
+                data = getGzippedContent();
+                response.setHeader("Content-Encoding", "gzip");
+            }
+            response.setStatus(HttpServletResponse.SC_OK);
+            response.setContentLength(data.length);
+            OutputStream os = response.getOutputStream();
+            os.write(data);
+            os.flush();
+            return data.length;
+        }
+
+        private boolean matches(@Nullable String ifNoneMatch) {
+            if (ifNoneMatch == null) {
+                return false;
+            }
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals("*") || tag.equals(etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static class Entry {
+
+        final Map<String, Fragment> fragments = new ConcurrentHashMap<>();
+
+        final ReentrantLock lock = new ReentrantLock();
+
+        long build;
+
+        volatile Document document;
+
+        volatile Charset charset;
+
+        volatile long generation;
+
+        volatile long validUntil;
+
+        volatile int weight;
+
+        /** @return the approximate size in bytes of the document and fragments */
+        int weigh() {
+            int weight = document.getContent().length;
+            for (Fragment fragment : fragments.values()) {
+                weight += 2 * fragment.content.length();
+            }
+            return weight;
+        }
+    }
+
+    private static class Fragment {
+
+        final Object source;
+
+        final String content;
+
+        volatile long build;
+
+        Fragment(Object source, String content) {
+            this.source = source;
+            this.content = content;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Recognizes request paths of a fixed shape, such as the RESTful tile URLs of the services, and
+ * extracts their variables into a {@link TileRequest}.
+ *
+ * <p>Templates are made of path elements separated by slashes, each of them either a literal or a
+ * variable between braces, for example {@code "{layer}/{tilematrixset}/{tilematrix}"}. A variable
+ * matches a whole non empty element, or possibly an empty one if its name ends with {@code ?},
+ * as in {@code "{style?}"}. The templates are compiled once into a trie, so that matching a path
+ * walks its elements once, instead of trying a regular expression per template.
+ *
+ * <p>Route tables are meant to be built once and then shared, they are thread safe as long as no
+ * template is added while matching.
+ *
+ * @param <R> the type of the value associated to each template
+ */
+public class RouteTable<R> {
+
+    private static class Node<R> {
+
+        Map<String, Node<R>> literals = new LinkedHashMap<>();
+
+        /** Matches a non empty element */
+        Node<R> variable;
+
+        /** Matches any element, including an empty one */
+        Node<R> optionalVariable;
+
+        /** The route of the templates ending at this node, and the names of their variables */
+        R route;
+
+        String[] names;
+    }
+
+    private final Node<R> root = new Node<>();
+
+    /**
+     * Adds a template to this table
+     *
+     * @param template the path template, without leading slash
+     * @param route the value returned when a path matches the template
+     * @return this table
+     * @throws IllegalArgumentException if a template of the same shape was already added
+     */
+    public RouteTable<R> add(String template, R route) {
+        Node<R> node = root;
+        List<String> names = new ArrayList<>();
+        for (String element : template.split("/", -1)) {
+            if (element.startsWith("{") && element.endsWith("}")) {
+                String name = element.substring(1, element.length() - 1);
+                if (name.endsWith("?")) {
+                    names.add(name.substring(0, name.length() - 1));
+                    if (node.optionalVariable == null) {
+                        node.optionalVariable = new Node<>();
+                    }
+                    node = node.optionalVariable;
+                } else {
+                    names.add(name);
+                    if (node.variable == null) {
+                        node.variable = new Node<>();
+                    }
+                    node = node.variable;
+                }
+            } else {
+                node = node.literals.computeIfAbsent(element, e -> new Node<>());
+            }
+        }
+        if (node.route != null) {
+            throw new IllegalArgumentException(
+                    "Template " + template + " has the same shape as a previous one");
+        }
+        node.route = route;
+        node.names = names.toArray(new String[names.size()]);
+        return this;
+    }
+
+    /**
+     * Matches the part of a path starting at the given index against the templates of this table.
+     * Literal elements are preferred over variables when several templates could match.
+     *
+     * @param path the request path
+     * @param from the index where the templates start in the path
+     * @param request receives the variables of the matching template, left untouched if no
+     *     template matches
+     * @return the route of the matching template, or {@code null} if none matches
+     */
+    public R match(String path, int from, TileRequest request) {
+        Node<R> node = match(root, path, from, request, 0);
+        return node == null ? null : node.route;
+    }
+
+    /**
+     * Returns the node of the template matching the path from {@code start}. The variables are
+     * only extracted once the whole path matched, while unwinding, so that failed attempts don't
+     * create any substring.
+     */
+    private static <R> Node<R> match(
+            Node<R> node, String path, int start, TileRequest request, int variable) {
+        int end = path.indexOf('/', start);
+        final boolean last = end < 0;
+        if (last) {
+            end = path.length();
+        }
+        final int length = end - start;
+
+        for (Map.Entry<String, Node<R>> literal : node.literals.entrySet()) {
+            String element = literal.getKey();
+            if (element.length() == length && path.regionMatches(start, element, 0, length)) {
+                Node<R> found = next(literal.getValue(), path, end, last, request, variable);
+                if (found != null) {
+                    return found;
+                }
+            }
+        }
+        if (node.variable != null && length > 0) {
+            Node<R> found = next(node.variable, path, end, last, request, variable + 1);
+            if (found != null) {
+                request.put(found.names[variable], path.substring(start, end));
+                return found;
+            }
+        }
+        if (node.optionalVariable != null) {
+            Node<R> found = next(node.optionalVariable, path, end, last, request, variable + 1);
+            if (found != null) {
+                request.put(found.names[variable], path.substring(start, end));
+                return found;
+            }
+        }
+        return null;
+    }
+
+    private static <R> Node<R> next(
+            Node<R> node, String path, int end, boolean last, TileRequest request, int variable) {
+        if (last) {
+            return node.route == null ? null : node;
+        }
+        return match(node, path, end + 1, request, variable);
+    }
+}
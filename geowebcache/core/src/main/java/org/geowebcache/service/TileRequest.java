@@ -0,0 +1,148 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.service;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import org.geowebcache.util.ServletUtils;
+
+/**
+ * The named values of a tile request, such as its layer, matrix, row and column, as extracted from
+ * its path by a {@link RouteTable} or from its KVP parameters.
+ *
+ * <p>A request only carries a handful of values, so they are kept in arrays rather than in a map,
+ * and looked up ignoring the case of their names. The same instance can be reused for several
+ * requests after a {@link #clear()}. Instances are not thread safe.
+ */
+public class TileRequest {
+
+    private String[] names;
+
+    private String[] values;
+
+    private int size;
+
+    public TileRequest() {
+        this(8);
+    }
+
+    public TileRequest(int capacity) {
+        this.names = new String[capacity];
+        this.values = new String[capacity];
+    }
+
+    /**
+     * Creates a tile request from the given KVP parameters, as {@link
+     * ServletUtils#selectedStringsFromMap(Map, String, String...)} does, without copying the
+     * parameters.
+     *
+     * @param parameters the request parameters, as returned by {@code
+     *     ServletRequest.getParameterMap()}
+     * @param encoding the encoding used to decode the values
+     * @param keys the names of the values to extract, matched ignoring case and kept in upper case
+     */
+    public static TileRequest fromParameters(
+            Map<String, ?> parameters, String encoding, String... keys) {
+        TileRequest request = new TileRequest(keys.length);
+        for (Map.Entry<String, ?> parameter : parameters.entrySet()) {
+            Object value = parameter.getValue();
+            if (value == null) {
+                continue;
+            }
+            for (String key : keys) {
+                if (key.equalsIgnoreCase(parameter.getKey())) {
+                    String sValue =
+                            value instanceof String[]
+                                    ? ((String[]) value)[0]
+                                    : String.valueOf(value);
+                    request.put(key.toUpperCase(), ServletUtils.URLDecode(sValue, encoding));
+                    break;
+                }
+            }
+        }
+        return request;
+    }
+
+    /** Creates a tile request holding the entries of the given map */
+    public static TileRequest fromMap(Map<String, String> map) {
+        TileRequest request = new TileRequest(map.size());
+        for (Map.Entry<String, String> e : map.entrySet()) {
+            request.put(e.getKey(), e.getValue());
+        }
+        return request;
+    }
+
+    /** @return the value of the given name, ignoring case, or {@code null} if there is none */
+    public String get(String name) {
+        int index = indexOf(name);
+        return index < 0 ? null : values[index];
+    }
+
+    /** Sets the value of the given name, replacing any value whose name only differs in case */
+    public TileRequest put(String name, String value) {
+        int index = indexOf(name);
+        if (index >= 0) {
+            names[index] = name;
+            values[index] = value;
+            return this;
+        }
+        if (size == names.length) {
+            int capacity = Math.max(4, size * 2);
+            names = Arrays.copyOf(names, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        names[size] = name;
+        values[size] = value;
+        size++;
+        return this;
+    }
+
+    /** Calls the given action with each name and value, in the order they were first set */
+    public void forEach(BiConsumer<String, String> action) {
+        for (int i = 0; i < size; i++) {
+            action.accept(names[i], values[i]);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** Removes all the values, so that this instance can be used for another request */
+    public void clear() {
+        Arrays.fill(names, 0, size, null);
+        Arrays.fill(values, 0, size, null);
+        size = 0;
+    }
+
+    private int indexOf(String name) {
+        for (int i = 0; i < size; i++) {
+            if (names[i].equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("TileRequest[");
+        for (int i = 0; i < size; i++) {
+            sb.append(i == 0 ? "" : ", ").append(names[i]).append('=').append(values[i]);
+        }
+        return sb.append(']').toString();
+    }
+}
@@ -19,6 +19,8 @@ import java.util.List;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.geowebcache.conveyor.Conveyor.CacheResult;
+import org.geowebcache.layer.wms.BackendRequestScheduler;
+import org.geowebcache.layer.wms.BackendRequestScheduler.RequestClass;
 import org.geowebcache.util.ServletUtils;
 
 public class RuntimeStats {
@@ -65,6 +67,8 @@ public class RuntimeStats {
 
     private final Clock clock;
 
+    private BackendRequestScheduler backendScheduler;
+
     /**
      * @param pollInterval seconds between recording aggregate values
      * @param intervals the intervals for which to report, in seconds, ascending. Each interval must
@@ -300,6 +304,11 @@ public class RuntimeStats {
             str.append("</tbody>");
             str.append("<tbody>");
 
+            appendBackendStats(str);
+
+            str.append("</tbody>");
+            str.append("<tbody>");
+
             str.append(
                     "<tr><td colspan=\"5\">All figures are "
                             + pollInterval
@@ -314,6 +323,42 @@ public class RuntimeStats {
         return str.toString();
     }
 
+    /** Time spent by the WMS backend requests waiting for a slot, for each class of work */
+    private void appendBackendStats(StringBuilder str) {
+        BackendRequestScheduler scheduler = getBackendRequestScheduler();
+        str.append(
+                "<tr><th scope=\"col\">Backend requests</th><th scope=\"col\">Queued</th>"
+                        + "<th scope=\"col\">Admitted</th><th scope=\"col\">Average wait</th>"
+                        + "<th scope=\"col\">Maximum wait</th></tr>\n");
+        for (RequestClass rc : RequestClass.values()) {
+            str.append("<tr><td>")
+                    .append(rc.name().toLowerCase())
+                    .append("</td><td>")
+                    .append(scheduler.getQueuedCount(rc))
+                    .append("</td><td>")
+                    .append(scheduler.getRequestCount(rc))
+                    .append("</td><td>")
+                    .append(String.format("%.1f ms", scheduler.getAverageWaitMillis(rc)))
+                    .append("</td><td>")
+                    .append(scheduler.getMaxWaitMillis(rc))
+                    .append(" ms</td></tr>\n");
+        }
+        str.append("<tr><td colspan=\"5\">")
+                .append(scheduler.getActiveCount())
+                .append(" backend requests in flight, limit: ")
+                .append(scheduler.getMaxConcurrent() > 0 ? scheduler.getMaxConcurrent() : "none")
+                .append("</td></tr>\n");
+    }
+
+    /** The scheduler whose statistics are reported, the shared one unless set explicitly */
+    public BackendRequestScheduler getBackendRequestScheduler() {
+        return backendScheduler != null ? backendScheduler : BackendRequestScheduler.getDefault();
+    }
+
+    public void setBackendRequestScheduler(BackendRequestScheduler backendScheduler) {
+        this.backendScheduler = backendScheduler;
+    }
+
     private String[] calculateRequests(int interval) {
         int nodeCount = interval / pollInterval;
 
@@ -99,6 +99,21 @@ public interface BlobStore {
      */
     public boolean delete(TileRange obj) throws StorageException;
 
+    /**
+     * Delete the cached blob associated with the tiles in the given range, reporting the progress
+     * as the deletion goes. Stores able to tell should override it, the default deletes the range
+     * with {@link #delete(TileRange)} and reports nothing.
+     *
+     * @param obj the range of tiles.
+     * @param progress told about the deleted tiles, can stop the deletion
+     * @return {@literal true} if successful, {@literal false} otherwise
+     * @throws StorageException
+     */
+    public default boolean delete(TileRange obj, TileDeletionProgress progress)
+            throws StorageException {
+        return delete(obj);
+    }
+
     /**
      * Retrieves a tile from the storage, filling its metadata too
      *
@@ -108,6 +123,34 @@ public interface BlobStore {
      */
     public boolean get(TileObject obj) throws StorageException;
 
+    /**
+     * Retrieves several tiles from the storage, filling their metadata too. Stores able to look up
+     * many tiles at once should override it, the default gets them one by one.
+     *
+     * @param objs the tiles to retrieve
+     * @return for each tile, in the same order, {@literal true} if it was found
+     * @throws StorageException
+     */
+    public default boolean[] getAll(List<TileObject> objs) throws StorageException {
+        boolean[] found = new boolean[objs.size()];
+        for (int i = 0; i < found.length; i++) {
+            found[i] = get(objs.get(i));
+        }
+        return found;
+    }
+
+    /**
+     * Checks which of the given tiles are stored. Stores able to check that without reading the
+     * tiles should override it, the default retrieves them with {@link #getAll(List)}.
+     *
+     * @param objs the tiles to look up
+     * @return for each tile, in the same order, {@literal true} if it is stored
+     * @throws StorageException
+     */
+    public default boolean[] existsAll(List<TileObject> objs) throws StorageException {
+        return getAll(objs);
+    }
+
     /**
      * Store blob. Calls getBlob() on passed object, does not modify the object.
      *
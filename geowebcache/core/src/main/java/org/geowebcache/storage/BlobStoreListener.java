@@ -50,6 +50,27 @@ public interface BlobStoreListener {
             int z,
             long blobSize);
 
+    /**
+     * Notifies that the blob store stored a new tile the backend rendered in the given time. By
+     * default the render time is ignored and {@link #tileStored(String, String, String, String,
+     * long, long, int, long)} is called.
+     *
+     * @param renderTime the time in milliseconds the backend took to render the tile, see {@link
+     *     TileObject#getRenderTime()}
+     */
+    default void tileStored(
+            String layerName,
+            String gridSetId,
+            String blobFormat,
+            String parametersId,
+            long x,
+            long y,
+            int z,
+            long blobSize,
+            long renderTime) {
+        tileStored(layerName, gridSetId, blobFormat, parametersId, x, y, z, blobSize);
+    }
+
     /**
      * Notifies that the blob store has deleted a tile given by the method arguments.
      *
@@ -121,9 +121,32 @@ public final class BlobStoreListenerList {
         final String blobFormat = stObj.getBlobFormat();
         final String paramsId = stObj.getParametersId();
         final int blobSize = stObj.getBlobSize();
-
-        sendTileStored(
-                layerName, gridSetId, blobFormat, paramsId, xyz[0], xyz[1], (int) xyz[2], blobSize);
+        final long renderTime = stObj.getRenderTime();
+        if (renderTime <= 0) {
+            sendTileStored(
+                    layerName,
+                    gridSetId,
+                    blobFormat,
+                    paramsId,
+                    xyz[0],
+                    xyz[1],
+                    (int) xyz[2],
+                    blobSize);
+            return;
+        }
+        listeners.forEach(
+                listener -> {
+                    listener.tileStored(
+                            layerName,
+                            gridSetId,
+                            blobFormat,
+                            paramsId,
+                            xyz[0],
+                            xyz[1],
+                            (int) xyz[2],
+                            blobSize,
+                            renderTime);
+                });
     }
 
     public void sendTileUpdated(
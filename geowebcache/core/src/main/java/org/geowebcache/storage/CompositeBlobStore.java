@@ -18,7 +18,10 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
 import com.google.common.base.Throwables;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
@@ -178,11 +181,48 @@ public class CompositeBlobStore implements BlobStore, BlobStoreConfigurationList
         return readFunctionUnsafe(() -> store(obj.getLayerName()).delete(obj));
     }
 
+    @Override
+    public boolean delete(TileRange obj, TileDeletionProgress progress) throws StorageException {
+        return readFunctionUnsafe(() -> store(obj.getLayerName()).delete(obj, progress));
+    }
+
     @Override
     public boolean get(TileObject obj) throws StorageException {
         return readFunctionUnsafe(() -> store(obj.getLayerName()).get(obj));
     }
 
+    @Override
+    public boolean[] getAll(List<TileObject> objs) throws StorageException {
+        return readFunctionUnsafe(() -> lookUpAll(objs, BlobStore::getAll));
+    }
+
+    @Override
+    public boolean[] existsAll(List<TileObject> objs) throws StorageException {
+        return readFunctionUnsafe(() -> lookUpAll(objs, BlobStore::existsAll));
+    }
+
+    /** Groups the tiles by the store of their layer, so each store looks up its tiles at once */
+    private boolean[] lookUpAll(List<TileObject> objs, BatchLookup lookup) throws StorageException {
+        Map<BlobStore, List<Integer>> storeIndexes = new LinkedHashMap<>();
+        for (int i = 0; i < objs.size(); i++) {
+            BlobStore store = store(objs.get(i).getLayerName());
+            storeIndexes.computeIfAbsent(store, k -> new ArrayList<>()).add(i);
+        }
+        boolean[] found = new boolean[objs.size()];
+        for (Map.Entry<BlobStore, List<Integer>> entry : storeIndexes.entrySet()) {
+            List<Integer> indexes = entry.getValue();
+            List<TileObject> storeObjs = new ArrayList<>(indexes.size());
+            for (int i : indexes) {
+                storeObjs.add(objs.get(i));
+            }
+            boolean[] storeFound = lookup.apply(entry.getKey(), storeObjs);
+            for (int i = 0; i < storeFound.length; i++) {
+                found[indexes.get(i)] = storeFound[i];
+            }
+        }
+        return found;
+    }
+
     @Override
     public void put(TileObject obj) throws StorageException {
         readActionUnsafe(() -> store(obj.getLayerName()).put(obj));
@@ -476,6 +516,11 @@ public class CompositeBlobStore implements BlobStore, BlobStoreConfigurationList
         return readFunction(() -> store(layerName).getParameterIds(layerName));
     }
 
+    @FunctionalInterface
+    static interface BatchLookup {
+        boolean[] apply(BlobStore store, List<TileObject> objs) throws StorageException;
+    }
+
     @FunctionalInterface
     static interface StorageAction {
         void run() throws StorageException;
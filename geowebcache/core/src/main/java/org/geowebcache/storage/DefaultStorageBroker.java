@@ -14,8 +14,10 @@
  */
 package org.geowebcache.storage;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.geowebcache.io.Resource;
@@ -32,6 +34,9 @@ public class DefaultStorageBroker implements StorageBroker {
 
     private TransientCache transientCache;
 
+    private final List<PutAdmissionController> admissionControllers =
+            new CopyOnWriteArrayList<PutAdmissionController>();
+
     @Deprecated
     public DefaultStorageBroker(BlobStore blobStore) {
         this(blobStore, new TransientCache(100, 1024));
@@ -50,6 +55,14 @@ public class DefaultStorageBroker implements StorageBroker {
         return blobStore.removeListener(listener);
     }
 
+    public void addPutAdmissionController(PutAdmissionController controller) {
+        admissionControllers.add(controller);
+    }
+
+    public boolean removePutAdmissionController(PutAdmissionController controller) {
+        return admissionControllers.remove(controller);
+    }
+
     public boolean delete(String layerName) throws StorageException {
         return blobStore.delete(layerName);
     }
@@ -82,13 +95,45 @@ public class DefaultStorageBroker implements StorageBroker {
         return blobStore.delete(trObj);
     }
 
+    public boolean delete(TileRange trObj, TileDeletionProgress progress) throws StorageException {
+        return blobStore.delete(trObj, progress);
+    }
+
     public boolean get(TileObject tileObj) throws StorageException {
         return blobStore.get(tileObj);
     }
 
+    public boolean[] getAll(List<TileObject> tileObjs) throws StorageException {
+        return blobStore.getAll(tileObjs);
+    }
+
+    public boolean[] existsAll(List<TileObject> tileObjs) throws StorageException {
+        return blobStore.existsAll(tileObjs);
+    }
+
     public boolean put(TileObject tileObj) throws StorageException {
-        blobStore.put(tileObj);
-        return true;
+        switch (admit(tileObj)) {
+            case SKIP:
+                return false;
+            case TRANSIENT:
+                putTransient(tileObj);
+                return false;
+            default:
+                blobStore.put(tileObj);
+                return true;
+        }
+    }
+
+    /** @return the most restrictive admission of the registered controllers */
+    private PutAdmissionController.Admission admit(TileObject tileObj) {
+        PutAdmissionController.Admission admission = PutAdmissionController.Admission.STORE;
+        for (PutAdmissionController controller : admissionControllers) {
+            PutAdmissionController.Admission decision = controller.admit(tileObj);
+            if (decision.compareTo(admission) > 0) {
+                admission = decision;
+            }
+        }
+        return admission;
     }
 
     public void destroy() {
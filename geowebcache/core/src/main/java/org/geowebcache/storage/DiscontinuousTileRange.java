@@ -78,4 +78,31 @@ public class DiscontinuousTileRange extends TileRange {
     public boolean contains(long[] idx) {
         return contains(idx[0], idx[1], (int) idx[2]);
     }
+
+    /**
+     * Only {@link SparseTileMask} can tell quickly whether an area has tiles set, for other masks
+     * this method answers for the range bounds only and may return {@code true} for areas the mask
+     * excludes.
+     */
+    @Override
+    public boolean intersects(long minx, long miny, long maxx, long maxy, int z) {
+        if (!super.intersects(minx, miny, maxx, maxy, z)) {
+            return false;
+        }
+        if (mask instanceof SparseTileMask) {
+            long[] bounds = rangeBounds(z);
+            return ((SparseTileMask) mask)
+                    .intersects(
+                            Math.max(minx, bounds[0]),
+                            Math.max(miny, bounds[1]),
+                            Math.min(maxx, bounds[2]),
+                            Math.min(maxy, bounds[3]),
+                            z);
+        }
+        return true;
+    }
+
+    public TileRangeMask getMask() {
+        return mask;
+    }
 }
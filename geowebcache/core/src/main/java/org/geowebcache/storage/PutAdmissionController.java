@@ -0,0 +1,41 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.storage;
+
+/**
+ * Decides whether a tile put on the {@link StorageBroker} gets stored in the {@link BlobStore}.
+ *
+ * <p>Tiles that are not admitted are still returned to the client that requested them, they're
+ * just not cached, or only cached for a short time on the {@link TransientCache}.
+ */
+public interface PutAdmissionController {
+
+    /** What to do with a tile, from the least to the most restrictive */
+    enum Admission {
+        /** Store the tile in the blob store */
+        STORE,
+        /** Keep the tile on the transient cache only */
+        TRANSIENT,
+        /** Don't cache the tile at all */
+        SKIP
+    }
+
+    /**
+     * Called before the tile is stored, possibly by many threads at once
+     *
+     * @param tile the tile about to be stored, with its blob set
+     */
+    Admission admit(TileObject tile);
+}
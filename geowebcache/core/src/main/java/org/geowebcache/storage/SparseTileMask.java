@@ -0,0 +1,269 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.storage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * A {@link TileRangeMask} backed by a sparse bitmap.
+ *
+ * <p>Each masked zoom level is split in blocks of {@code 64x64} tiles, stored as 64 {@code long}
+ * rows of bits and sorted in row major order. Blocks without any tile set are not stored at all, so
+ * memory is proportional to the area actually covered rather than to the size of the gridset,
+ * which keeps high zoom levels affordable for feeds made of many small geometries. The sorted
+ * blocks also allow to jump over empty areas ({@link #nextSetColumn}) and to test whole meta tiles
+ * with a handful of word operations ({@link #intersects}).
+ *
+ * <p>As for {@link RasterMask}, levels above the last masked one are looked up by downsampling to
+ * the last masked level.
+ */
+public class SparseTileMask implements TileRangeMask {
+
+    private static final int BLOCK_SHIFT = 6;
+
+    private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+
+    private static final int BLOCK_MASK = BLOCK_SIZE - 1;
+
+    /** By level blocks, keyed by {@code blockY << 32 | blockX} */
+    private final List<NavigableMap<Long, long[]>> byLevelBlocks;
+
+    private final long[][] fullCoverage;
+
+    private final int maxMaskLevel;
+
+    private long[][] coveredBounds;
+
+    /**
+     * @param fullCoverage the full grid subset coverages, needed to compute downsampled tile
+     *     locations for the levels above {@code maxMaskLevel}
+     * @param maxMaskLevel the last zoom level bits can be set for
+     */
+    public SparseTileMask(long[][] fullCoverage, int maxMaskLevel) {
+        this.fullCoverage = fullCoverage;
+        this.coveredBounds = fullCoverage;
+        this.maxMaskLevel = Math.min(maxMaskLevel, fullCoverage.length - 1);
+        this.byLevelBlocks = new ArrayList<>(this.maxMaskLevel + 1);
+        for (int level = 0; level <= this.maxMaskLevel; level++) {
+            byLevelBlocks.add(new TreeMap<>());
+        }
+    }
+
+    private static long key(long blockX, long blockY) {
+        return (blockY << 32) | blockX;
+    }
+
+    private static long blockX(long key) {
+        return key & 0xFFFFFFFFL;
+    }
+
+    /** @return a mask with the bits {@code [from, to]} of a block row set */
+    private static long columnMask(int from, int to) {
+        return (-1L >>> (BLOCK_MASK - to)) & (-1L << from);
+    }
+
+    public int getMaxMaskLevel() {
+        return maxMaskLevel;
+    }
+
+    @Override
+    public long[][] getGridCoverages() {
+        return coveredBounds;
+    }
+
+    /**
+     * Sets the by level bounds enclosing the tiles set in the mask, used to quickly discard lookups
+     * and as the bounds of the {@link DiscontinuousTileRange} built on top of this mask. Defaults
+     * to the full coverage.
+     */
+    public void setGridCoverages(long[][] coveredBounds) {
+        this.coveredBounds = coveredBounds;
+    }
+
+    /** Sets the tile at the given location */
+    public void set(long x, long y, int z) {
+        setRange(x, y, x, y, z);
+    }
+
+    /** Sets all the tiles in the given inclusive bounds */
+    public void setRange(long minx, long miny, long maxx, long maxy, int z) {
+        if (z > maxMaskLevel) {
+            throw new IllegalArgumentException(
+                    "Level " + z + " is above the last masked level " + maxMaskLevel);
+        }
+        minx = Math.max(0, minx);
+        miny = Math.max(0, miny);
+        final NavigableMap<Long, long[]> blocks = byLevelBlocks.get(z);
+        for (long by = miny >> BLOCK_SHIFT; by <= maxy >> BLOCK_SHIFT; by++) {
+            final int fromRow = (int) Math.max(miny - (by << BLOCK_SHIFT), 0);
+            final int toRow = (int) Math.min(maxy - (by << BLOCK_SHIFT), BLOCK_MASK);
+            for (long bx = minx >> BLOCK_SHIFT; bx <= maxx >> BLOCK_SHIFT; bx++) {
+                final int fromCol = (int) Math.max(minx - (bx << BLOCK_SHIFT), 0);
+                final int toCol = (int) Math.min(maxx - (bx << BLOCK_SHIFT), BLOCK_MASK);
+                final long bits = columnMask(fromCol, toCol);
+                long[] block = blocks.computeIfAbsent(key(bx, by), k -> new long[BLOCK_SIZE]);
+                for (int row = fromRow; row <= toRow; row++) {
+                    block[row] |= bits;
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean lookup(final long x, final long y, final int z) {
+        long tileX = x;
+        long tileY = y;
+        int level = z;
+
+        if (!isCovered(tileX, tileY, level)) {
+            return false;
+        }
+
+        if (level > maxMaskLevel) {
+            // downsample, the same way RasterMask does
+            long[] requestedCoverage = fullCoverage[level];
+
+            long[] lastMaskedCoverage = fullCoverage[maxMaskLevel];
+
+            double requestedW = requestedCoverage[2] - requestedCoverage[0];
+            double requestedH = requestedCoverage[3] - requestedCoverage[1];
+
+            double availableW = lastMaskedCoverage[2] - lastMaskedCoverage[0];
+            double availableH = lastMaskedCoverage[3] - lastMaskedCoverage[1];
+
+            tileX = Math.round(tileX * (availableW / requestedW));
+            tileY = Math.round(tileY * (availableH / requestedH));
+
+            level = maxMaskLevel;
+            if (!isCovered(tileX, tileY, level)) {
+                return false;
+            }
+        }
+        return isSet(tileX, tileY, level);
+    }
+
+    private boolean isCovered(long x, long y, int z) {
+        long[] coverage = coveredBounds[z];
+        return coverage != null
+                && x >= coverage[0]
+                && x <= coverage[2]
+                && y >= coverage[1]
+                && y <= coverage[3];
+    }
+
+    private boolean isSet(long x, long y, int z) {
+        if (x < 0 || y < 0) {
+            return false;
+        }
+        long[] block = byLevelBlocks.get(z).get(key(x >> BLOCK_SHIFT, y >> BLOCK_SHIFT));
+        return block != null && (block[(int) (y & BLOCK_MASK)] & (1L << (x & BLOCK_MASK))) != 0;
+    }
+
+    /**
+     * @return whether any tile in the given inclusive bounds is set. Only looks at the few blocks
+     *     overlapping the bounds, so testing a whole meta tile is about as cheap as testing a
+     *     single tile.
+     */
+    public boolean intersects(long minx, long miny, long maxx, long maxy, final int z) {
+        if (z > maxMaskLevel) {
+            for (long x = minx; x <= maxx; x++) {
+                for (long y = miny; y <= maxy; y++) {
+                    if (lookup(x, y, z)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+        return nextSetColumn(minx, miny, maxx, maxy, z) >= 0;
+    }
+
+    /**
+     * Finds the first column at or after {@code minx} having any tile set between rows {@code
+     * miny} and {@code maxy}, skipping empty blocks without looking at them.
+     *
+     * @return the column found, or {@code -1} if there are no tiles set in the given bounds. For
+     *     levels above the last masked one there's no sparse information to rely on, so {@code
+     *     minx} is returned as it might contain tiles.
+     */
+    public long nextSetColumn(long minx, long miny, long maxx, long maxy, final int z) {
+        if (z > maxMaskLevel) {
+            return minx <= maxx ? minx : -1;
+        }
+        final long[] coverage = coveredBounds[z];
+        if (coverage == null) {
+            return -1;
+        }
+        minx = Math.max(Math.max(minx, coverage[0]), 0);
+        miny = Math.max(Math.max(miny, coverage[1]), 0);
+        maxx = Math.min(maxx, coverage[2]);
+        maxy = Math.min(maxy, coverage[3]);
+        if (minx > maxx || miny > maxy) {
+            return -1;
+        }
+        final NavigableMap<Long, long[]> blocks = byLevelBlocks.get(z);
+        long found = -1;
+        for (long by = miny >> BLOCK_SHIFT; by <= maxy >> BLOCK_SHIFT; by++) {
+            final int fromRow = (int) Math.max(miny - (by << BLOCK_SHIFT), 0);
+            final int toRow = (int) Math.min(maxy - (by << BLOCK_SHIFT), BLOCK_MASK);
+            long lastBlockX = maxx >> BLOCK_SHIFT;
+            if (found >= 0) {
+                // only a column before the one already found can improve the result
+                lastBlockX = Math.min(lastBlockX, found >> BLOCK_SHIFT);
+            }
+            for (Map.Entry<Long, long[]> entry :
+                    blocks.subMap(key(minx >> BLOCK_SHIFT, by), true, key(lastBlockX, by), true)
+                            .entrySet()) {
+                final long bx = blockX(entry.getKey());
+                final long[] block = entry.getValue();
+                final int fromCol = (int) Math.max(minx - (bx << BLOCK_SHIFT), 0);
+                final int toCol = (int) Math.min(maxx - (bx << BLOCK_SHIFT), BLOCK_MASK);
+                long bits = 0;
+                for (int row = fromRow; row <= toRow; row++) {
+                    bits |= block[row];
+                }
+                bits &= columnMask(fromCol, toCol);
+                if (bits != 0) {
+                    long column = (bx << BLOCK_SHIFT) + Long.numberOfTrailingZeros(bits);
+                    if (found < 0 || column < found) {
+                        found = column;
+                    }
+                    break;
+                }
+            }
+        }
+        return found;
+    }
+
+    /** @return the number of tiles set at the given masked level */
+    public long getTileCount(int z) {
+        long count = 0;
+        for (long[] block : byLevelBlocks.get(z).values()) {
+            for (long row : block) {
+                count += Long.bitCount(row);
+            }
+        }
+        return count;
+    }
+
+    /** @return whether no tile is set at any level */
+    public boolean isEmpty() {
+        return byLevelBlocks.stream().allMatch(Map::isEmpty);
+    }
+}
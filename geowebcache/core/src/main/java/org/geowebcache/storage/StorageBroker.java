@@ -14,6 +14,7 @@
  */
 package org.geowebcache.storage;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import org.geowebcache.layer.TileLayer;
@@ -25,6 +26,14 @@ public interface StorageBroker {
 
     boolean removeBlobStoreListener(BlobStoreListener listener);
 
+    /**
+     * Adds a controller consulted on each {@link #put(TileObject)}, the most restrictive {@link
+     * PutAdmissionController.Admission admission} returned by the controllers applies
+     */
+    void addPutAdmissionController(PutAdmissionController controller);
+
+    boolean removePutAdmissionController(PutAdmissionController controller);
+
     /** Completely eliminates the cache for the given layer. */
     boolean delete(String layerName) throws StorageException;
 
@@ -62,6 +71,13 @@ public interface StorageBroker {
 
     boolean delete(TileRange trObj) throws StorageException;
 
+    /**
+     * Deletes the tiles in the given range, telling the given progress about the deleted tiles
+     *
+     * @see BlobStore#delete(TileRange, TileDeletionProgress)
+     */
+    boolean delete(TileRange trObj, TileDeletionProgress progress) throws StorageException;
+
     /**
      * Sets the Resource for the given TileObject from storage
      *
@@ -72,10 +88,29 @@ public interface StorageBroker {
     boolean get(TileObject tileObj) throws StorageException;
 
     /**
-     * Puts the given TileObject into storage
+     * Sets the Resource of each of the given TileObjects from storage, looking them up at once
+     *
+     * @param tileObjs the TileObjects to set the Resource of
+     * @return for each TileObject, in the same order, true if found
+     * @throws StorageException
+     */
+    boolean[] getAll(List<TileObject> tileObjs) throws StorageException;
+
+    /**
+     * Checks which of the given TileObjects are in storage, their Resource may be set as well
+     *
+     * @param tileObjs the TileObjects to look up
+     * @return for each TileObject, in the same order, true if stored
+     * @throws StorageException
+     */
+    boolean[] existsAll(List<TileObject> tileObjs) throws StorageException;
+
+    /**
+     * Puts the given TileObject into storage, unless a {@link PutAdmissionController} decides
+     * otherwise
      *
      * @param tileObj
-     * @return
+     * @return {@code true} if the tile was stored in the blob store
      * @throws StorageException
      */
     boolean put(TileObject tileObj) throws StorageException;
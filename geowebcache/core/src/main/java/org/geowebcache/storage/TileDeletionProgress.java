@@ -0,0 +1,40 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.storage;
+
+/**
+ * Follows the deletion of a {@link TileRange} by {@link BlobStore#delete(TileRange,
+ * TileDeletionProgress)}, to report the progress of a single truncation or throttle it.
+ *
+ * <p>Unlike a {@link BlobStoreListener}, which sees every deletion in the store, it only hears
+ * about the tiles of the range it was passed along with.
+ */
+@FunctionalInterface
+public interface TileDeletionProgress {
+
+    /** Ignores the progress and never stops the deletion */
+    TileDeletionProgress NONE = tiles -> true;
+
+    /**
+     * Called by the blob store as it goes through the range, from the deleting thread, so that
+     * slowing down here slows the deletion itself down.
+     *
+     * @param tiles number of tiles deleted since the previous call. Stores deleting tiles in bulk,
+     *     without knowing which ones were actually stored, count every tile of the range they sent
+     *     a deletion for
+     * @return {@code false} to stop the deletion, leaving the rest of the range in place
+     */
+    boolean tilesDeleted(long tiles);
+}
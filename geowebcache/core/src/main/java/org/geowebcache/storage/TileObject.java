@@ -43,6 +43,8 @@ public class TileObject extends StorageObject implements Serializable {
 
     String gridSetId;
 
+    long renderTime;
+
     public static TileObject createQueryTileObject(
             String layerName,
             long[] xyz,
@@ -124,6 +126,18 @@ public class TileObject extends StorageObject implements Serializable {
         this.parameters_id = parameters_id;
     }
 
+    /**
+     * @return the time in milliseconds the backend took to render this tile, zero if the tile was
+     *     not rendered or the time is unknown
+     */
+    public long getRenderTime() {
+        return renderTime;
+    }
+
+    public void setRenderTime(long renderTime) {
+        this.renderTime = renderTime;
+    }
+
     public long[] getXYZ() {
         return xyz;
     }
@@ -130,6 +130,23 @@ public class TileRange {
         return false;
     }
 
+    /**
+     * @return whether any tile in the given bounds at zoom level {@code z} belongs to this range
+     */
+    public boolean intersects(long minx, long miny, long maxx, long maxy, int z) {
+        if (z < getZoomStart() || z > getZoomStop()) {
+            return false;
+        }
+        if (null == rangeBounds) {
+            return true;
+        }
+        long[] rB = rangeBounds.get(Integer.valueOf(z));
+        if (rB == null) {
+            return false;
+        }
+        return rB[0] <= maxx && rB[2] >= minx && rB[1] <= maxy && rB[3] >= miny;
+    }
+
     public void setParametersId(String parametersId) {
         this.parametersId = parametersId;
     }
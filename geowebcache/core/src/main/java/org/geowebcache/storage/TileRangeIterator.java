@@ -22,6 +22,8 @@ public class TileRangeIterator {
 
     private final DiscontinuousTileRange dtr;
 
+    private final SparseTileMask sparseMask;
+
     private final int metaX;
 
     private final int metaY;
@@ -49,6 +51,11 @@ public class TileRangeIterator {
         } else {
             dtr = null;
         }
+        if (dtr != null && dtr.getMask() instanceof SparseTileMask) {
+            sparseMask = (SparseTileMask) dtr.getMask();
+        } else {
+            sparseMask = null;
+        }
     }
 
     /**
@@ -97,6 +104,12 @@ public class TileRangeIterator {
         for (; z <= tr.getZoomStop(); z++) {
             for (; y <= levelBounds[3]; y += metaY) {
                 for (; x <= levelBounds[2]; x += metaX) {
+                    if (sparseMask != null) {
+                        x = skipEmptyMetaTiles(x, y, z, levelBounds);
+                        if (x > levelBounds[2]) {
+                            break;
+                        }
+                    }
 
                     gridLoc[0] = x;
                     gridLoc[1] = y;
@@ -145,6 +158,24 @@ public class TileRangeIterator {
         return tilesForLocation(gridLoc[0], gridLoc[1], levelBounds);
     }
 
+    /**
+     * Uses the sparse mask to jump over the meta tiles of the current row that have no tile set,
+     * accounting them as skipped.
+     *
+     * @return the first meta tile column at or after {@code x} that might have tiles set, or a
+     *     value past the level bounds if there is none
+     */
+    private long skipEmptyMetaTiles(long x, long y, int z, long[] levelBounds) {
+        final long maxy = Math.min(y + metaY - 1, levelBounds[3]);
+        final long next = sparseMask.nextSetColumn(x, y, levelBounds[2], maxy, z);
+        final long skipTo = next < 0 ? levelBounds[2] + 1 : x + ((next - x) / metaX) * metaX;
+        if (skipTo > x) {
+            long columns = Math.min(skipTo, levelBounds[2] + 1) - x;
+            tilesSkippedCount.addAndGet(columns * (maxy - y + 1));
+        }
+        return skipTo;
+    }
+
     /**
      * Checks whether this grid location, or any on the same meta tile, should be included according
      * to the DiscontinuousTileRange
@@ -155,20 +186,20 @@ public class TileRangeIterator {
     private boolean checkGridLocation(long[] gridLoc) {
         if (dtr == null) {
             return true;
-        } else {
-            long[] subIdx = new long[3];
-            subIdx[2] = gridLoc[2];
-            for (int i = 0; i < this.metaX; i++) {
-                for (int j = 0; j < this.metaY; j++) {
-                    subIdx[0] = gridLoc[0] + i;
-                    subIdx[1] = gridLoc[1] + j;
-                    if (dtr.contains(subIdx)) {
-                        return true;
-                    }
+        }
+        final long x = gridLoc[0];
+        final long y = gridLoc[1];
+        final int z = (int) gridLoc[2];
+        if (sparseMask != null) {
+            return dtr.intersects(x, y, x + metaX - 1, y + metaY - 1, z);
+        }
+        for (int i = 0; i < this.metaX; i++) {
+            for (int j = 0; j < this.metaY; j++) {
+                if (dtr.contains(x + i, y + j, z)) {
+                    return true;
                 }
             }
         }
-
         return false;
     }
 }
@@ -34,16 +34,22 @@ import java.net.URLEncoder;
 import java.nio.channels.FileChannel;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Properties;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
@@ -51,6 +57,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.geowebcache.config.ConfigurationException;
 import org.geowebcache.filter.parameters.ParametersUtils;
+import org.geowebcache.io.ByteArrayResource;
 import org.geowebcache.io.FileResource;
 import org.geowebcache.io.Resource;
 import org.geowebcache.mime.MimeException;
@@ -62,6 +69,7 @@ import org.geowebcache.storage.CompositeBlobStore;
 import org.geowebcache.storage.DefaultStorageFinder;
 import org.geowebcache.storage.StorageException;
 import org.geowebcache.storage.StorageObject.Status;
+import org.geowebcache.storage.TileDeletionProgress;
 import org.geowebcache.storage.TileObject;
 import org.geowebcache.storage.TileRange;
 import org.geowebcache.util.FileUtils;
@@ -91,6 +99,9 @@ public class FileBlobStore implements BlobStore {
 
     private ExecutorService deleteExecutorService;
 
+    /** Reads several tiles at once, created on first use */
+    private ExecutorService readExecutorService;
+
     public FileBlobStore(DefaultStorageFinder defStoreFinder)
             throws StorageException, ConfigurationException {
         this(defStoreFinder.getDefaultPath());
@@ -172,11 +183,28 @@ public class FileBlobStore implements BlobStore {
         deleteExecutorService = Executors.newFixedThreadPool(1);
     }
 
+    private synchronized ExecutorService getReadExecutorService() {
+        if (readExecutorService == null) {
+            CustomizableThreadFactory tf;
+            tf = new CustomizableThreadFactory("GWC FileStore read thread-");
+            tf.setDaemon(true);
+            // reading is bound by the disk latency rather than the cpu
+            int threads = 2 * Runtime.getRuntime().availableProcessors();
+            readExecutorService = Executors.newFixedThreadPool(threads, tf);
+        }
+        return readExecutorService;
+    }
+
     /** Destroy method for Spring */
     public void destroy() {
         if (deleteExecutorService != null) {
             deleteExecutorService.shutdown();
         }
+        synchronized (this) {
+            if (readExecutorService != null) {
+                readExecutorService.shutdown();
+            }
+        }
     }
 
     private static class DefferredDirectoryDeleteTask implements Runnable {
@@ -389,7 +417,13 @@ public class FileBlobStore implements BlobStore {
 
     /** Delete tiles within a range. */
     public boolean delete(TileRange trObj) throws StorageException {
+        return delete(trObj, TileDeletionProgress.NONE);
+    }
+
+    @Override
+    public boolean delete(TileRange trObj, TileDeletionProgress progress) throws StorageException {
         int count = 0;
+        boolean stopped = false;
 
         String prefix = path + File.separator + filteredLayerName(trObj.getLayerName());
 
@@ -415,15 +449,18 @@ public class FileBlobStore implements BlobStore {
         File[] srsZoomDirs = listFilesNullSafe(layerPath, tileFinder);
 
         final String gridsetPrefix = filteredGridSetId(gridSetId);
-        for (File srsZoomParamId : srsZoomDirs) {
+        for (int i = 0; i < srsZoomDirs.length && !stopped; i++) {
+            File srsZoomParamId = srsZoomDirs[i];
             int zoomLevel = findZoomLevel(gridsetPrefix, srsZoomParamId.getName());
             File[] intermediates = listFilesNullSafe(srsZoomParamId, tileFinder);
 
-            for (File imd : intermediates) {
+            for (int j = 0; j < intermediates.length && !stopped; j++) {
+                File imd = intermediates[j];
                 File[] tiles = listFilesNullSafe(imd, tileFinder);
                 long length;
 
-                for (File tile : tiles) {
+                for (int k = 0; k < tiles.length && !stopped; k++) {
+                    File tile = tiles[k];
                     length = tile.length();
                     boolean deleted = tile.delete();
                     if (deleted) {
@@ -440,6 +477,7 @@ public class FileBlobStore implements BlobStore {
                                 zoomLevel,
                                 padSize(length));
                         count++;
+                        stopped = !progress.tilesDeleted(1);
                     }
                 }
 
@@ -479,6 +517,77 @@ public class FileBlobStore implements BlobStore {
         }
     }
 
+    /**
+     * Reads the tiles into memory in parallel, so that retrieving many tiles costs about as much as
+     * retrieving one.
+     */
+    @Override
+    public boolean[] getAll(List<TileObject> objs) throws StorageException {
+        return lookUpAll(objs, this::readTile);
+    }
+
+    @Override
+    public boolean[] existsAll(List<TileObject> objs) throws StorageException {
+        return lookUpAll(objs, stObj -> Files.exists(getFileHandleTile(stObj, false).toPath()));
+    }
+
+    @FunctionalInterface
+    private static interface TileLookup {
+        boolean apply(TileObject stObj) throws StorageException;
+    }
+
+    private boolean[] lookUpAll(List<TileObject> objs, TileLookup lookup) throws StorageException {
+        boolean[] found = new boolean[objs.size()];
+        if (found.length == 1) {
+            found[0] = lookup.apply(objs.get(0));
+            return found;
+        }
+        ExecutorService executor = getReadExecutorService();
+        List<Future<Boolean>> lookups = new ArrayList<>(objs.size());
+        try {
+            for (TileObject stObj : objs) {
+                lookups.add(executor.submit(() -> lookup.apply(stObj)));
+            }
+            for (int i = 0; i < found.length; i++) {
+                found[i] = lookups.get(i).get();
+            }
+            return found;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StorageException("Interrupted while looking up " + objs.size() + " tiles");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof StorageException) {
+                throw (StorageException) cause;
+            }
+            throw new StorageException(cause.getMessage(), cause);
+        } finally {
+            for (Future<Boolean> pending : lookups) {
+                pending.cancel(false);
+            }
+        }
+    }
+
+    /** Reads the tile contents into memory, the file may be gone by the time it's read */
+    private boolean readTile(TileObject stObj) throws StorageException {
+        Path tilePath = getFileHandleTile(stObj, false).toPath();
+        try {
+            BasicFileAttributes attributes =
+                    Files.readAttributes(tilePath, BasicFileAttributes.class);
+            ByteArrayResource resource = new ByteArrayResource(Files.readAllBytes(tilePath));
+            resource.setLastModified(attributes.lastModifiedTime().toMillis());
+            stObj.setBlob(resource);
+            stObj.setCreated(resource.getLastModified());
+            stObj.setBlobSize((int) resource.getSize());
+            return true;
+        } catch (NoSuchFileException e) {
+            stObj.setStatus(Status.MISS);
+            return false;
+        } catch (IOException e) {
+            throw new StorageException(e.getMessage() + " for " + tilePath, e);
+        }
+    }
+
     /** Store a tile. */
     public void put(TileObject stObj) throws StorageException {
         final File fh = getFileHandleTile(stObj, true);
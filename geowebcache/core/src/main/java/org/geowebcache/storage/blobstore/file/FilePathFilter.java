@@ -72,7 +72,7 @@ public class FilePathFilter implements FilenameFilter {
             ret = acceptFileName(parent, fileName);
         } else if (!parent.getName().equals(layerPrefix)) {
             // not a sibling of the gridset prefix (e.g. another gridset), so an intermediate
-            ret = acceptIntermediateDir(fileName);
+            ret = acceptIntermediateDir(parent, fileName);
         }
 
         // System.out.println(ret + " " + name);
@@ -106,14 +106,29 @@ public class FilePathFilter implements FilenameFilter {
         }
     }
 
-    private boolean acceptIntermediateDir(String name) {
-        // if(bounds == null) {
-        // return true;
-        // }
-
-        // For now we'll do all of them,
-        // otherwise we have to extract zoomlevel from path
-        return true;
+    /**
+     * Example: 0_0, 01_02 (i.e. {@code <x / half>_<y / half>}, see {@link FilePathGenerator}).
+     * Skips the directories that cannot contain tiles in the range, so that truncating a small
+     * range does not have to list every tile of the zoom level.
+     */
+    private boolean acceptIntermediateDir(File parent, String name) {
+        if (tr.getZoomStart() == -1 && tr.getZoomStop() == -1) {
+            return true;
+        }
+        String[] halves = name.split("_");
+        if (halves.length != 2 || !parent.getName().startsWith(gridSetPrefix + "_")) {
+            return true;
+        }
+        try {
+            int zoomLevel = findZoomLevel(gridSetPrefix, parent.getName());
+            long half = 2L << (zoomLevel / 2);
+            long minx = Long.parseLong(halves[0]) * half;
+            long miny = Long.parseLong(halves[1]) * half;
+            return tr.intersects(minx, miny, minx + half - 1, miny + half - 1, zoomLevel);
+        } catch (RuntimeException e) {
+            // not something we know how to parse, let the tile file names decide
+            return true;
+        }
     }
 
     private boolean acceptFileName(File parent, String name) {
@@ -17,6 +17,8 @@ package org.geowebcache.storage.blobstore.memory;
 import java.io.IOException;
 import java.nio.channels.Channels;
 import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
@@ -272,6 +274,86 @@ public class MemoryBlobStore implements BlobStore, ApplicationContextAware {
         }
     }
 
+    @Override
+    public boolean[] getAll(List<TileObject> objs) throws StorageException {
+        componentsStateLock.lock();
+        try {
+            boolean[] found = new boolean[objs.size()];
+            List<Integer> missIndexes = new ArrayList<>();
+            List<TileObject> misses = lookUpCached(objs, found, missIndexes);
+            if (!misses.isEmpty()) {
+                // Look for the missing ones in the wrapped blobstore at once
+                boolean[] stored = executeBlobStoreLookup(() -> store.getAll(misses));
+                for (int i = 0; i < stored.length; i++) {
+                    if (stored[i]) {
+                        TileObject obj = misses.get(i);
+                        TileObject cached = getByteResourceTile(obj);
+                        cacheProvider.putTileObj(cached);
+                        Resource resource = cached.getBlob();
+                        obj.setBlob(resource);
+                        obj.setCreated(resource.getLastModified());
+                        obj.setBlobSize((int) resource.getSize());
+                        found[missIndexes.get(i)] = true;
+                    }
+                }
+            }
+            return found;
+        } finally {
+            componentsStateLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean[] existsAll(List<TileObject> objs) throws StorageException {
+        componentsStateLock.lock();
+        try {
+            boolean[] found = new boolean[objs.size()];
+            List<Integer> missIndexes = new ArrayList<>();
+            List<TileObject> misses = lookUpCached(objs, found, missIndexes);
+            if (!misses.isEmpty()) {
+                boolean[] stored = executeBlobStoreLookup(() -> store.existsAll(misses));
+                for (int i = 0; i < stored.length; i++) {
+                    found[missIndexes.get(i)] = stored[i];
+                }
+            }
+            return found;
+        } finally {
+            componentsStateLock.unlock();
+        }
+    }
+
+    /**
+     * Fills the tiles found in the cacheProvider, marking them as found
+     *
+     * @return the tiles not found, their indexes are added to missIndexes
+     */
+    private List<TileObject> lookUpCached(
+            List<TileObject> objs, boolean[] found, List<Integer> missIndexes) {
+        List<TileObject> misses = new ArrayList<>();
+        for (int i = 0; i < objs.size(); i++) {
+            TileObject obj = objs.get(i);
+            TileObject cached = cacheProvider.getTileObj(obj);
+            if (cached == null) {
+                missIndexes.add(i);
+                misses.add(obj);
+            } else {
+                Resource resource = cached.getBlob();
+                obj.setBlob(resource);
+                obj.setCreated(resource.getLastModified());
+                obj.setBlobSize((int) resource.getSize());
+                found[i] = true;
+            }
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(
+                    misses.size()
+                            + " of "
+                            + objs.size()
+                            + " TileObjects not found, try to get them from the wrapped blobstore");
+        }
+        return misses;
+    }
+
     @Override
     public void put(TileObject obj) throws StorageException {
         componentsStateLock.lock();
@@ -628,6 +710,22 @@ public class MemoryBlobStore implements BlobStore, ApplicationContextAware {
         return executed;
     }
 
+    /**
+     * Executes a lookup of several tiles on the wrapped {@link BlobStore} once the other scheduled
+     * tasks are done, none of the tiles is reported as found if it fails
+     */
+    private boolean[] executeBlobStoreLookup(Callable<boolean[]> lookup) {
+        Future<boolean[]> future = executorService.submit(lookup);
+        try {
+            return future.get();
+        } catch (InterruptedException | ExecutionException e) {
+            if (LOG.isErrorEnabled()) {
+                LOG.error(e.getMessage(), e);
+            }
+            return new boolean[0];
+        }
+    }
+
     /**
      * {@link Callable} implementation used for creating various tasks to submit to the {@link
      * MemoryBlobStore} executor service.
@@ -125,8 +125,8 @@ public final class ResponseUtils {
         long[] tileIndex = tile.getTileIndex();
         TileLayer layer = tile.getLayer();
         GridSubset gridSubset = layer.getGridSubset(tile.getGridSetId());
-        BoundingBox tileBounds = gridSubset.boundsFromIndex(tileIndex);
-        servletResp.setHeader("geowebcache-tile-bounds", tileBounds.toString());
+        double[] tileBounds = gridSubset.boundsFromIndex(tileIndex, new double[4]);
+        servletResp.setHeader("geowebcache-tile-bounds", BoundingBox.toString(tileBounds));
         servletResp.setHeader("geowebcache-gridset", gridSubset.getName());
         servletResp.setHeader("geowebcache-crs", gridSubset.getSRS().toString());
 
@@ -15,6 +15,7 @@
 package org.geowebcache;
 
 import static org.geowebcache.TestHelpers.hasStatus;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertThat;
 
 import java.util.Collections;
@@ -47,6 +48,30 @@ public class GeoWebCacheDispatcherTest {
 
     @Rule public MockExtensionRule extensions = new MockExtensionRule();
 
+    @Test
+    public void testParseRequest() throws Exception {
+        // same results as splitting the whole path
+        for (String path :
+                new String[] {
+                    "",
+                    "/",
+                    "/home",
+                    "/service/",
+                    "/service/wmts/rest/layer/EPSG:4326/EPSG:4326:0/0/0?format=image/png",
+                    "/service//wmts",
+                    "/service//",
+                    "//wmts",
+                    "service/wmts"
+                }) {
+            String[] split = path.split("/");
+            String[] expected =
+                    split.length < 2
+                            ? null
+                            : new String[] {split[1], split.length > 2 ? split[2] : null};
+            assertArrayEquals(path, expected, GeoWebCacheDispatcher.parseRequest(path));
+        }
+    }
+
     @Test
     public void testHomePage() throws Exception {
         IMocksControl stubs = EasyMock.createControl(MockType.NICE);
@@ -139,6 +139,31 @@ public class XMLConfigurationTest {
         }
     }
 
+    @Test
+    public void testModifyLayers() throws Exception {
+        config.addLayer(createTestLayer("testLayer1"));
+        config.addLayer(createTestLayer("testLayer2"));
+        int count = config.getLayerCount();
+
+        WMSLayer layer1 = createTestLayer("testLayer1");
+        WMSLayer layer2 = createTestLayer("testLayer2");
+        config.modifyLayers(Arrays.asList(layer1, layer2));
+
+        assertEquals(count, config.getLayerCount());
+        assertSame(layer1, config.getLayer("testLayer1").get());
+        assertSame(layer2, config.getLayer("testLayer2").get());
+
+        // a missing layer leaves the other ones untouched
+        try {
+            config.modifyLayers(
+                    Arrays.asList(createTestLayer("testLayer1"), createTestLayer("another")));
+            fail("Expected NoSuchElementException");
+        } catch (NoSuchElementException e) {
+            assertTrue(true);
+        }
+        assertSame(layer1, config.getLayer("testLayer1").get());
+    }
+
     @Test
     public void testRemoveLayer() {
 
@@ -156,6 +181,41 @@ public class XMLConfigurationTest {
         }
     }
 
+    @Test
+    public void testLayerFiles() throws Exception {
+        final int count = config.getLayerCount();
+        assertThat(count, greaterThan(0));
+
+        // the layers of geowebcache.xml are moved to their own files
+        XMLConfiguration config2 = new XMLConfiguration(null, configDir.getAbsolutePath());
+        config2.setLayerFiles(true);
+        config2.setGridSetBroker(gridSetBroker);
+        config2.afterPropertiesSet();
+        assertEquals(count, config2.getLayerCount());
+        File layerDir = new File(configDir, XMLConfiguration.LAYER_FILES_DIRECTORY);
+        assertEquals(count, layerDir.list().length);
+        String configContents = FileUtils.readFileToString(configFile, "UTF-8");
+        assertThat(configContents, not(containsString("<wmsLayer>")));
+
+        // changing a layer only touches its file
+        config2.addLayer(createTestLayer("test:layer"));
+        File layerFile = new File(layerDir, "test%3Alayer.xml");
+        assertTrue(layerFile.exists());
+        config2.modifyLayer(createTestLayer("test:layer"));
+        String removed = config2.getLayerNames().stream().findFirst().get();
+        config2.removeLayer(removed);
+        assertEquals(count, layerDir.list().length);
+        assertEquals(configContents, FileUtils.readFileToString(configFile, "UTF-8"));
+
+        XMLConfiguration config3 = new XMLConfiguration(null, configDir.getAbsolutePath());
+        config3.setLayerFiles(true);
+        config3.setGridSetBroker(gridSetBroker);
+        config3.afterPropertiesSet();
+        assertEquals(count, config3.getLayerCount());
+        assertThat(config3.getLayer("test:layer"), TestUtils.isPresent());
+        assertThat(config3.getLayer(removed), TestUtils.notPresent());
+    }
+
     @Test
     public void testTemplate() throws Exception {
         assertTrue(configFile.delete());
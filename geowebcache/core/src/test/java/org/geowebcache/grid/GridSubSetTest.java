@@ -1,11 +1,17 @@
 package org.geowebcache.grid;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.util.Collections;
 import java.util.Hashtable;
 import java.util.List;
+import java.util.NoSuchElementException;
 import org.geowebcache.GeoWebCacheException;
 import org.geowebcache.layer.wms.WMSLayer;
 import org.geowebcache.util.MockLockProvider;
@@ -33,6 +39,69 @@ public class GridSubSetTest {
         assertNotNull(result);
     }
 
+    @Test
+    public void testCoverageTable() throws IOException, GeoWebCacheException {
+        GridSubset gridSubSet =
+                GridSubsetFactory.createGridSubSet(
+                        new GridSetBroker(false, false).getWorldEpsg4326(),
+                        new BoundingBox(-30.0, 15.0, 45.0, 30),
+                        5,
+                        10,
+                        null,
+                        null);
+        assertEquals(5, gridSubSet.getZoomStart());
+        assertEquals(10, gridSubSet.getZoomStop());
+
+        long[] coverage = gridSubSet.getCoverage(7);
+        assertNull(gridSubSet.getCoverage(4));
+        assertNull(gridSubSet.getCoverage(11));
+        assertEquals(7, coverage[4]);
+
+        assertTrue(gridSubSet.covers(new long[] {coverage[0], coverage[1], 7}));
+        assertFalse(gridSubSet.covers(new long[] {coverage[2] + 1, coverage[1], 7}));
+        assertFalse(gridSubSet.covers(new long[] {coverage[0], coverage[1], 11}));
+    }
+
+    @Test
+    public void testGeometryTable() {
+        GridSetBroker broker = new GridSetBroker(false, false);
+        GridSet[] gridSets = {broker.getWorldEpsg4326(), broker.getWorldEpsg3857()};
+        for (GridSet gridSet : gridSets) {
+            GridSubset gridSubSet =
+                    GridSubsetFactory.createGridSubSet(
+                            gridSet, new BoundingBox(-30.0, 15.0, 45.0, 30), 5, 10, null, null);
+
+            long[] coverage = new long[5];
+            assertTrue(gridSubSet.getCoverage(7, coverage));
+            assertArrayEquals(gridSubSet.getCoverage(7), coverage);
+            assertFalse(gridSubSet.getCoverage(11, coverage));
+
+            long[] index = {coverage[0], coverage[3], 7};
+            double[] bounds = gridSubSet.boundsFromIndex(index, new double[4]);
+            assertArrayEquals(gridSet.boundsFromIndex(index, new double[4]), bounds, 0d);
+            assertTrue(gridSubSet.boundsFromIndex(index).equals(bounds, 1e-9));
+
+            gridSubSet.getCoverage(7, coverage);
+            bounds = gridSubSet.boundsFromRectangle(coverage, bounds);
+            assertTrue(gridSubSet.boundsFromRectangle(coverage).equals(bounds, 1e-9));
+            assertEquals(gridSubSet.getCoverageBounds(7), gridSubSet.boundsFromRectangle(coverage));
+
+            assertEquals(gridSet.getGrid(7).getNumTilesWide(), gridSubSet.getNumTilesWide(7));
+            assertEquals(gridSet.getGrid(7).getNumTilesHigh(), gridSubSet.getNumTilesHigh(7));
+        }
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void testEmptyCoverageZoomStart() {
+        GridSubset gridSubSet =
+                new GridSubset(
+                        new GridSetBroker(false, false).getWorldEpsg4326(),
+                        Collections.emptyMap(),
+                        null,
+                        false);
+        gridSubSet.getZoomStart();
+    }
+
     /**
      * Creation of a PNG test Layer with a non-zero zoomStart parameter for the test.
      *
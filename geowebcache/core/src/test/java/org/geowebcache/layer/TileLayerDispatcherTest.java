@@ -15,18 +15,34 @@
 package org.geowebcache.layer;
 
 import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import org.geowebcache.GeoWebCacheException;
 import org.geowebcache.config.GWCConfigIntegrationTest;
 import org.geowebcache.config.GWCConfigIntegrationTestData;
+import org.geowebcache.config.TileLayerConfiguration;
+import org.geowebcache.config.TileLayerConfigurationListener;
 import org.geowebcache.grid.BoundingBox;
 import org.geowebcache.grid.GridSet;
 import org.geowebcache.grid.GridSetFactory;
 import org.geowebcache.grid.SRS;
 import org.geowebcache.layer.wms.WMSLayer;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationContext;
 
 public class TileLayerDispatcherTest extends GWCConfigIntegrationTest {
 
@@ -68,6 +84,55 @@ public class TileLayerDispatcherTest extends GWCConfigIntegrationTest {
         assertEquals(layer, tileLayerDispatcher.getTileLayer(layerName));
     }
 
+    @Test
+    public void testAddLayers() throws GeoWebCacheException {
+        List<TileLayer> layers = new ArrayList<>();
+        for (String name : Arrays.asList("newLayer1", "newLayer2")) {
+            layers.add(
+                    new WMSLayer(
+                            name,
+                            new String[] {"http://example.com/"},
+                            null,
+                            null,
+                            null,
+                            null,
+                            null,
+                            null,
+                            null,
+                            false,
+                            null));
+        }
+
+        tileLayerDispatcher.addLayers(layers);
+
+        assertEquals(layers.get(0), tileLayerDispatcher.getTileLayer("newLayer1"));
+        assertEquals(layers.get(1), tileLayerDispatcher.getTileLayer("newLayer2"));
+
+        // a duplicate fails the whole batch
+        TileLayer existing =
+                tileLayerDispatcher.getTileLayer(GWCConfigIntegrationTestData.LAYER_TOPP_STATES);
+        WMSLayer other =
+                new WMSLayer(
+                        "newLayer3",
+                        new String[] {"http://example.com/"},
+                        null,
+                        null,
+                        null,
+                        null,
+                        null,
+                        null,
+                        null,
+                        false,
+                        null);
+        try {
+            tileLayerDispatcher.addLayers(Arrays.asList(other, existing));
+            fail("Expected error when adding a layer that already exists");
+        } catch (IllegalArgumentException e) {
+
+        }
+        assertFalse(tileLayerDispatcher.layerExists("newLayer3"));
+    }
+
     @Test
     public void testAddBadLayer() throws GeoWebCacheException {
         String duplicateLayerName = GWCConfigIntegrationTestData.LAYER_TOPP_STATES;
@@ -125,6 +190,24 @@ public class TileLayerDispatcherTest extends GWCConfigIntegrationTest {
         }
     }
 
+    @Test
+    public void testLayerChangedOutsideDispatcher() throws GeoWebCacheException {
+        String layerName = GWCConfigIntegrationTestData.LAYER_TOPP_STATES;
+        TileLayer layer = tileLayerDispatcher.getTileLayer(layerName);
+        TileLayerConfiguration config = tileLayerDispatcher.getConfiguration(layerName);
+
+        // the configuration the layer was found in is changed directly
+        config.removeLayer(layerName);
+        assertFalse(tileLayerDispatcher.layerExists(layerName));
+
+        config.addLayer(layer);
+        assertTrue(tileLayerDispatcher.layerExists(layerName));
+        assertEquals(layer, tileLayerDispatcher.getTileLayer(layerName));
+
+        tileLayerDispatcher.removeLayer(layerName);
+        assertFalse(tileLayerDispatcher.layerExists(layerName));
+    }
+
     @Test
     public void testRemoveLayerException() {
         try {
@@ -259,4 +342,69 @@ public class TileLayerDispatcherTest extends GWCConfigIntegrationTest {
                 "Expected failure removing nonexistant gridset",
                 tileLayerDispatcher.removeGridset("nonexistantGridset"));
     }
+
+    private static TileLayer mockLayer(String name) {
+        TileLayer layer = mock(TileLayer.class);
+        when(layer.getName()).thenReturn(name);
+        return layer;
+    }
+
+    private static void setLayer(TileLayerConfiguration config, String name, TileLayer layer) {
+        when(config.getLayer(name)).thenReturn(Optional.ofNullable(layer));
+        when(config.containsLayer(name)).thenReturn(layer != null);
+    }
+
+    @Test
+    public void testHigherPriorityConfiguration() throws GeoWebCacheException {
+        TileLayerConfiguration first = mock(TileLayerConfiguration.class);
+        TileLayerConfiguration second = mock(TileLayerConfiguration.class);
+        TileLayer layer = mockLayer("layer");
+        setLayer(first, "layer", null);
+        setLayer(second, "layer", layer);
+        TileLayerDispatcher dispatcher =
+                new TileLayerDispatcher(gridSetBroker, Arrays.asList(first, second));
+        assertSame(layer, dispatcher.getTileLayer("layer"));
+        assertSame(second, dispatcher.getConfiguration("layer"));
+
+        // the configurations do not report their changes, the first one now hides the second
+        TileLayer hiding = mockLayer("layer");
+        setLayer(first, "layer", hiding);
+        assertSame(hiding, dispatcher.getTileLayer("layer"));
+        assertSame(first, dispatcher.getConfiguration("layer"));
+    }
+
+    @Test
+    public void testSnapshotFollowsReportedChanges() throws Exception {
+        TileLayerConfiguration config = mock(TileLayerConfiguration.class);
+        ArgumentCaptor<TileLayerConfigurationListener> listener =
+                ArgumentCaptor.forClass(TileLayerConfigurationListener.class);
+        when(config.addLayerListener(listener.capture())).thenReturn(true);
+        TileLayer layer1 = mockLayer("layer1");
+        TileLayer layer2 = mockLayer("layer2");
+        doReturn(Collections.singletonList(layer1)).when(config).getLayers();
+
+        Map<String, TileLayerConfiguration> beans = new LinkedHashMap<>();
+        beans.put("config", config);
+        ApplicationContext context = mock(ApplicationContext.class);
+        when(context.getBeansOfType(TileLayerConfiguration.class)).thenReturn(beans);
+        when(context.getBean("config")).thenReturn(config);
+        TileLayerDispatcher dispatcher = new TileLayerDispatcher(gridSetBroker);
+        dispatcher.setApplicationContext(context);
+        dispatcher.afterPropertiesSet();
+
+        List<TileLayer> snapshot = dispatcher.getLayerSnapshot();
+        assertEquals(Collections.singletonList(layer1), snapshot);
+        assertSame(snapshot, dispatcher.getLayerSnapshot());
+        assertEquals(Collections.singleton("layer1"), dispatcher.getLayerNames());
+
+        // the configuration reports the change
+        doReturn(Arrays.asList(layer1, layer2)).when(config).getLayers();
+        listener.getValue().handleAddLayer(layer2);
+        assertEquals(Arrays.asList(layer1, layer2), dispatcher.getLayerSnapshot());
+        assertEquals(2, dispatcher.getLayerCount());
+        assertTrue(dispatcher.getLayerNames().contains("layer2"));
+
+        dispatcher.destroy();
+        verify(config).removeLayerListener(any(TileLayerConfigurationListener.class));
+    }
 }
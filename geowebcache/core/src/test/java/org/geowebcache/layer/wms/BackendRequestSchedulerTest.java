@@ -0,0 +1,141 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.layer.wms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.geowebcache.layer.wms.BackendRequestScheduler.RequestClass;
+import org.junit.Test;
+
+public class BackendRequestSchedulerTest {
+
+    @Test
+    public void testUnbounded() throws Exception {
+        BackendRequestScheduler scheduler = new BackendRequestScheduler(0, 8, 1);
+        for (int i = 0; i < 100; i++) {
+            scheduler.acquire(RequestClass.SEED);
+        }
+        assertEquals(100, scheduler.getActiveCount());
+        assertEquals(100, scheduler.getRequestCount(RequestClass.SEED));
+        assertEquals(0, scheduler.getRequestCount(RequestClass.INTERACTIVE));
+        for (int i = 0; i < 100; i++) {
+            scheduler.release();
+        }
+        assertEquals(0, scheduler.getActiveCount());
+    }
+
+    @Test
+    public void testWeightedOrder() throws Exception {
+        final BackendRequestScheduler scheduler = new BackendRequestScheduler(1, 2, 1);
+        final List<String> order = Collections.synchronizedList(new ArrayList<>());
+
+        // hold the only slot so that everybody else queues up
+        scheduler.acquire(RequestClass.SEED);
+
+        List<Thread> threads = new ArrayList<>();
+        threads.add(start(scheduler, RequestClass.SEED, "S1", order));
+        awaitQueued(scheduler, RequestClass.SEED, 1);
+        threads.add(start(scheduler, RequestClass.SEED, "S2", order));
+        awaitQueued(scheduler, RequestClass.SEED, 2);
+        threads.add(start(scheduler, RequestClass.INTERACTIVE, "I1", order));
+        awaitQueued(scheduler, RequestClass.INTERACTIVE, 1);
+        threads.add(start(scheduler, RequestClass.INTERACTIVE, "I2", order));
+        awaitQueued(scheduler, RequestClass.INTERACTIVE, 2);
+        threads.add(start(scheduler, RequestClass.INTERACTIVE, "I3", order));
+        awaitQueued(scheduler, RequestClass.INTERACTIVE, 3);
+
+        scheduler.release();
+        for (Thread t : threads) {
+            t.join(10000);
+        }
+
+        // interactive requests overtake the seeding ones, two for each seed request
+        assertEquals(Arrays.asList("I1", "I2", "S1", "I3", "S2"), order);
+        assertEquals(0, scheduler.getActiveCount());
+        assertEquals(3, scheduler.getRequestCount(RequestClass.INTERACTIVE));
+        assertEquals(3, scheduler.getRequestCount(RequestClass.SEED));
+        assertTrue(scheduler.getMaxWaitMillis(RequestClass.SEED) >= 0);
+    }
+
+    @Test
+    public void testInterruptedWhileQueued() throws Exception {
+        final BackendRequestScheduler scheduler = new BackendRequestScheduler(1, 8, 1);
+        scheduler.acquire(RequestClass.INTERACTIVE);
+
+        final boolean[] interrupted = new boolean[1];
+        Thread t =
+                new Thread(
+                        () -> {
+                            try {
+                                scheduler.acquire(RequestClass.SEED);
+                                scheduler.release();
+                            } catch (InterruptedException e) {
+                                interrupted[0] = true;
+                            }
+                        });
+        t.start();
+        awaitQueued(scheduler, RequestClass.SEED, 1);
+        t.interrupt();
+        t.join(10000);
+
+        assertTrue(interrupted[0]);
+        assertEquals(0, scheduler.getQueuedCount(RequestClass.SEED));
+        assertEquals(1, scheduler.getActiveCount());
+        scheduler.release();
+        assertEquals(0, scheduler.getActiveCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidWeights() {
+        new BackendRequestScheduler(1, 0, 1);
+    }
+
+    private Thread start(
+            BackendRequestScheduler scheduler,
+            RequestClass requestClass,
+            String id,
+            List<String> order) {
+        Thread t =
+                new Thread(
+                        () -> {
+                            try {
+                                scheduler.acquire(requestClass);
+                                order.add(id);
+                                scheduler.release();
+                            } catch (InterruptedException e) {
+                                fail("Unexpected interruption");
+                            }
+                        });
+        t.start();
+        return t;
+    }
+
+    private void awaitQueued(BackendRequestScheduler scheduler, RequestClass rc, int count)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (scheduler.getQueuedCount(rc) < count) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Timed out waiting for " + count + " queued " + rc + " requests");
+            }
+            Thread.sleep(5);
+        }
+    }
+}
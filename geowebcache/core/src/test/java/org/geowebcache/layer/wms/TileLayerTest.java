@@ -5,7 +5,10 @@ import static org.hamcrest.Matchers.equalToIgnoringCase;
 import static org.hamcrest.Matchers.hasEntry;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
 import java.util.Collection;
@@ -13,7 +16,9 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import org.geowebcache.filter.parameters.CanonicalParameters;
 import org.geowebcache.filter.parameters.ParameterFilter;
+import org.geowebcache.filter.parameters.ParametersUtils;
 import org.geowebcache.filter.parameters.StringParameterFilter;
 import org.geowebcache.layer.TileLayer;
 import org.junit.Test;
@@ -61,6 +66,36 @@ public abstract class TileLayerTest {
         assertThat(result, not(hasEntry(equalToIgnoringCase("FILTER4"), notNullValue())));
     }
 
+    @Test
+    public void testGetModifiableParametersInterned() throws Exception {
+        List<ParameterFilter> filters = new LinkedList<>();
+        StringParameterFilter filter = new StringParameterFilter();
+        filter.setKey("FILTER1");
+        filter.setValues(Arrays.asList("foo", "bar"));
+        filters.add(filter);
+
+        TileLayer layer = getLayerWithFilters(filters);
+
+        Map<String, Object> rawParams = new HashMap<>();
+        rawParams.put("filter1", new String[] {"bar"});
+        Map<String, String> first = layer.getModifiableParameters(rawParams, "UTF-8");
+        rawParams = new HashMap<>();
+        rawParams.put("Filter1", "bar");
+        rawParams.put("OTHER", "value");
+        Map<String, String> second = layer.getModifiableParameters(rawParams, "UTF-8");
+
+        // the same combination is resolved to the same set, with its id already computed
+        assertThat(second, sameInstance(first));
+        assertTrue(first instanceof CanonicalParameters);
+        assertEquals(
+                ParametersUtils.buildKey(ParametersUtils.getLegacyParametersKvp(first)),
+                ParametersUtils.getId(first));
+
+        rawParams.put("Filter1", "foo");
+        Map<String, String> other = layer.getModifiableParameters(rawParams, "UTF-8");
+        assertThat(other, hasEntry(equalToIgnoringCase("FILTER1"), equalTo("foo")));
+    }
+
     protected abstract TileLayer getLayerWithFilters(Collection<ParameterFilter> filters)
             throws Exception;
 }
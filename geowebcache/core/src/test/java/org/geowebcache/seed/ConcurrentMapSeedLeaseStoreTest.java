@@ -0,0 +1,180 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.seed;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.geowebcache.mime.ImageMime;
+import org.geowebcache.seed.GWCTask.TYPE;
+import org.geowebcache.storage.TileRange;
+import org.junit.Test;
+
+public class ConcurrentMapSeedLeaseStoreTest {
+
+    private TileRange range(long[]... bounds) {
+        return new TileRange(
+                "layer",
+                "EPSG:4326",
+                (int) bounds[0][4],
+                (int) bounds[bounds.length - 1][4],
+                bounds,
+                ImageMime.png,
+                Collections.<String, String>emptyMap());
+    }
+
+    @Test
+    public void testSplitAlignsToMetaTiles() throws Exception {
+        // 10 columns, 9 rows, meta tiling 3x3 and ~20 tiles per chunk
+        TileRange tr = range(new long[] {0, 0, 9, 8, 5});
+        DistributedSeedJob job =
+                DistributedSeedJob.create("job", tr, TYPE.SEED, 1, new int[] {3, 3}, 20);
+
+        // 20 tiles / 10 columns = 2 rows, rounded up to one meta tile row
+        assertEquals(3, job.getChunkCount());
+        assertArrayEquals(new long[] {0, 0, 9, 2, 5}, job.getChunkBounds(0));
+        assertArrayEquals(new long[] {0, 3, 9, 5, 5}, job.getChunkBounds(1));
+        assertArrayEquals(new long[] {0, 6, 9, 8, 5}, job.getChunkBounds(2));
+        assertEquals(90, job.getTilesTotal());
+
+        TileRange chunk = job.getChunkRange(1);
+        assertEquals(5, chunk.getZoomStart());
+        assertEquals(5, chunk.getZoomStop());
+        assertArrayEquals(new long[] {0, 3, 9, 5, 5}, chunk.rangeBounds(5));
+        assertEquals(ImageMime.png, chunk.getMimeType());
+    }
+
+    @Test
+    public void testChunksAcrossLevels() throws Exception {
+        // 4 rows at level 2, 1 row at level 3, 7 rows at level 4, 2 rows per chunk
+        TileRange tr =
+                range(
+                        new long[] {0, 0, 1, 3, 2},
+                        new long[] {0, 5, 1, 5, 3},
+                        new long[] {0, 1, 1, 7, 4});
+        DistributedSeedJob job =
+                DistributedSeedJob.create("job", tr, TYPE.SEED, 1, new int[] {1, 1}, 4);
+
+        assertEquals(2 + 1 + 4, job.getChunkCount());
+        assertEquals(8 + 2 + 14, job.getTilesTotal());
+        assertArrayEquals(new long[] {0, 2, 1, 3, 2}, job.getChunkBounds(1));
+        assertArrayEquals(new long[] {0, 5, 1, 5, 3}, job.getChunkBounds(2));
+        assertArrayEquals(new long[] {0, 1, 1, 2, 4}, job.getChunkBounds(3));
+        assertArrayEquals(new long[] {0, 7, 1, 7, 4}, job.getChunkBounds(6));
+        assertEquals(2, job.getChunkTiles(6));
+    }
+
+    @Test
+    public void testLargeJobIsNotMaterialized() throws Exception {
+        ConcurrentMapSeedLeaseStore store = new ConcurrentMapSeedLeaseStore();
+        // ten million single tile chunks
+        DistributedSeedJob job =
+                DistributedSeedJob.create(
+                        "job",
+                        range(new long[] {0, 0, 0, 9_999_999, 20}),
+                        TYPE.SEED,
+                        1,
+                        new int[] {1, 1},
+                        1);
+        assertEquals(10_000_000, job.getChunkCount());
+        assertArrayEquals(
+                new long[] {0, 9_999_999, 0, 9_999_999, 20}, job.getChunkBounds(9_999_999));
+        store.createJob(job);
+
+        SeedLease first = store.acquire("job", "node", 60000);
+        SeedLease second = store.acquire("job", "node", 60000);
+        assertEquals(0, first.getChunk());
+        assertEquals(1, second.getChunk());
+        assertTrue(store.complete(first, 1));
+
+        DistributedSeedProgress progress = store.getProgress("job");
+        assertEquals(1, progress.getChunksDone());
+        assertEquals(1, progress.getChunksLeased());
+        assertEquals(1, progress.getTilesDone());
+        assertFalse(progress.isFinished());
+        assertEquals(0, store.removeFinishedJobs(0));
+        assertNotNull(store.getJob("job"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTruncateNotDistributable() {
+        DistributedSeedJob.create(
+                "job", range(new long[] {0, 0, 1, 1, 0}), TYPE.TRUNCATE, 1, new int[] {1, 1}, 1);
+    }
+
+    @Test
+    public void testConcurrentLeasesAreExclusive() throws Exception {
+        final ConcurrentMapSeedLeaseStore store = new ConcurrentMapSeedLeaseStore();
+        DistributedSeedJob job =
+                DistributedSeedJob.create(
+                        "job",
+                        range(new long[] {0, 0, 0, 199, 3}),
+                        TYPE.SEED,
+                        1,
+                        new int[] {1, 1},
+                        1);
+        assertEquals(200, job.getChunkCount());
+        store.createJob(job);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<List<Integer>>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                final String node = "node" + i;
+                futures.add(
+                        executor.submit(
+                                (Callable<List<Integer>>)
+                                        () -> {
+                                            List<Integer> chunks = new ArrayList<>();
+                                            SeedLease lease;
+                                            while ((lease = store.acquire("job", node, 60000))
+                                                    != null) {
+                                                chunks.add(lease.getChunk());
+                                                assertTrue(store.complete(lease, 1));
+                                            }
+                                            return chunks;
+                                        }));
+            }
+            Set<Integer> seen = new HashSet<>();
+            int total = 0;
+            for (Future<List<Integer>> f : futures) {
+                List<Integer> chunks = f.get();
+                total += chunks.size();
+                seen.addAll(chunks);
+            }
+            assertEquals(200, total);
+            assertEquals(200, seen.size());
+        } finally {
+            executor.shutdown();
+        }
+
+        DistributedSeedProgress progress = store.getProgress("job");
+        assertTrue(progress.isFinished());
+        assertEquals(200, progress.getTilesDone());
+        assertEquals(0, progress.getChunksPending());
+    }
+}
@@ -0,0 +1,292 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.seed;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import org.easymock.EasyMock;
+import org.geowebcache.layer.TileLayer;
+import org.geowebcache.mime.ImageMime;
+import org.geowebcache.seed.GWCTask.TYPE;
+import org.geowebcache.storage.TileRange;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DistributedSeedCoordinatorTest {
+
+    private long now = 0;
+
+    private ConcurrentMapSeedLeaseStore store;
+
+    private TileLayer layer;
+
+    @Before
+    public void setUp() {
+        store =
+                new ConcurrentMapSeedLeaseStore() {
+                    @Override
+                    protected long currentTimeMillis() {
+                        return now;
+                    }
+                };
+        layer = EasyMock.createNiceMock(TileLayer.class);
+        EasyMock.expect(layer.getName()).andReturn("layer").anyTimes();
+        EasyMock.replay(layer);
+    }
+
+    /** A breeder recording the dispatched tasks and the seeded chunks instead of seeding */
+    private class RecordingBreeder extends TileBreeder {
+
+        final List<GWCTask> dispatched = new CopyOnWriteArrayList<>();
+
+        final Queue<ChunkTask> chunkTasks = new ConcurrentLinkedQueue<>();
+
+        Consumer<ChunkTask> onChunk;
+
+        @Override
+        public TileLayer findTileLayer(String layerName) {
+            return layer;
+        }
+
+        @Override
+        public GWCTask[] createTasks(
+                TileRange tr, TileLayer tl, TYPE type, int threadCount, boolean filterUpdate) {
+            ChunkTask task = new ChunkTask(this, tr);
+            chunkTasks.add(task);
+            return new GWCTask[] {task};
+        }
+
+        @Override
+        public void dispatchTasks(GWCTask[] tasks) {
+            dispatched.addAll(Arrays.asList(tasks));
+        }
+    }
+
+    private static class ChunkTask extends GWCTask {
+
+        final RecordingBreeder breeder;
+
+        final long[] bounds;
+
+        ChunkTask(RecordingBreeder breeder, TileRange range) {
+            this.breeder = breeder;
+            this.bounds = range.rangeBounds(range.getZoomStart());
+        }
+
+        @Override
+        protected void doActionInternal() {
+            if (breeder.onChunk != null) {
+                breeder.onChunk.accept(this);
+            }
+        }
+
+        boolean isTerminated() {
+            return terminate;
+        }
+
+        @Override
+        protected void dispose() {}
+    }
+
+    private DistributedSeedJob createJob(int rows, int threadCount) {
+        TileRange tr =
+                new TileRange(
+                        "layer",
+                        "EPSG:4326",
+                        3,
+                        3,
+                        new long[][] {{0, 0, 0, rows - 1, 3}},
+                        ImageMime.png,
+                        Collections.<String, String>emptyMap());
+        // one tile per chunk
+        DistributedSeedJob job =
+                DistributedSeedJob.create("job", tr, TYPE.SEED, threadCount, new int[] {1, 1}, 1);
+        store.createJob(job);
+        return job;
+    }
+
+    private DistributedSeedCoordinator coordinator(RecordingBreeder breeder, String nodeId) {
+        DistributedSeedCoordinator coordinator = new DistributedSeedCoordinator(breeder, store);
+        coordinator.setNodeId(nodeId);
+        coordinator.setPollIntervalMillis(10);
+        return coordinator;
+    }
+
+    private static Set<Long> seededRows(RecordingBreeder... breeders) {
+        Set<Long> rows = new HashSet<>();
+        for (RecordingBreeder breeder : breeders) {
+            for (ChunkTask task : breeder.chunkTasks) {
+                assertTrue("row seeded twice: " + task.bounds[1], rows.add(task.bounds[1]));
+            }
+        }
+        return rows;
+    }
+
+    @Test
+    public void testNodesShareChunks() throws Exception {
+        createJob(20, 2);
+        RecordingBreeder breeder1 = new RecordingBreeder();
+        RecordingBreeder breeder2 = new RecordingBreeder();
+        DistributedSeedCoordinator node1 = coordinator(breeder1, "node1");
+        DistributedSeedCoordinator node2 = coordinator(breeder2, "node2");
+
+        node1.poll();
+        node2.poll();
+        assertEquals(2, breeder1.dispatched.size());
+        assertEquals(2, breeder2.dispatched.size());
+
+        List<GWCTask> tasks = new ArrayList<>(breeder1.dispatched);
+        tasks.addAll(breeder2.dispatched);
+        ExecutorService executor = Executors.newFixedThreadPool(tasks.size());
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (GWCTask task : tasks) {
+                futures.add(
+                        executor.submit(
+                                () -> {
+                                    task.doAction();
+                                    return null;
+                                }));
+            }
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(20, seededRows(breeder1, breeder2).size());
+        for (GWCTask task : tasks) {
+            assertEquals(GWCTask.STATE.DONE, task.getState());
+        }
+        DistributedSeedProgress progress = store.getProgress("job");
+        assertTrue(progress.isFinished());
+        assertEquals(20, progress.getTilesDone());
+        long byNode = 0;
+        for (Long tiles : progress.getTilesDoneByNode().values()) {
+            byNode += tiles;
+        }
+        assertEquals(20, byNode);
+
+        // a finished job is not joined again
+        node1.poll();
+        assertEquals(2, breeder1.dispatched.size());
+    }
+
+    @Test
+    public void testExpiredLeaseIsTakenOver() throws Exception {
+        createJob(2, 1);
+        SeedLease stale = store.acquire("job", "dead", 1000);
+        assertEquals(0, stale.getChunk());
+
+        RecordingBreeder breeder = new RecordingBreeder();
+        DistributedSeedCoordinator node1 = coordinator(breeder, "node1");
+        node1.poll();
+        assertEquals(1, breeder.dispatched.size());
+
+        // the dead node lease expires, the surviving node seeds both chunks
+        now = 2000;
+        breeder.dispatched.get(0).doAction();
+        assertEquals(new HashSet<>(Arrays.asList(0L, 1L)), seededRows(breeder));
+        assertFalse(store.complete(stale, 1));
+        assertFalse(store.renew(stale, 1000));
+
+        DistributedSeedProgress progress = store.getProgress("job");
+        assertTrue(progress.isFinished());
+        assertEquals(Collections.singletonMap("node1", 2L), progress.getTilesDoneByNode());
+    }
+
+    @Test
+    public void testLostLeaseStopsChunk() throws Exception {
+        createJob(1, 1);
+        RecordingBreeder breeder = new RecordingBreeder();
+        DistributedSeedCoordinator node1 = coordinator(breeder, "node1");
+        breeder.onChunk =
+                task -> {
+                    // the lease expires while seeding and another node takes the chunk over
+                    now += node1.getLeaseDurationMillis() + 1;
+                    SeedLease other = store.acquire("job", "node2", 1000);
+                    assertEquals(0, other.getChunk());
+                    node1.heartbeat();
+                    assertTrue(task.isTerminated());
+                    assertTrue(store.complete(other, 1));
+                };
+        node1.poll();
+        GWCTask task = breeder.dispatched.get(0);
+        task.doAction();
+
+        assertEquals(GWCTask.STATE.DONE, task.getState());
+        assertEquals(0, task.getTilesDone());
+        Map<String, Long> byNode = store.getProgress("job").getTilesDoneByNode();
+        assertEquals(Collections.singletonMap("node2", 1L), byNode);
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        createJob(4, 1);
+        RecordingBreeder breeder = new RecordingBreeder();
+        DistributedSeedCoordinator node1 = coordinator(breeder, "node1");
+        node1.poll();
+
+        assertTrue(node1.cancel("job"));
+        assertNull(store.getJob("job"));
+        assertNull(node1.getProgress("job"));
+        assertFalse(node1.cancel("job"));
+
+        // the local task stops without leasing anything
+        GWCTask task = breeder.dispatched.get(0);
+        task.doAction();
+        assertEquals(GWCTask.STATE.DONE, task.getState());
+        assertTrue(breeder.chunkTasks.isEmpty());
+    }
+
+    @Test
+    public void testFinishedJobsAreRemoved() throws Exception {
+        createJob(1, 1);
+        RecordingBreeder breeder = new RecordingBreeder();
+        DistributedSeedCoordinator node1 = coordinator(breeder, "node1");
+        node1.setFinishedJobRetentionMillis(1000);
+        node1.poll();
+        now = 100;
+        breeder.dispatched.get(0).doAction();
+        assertTrue(node1.getProgress("job").isFinished());
+
+        // still reported until the retention period is over
+        now = 1099;
+        node1.poll();
+        assertTrue(node1.getProgress("job").isFinished());
+        now = 1100;
+        node1.poll();
+        assertNull(node1.getProgress("job"));
+        assertTrue(node1.getProgress().isEmpty());
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.seed;
+
+import static org.easymock.EasyMock.capture;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import org.easymock.Capture;
+import org.geowebcache.layer.TileLayer;
+import org.geowebcache.mime.ImageMime;
+import org.geowebcache.storage.StorageBroker;
+import org.geowebcache.storage.TileDeletionProgress;
+import org.geowebcache.storage.TileRange;
+import org.junit.Test;
+
+public class TruncateTaskTest {
+
+    private static TileRange range() {
+        long[][] bounds = {{0, 0, 9, 9, 3}, {0, 0, 19, 4, 4}};
+        return new TileRange(
+                "layer", "EPSG:4326", 3, 4, bounds, ImageMime.png, Collections.emptyMap(), "abc");
+    }
+
+    private static TileLayer layer() {
+        TileLayer tl = createMock(TileLayer.class);
+        expect(tl.getName()).andStubReturn("layer");
+        replay(tl);
+        return tl;
+    }
+
+    /** Mocks a storage broker whose range deletion reports the given batches of deleted tiles */
+    private static StorageBroker storageBroker(TileRange tr, long... batches) throws Exception {
+        StorageBroker sb = createMock(StorageBroker.class);
+        Capture<TileDeletionProgress> progress = new Capture<>();
+        expect(sb.delete(eq(tr), capture(progress)))
+                .andAnswer(
+                        () -> {
+                            for (long tiles : batches) {
+                                if (!progress.getValue().tilesDeleted(tiles)) {
+                                    break;
+                                }
+                            }
+                            return true;
+                        })
+                .once();
+        replay(sb);
+        return sb;
+    }
+
+    @Test
+    public void testCountDeletedTiles() throws Exception {
+        TileRange tr = range();
+        StorageBroker sb = storageBroker(tr, 1, 1, 0, 3, 20);
+
+        TruncateTask task = new TruncateTask(sb, tr, layer(), false);
+        task.setThrottling(10, 0);
+        task.doAction();
+
+        // a single pass over the store, counting the tiles that were actually there
+        verify(sb);
+        assertEquals(GWCTask.STATE.DONE, task.getState());
+        assertEquals(25, task.getTilesDone());
+        assertEquals(25, task.getTilesTotal());
+    }
+
+    @Test
+    public void testDefaultBatchSize() throws Exception {
+        TileRange tr = range();
+        AtomicReference<TruncateTask> task = new AtomicReference<>();
+        StorageBroker sb = createMock(StorageBroker.class);
+        Capture<TileDeletionProgress> progress = new Capture<>();
+        List<Long> reported = new ArrayList<>();
+        expect(sb.delete(eq(tr), capture(progress)))
+                .andAnswer(
+                        () -> {
+                            for (int i = 0; i < 2500; i++) {
+                                progress.getValue().tilesDeleted(1);
+                                reported.add(task.get().getTilesDone());
+                            }
+                            return true;
+                        })
+                .once();
+        replay(sb);
+
+        // tracked even without any throttling configured
+        task.set(new TruncateTask(sb, tr, layer(), false));
+        task.get().doAction();
+
+        verify(sb);
+        assertEquals(0, (long) reported.get(TruncateTask.DEFAULT_BATCH_SIZE - 2));
+        assertEquals(1000, (long) reported.get(TruncateTask.DEFAULT_BATCH_SIZE - 1));
+        assertEquals(2000, (long) reported.get(reported.size() - 1));
+        assertEquals(2500, task.get().getTilesDone());
+    }
+
+    @Test
+    public void testTerminate() throws Exception {
+        TileRange tr = range();
+        AtomicReference<TruncateTask> task = new AtomicReference<>();
+        StorageBroker sb = createMock(StorageBroker.class);
+        Capture<TileDeletionProgress> progress = new Capture<>();
+        expect(sb.delete(eq(tr), capture(progress)))
+                .andAnswer(
+                        () -> {
+                            for (int i = 0; i < 100; i++) {
+                                if (i == 5) {
+                                    task.get().terminateNicely();
+                                }
+                                if (!progress.getValue().tilesDeleted(1)) {
+                                    break;
+                                }
+                            }
+                            return true;
+                        })
+                .once();
+        replay(sb);
+
+        task.set(new TruncateTask(sb, tr, layer(), false));
+        task.get().setThrottling(10, 0);
+        task.get().doAction();
+
+        // the store is told to stop right after the termination was requested
+        verify(sb);
+        assertEquals(GWCTask.STATE.DONE, task.get().getState());
+        assertEquals(6, task.get().getTilesDone());
+    }
+}
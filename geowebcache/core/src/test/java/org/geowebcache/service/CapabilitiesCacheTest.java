@@ -0,0 +1,192 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.service;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import org.apache.commons.io.IOUtils;
+import org.geowebcache.grid.GridSet;
+import org.geowebcache.grid.GridSetBroker;
+import org.geowebcache.io.XMLBuilder;
+import org.geowebcache.layer.TileLayer;
+import org.geowebcache.service.CapabilitiesCache.Document;
+import org.geowebcache.service.CapabilitiesCache.Fragments;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+public class CapabilitiesCacheTest {
+
+    private CapabilitiesCache cache;
+
+    private List<TileLayer> layers;
+
+    private AtomicInteger written;
+
+    @Before
+    public void setUp() {
+        // assembled again on each request
+        cache = new CapabilitiesCache(null, null, true, 0);
+        layers = Arrays.asList(layer("layer1"), layer("layer2"));
+        written = new AtomicInteger();
+    }
+
+    private TileLayer layer(String name) {
+        TileLayer layer = mock(TileLayer.class);
+        when(layer.getName()).thenReturn(name);
+        return layer;
+    }
+
+    private String build(Fragments fragments) throws IOException {
+        StringBuilder str = new StringBuilder();
+        XMLBuilder xml = new XMLBuilder(str);
+        xml.indentElement("Capabilities");
+        for (TileLayer layer : layers) {
+            fragments.appendLayer(
+                    xml,
+                    layer,
+                    lxml -> {
+                        written.incrementAndGet();
+                        lxml.simpleElement("Layer", layer.getName(), true);
+                    });
+        }
+        xml.endElement();
+        return str.toString();
+    }
+
+    private Document getDocument() throws IOException {
+        return cache.getDocument("key", StandardCharsets.UTF_8, this::build);
+    }
+
+    @Test
+    public void testFragmentsIndented() throws Exception {
+        String expected =
+                "\n<Capabilities>\n  <Layer>layer1</Layer>\n  <Layer>layer2</Layer>"
+                        + "\n</Capabilities>";
+        assertEquals(expected, build(CapabilitiesCache.uncached()));
+        assertEquals(expected, new String(getDocument().getContent(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testFragmentsReused() throws Exception {
+        Document document = getDocument();
+        assertEquals(2, written.get());
+        assertSame(document, getDocument());
+        assertEquals(2, written.get());
+
+        // a modified layer is written again, but the document did not change
+        cache.handleModifyLayer(layers.get(0));
+        assertSame(document, getDocument());
+        assertEquals(3, written.get());
+
+        // a replaced layer is written again
+        layers = Arrays.asList(layers.get(0), layer("layer3"));
+        Document changed = getDocument();
+        assertNotSame(document, changed);
+        assertEquals(4, written.get());
+        assertEquals(
+                "\n<Capabilities>\n  <Layer>layer1</Layer>\n  <Layer>layer3</Layer>"
+                        + "\n</Capabilities>",
+                new String(changed.getContent(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testDocumentServedUntilChanged() throws Exception {
+        cache = new CapabilitiesCache(null, null, true, Long.MAX_VALUE);
+        AtomicInteger builds = new AtomicInteger();
+        CapabilitiesCache.DocumentBuilder builder =
+                fragments -> {
+                    builds.incrementAndGet();
+                    return build(fragments);
+                };
+        Document document = cache.getDocument("key", StandardCharsets.UTF_8, builder);
+        assertSame(document, cache.getDocument("key", StandardCharsets.UTF_8, builder));
+        assertEquals(1, builds.get());
+
+        // a layer change makes it assemble the document again
+        layers = Arrays.asList(layers.get(0), layer("layer3"));
+        cache.handleAddLayer(layers.get(1));
+        Document changed = cache.getDocument("key", StandardCharsets.UTF_8, builder);
+        assertNotSame(document, changed);
+        assertEquals(2, builds.get());
+        assertEquals(3, written.get());
+    }
+
+    @Test
+    public void testGridSetChange() throws Exception {
+        GridSetBroker gridSetBroker = mock(GridSetBroker.class);
+        GridSet gridSet = mock(GridSet.class);
+        when(gridSet.getName()).thenReturn("gridset");
+        when(gridSetBroker.getGridSets()).thenReturn(Collections.singleton(gridSet));
+        cache = new CapabilitiesCache(null, gridSetBroker, true, 0);
+        getDocument();
+        getDocument();
+        assertEquals(2, written.get());
+
+        // the layer fragments describe the gridsets too
+        GridSet changed = mock(GridSet.class);
+        when(changed.getName()).thenReturn("gridset");
+        when(gridSetBroker.getGridSets()).thenReturn(Collections.singleton(changed));
+        getDocument();
+        assertEquals(4, written.get());
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        cache = new CapabilitiesCache(null, false);
+        Document document = getDocument();
+        assertNotSame(document, getDocument());
+        assertEquals(4, written.get());
+    }
+
+    @Test
+    public void testConditionalAndGzippedResponse() throws Exception {
+        Document document = getDocument();
+
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Accept-Encoding", "gzip, deflate");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        document.write(request, response);
+        assertEquals(200, response.getStatus());
+        assertEquals("gzip", response.getHeader("Content-Encoding"));
+        assertEquals(document.getETag(), response.getHeader("ETag"));
+        byte[] content =
+                IOUtils.toByteArray(
+                        new GZIPInputStream(
+                                new ByteArrayInputStream(response.getContentAsByteArray())));
+        assertArrayEquals(document.getContent(), content);
+
+        request = new MockHttpServletRequest();
+        request.addHeader("If-None-Match", "\"other\", " + document.getETag());
+        response = new MockHttpServletResponse();
+        assertEquals(0, document.write(request, response));
+        assertEquals(304, response.getStatus());
+        assertEquals(0, response.getContentAsByteArray().length);
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Collections;
+import org.junit.Test;
+
+public class RouteTableTest {
+
+    RouteTable<String> routes =
+            new RouteTable<String>()
+                    .add("{layer}/{matrixset}/{matrix}/{row}/{col}", "tile")
+                    .add("{layer}/{style?}/{matrixset}/{matrix}/{row}/{col}", "styledTile")
+                    .add("{layer}/caps.xml", "layerCaps")
+                    .add("caps.xml", "caps");
+
+    @Test
+    public void testMatchVariables() {
+        TileRequest request = new TileRequest();
+        String path = "/rest/states/EPSG:4326/EPSG:4326:3/1/2";
+        assertEquals("tile", routes.match(path, "/rest/".length(), request));
+        assertEquals("states", request.get("layer"));
+        assertEquals("EPSG:4326", request.get("MATRIXSET"));
+        assertEquals("EPSG:4326:3", request.get("matrix"));
+        assertEquals("1", request.get("row"));
+        assertEquals("2", request.get("col"));
+        assertEquals(5, request.size());
+
+        request.clear();
+        assertEquals(0, request.size());
+        assertEquals("styledTile", routes.match("states/pophatch/g/m/1/2", 0, request));
+        assertEquals("pophatch", request.get("style"));
+        assertEquals("g", request.get("matrixset"));
+    }
+
+    @Test
+    public void testEmptyElements() {
+        TileRequest request = new TileRequest();
+        assertEquals("styledTile", routes.match("states//g/m/1/2", 0, request));
+        assertEquals("", request.get("style"));
+
+        // only the style may be empty
+        request.clear();
+        assertNull(routes.match("states/g//1/2", 0, request));
+        assertNull(routes.match("states/s/g//1/2", 0, request));
+        assertNull(routes.match("states/g/m/1/2/", 0, request));
+        assertEquals(0, request.size());
+    }
+
+    @Test
+    public void testLiterals() {
+        TileRequest request = new TileRequest();
+        assertEquals("caps", routes.match("caps.xml", 0, request));
+        assertEquals(0, request.size());
+        assertEquals("layerCaps", routes.match("states/caps.xml", 0, request));
+        assertEquals("states", request.get("layer"));
+        assertNull(routes.match("states/caps.xml/more", 0, request));
+        assertNull(routes.match("", 0, request));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSameShape() {
+        routes.add("{a}/{b}/{c}/{d}/{e}", "other");
+    }
+
+    @Test
+    public void testFromParameters() {
+        TileRequest request =
+                TileRequest.fromParameters(
+                        Collections.singletonMap("Layer", new String[] {"top%3Astates"}),
+                        "UTF-8",
+                        "layer",
+                        "format");
+        assertEquals("top:states", request.get("layer"));
+        assertNull(request.get("format"));
+        request.forEach((name, value) -> assertEquals("LAYER", name));
+    }
+}
@@ -14,9 +14,14 @@
  */
 package org.geowebcache.stats;
 
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertThat;
+
 import java.time.Clock;
 import java.util.Arrays;
 import org.easymock.EasyMock;
+import org.geowebcache.layer.wms.BackendRequestScheduler;
+import org.geowebcache.layer.wms.BackendRequestScheduler.RequestClass;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -40,4 +45,22 @@ public class RuntimeStatsTest {
         // Shouldn't get a divide by zero
         EasyMock.verify(clock);
     }
+
+    @Test
+    public void testBackendStats() throws Exception {
+        BackendRequestScheduler scheduler = new BackendRequestScheduler(2, 8, 1);
+        scheduler.acquire(RequestClass.INTERACTIVE);
+        scheduler.release();
+        scheduler.acquire(RequestClass.SEED);
+
+        RuntimeStats stats =
+                new RuntimeStats(1, Arrays.asList(60), Arrays.asList("Minutes"), Clock.systemUTC());
+        stats.setBackendRequestScheduler(scheduler);
+        String html = stats.getHTMLStats();
+        assertThat(html, containsString("Backend requests"));
+        assertThat(html, containsString("<tr><td>interactive</td><td>0</td><td>1</td>"));
+        assertThat(html, containsString("<tr><td>seed</td><td>0</td><td>1</td>"));
+        assertThat(html, containsString("1 backend requests in flight, limit: 2"));
+        scheduler.release();
+    }
 }
@@ -33,8 +33,10 @@ import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertThat;
 
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import org.easymock.Capture;
@@ -130,6 +132,44 @@ public abstract class AbstractBlobStoreTest<TestClass extends BlobStore> {
                                         "1,2,4,5,6 test".getBytes(StandardCharsets.UTF_8)))));
     }
 
+    @Test
+    public void testGetAll() throws Exception {
+        cacheTile("testLayer", 0L, 0L, 1, "testGridSet", "image/png", null, "tile 0,0");
+        cacheTile("testLayer", 1L, 0L, 1, "testGridSet", "image/png", null, "tile 1,0");
+        cacheTile("testLayer", 1L, 1L, 1, "testGridSet", "image/png", null, "tile 1,1");
+        long[][] locs = {{0L, 0L, 1L}, {0L, 1L, 1L}, {1L, 0L, 1L}, {1L, 1L, 1L}};
+
+        List<TileObject> exists = new ArrayList<>();
+        List<TileObject> fromCache = new ArrayList<>();
+        for (long[] loc : locs) {
+            exists.add(
+                    TileObject.createQueryTileObject(
+                            "testLayer", loc, "testGridSet", "image/png", null));
+            fromCache.add(
+                    TileObject.createQueryTileObject(
+                            "testLayer", loc, "testGridSet", "image/png", null));
+        }
+        boolean[] expected = {true, false, true, true};
+        assertThat(store.existsAll(exists), equalTo(expected));
+        assertThat(store.getAll(fromCache), equalTo(expected));
+
+        assertThat(fromCache.get(1), hasProperty("blob", nullValue()));
+        assertThat(
+                fromCache.get(2),
+                hasProperty(
+                        "blob",
+                        resource(
+                                new ByteArrayResource(
+                                        "tile 1,0".getBytes(StandardCharsets.UTF_8)))));
+        assertThat(
+                fromCache.get(3),
+                hasProperty(
+                        "blob",
+                        resource(
+                                new ByteArrayResource(
+                                        "tile 1,1".getBytes(StandardCharsets.UTF_8)))));
+    }
+
     @Test
     public void testStoreTilesInMultipleLayers() throws Exception {
         BlobStoreListener listener = EasyMock.createMock(BlobStoreListener.class);
@@ -195,6 +195,48 @@ public class BlobStoreTest extends TestCase {
         assertNull(res);
     }
 
+    public void testTileRangeDeleteProgress() throws Exception {
+        fbs = setup();
+
+        Resource bytes = new ByteArrayResource("1 2 3 4 5 6 test".getBytes());
+        Map<String, String> parameters = new HashMap<String, String>();
+        MimeType mime = ImageMime.png;
+        String gridSetId = SRS.getEPSG4326().toString();
+        String layerName = "test:123123 112";
+        for (int x = 0; x < 6; x++) {
+            long[] xyz = {x, 0, 3};
+            fbs.put(
+                    TileObject.createCompleteTileObject(
+                            layerName, xyz, gridSetId, mime.getFormat(), parameters, bytes));
+        }
+        TileRange trObj =
+                new TileRange(
+                        layerName,
+                        gridSetId,
+                        3,
+                        3,
+                        new long[][] {{1, 0, 4, 0, 3}},
+                        mime,
+                        parameters);
+
+        // stops after the second tile of the range
+        long[] deleted = {0};
+        assertTrue(fbs.delete(trObj, tiles -> (deleted[0] += tiles) < 2));
+        assertEquals(2, deleted[0]);
+
+        int remaining = 0;
+        for (int x = 0; x < 6; x++) {
+            long[] xyz = {x, 0, 3};
+            TileObject to =
+                    TileObject.createQueryTileObject(
+                            layerName, xyz, gridSetId, mime.getFormat(), parameters);
+            if (fbs.get(to)) {
+                remaining++;
+            }
+        }
+        assertEquals(4, remaining);
+    }
+
     public void testRenameLayer() throws Exception {
         fbs = setup();
         Resource bytes = new ByteArrayResource("1 2 3 4 5 6 test".getBytes());
@@ -0,0 +1,124 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.storage;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.geowebcache.mime.ImageMime;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SparseTileMaskTest {
+
+    private long[][] fullCoverage = {{0, 0, 0, 0, 0}, {0, 0, 199, 99, 1}, {0, 0, 399, 199, 2}};
+
+    private SparseTileMask mask;
+
+    @Before
+    public void setUp() {
+        mask = new SparseTileMask(fullCoverage, 1);
+        mask.set(5, 5, 1);
+        mask.set(150, 70, 1);
+        mask.setRange(64, 0, 130, 0, 1);
+    }
+
+    @Test
+    public void testLookup() {
+        assertTrue(mask.lookup(5, 5, 1));
+        assertFalse(mask.lookup(6, 5, 1));
+        assertFalse(mask.lookup(5, 6, 1));
+        assertFalse(mask.lookup(63, 0, 1));
+        assertTrue(mask.lookup(64, 0, 1));
+        assertTrue(mask.lookup(130, 0, 1));
+        assertFalse(mask.lookup(131, 0, 1));
+        assertTrue(mask.lookup(150, 70, 1));
+        assertFalse(mask.lookup(0, 0, 0));
+        assertEquals(69, mask.getTileCount(1));
+        assertFalse(mask.isEmpty());
+    }
+
+    @Test
+    public void testLookupDownsampled() {
+        // level 2 has no bits of its own, it's looked up on level 1
+        assertTrue(mask.lookup(10, 10, 2));
+        assertTrue(mask.lookup(300, 140, 2));
+        assertFalse(mask.lookup(0, 100, 2));
+        assertTrue(mask.intersects(8, 8, 11, 11, 2));
+        assertFalse(mask.intersects(0, 100, 3, 103, 2));
+    }
+
+    @Test
+    public void testCoveredBounds() {
+        long[][] covered = {{0, 0, 0, 0, 0}, {0, 0, 100, 99, 1}, {0, 0, 399, 199, 2}};
+        mask.setGridCoverages(covered);
+        assertArrayEquals(covered, mask.getGridCoverages());
+        assertTrue(mask.lookup(5, 5, 1));
+        assertFalse(mask.lookup(150, 70, 1));
+        assertFalse(mask.intersects(140, 60, 160, 80, 1));
+        assertEquals(100, mask.nextSetColumn(100, 0, 199, 0, 1));
+        assertEquals(-1, mask.nextSetColumn(101, 0, 199, 0, 1));
+    }
+
+    @Test
+    public void testIntersects() {
+        assertTrue(mask.intersects(4, 4, 7, 7, 1));
+        assertFalse(mask.intersects(0, 0, 3, 3, 1));
+        assertFalse(mask.intersects(128, 60, 191, 63, 1));
+        assertTrue(mask.intersects(148, 68, 151, 71, 1));
+        assertTrue(mask.intersects(0, 0, 199, 99, 1));
+        assertFalse(mask.intersects(131, 1, 199, 69, 1));
+    }
+
+    @Test
+    public void testNextSetColumn() {
+        assertEquals(64, mask.nextSetColumn(0, 0, 199, 3, 1));
+        assertEquals(5, mask.nextSetColumn(0, 4, 199, 7, 1));
+        assertEquals(5, mask.nextSetColumn(0, 0, 199, 7, 1));
+        assertEquals(-1, mask.nextSetColumn(6, 4, 199, 7, 1));
+        assertEquals(100, mask.nextSetColumn(100, 0, 199, 0, 1));
+        assertEquals(-1, mask.nextSetColumn(131, 0, 199, 0, 1));
+        assertEquals(150, mask.nextSetColumn(0, 64, 199, 99, 1));
+        // no sparse information above the last masked level
+        assertEquals(7, mask.nextSetColumn(7, 0, 399, 199, 2));
+    }
+
+    @Test
+    public void testIteratorSkipsEmptyMetaTiles() {
+        DiscontinuousTileRange dtr =
+                new DiscontinuousTileRange(
+                        "layer", "gridset", 1, 1, mask, ImageMime.png, Collections.emptyMap());
+        TileRangeIterator iterator = new TileRangeIterator(dtr, new int[] {4, 4});
+
+        List<String> locations = new ArrayList<>();
+        long[] gridLoc = new long[3];
+        while (iterator.nextMetaGridLocation(gridLoc) != null) {
+            locations.add(gridLoc[0] + "," + gridLoc[1]);
+        }
+
+        List<String> expected = new ArrayList<>();
+        for (long x = 64; x <= 128; x += 4) {
+            expected.add(x + ",0");
+        }
+        expected.add("4,4");
+        expected.add("148,68");
+        assertEquals(expected, locations);
+    }
+}
@@ -18,8 +18,11 @@ import static org.geowebcache.diskquota.DiskQuotaMonitor.GWC_DISKQUOTA_DISABLED;
 import static org.geowebcache.util.FileUtils.listFilesNullSafe;
 
 import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.sleepycat.je.CursorConfig;
 import com.sleepycat.je.Environment;
+import com.sleepycat.je.LockConflictException;
 import com.sleepycat.je.LockMode;
 import com.sleepycat.je.Transaction;
 import com.sleepycat.persist.EntityCursor;
@@ -36,17 +39,22 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.function.Predicate;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.geowebcache.config.ConfigurationException;
+import org.geowebcache.diskquota.ExpirationPolicy;
 import org.geowebcache.diskquota.QuotaStore;
 import org.geowebcache.diskquota.storage.PageStats;
 import org.geowebcache.diskquota.storage.PageStatsPayload;
@@ -74,9 +82,24 @@ public class BDBQuotaStore implements QuotaStore {
 
     private final String cacheRootDir;
 
+    private File storeDirectory;
+
     private final TilePageCalculator tilePageCalculator;
 
-    private static ExecutorService transactionRunner;
+    /** Single writer thread, committing the pending writes in groups */
+    private ExecutorService transactionRunner;
+
+    /** Concurrent pool running the read only queries */
+    private ExecutorService queryRunner;
+
+    private final BlockingQueue<PendingWrite<?>> pendingWrites = new LinkedBlockingQueue<>();
+
+    /** The last deletion issued, queries wait for it so that deletions are visible right away */
+    private volatile Future<?> lastDeletion;
+
+    private int maxWritesPerTransaction = 100;
+
+    private int queryThreads = Math.max(2, Runtime.getRuntime().availableProcessors());
 
     private PrimaryIndex<String, TileSet> tileSetById;
 
@@ -98,6 +121,14 @@ public class BDBQuotaStore implements QuotaStore {
 
     private SecondaryIndex<Float, Long, PageStats> pageStatsByLFU;
 
+    private SecondaryIndex<Float, Long, PageStats> pageStatsByCost;
+
+    /**
+     * Inflation value of the {@link ExpirationPolicy#COST cost} policy, the highest priority of the
+     * pages truncated so far. Only changed on the transaction thread.
+     */
+    private volatile float costInflation;
+
     private SecondaryIndex<String, Integer, Quota> usedQuotaByTileSetId;
 
     private volatile boolean open;
@@ -125,6 +156,29 @@ public class BDBQuotaStore implements QuotaStore {
         this.diskQuotaEnabled = !disabled;
     }
 
+    public int getMaxWritesPerTransaction() {
+        return maxWritesPerTransaction;
+    }
+
+    /**
+     * Maximum number of queued writes committed together in a single transaction, defaults to 100
+     */
+    public void setMaxWritesPerTransaction(int maxWritesPerTransaction) {
+        this.maxWritesPerTransaction = maxWritesPerTransaction;
+    }
+
+    public int getQueryThreads() {
+        return queryThreads;
+    }
+
+    /**
+     * Number of threads running the read only queries, defaults to the number of processors. Shall
+     * be set before {@link #startUp()}
+     */
+    public void setQueryThreads(int queryThreads) {
+        this.queryThreads = queryThreads;
+    }
+
     /**
      * @throws InterruptedException
      * @see {@link #close()}
@@ -139,7 +193,7 @@ public class BDBQuotaStore implements QuotaStore {
             return;
         }
         open = true;
-        File storeDirectory = new File(cacheRootDir, "diskquota_page_store");
+        storeDirectory = new File(cacheRootDir, "diskquota_page_store");
         storeDirectory.mkdirs();
         File version = new File(storeDirectory, VERSION_FILE);
         if (listFilesNullSafe(storeDirectory).length == 0) {
@@ -169,16 +223,21 @@ public class BDBQuotaStore implements QuotaStore {
 
         CustomizableThreadFactory tf = new CustomizableThreadFactory("GWC DiskQuota Store Writer-");
         transactionRunner = Executors.newFixedThreadPool(1, tf);
+        queryRunner =
+                Executors.newFixedThreadPool(
+                        queryThreads, new CustomizableThreadFactory("GWC DiskQuota Store Reader-"));
         try {
             configure(storeDirectory);
 
             deleteStaleLayersAndCreateMissingTileSets();
+            initCostInflation();
 
             log.info(
                     "Berkeley DB JE Disk Quota page store configured at "
                             + storeDirectory.getAbsolutePath());
         } catch (RuntimeException e) {
             transactionRunner.shutdownNow();
+            queryRunner.shutdownNow();
             throw e;
         }
         log.info("Quota Store initialized. Global quota: " + getGloballyUsedQuota().toNiceString());
@@ -191,8 +250,10 @@ public class BDBQuotaStore implements QuotaStore {
         open = false;
         log.info("Requesting to close quota store...");
         transactionRunner.shutdown();
+        queryRunner.shutdown();
         try {
             transactionRunner.awaitTermination(30 * 1000, TimeUnit.MILLISECONDS);
+            queryRunner.awaitTermination(30 * 1000, TimeUnit.MILLISECONDS);
         } catch (InterruptedException ie) {
             log.error(
                     "Time out shutting down quota store write thread, trying to "
@@ -224,62 +285,72 @@ public class BDBQuotaStore implements QuotaStore {
         tileSetsByLayer = entityStore.getSecondaryIndex(tileSetById, String.class, "layer");
         pageStatsByLRU = entityStore.getSecondaryIndex(pageStatsById, Float.class, "LRU");
         pageStatsByLFU = entityStore.getSecondaryIndex(pageStatsById, Float.class, "LFU");
+        pageStatsByCost = entityStore.getSecondaryIndex(pageStatsById, Float.class, "COST");
         usedQuotaByTileSetId =
                 entityStore.getSecondaryIndex(usedQuotaById, String.class, "tileset_id");
         pageStatsByPageId =
                 entityStore.getSecondaryIndex(pageStatsById, Long.class, "page_stats_by_page_id");
     }
 
-    private class StartUpInitializer implements Callable<Void> {
-        public Void call() throws Exception {
-            final Transaction transaction =
-                    entityStore.getEnvironment().beginTransaction(null, null);
-            try {
-                if (null
-                        == usedQuotaByTileSetId.get(
-                                transaction, GLOBAL_QUOTA_NAME, LockMode.DEFAULT)) {
-                    log.debug("First time run: creating global quota object");
-                    // need a global TileSet cause the Quota->TileSet relationship is enforced
-                    TileSet globalTileSet = new TileSet(GLOBAL_QUOTA_NAME);
-                    tileSetById.put(transaction, globalTileSet);
-
-                    Quota globalQuota = new Quota();
-                    globalQuota.setTileSetId(GLOBAL_QUOTA_NAME);
-                    usedQuotaById.put(transaction, globalQuota);
-                    log.debug("created Global Quota");
+    /**
+     * The inflation value is not persisted, restart from the lowest priority of the pages holding
+     * tiles
+     */
+    private void initCostInflation() {
+        EntityCursor<PageStats> cursor = pageStatsByCost.entities(null, CursorConfig.READ_COMMITTED);
+        try {
+            PageStats pageStats;
+            while ((pageStats = cursor.next()) != null) {
+                if (pageStats.getFillFactor() > 0) {
+                    costInflation = pageStats.getCostPriority();
+                    break;
                 }
+            }
+        } finally {
+            cursor.close();
+        }
+    }
 
-                final Set<String> layerNames = tilePageCalculator.getLayerNames();
-                final Set<String> existingLayers = new GetLayerNames().call();
+    private class StartUpInitializer implements TransactionalCommand<Void> {
+        public Void call(final Transaction transaction) throws Exception {
+            if (null
+                    == usedQuotaByTileSetId.get(
+                            transaction, GLOBAL_QUOTA_NAME, LockMode.DEFAULT)) {
+                log.debug("First time run: creating global quota object");
+                // need a global TileSet cause the Quota->TileSet relationship is enforced
+                TileSet globalTileSet = new TileSet(GLOBAL_QUOTA_NAME);
+                tileSetById.put(transaction, globalTileSet);
+
+                Quota globalQuota = new Quota();
+                globalQuota.setTileSetId(GLOBAL_QUOTA_NAME);
+                usedQuotaById.put(transaction, globalQuota);
+                log.debug("created Global Quota");
+            }
 
-                final Set<String> layersToDelete = new HashSet<String>(existingLayers);
-                layersToDelete.removeAll(layerNames);
+            final Set<String> layerNames = tilePageCalculator.getLayerNames();
+            final Set<String> existingLayers = new GetLayerNames().call();
 
-                for (String layerName : layersToDelete) {
-                    log.info(
-                            "Deleting disk quota information for layer '"
-                                    + layerName
-                                    + "' as it does not exist anymore...");
-                    // do not call issue since we're already running on the transaction thread here
-                    try {
-                        new Deleter(layerName, ts -> true).call(transaction);
-                    } catch (Exception e) {
-                        log.warn(
-                                "Error deleting disk quota information for layer '"
-                                        + layerName
-                                        + "'",
-                                e);
-                    }
-                }
+            final Set<String> layersToDelete = new HashSet<String>(existingLayers);
+            layersToDelete.removeAll(layerNames);
 
-                // add any missing tileset
-                for (String layerName : layerNames) {
-                    createLayer(layerName, transaction);
+            for (String layerName : layersToDelete) {
+                log.info(
+                        "Deleting disk quota information for layer '"
+                                + layerName
+                                + "' as it does not exist anymore...");
+                // do not call issue since we're already running on the transaction thread here
+                try {
+                    new Deleter(layerName, ts -> true).call(transaction);
+                } catch (Exception e) {
+                    log.warn(
+                            "Error deleting disk quota information for layer '" + layerName + "'",
+                            e);
                 }
-                transaction.commit();
-            } catch (RuntimeException e) {
-                transaction.abort();
-                throw e;
+            }
+
+            // add any missing tileset
+            for (String layerName : layerNames) {
+                createLayer(layerName, transaction);
             }
             return null;
         }
@@ -287,21 +358,15 @@ public class BDBQuotaStore implements QuotaStore {
 
     /** @see org.geowebcache.diskquota.QuotaStore#createLayer(java.lang.String) */
     public void createLayer(final String layerName) throws InterruptedException {
-        issueSync(
-                new Callable<Void>() {
-
-                    public Void call() throws Exception {
-                        final Transaction transaction =
-                                entityStore.getEnvironment().beginTransaction(null, null);
-                        try {
-                            createLayer(layerName, transaction);
-                            transaction.commit();
-                        } catch (RuntimeException e) {
-                            transaction.abort();
-                        }
+        try {
+            issueSync(
+                    transaction -> {
+                        createLayer(layerName, transaction);
                         return null;
-                    }
-                });
+                    });
+        } catch (RuntimeException e) {
+            log.warn("Error creating the disk quota tile sets of layer " + layerName, e);
+        }
     }
 
     private void createLayer(String layerName, final Transaction transaction) {
@@ -325,23 +390,83 @@ public class BDBQuotaStore implements QuotaStore {
         return stored;
     }
 
-    /** Asynchronously issues the given {@code command} to the working transactional thread */
-    private <E> Future<E> issue(final Callable<E> command) {
+    /** A write operation, run in a transaction possibly shared with other pending writes */
+    private interface TransactionalCommand<E> {
+        E call(Transaction transaction) throws Exception;
+    }
+
+    /** A write waiting for the writer thread */
+    private static class PendingWrite<E> {
+
+        private final TransactionalCommand<E> command;
+
+        private final CompletableFuture<E> future = new CompletableFuture<>();
+
+        private E result;
+
+        PendingWrite(TransactionalCommand<E> command) {
+            this.command = command;
+        }
+
+        void run(Transaction transaction) throws Exception {
+            result = command.call(transaction);
+        }
+
+        void complete() {
+            future.complete(result);
+        }
+
+        void fail(Throwable cause) {
+            future.completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * Asynchronously issues the given write {@code command} to the working transactional thread,
+     * where it will be committed along with the other pending writes
+     */
+    private <E> Future<E> issue(final TransactionalCommand<E> command) {
         if (!open) {
             throw new IllegalStateException("QuotaStore is closed.");
         }
-        Future<E> future = transactionRunner.submit(command);
-        return future;
+        PendingWrite<E> write = new PendingWrite<>(command);
+        pendingWrites.add(write);
+        transactionRunner.execute(this::commitPendingWrites);
+        return write.future;
     }
 
     /**
-     * Synchronously issues the given {@code command} to the working transactional thread
+     * Synchronously issues the given write {@code command} to the working transactional thread
      *
      * @throws InterruptedException in case the calling thread was interrupted while waiting for the
      *     command to complete
      */
-    private <E> E issueSync(final Callable<E> command) throws InterruptedException {
-        Future<E> result = issue(command);
+    private <E> E issueSync(final TransactionalCommand<E> command) throws InterruptedException {
+        return waitFor(issue(command), command);
+    }
+
+    /**
+     * Synchronously runs the given read only {@code command} on the query pool. Queries don't wait
+     * for the pending writes, except for the deletions, so that removed layers and tile sets don't
+     * show up once the deletion has been issued.
+     */
+    private <E> E query(final Callable<E> command) throws InterruptedException {
+        if (!open) {
+            throw new IllegalStateException("QuotaStore is closed.");
+        }
+        Future<?> deletion = lastDeletion;
+        if (deletion != null) {
+            try {
+                deletion.get();
+            } catch (ExecutionException e) {
+                log.debug("Deletion failed, going on with the query", e);
+            }
+        }
+        return waitFor(queryRunner.submit(new RetryingQuery<E>(command)), command);
+    }
+
+    private <E> E waitFor(final Future<E> result, final Object command)
+            throws InterruptedException {
         try {
             return result.get();
         } catch (RuntimeException e) {
@@ -361,6 +486,79 @@ public class BDBQuotaStore implements QuotaStore {
         }
     }
 
+    /**
+     * Runs the pending writes, up to {@link #getMaxWritesPerTransaction()}, in a single
+     * transaction. If any of them fails the transaction is aborted and the writes are run again one
+     * by one, so that the failure is reported only to the write causing it.
+     */
+    private void commitPendingWrites() {
+        List<PendingWrite<?>> group = new ArrayList<PendingWrite<?>>();
+        pendingWrites.drainTo(group, maxWritesPerTransaction);
+        if (group.isEmpty()) {
+            // already committed along with a previous group
+            return;
+        }
+        if (group.size() == 1) {
+            commit(group.get(0));
+            return;
+        }
+        final Transaction transaction = entityStore.getEnvironment().beginTransaction(null, null);
+        try {
+            for (PendingWrite<?> write : group) {
+                write.run(transaction);
+            }
+            transaction.commit();
+        } catch (Exception e) {
+            transaction.abort();
+            log.debug("Group commit failed, committing the writes one by one", e);
+            for (PendingWrite<?> write : group) {
+                commit(write);
+            }
+            return;
+        }
+        for (PendingWrite<?> write : group) {
+            write.complete();
+        }
+    }
+
+    private void commit(PendingWrite<?> write) {
+        final Transaction transaction = entityStore.getEnvironment().beginTransaction(null, null);
+        try {
+            write.run(transaction);
+            transaction.commit();
+        } catch (Exception e) {
+            transaction.abort();
+            write.fail(e);
+            return;
+        }
+        write.complete();
+    }
+
+    /** Retries a query timing out on the locks held by a write transaction */
+    private static class RetryingQuery<E> implements Callable<E> {
+
+        private static final int MAX_ATTEMPTS = 3;
+
+        private final Callable<E> query;
+
+        RetryingQuery(Callable<E> query) {
+            this.query = query;
+        }
+
+        public E call() throws Exception {
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    return query.call();
+                } catch (LockConflictException e) {
+                    if (attempt == MAX_ATTEMPTS) {
+                        throw e;
+                    }
+                    log.debug("Lock conflict running a disk quota query, retrying", e);
+                }
+            }
+        }
+    }
+
     private void deleteStaleLayersAndCreateMissingTileSets() throws InterruptedException {
         issueSync(new StartUpInitializer());
     }
@@ -391,10 +589,16 @@ public class BDBQuotaStore implements QuotaStore {
 
     /** @see org.geowebcache.diskquota.QuotaStore#getUsedQuotaByTileSetId(java.lang.String) */
     public Quota getUsedQuotaByTileSetId(final String tileSetId) throws InterruptedException {
-        Quota usedQuota = issueSync(new UsedQuotaByTileSetId(tileSetId));
+        Quota usedQuota = query(new UsedQuotaByTileSetId(tileSetId));
         return usedQuota;
     }
 
+    /**
+     * Reads the used quota of a tile set without locking it. Every group commit of the writer
+     * updates the global quota record, so read committed lookups would keep waiting on its write
+     * lock, and fail after a few retries. The uncommitted value may include a group that ends up
+     * rolled back, its writes are applied again one by one right after.
+     */
     private final class UsedQuotaByTileSetId implements Callable<Quota> {
         private final String tileSetId;
 
@@ -403,7 +607,7 @@ public class BDBQuotaStore implements QuotaStore {
         }
 
         public Quota call() throws Exception {
-            Quota quota = usedQuotaByTileSetId.get(null, tileSetId, LockMode.READ_COMMITTED);
+            Quota quota = usedQuotaByTileSetId.get(null, tileSetId, LockMode.READ_UNCOMMITTED);
             if (quota == null) {
                 quota = new Quota();
             }
@@ -414,18 +618,28 @@ public class BDBQuotaStore implements QuotaStore {
     /** @see org.geowebcache.diskquota.QuotaStore#deleteLayer(java.lang.String) */
     public void deleteLayer(final String layerName) {
         Assert.notNull(layerName);
-        issue(new Deleter(layerName, ts -> true));
+        lastDeletion = issue(new Deleter(layerName, ts -> true));
     }
 
     public void deleteGridSubset(String layerName, String gridSetId) {
-        issue(new Deleter(layerName, ts -> Objects.equal(ts.getGridsetId(), gridSetId)));
+        lastDeletion =
+                issue(new Deleter(layerName, ts -> Objects.equal(ts.getGridsetId(), gridSetId)));
     }
 
     public void deleteParameters(String layerName, String parametersId) {
-        issue(new Deleter(layerName, ts -> Objects.equal(ts.getParametersId(), parametersId)));
+        lastDeletion =
+                issue(
+                        new Deleter(
+                                layerName,
+                                ts -> Objects.equal(ts.getParametersId(), parametersId)));
     }
 
-    private class Deleter implements Callable<Void> {
+    @Override
+    public File getStoreDirectory() {
+        return storeDirectory;
+    }
+
+    private class Deleter implements TransactionalCommand<Void> {
 
         private final String layerName;
         Predicate<TileSet> shouldDelete;
@@ -435,19 +649,7 @@ public class BDBQuotaStore implements QuotaStore {
             this.shouldDelete = shouldDelete;
         }
 
-        public Void call() throws Exception {
-            Transaction transaction = entityStore.getEnvironment().beginTransaction(null, null);
-            try {
-                call(transaction);
-                transaction.commit();
-            } catch (RuntimeException e) {
-                transaction.abort();
-                throw e;
-            }
-            return null;
-        }
-
-        public void call(Transaction transaction) {
+        public Void call(Transaction transaction) {
             EntityCursor<TileSet> tileSets =
                     tileSetsByLayer.entities(transaction, layerName, true, layerName, true, null);
             TileSet tileSet;
@@ -471,6 +673,7 @@ public class BDBQuotaStore implements QuotaStore {
             } finally {
                 tileSets.close();
             }
+            return null;
         }
     }
 
@@ -481,7 +684,7 @@ public class BDBQuotaStore implements QuotaStore {
         issueSync(new RenameLayer(oldLayerName, newLayerName));
     }
 
-    private class RenameLayer implements Callable<Void> {
+    private class RenameLayer implements TransactionalCommand<Void> {
 
         private final String oldLayerName;
 
@@ -496,20 +699,11 @@ public class BDBQuotaStore implements QuotaStore {
          * Copy over old {@link TileSet}s, used {@link Quota}s and {@link TilePage}s from
          * oldLayerName to newLayerName and delete the old ones
          *
-         * @see java.util.concurrent.Callable#call()
          */
-        public Void call() throws Exception {
-            Transaction transaction = entityStore.getEnvironment().beginTransaction(null, null);
-            try {
-                copyTileSets(transaction);
-                Deleter deleteCommand = new Deleter(oldLayerName, ts -> true);
-                deleteCommand.call(transaction);
-                transaction.commit();
-            } catch (RuntimeException e) {
-                transaction.abort();
-                throw e;
-            }
-            return null;
+        public Void call(Transaction transaction) {
+            copyTileSets(transaction);
+            Deleter deleteCommand = new Deleter(oldLayerName, ts -> true);
+            return deleteCommand.call(transaction);
         }
 
         private void copyTileSets(Transaction transaction) {
@@ -577,7 +771,7 @@ public class BDBQuotaStore implements QuotaStore {
 
     /** @see org.geowebcache.diskquota.QuotaStore#getUsedQuotaByLayerName(java.lang.String) */
     public Quota getUsedQuotaByLayerName(final String layerName) throws InterruptedException {
-        return issueSync(new UsedQuotaByLayerName(layerName));
+        return query(new UsedQuotaByLayerName(layerName));
     }
 
     private final class UsedQuotaByLayerName implements Callable<Quota> {
@@ -593,7 +787,7 @@ public class BDBQuotaStore implements QuotaStore {
             EntityCursor<TileSet> layerTileSetsIds;
             layerTileSetsIds =
                     tileSetsByLayer.entities(
-                            null, layerName, true, layerName, true, CursorConfig.DEFAULT);
+                            null, layerName, true, layerName, true, CursorConfig.READ_COMMITTED);
             TileSet tileSet;
             try {
                 Quota tileSetUsedQuota;
@@ -635,11 +829,12 @@ public class BDBQuotaStore implements QuotaStore {
 
     /** @see org.geowebcache.diskquota.QuotaStore#getTileSetById(java.lang.String) */
     public TileSet getTileSetById(final String tileSetId) throws InterruptedException {
-        return issueSync(
+        return query(
                 new Callable<TileSet>() {
 
                     public TileSet call() throws Exception {
-                        TileSet tileSet = tileSetById.get(tileSetId);
+                        TileSet tileSet =
+                                tileSetById.get(null, tileSetId, LockMode.READ_COMMITTED);
                         if (tileSet == null) {
                             throw new IllegalArgumentException(
                                     "TileSet does not exist: " + tileSetId);
@@ -683,7 +878,7 @@ public class BDBQuotaStore implements QuotaStore {
         issueSync(new AddToQuotaAndTileCounts(tileSet, quotaDiff, tileCountDiffs));
     }
 
-    private class AddToQuotaAndTileCounts implements Callable<Void> {
+    private class AddToQuotaAndTileCounts implements TransactionalCommand<Void> {
 
         private final TileSet tileSet;
 
@@ -700,47 +895,43 @@ public class BDBQuotaStore implements QuotaStore {
             this.tileCountDiffs = tileCountDiffs;
         }
 
-        public Void call() throws Exception {
-            final Transaction tx = entityStore.getEnvironment().beginTransaction(null, null);
-            try {
-                TileSet storedTileset = getOrCreateTileSet(tx, tileSet);
-                // increase the tileset used quota
-                addToUsedQuota(tx, storedTileset, quotaDiff);
-
-                // and each page's fillFactor for lru/lfu expiration
-                if (tileCountDiffs.size() > 0) {
-                    TilePage page;
-                    String pageKey;
-                    for (PageStatsPayload payload : tileCountDiffs) {
-                        page = payload.getPage();
-                        pageKey = page.getKey();
-                        PageStats pageStats;
-
-                        TilePage storedPage = pageByKey.get(tx, pageKey, LockMode.DEFAULT);
-                        if (null == storedPage) {
-                            pageById.put(tx, page);
-                            storedPage = page;
-                            pageStats = new PageStats(storedPage.getId());
-                            // pageStatsById.put(tx, pageStats);
-                        } else {
-                            pageStats = pageStatsByPageId.get(tx, storedPage.getId(), null);
-                        }
+        public Void call(final Transaction tx) throws Exception {
+            TileSet storedTileset = getOrCreateTileSet(tx, tileSet);
+            // increase the tileset used quota
+            addToUsedQuota(tx, storedTileset, quotaDiff);
+
+            // and each page's fillFactor for lru/lfu expiration
+            if (tileCountDiffs.size() > 0) {
+                TilePage page;
+                String pageKey;
+                for (PageStatsPayload payload : tileCountDiffs) {
+                    page = payload.getPage();
+                    pageKey = page.getKey();
+                    PageStats pageStats;
+
+                    TilePage storedPage = pageByKey.get(tx, pageKey, LockMode.DEFAULT);
+                    if (null == storedPage) {
+                        pageById.put(tx, page);
+                        storedPage = page;
+                        pageStats = new PageStats(storedPage.getId());
+                        // pageStatsById.put(tx, pageStats);
+                    } else {
+                        pageStats = pageStatsByPageId.get(tx, storedPage.getId(), null);
+                    }
 
-                        final byte level = page.getZoomLevel();
-                        final BigInteger tilesPerPage =
-                                tilePageCalculator.getTilesPerPage(tileSet, level);
-                        final int tilesAdded = payload.getNumTiles();
+                    final byte level = page.getZoomLevel();
+                    final BigInteger tilesPerPage =
+                            tilePageCalculator.getTilesPerPage(tileSet, level);
+                    final int tilesAdded = payload.getNumTiles();
 
-                        pageStats.addTiles(tilesAdded, tilesPerPage);
-                        pageStatsById.putNoReturn(tx, pageStats);
-                    }
+                    pageStats.addRenderTime(
+                            payload.getRenderTime(), payload.getNumRendered(), tilesPerPage);
+                    pageStats.addTiles(tilesAdded, tilesPerPage);
+                    pageStats.updateCostPriority(costInflation, tilesPerPage);
+                    pageStatsById.putNoReturn(tx, pageStats);
                 }
-                tx.commit();
-                return null;
-            } catch (RuntimeException e) {
-                tx.abort();
-                throw e;
             }
+            return null;
         }
 
         private void addToUsedQuota(
@@ -766,7 +957,7 @@ public class BDBQuotaStore implements QuotaStore {
     }
 
     /** */
-    private class AddHitsAndSetAccesTime implements Callable<List<PageStats>> {
+    private class AddHitsAndSetAccesTime implements TransactionalCommand<List<PageStats>> {
 
         private final Collection<PageStatsPayload> statsUpdates;
 
@@ -774,47 +965,45 @@ public class BDBQuotaStore implements QuotaStore {
             this.statsUpdates = statsUpdates;
         }
 
-        public List<PageStats> call() throws Exception {
+        public List<PageStats> call(final Transaction tx) throws Exception {
             List<PageStats> allStats = new ArrayList<PageStats>(statsUpdates.size());
+            Map<String, BigInteger> tilesPerPage = new HashMap<>();
             PageStats pageStats = null;
-            final Transaction tx = entityStore.getEnvironment().beginTransaction(null, null);
-            try {
-                for (PageStatsPayload payload : statsUpdates) {
-                    TilePage page = payload.getPage();
-                    TileSet storedTileset =
-                            tileSetById.get(tx, page.getTileSetId(), LockMode.DEFAULT);
-                    if (null == storedTileset) {
-                        log.info(
-                                "Can't add usage stats. TileSet does not exist. Was it deleted? "
-                                        + page.getTileSetId());
-                        continue;
-                    }
-
-                    TilePage storedPage = pageByKey.get(tx, page.getKey(), null);
+            for (PageStatsPayload payload : statsUpdates) {
+                TilePage page = payload.getPage();
+                TileSet storedTileset = tileSetById.get(tx, page.getTileSetId(), LockMode.DEFAULT);
+                if (null == storedTileset) {
+                    log.info(
+                            "Can't add usage stats. TileSet does not exist. Was it deleted? "
+                                    + page.getTileSetId());
+                    continue;
+                }
 
-                    if (storedPage == null) {
-                        pageById.put(tx, page);
-                        storedPage = page;
-                        pageStats = new PageStats(storedPage.getId());
-                    } else {
-                        pageStats = pageStatsByPageId.get(tx, storedPage.getId(), null);
-                    }
+                TilePage storedPage = pageByKey.get(tx, page.getKey(), null);
 
-                    final int addedHits = payload.getNumHits();
-                    final int lastAccessTimeMinutes =
-                            (int) (payload.getLastAccessTime() / 1000 / 60);
-                    final int creationTimeMinutes = storedPage.getCreationTimeMinutes();
-                    pageStats.addHitsAndAccessTime(
-                            addedHits, lastAccessTimeMinutes, creationTimeMinutes);
-                    pageStatsById.putNoReturn(tx, pageStats);
-                    allStats.add(pageStats);
+                if (storedPage == null) {
+                    pageById.put(tx, page);
+                    storedPage = page;
+                    pageStats = new PageStats(storedPage.getId());
+                } else {
+                    pageStats = pageStatsByPageId.get(tx, storedPage.getId(), null);
                 }
-                tx.commit();
-                return allStats;
-            } catch (RuntimeException e) {
-                tx.abort();
-                throw e;
+
+                final int addedHits = payload.getNumHits();
+                final int lastAccessTimeMinutes = (int) (payload.getLastAccessTime() / 1000 / 60);
+                final int creationTimeMinutes = storedPage.getCreationTimeMinutes();
+                pageStats.addHitsAndAccessTime(
+                        addedHits, lastAccessTimeMinutes, creationTimeMinutes);
+                final int level = storedPage.getZoomLevel();
+                pageStats.updateCostPriority(
+                        costInflation,
+                        tilesPerPage.computeIfAbsent(
+                                storedTileset.getId() + "/" + level,
+                                k -> tilePageCalculator.getTilesPerPage(storedTileset, level)));
+                pageStatsById.putNoReturn(tx, pageStats);
+                allStats.add(pageStats);
             }
+            return allStats;
         }
     }
 
@@ -824,7 +1013,7 @@ public class BDBQuotaStore implements QuotaStore {
 
         SecondaryIndex<Float, Long, PageStats> expirationPolicyIndex = pageStatsByLFU;
         TilePage nextToExpire =
-                issueSync(new FindPageToExpireByLayer(expirationPolicyIndex, layerNames));
+                query(new FindPageToExpireByLayer(expirationPolicyIndex, layerNames));
 
         return nextToExpire;
     }
@@ -834,11 +1023,182 @@ public class BDBQuotaStore implements QuotaStore {
             throws InterruptedException {
         SecondaryIndex<Float, Long, PageStats> expirationPolicyIndex = pageStatsByLRU;
         TilePage nextToExpire =
-                issueSync(new FindPageToExpireByLayer(expirationPolicyIndex, layerNames));
+                query(new FindPageToExpireByLayer(expirationPolicyIndex, layerNames));
 
         return nextToExpire;
     }
 
+    /**
+     * @see org.geowebcache.diskquota.QuotaStore#getPagesToExpire(java.util.Set, ExpirationPolicy,
+     *     TilePage, int)
+     */
+    @Override
+    public List<TilePage> getPagesToExpire(
+            final Set<String> layerNames,
+            final ExpirationPolicy policy,
+            final TilePage after,
+            final int maxPages)
+            throws InterruptedException {
+        final SecondaryIndex<Float, Long, PageStats> expirationPolicyIndex;
+        final Function<PageStats, Object> indexKey;
+        if (ExpirationPolicy.LFU.equals(policy)) {
+            expirationPolicyIndex = pageStatsByLFU;
+            indexKey = PageStats::getFrequencyOfUsePerMinute;
+        } else if (ExpirationPolicy.LRU.equals(policy)) {
+            expirationPolicyIndex = pageStatsByLRU;
+            indexKey = PageStats::getLastAccessTimeMinutes;
+        } else if (ExpirationPolicy.COST.equals(policy)) {
+            expirationPolicyIndex = pageStatsByCost;
+            indexKey = PageStats::getCostPriority;
+        } else {
+            throw new IllegalArgumentException("Unrecognized expiration policy: " + policy);
+        }
+        return query(
+                new FindPagesToExpireByLayer(
+                        policy, expirationPolicyIndex, indexKey, layerNames, after, maxPages));
+    }
+
+    /** A position in an expiration policy index */
+    private static final class IndexPosition {
+        final Object key;
+
+        final long pageStatsId;
+
+        IndexPosition(Object key, long pageStatsId) {
+            this.key = key;
+            this.pageStatsId = pageStatsId;
+        }
+    }
+
+    /**
+     * Where the last page of the recent batches of {@link #getPagesToExpire} was found, by policy
+     * and page id. Lets the next batch resume from the same position even if the page has been
+     * accessed or removed in the meantime.
+     */
+    private final Cache<String, IndexPosition> expirationPositions =
+            CacheBuilder.newBuilder().maximumSize(100).build();
+
+    /**
+     * Collects the pages to expire with a single range cursor over the expiration policy index,
+     * starting right after the position of the cursor page
+     */
+    private class FindPagesToExpireByLayer implements Callable<List<TilePage>> {
+        private final ExpirationPolicy policy;
+
+        private final SecondaryIndex<Float, Long, PageStats> expirationPolicyIndex;
+
+        private final Function<PageStats, Object> indexKey;
+
+        private final Set<String> layerNames;
+
+        private final TilePage after;
+
+        private final int maxPages;
+
+        public FindPagesToExpireByLayer(
+                ExpirationPolicy policy,
+                SecondaryIndex<Float, Long, PageStats> expirationPolicyIndex,
+                Function<PageStats, Object> indexKey,
+                Set<String> layerNames,
+                TilePage after,
+                int maxPages) {
+            this.policy = policy;
+            this.expirationPolicyIndex = expirationPolicyIndex;
+            this.indexKey = indexKey;
+            this.layerNames = layerNames;
+            this.after = after;
+            this.maxPages = maxPages;
+        }
+
+        @SuppressWarnings({"rawtypes", "unchecked"})
+        public List<TilePage> call() throws Exception {
+            final Set<String> tileSetIds = getTileSetIds(layerNames);
+            final List<TilePage> pages = new ArrayList<TilePage>();
+            final IndexPosition start = startPosition();
+            if (after != null && start == null) {
+                // the cursor page is gone along with its position, the pages before it were
+                // already returned and the next ones are now at the head of the index
+                log.debug("Expiration cursor page " + after + " not found, restarting");
+            }
+            // the index key class is the field one, which isn't always the declared Float
+            final EntityCursor<PageStats> pageStatsCursor =
+                    ((SecondaryIndex) expirationPolicyIndex)
+                            .entities(
+                                    null,
+                                    start == null ? null : start.key,
+                                    true,
+                                    null,
+                                    false,
+                                    CursorConfig.READ_COMMITTED);
+            IndexPosition last = null;
+            try {
+                PageStats pageStats;
+                while (pages.size() < maxPages && (pageStats = pageStatsCursor.next()) != null) {
+                    // entries with the same key are sorted by primary key, skip up to the start
+                    if (start != null
+                            && pageStats.getId() <= start.pageStatsId
+                            && start.key.equals(indexKey.apply(pageStats))) {
+                        continue;
+                    }
+                    if (pageStats.getFillFactor() > 0) {
+                        TilePage tilePage =
+                                pageById.get(
+                                        null, pageStats.getPageId(), LockMode.READ_COMMITTED);
+                        if (tilePage != null && tileSetIds.contains(tilePage.getTileSetId())) {
+                            pages.add(tilePage);
+                            last = new IndexPosition(indexKey.apply(pageStats), pageStats.getId());
+                        }
+                    }
+                }
+            } finally {
+                pageStatsCursor.close();
+            }
+            if (last != null) {
+                TilePage lastPage = pages.get(pages.size() - 1);
+                expirationPositions.put(positionKey(policy, lastPage), last);
+            }
+            return pages;
+        }
+
+        private IndexPosition startPosition() {
+            if (after == null) {
+                return null;
+            }
+            IndexPosition position = expirationPositions.getIfPresent(positionKey(policy, after));
+            if (position == null) {
+                PageStats stats =
+                        pageStatsByPageId.get(null, after.getId(), LockMode.READ_COMMITTED);
+                if (stats != null) {
+                    position = new IndexPosition(indexKey.apply(stats), stats.getId());
+                }
+            }
+            return position;
+        }
+    }
+
+    private static String positionKey(ExpirationPolicy policy, TilePage page) {
+        return policy + "/" + page.getId();
+    }
+
+    /** @return the identifiers of the tile sets of the given layers */
+    private Set<String> getTileSetIds(Set<String> layerNames) {
+        final Set<String> tileSetIds = new HashSet<String>();
+        for (String layerName : layerNames) {
+            EntityCursor<TileSet> keys =
+                    tileSetsByLayer.entities(
+                            null, layerName, true, layerName, true, CursorConfig.READ_COMMITTED);
+            try {
+                TileSet tileSet;
+                while ((tileSet = keys.next()) != null) {
+                    tileSetIds.add(tileSet.getId());
+                }
+            } finally {
+                keys.close();
+            }
+        }
+        return tileSetIds;
+    }
+
     private class FindPageToExpireByLayer implements Callable<TilePage> {
         private final SecondaryIndex<Float, Long, PageStats> expirationPolicyIndex;
 
@@ -854,23 +1214,12 @@ public class BDBQuotaStore implements QuotaStore {
         public TilePage call() throws Exception {
 
             // find out the tilesets for the requested layers
-            final Set<String> tileSetIds = new HashSet<String>();
-            for (String layerName : layerNames) {
-                EntityCursor<TileSet> keys =
-                        tileSetsByLayer.entities(layerName, true, layerName, true);
-                try {
-                    TileSet tileSet;
-                    while ((tileSet = keys.next()) != null) {
-                        tileSetIds.add(tileSet.getId());
-                    }
-                } finally {
-                    keys.close();
-                }
-            }
+            final Set<String> tileSetIds = getTileSetIds(layerNames);
 
             TilePage nextToExpire = null;
             // find out the LRU page that matches a requested tileset
-            final EntityCursor<PageStats> pageStatsCursor = expirationPolicyIndex.entities();
+            final EntityCursor<PageStats> pageStatsCursor =
+                    expirationPolicyIndex.entities(null, CursorConfig.READ_COMMITTED);
 
             try {
                 String tileSetId;
@@ -879,7 +1228,7 @@ public class BDBQuotaStore implements QuotaStore {
                 while ((pageStats = pageStatsCursor.next()) != null) {
                     if (pageStats.getFillFactor() > 0) {
                         pageId = pageStats.getPageId();
-                        TilePage tilePage = pageById.get(pageId);
+                        TilePage tilePage = pageById.get(null, pageId, LockMode.READ_COMMITTED);
                         tileSetId = tilePage.getTileSetId();
                         if (tileSetIds.contains(tileSetId)) {
                             nextToExpire = tilePage;
@@ -903,27 +1252,21 @@ public class BDBQuotaStore implements QuotaStore {
         return issueSync(new TruncatePage(tilePage));
     }
 
-    private class TruncatePage implements Callable<PageStats> {
+    private class TruncatePage implements TransactionalCommand<PageStats> {
         private final TilePage tilePage;
 
         public TruncatePage(TilePage tilePage) {
             this.tilePage = tilePage;
         }
 
-        public PageStats call() throws Exception {
-            Transaction tx = entityStore.getEnvironment().beginTransaction(null, null);
-            try {
-                PageStats pageStats = pageStatsByPageId.get(tx, tilePage.getId(), null);
-                if (pageStats != null) {
-                    pageStats.setFillFactor(0f);
-                    pageStatsById.putNoReturn(tx, pageStats);
-                }
-                tx.commit();
-                return pageStats;
-            } catch (Exception e) {
-                tx.abort();
-                throw e;
+        public PageStats call(Transaction tx) throws Exception {
+            PageStats pageStats = pageStatsByPageId.get(tx, tilePage.getId(), null);
+            if (pageStats != null) {
+                pageStats.setFillFactor(0f);
+                pageStatsById.putNoReturn(tx, pageStats);
+                costInflation = Math.max(costInflation, pageStats.getCostPriority());
             }
+            return pageStats;
         }
     }
 }
@@ -32,6 +32,8 @@ public class ClassMetadataBuilder {
 
     private Class entityClass;
 
+    private int version;
+
     private PrimaryKeyMetadata primaryKey;
 
     private List<SecondaryKeyMetadata> secondaryKeys = new ArrayList<SecondaryKeyMetadata>();
@@ -40,6 +42,14 @@ public class ClassMetadataBuilder {
         this.entityClass = type;
     }
 
+    /**
+     * Sets the version of the entity class, to be incremented whenever its persistent fields or
+     * keys change so that the existing records are evolved
+     */
+    public void version(int version) {
+        this.version = version;
+    }
+
     public void primaryKey(String field, String sequence) {
         Field pkField = getField(field);
 
@@ -116,8 +126,16 @@ public class ClassMetadataBuilder {
         }
         ClassMetadata classMetadata =
                 new ClassMetadata(
-                        type.getName(), 0, null, true, primaryKey, secondaryKeyMap, null, fields);
+                        type.getName(),
+                        version,
+                        null,
+                        true,
+                        primaryKey,
+                        secondaryKeyMap,
+                        null,
+                        fields);
         primaryKey = null;
+        version = 0;
         entityClass = null;
         return classMetadata;
     }
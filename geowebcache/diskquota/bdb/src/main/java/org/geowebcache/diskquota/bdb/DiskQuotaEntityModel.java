@@ -52,6 +52,8 @@ public class DiskQuotaEntityModel extends AnnotationModel {
             registerClassMetadata(builder.build());
 
             builder.entity(PageStats.class);
+            // version 1 added the cost priority, version 2 the render time
+            builder.version(2);
             builder.primaryKey("id", "page_stats_seq");
             builder.secondaryKey(
                     "pageId",
@@ -73,6 +75,8 @@ public class DiskQuotaEntityModel extends AnnotationModel {
                     Relationship.MANY_TO_ONE,
                     null,
                     DeleteAction.ABORT);
+            builder.secondaryKey(
+                    "costPriority", "COST", Relationship.MANY_TO_ONE, null, DeleteAction.ABORT);
             registerClassMetadata(builder.build());
 
             builder.entity(TilePage.class);
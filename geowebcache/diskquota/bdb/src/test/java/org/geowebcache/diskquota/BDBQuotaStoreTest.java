@@ -20,6 +20,8 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -312,6 +314,38 @@ public class BDBQuotaStoreTest {
         assertThat(store, hasProperty("globallyUsedQuota", bytes(500)));
     }
 
+    @Test
+    public void testConcurrentWritesAreGroupCommitted() throws Exception {
+        store.setMaxWritesPerTransaction(10);
+        String layerName = tilePageCalculator.getLayerNames().iterator().next();
+        TileSet tileSet = tilePageCalculator.getTileSetsFor(layerName).iterator().next();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Void>> writes = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                writes.add(
+                        executor.submit(
+                                () -> {
+                                    store.addToQuotaAndTileCounts(
+                                            tileSet,
+                                            new Quota(BigInteger.TEN),
+                                            Collections.emptySet());
+                                    // queries run concurrently with the writes
+                                    store.getUsedQuotaByLayerName(layerName);
+                                    return null;
+                                }));
+            }
+            for (Future<Void> write : writes) {
+                write.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertThat(store, hasProperty("globallyUsedQuota", bytes(2000)));
+        assertThat(store.getUsedQuotaByTileSetId(tileSet.getId()), bytes(2000));
+    }
+
     @Test
     public void testDeleteGridset() throws InterruptedException {
         String layerName = "topp:states";
@@ -517,6 +551,47 @@ public class BDBQuotaStoreTest {
         assertThat(store.getLeastRecentlyUsedPage(layerNames), equalTo(page2));
     }
 
+    @Test
+    public void testGetPagesToExpireResumesFromCursor() throws Exception {
+        MockSystemUtils mockSystemUtils = new MockSystemUtils();
+        mockSystemUtils.setCurrentTimeMinutes(1000);
+        mockSystemUtils.setCurrentTimeMillis(mockSystemUtils.currentTimeMinutes() * 60 * 1000);
+        SystemUtils.set(mockSystemUtils);
+
+        Set<String> layerNames = Collections.singleton(testTileSet.getLayerName());
+        List<PageStatsPayload> payloads = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            TilePage page = new TilePage(testTileSet.getId(), i, 1, 2);
+            PageStatsPayload payload = new PageStatsPayload(page);
+            payload.setNumHits(1);
+            payload.setLastAccessTime(mockSystemUtils.currentTimeMillis() + i * 60 * 1000);
+            payloads.add(payload);
+        }
+        store.addHitsAndSetAccesTime(payloads).get();
+        final ExpirationPolicy lru = ExpirationPolicy.LRU;
+        List<TilePage> all = store.getPagesToExpire(layerNames, lru, null, 10);
+        assertThat(all.size(), equalTo(5));
+
+        List<TilePage> batch = store.getPagesToExpire(layerNames, lru, null, 2);
+        assertThat(batch, equalTo(all.subList(0, 2)));
+
+        // the cursor page gets accessed, the next batch still resumes from where it was
+        PageStatsPayload hit = payloads.get(1);
+        hit.setLastAccessTime(mockSystemUtils.currentTimeMillis() + 10 * 60 * 1000);
+        store.addHitsAndSetAccesTime(Collections.singletonList(hit)).get();
+        batch = store.getPagesToExpire(layerNames, lru, batch.get(1), 2);
+        assertThat(batch, equalTo(all.subList(2, 4)));
+
+        // without a recorded position, resume from the current one of the cursor page
+        batch = store.getPagesToExpire(layerNames, lru, all.get(2), 10);
+        assertThat(batch, contains(all.get(3), all.get(4), all.get(1)));
+
+        // a cursor page that no longer exists restarts from the head of the index
+        TilePage removed = new TilePage(testTileSet.getId(), 9, 9, 2);
+        batch = store.getPagesToExpire(layerNames, lru, removed, 1);
+        assertThat(batch, contains(all.get(0)));
+    }
+
     @Test
     public void testGetTileSetById() throws Exception {
         assertThat(store.getTileSetById(testTileSet.getId()), equalTo(testTileSet));
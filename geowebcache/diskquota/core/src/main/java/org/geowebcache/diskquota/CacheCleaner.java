@@ -15,7 +15,14 @@
 package org.geowebcache.diskquota;
 
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.geowebcache.GeoWebCacheException;
@@ -29,6 +36,7 @@ import org.geowebcache.seed.GWCTask;
 import org.geowebcache.seed.TileBreeder;
 import org.geowebcache.storage.TileRange;
 import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 
 /**
  * @author groldan
@@ -40,7 +48,13 @@ public class CacheCleaner implements DisposableBean {
 
     private final TileBreeder tileBreeder;
 
-    private boolean shutDown;
+    private volatile boolean shutDown;
+
+    private int batchSize = 100;
+
+    private int parallelism = 4;
+
+    private ExecutorService truncateExecutor;
 
     public static interface QuotaResolver {
         ExpirationPolicy getExpirationPolicy();
@@ -113,6 +127,55 @@ public class CacheCleaner implements DisposableBean {
     /** @see org.springframework.beans.factory.DisposableBean#destroy() */
     public void destroy() throws Exception {
         this.shutDown = true;
+        synchronized (this) {
+            if (truncateExecutor != null) {
+                truncateExecutor.shutdownNow();
+                truncateExecutor = null;
+            }
+        }
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Sets how many pages are fetched from the quota store and truncated before the used quota is
+     * checked again, defaults to {@code 100}
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size shall be positive: " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /** Sets how many pages of a batch are truncated in parallel, defaults to {@code 4} */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism shall be positive: " + parallelism);
+        }
+        synchronized (this) {
+            this.parallelism = parallelism;
+            if (truncateExecutor != null) {
+                truncateExecutor.shutdown();
+                truncateExecutor = null;
+            }
+        }
+    }
+
+    private synchronized ExecutorService getTruncateExecutor() {
+        if (truncateExecutor == null) {
+            CustomizableThreadFactory tf =
+                    new CustomizableThreadFactory("GWC DiskQuota page truncate thread-");
+            tf.setDaemon(true);
+            truncateExecutor = Executors.newFixedThreadPool(parallelism, tf);
+        }
+        return truncateExecutor;
     }
 
     /**
@@ -120,6 +183,10 @@ public class CacheCleaner implements DisposableBean {
      * interrupted or the {@link #destroy() shutdown hook} has been called to signal the calling
      * code of premature termination.
      *
+     * <p>Pages are expired in batches of {@link #setBatchSize batchSize} pages, fetched from the
+     * quota store in a single call and truncated in parallel, checking the used quota only after
+     * each batch.
+     *
      * @param layerNames the layers to expire tile pages from
      * @param quotaResolver live limit and used quota to monitor until it reaches its limit
      * @throws InterruptedException
@@ -134,6 +201,8 @@ public class CacheCleaner implements DisposableBean {
         Quota limit;
         Quota used;
         Quota excess;
+        // last page of the previous batch
+        TilePage cursor = null;
 
         while (true) {
             if (shutDown || Thread.currentThread().isInterrupted()) {
@@ -162,17 +231,15 @@ public class CacheCleaner implements DisposableBean {
                 return;
             }
 
-            TilePage tilePage = null;
-            if (ExpirationPolicy.LFU.equals(expirationPolicy)) {
-                tilePage = pageStore.getLeastFrequentlyUsedPage(layerNames);
-            } else if (ExpirationPolicy.LRU.equals(expirationPolicy)) {
-                tilePage = pageStore.getLeastRecentlyUsedPage(layerNames);
-            } else {
-                throw new IllegalStateException(
-                        "Unrecognized expiration policy: " + expirationPolicy);
-            }
+            List<TilePage> tilePages =
+                    pageStore.getPagesToExpire(layerNames, expirationPolicy, cursor, batchSize);
 
-            if (tilePage == null) {
+            if (tilePages.isEmpty()) {
+                if (cursor != null) {
+                    // went through all the candidates, start over in case pages got new tiles
+                    cursor = null;
+                    continue;
+                }
                 limit = quotaResolver.getLimit();
                 Quota usedQuota = quotaResolver.getUsed();
                 if (excess.getBytes().compareTo(BigInteger.ZERO) > 0) {
@@ -187,9 +254,9 @@ public class CacheCleaner implements DisposableBean {
             }
             if (log.isDebugEnabled()) {
                 log.debug(
-                        "Expiring tile page "
-                                + tilePage
-                                + " based on the global "
+                        "Expiring "
+                                + tilePages.size()
+                                + " tile pages based on the "
                                 + expirationPolicy
                                 + " expiration policy");
             }
@@ -197,7 +264,47 @@ public class CacheCleaner implements DisposableBean {
                 throw new InterruptedException();
             }
 
-            expirePage(pageStore, tilePage);
+            expirePages(pageStore, tilePages);
+            cursor = tilePages.get(tilePages.size() - 1);
+        }
+    }
+
+    /** Truncates the pages in parallel, returning once all of them are done */
+    private void expirePages(final QuotaStore pageStore, final List<TilePage> tilePages)
+            throws InterruptedException {
+        if (tilePages.size() == 1 || parallelism == 1) {
+            for (TilePage tilePage : tilePages) {
+                expirePage(pageStore, tilePage);
+            }
+            return;
+        }
+        final ExecutorService executor = getTruncateExecutor();
+        List<Future<Void>> futures = new ArrayList<>(tilePages.size());
+        try {
+            for (TilePage tilePage : tilePages) {
+                futures.add(
+                        executor.submit(
+                                () -> {
+                                    expirePage(pageStore, tilePage);
+                                    return null;
+                                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        } catch (RejectedExecutionException e) {
+            // shut down while submitting
+            throw new InterruptedException();
+        } finally {
+            for (Future<Void> future : futures) {
+                future.cancel(true);
+            }
         }
     }
 
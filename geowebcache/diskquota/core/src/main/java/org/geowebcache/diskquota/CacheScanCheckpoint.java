@@ -0,0 +1,243 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.diskquota;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Progress of the scan of a zoom level directory by {@link LayerCacheInfoBuilder}, made of the
+ * tile counts and sizes found in each of its directories.
+ *
+ * <p>Each directory is recorded before its tiles are sent to the quota store, so that the records
+ * always cover everything the store may have been told about. An interrupted scan is resumed by
+ * dropping the layer usage from the store and sending it the recorded tiles again, then scanning
+ * only the directories not recorded yet. This way a crash between recording a directory and
+ * updating the store can't count its tiles twice.
+ *
+ * <p>Each line records a directory as {@code path<TAB>hasSubdirectories<TAB>pages<TAB>$} where
+ * pages is a {@code ;} separated list of {@code blobFormat,pageX,pageY,tiles,bytes}, and the
+ * trailing {@code $} tells complete lines from the ones torn by a crash.
+ */
+class CacheScanCheckpoint implements Closeable {
+
+    private static final Log log = LogFactory.getLog(CacheScanCheckpoint.class);
+
+    private static final String COMPLETE = "#complete";
+
+    private static final String END = "$";
+
+    /** Number of tiles and their size for a single page and format */
+    static class PageRecord {
+
+        final String blobFormat;
+
+        final int pageX;
+
+        final int pageY;
+
+        int tiles;
+
+        long bytes;
+
+        PageRecord(String blobFormat, int pageX, int pageY) {
+            this.blobFormat = blobFormat;
+            this.pageX = pageX;
+            this.pageY = pageY;
+        }
+    }
+
+    /** The tiles found directly in a directory */
+    static class DirectoryRecord {
+
+        final String path;
+
+        final boolean hasSubdirectories;
+
+        final List<PageRecord> pages;
+
+        DirectoryRecord(String path, boolean hasSubdirectories, List<PageRecord> pages) {
+            this.path = path;
+            this.hasSubdirectories = hasSubdirectories;
+            this.pages = pages;
+        }
+    }
+
+    private final Map<String, DirectoryRecord> records;
+
+    private final boolean complete;
+
+    private final Writer writer;
+
+    private CacheScanCheckpoint(
+            Map<String, DirectoryRecord> records, boolean complete, Writer writer) {
+        this.records = records;
+        this.complete = complete;
+        this.writer = writer;
+    }
+
+    /**
+     * Opens the checkpoint stored in the given file, creating it if it does not exist, to carry on
+     * with the scan it tracks
+     */
+    public static CacheScanCheckpoint open(File file) throws IOException {
+        Map<String, DirectoryRecord> records = new HashMap<>();
+        boolean complete = false;
+        final boolean exists = file.exists();
+        if (exists) {
+            try (BufferedReader reader =
+                    new BufferedReader(
+                            new InputStreamReader(
+                                    new FileInputStream(file), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (COMPLETE.equals(line)) {
+                        complete = true;
+                        continue;
+                    }
+                    DirectoryRecord record = parse(line);
+                    if (record != null) {
+                        records.put(record.path, record);
+                    }
+                }
+            }
+        } else {
+            file.getParentFile().mkdirs();
+        }
+        Writer writer =
+                new BufferedWriter(
+                        new OutputStreamWriter(
+                                new FileOutputStream(file, true), StandardCharsets.UTF_8));
+        if (exists) {
+            // in case the last line was torn
+            writer.write('\n');
+        }
+        return new CacheScanCheckpoint(records, complete, writer);
+    }
+
+    /**
+     * Returns a checkpoint that records nothing, for scans that can't be resumed as there is no
+     * place to keep their progress
+     */
+    public static CacheScanCheckpoint none() {
+        return new CacheScanCheckpoint(Collections.emptyMap(), false, null);
+    }
+
+    /** @return whether all the directories were recorded */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /** @return the directories recorded when the checkpoint was opened */
+    public Collection<DirectoryRecord> getRecords() {
+        return records.values();
+    }
+
+    /**
+     * @return the record of the given directory when the checkpoint was opened, {@code null} if
+     *     not found
+     */
+    public DirectoryRecord get(String path) {
+        return records.get(path);
+    }
+
+    /** Records the given directory, shall be called before its tiles are sent to the store */
+    public synchronized void record(DirectoryRecord record) throws IOException {
+        if (writer == null) {
+            return;
+        }
+        StringBuilder line = new StringBuilder(record.path);
+        line.append('\t').append(record.hasSubdirectories);
+        line.append('\t');
+        for (int i = 0; i < record.pages.size(); i++) {
+            PageRecord page = record.pages.get(i);
+            if (i > 0) {
+                line.append(';');
+            }
+            line.append(page.blobFormat).append(',');
+            line.append(page.pageX).append(',').append(page.pageY).append(',');
+            line.append(page.tiles).append(',').append(page.bytes);
+        }
+        line.append('\t').append(END).append('\n');
+        writer.write(line.toString());
+        // flush before the store is updated, a crash can't lose a directory the store knows about
+        writer.flush();
+    }
+
+    /** Marks the scan as complete */
+    public synchronized void complete() throws IOException {
+        if (writer == null) {
+            return;
+        }
+        writer.write(COMPLETE + "\n");
+        writer.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+        }
+    }
+
+    private static DirectoryRecord parse(String line) {
+        String[] parts = line.split("\t", -1);
+        if (parts.length != 4 || !END.equals(parts[3])) {
+            // torn line
+            return null;
+        }
+        try {
+            List<PageRecord> pages;
+            if (parts[2].isEmpty()) {
+                pages = Collections.emptyList();
+            } else {
+                String[] entries = parts[2].split(";");
+                pages = new ArrayList<>(entries.length);
+                for (String entry : entries) {
+                    String[] fields = entry.split(",");
+                    PageRecord page =
+                            new PageRecord(
+                                    fields[0],
+                                    Integer.parseInt(fields[1]),
+                                    Integer.parseInt(fields[2]));
+                    page.tiles = Integer.parseInt(fields[3]);
+                    page.bytes = Long.parseLong(fields[4]);
+                    pages.add(page);
+                }
+            }
+            return new DirectoryRecord(parts[0], Boolean.parseBoolean(parts[1]), pages);
+        } catch (RuntimeException e) {
+            log.debug("Ignoring invalid cache scan checkpoint line " + line);
+            return null;
+        }
+    }
+}
@@ -25,6 +25,7 @@ import java.util.concurrent.TimeUnit;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.geowebcache.GeoWebCacheException;
+import org.geowebcache.GeoWebCacheExtensions;
 import org.geowebcache.config.ConfigurationException;
 import org.geowebcache.diskquota.CacheCleaner.GlobalQuotaResolver;
 import org.geowebcache.diskquota.CacheCleaner.LayerQuotaResolver;
@@ -90,6 +91,9 @@ public class DiskQuotaMonitor implements InitializingBean, DisposableBean {
 
     private UsageStatsMonitor usageStatsMonitor;
 
+    /** Decides on each tile put whether it gets stored, {@code null} if not configured */
+    private QuotaAdmissionController admissionController;
+
     private volatile boolean isRunning;
 
     private final DefaultStorageFinder storageFinder;
@@ -236,7 +240,9 @@ public class DiskQuotaMonitor implements InitializingBean, DisposableBean {
 
         quotaStore = quotaStoreProvider.getQuotaStore();
 
-        quotaUsageMonitor = new QuotaUpdatesMonitor(storageBroker, quotaStore);
+        quotaUsageMonitor =
+                new QuotaUpdatesMonitor(
+                        storageBroker, quotaStore, new File(storageFinder.getDefaultPath()));
         usageStatsMonitor = new UsageStatsMonitor(quotaStore, tileLayerDispatcher);
 
         if (cleanUpExecutorService != null) {
@@ -252,6 +258,8 @@ public class DiskQuotaMonitor implements InitializingBean, DisposableBean {
 
         usageStatsMonitor.startUp();
 
+        setUpAdmissionControl();
+
         // the tasks that poll the status of the used quotas periodically and performs the clean up
         // when a quota is exceeded
         setUpScheduledCleanUp();
@@ -293,6 +301,8 @@ public class DiskQuotaMonitor implements InitializingBean, DisposableBean {
                 this.cleanUpExecutorService.shutdownNow();
             }
 
+            removeAdmissionControl();
+
             log.info("Shutting down quota usage monitor...");
             quotaUsageMonitor.shutDownNow();
 
@@ -378,32 +388,39 @@ public class DiskQuotaMonitor implements InitializingBean, DisposableBean {
         } catch (ConfigurationException e) {
             throw new RuntimeException(e);
         }
+        // keep the scan progress along with the store data, which it has to be consistent with
+        File storeDirectory = quotaStore.getStoreDirectory();
+        File scanStateDir = storeDirectory == null ? null : new File(storeDirectory, "cache_scan");
         cacheInfoBuilder =
-                new LayerCacheInfoBuilder(cacheRoot, cleanUpExecutorService, quotaUsageMonitor);
+                new LayerCacheInfoBuilder(
+                        cacheRoot, scanStateDir, cleanUpExecutorService, quotaUsageMonitor);
 
         for (String layerName : tileLayerDispatcher.getLayerNames()) {
 
             Quota usedQuota = quotaStore.getUsedQuotaByLayerName(layerName);
-            if (usedQuota.getBytes().compareTo(BigInteger.ZERO) > 0) {
+            if (cacheInfoBuilder.hasIncompleteScan(layerName)) {
+                log.info("Resuming the interrupted disk usage scan of layer " + layerName);
+            } else if (usedQuota.getBytes().compareTo(BigInteger.ZERO) > 0) {
                 log.debug(
                         "Using saved quota information for layer "
                                 + layerName
                                 + ": "
                                 + usedQuota.toNiceString());
+                continue;
             } else {
                 log.debug(
                         layerName
                                 + " has no saved used quota information,"
                                 + "traversing layer cache to compute its disk usage.");
-                TileLayer tileLayer;
-                try {
-                    tileLayer = tileLayerDispatcher.getTileLayer(layerName);
-                } catch (GeoWebCacheException e) {
-                    log.debug(e);
-                    continue;
-                }
-                cacheInfoBuilder.buildCacheInfo(tileLayer);
             }
+            TileLayer tileLayer;
+            try {
+                tileLayer = tileLayerDispatcher.getTileLayer(layerName);
+            } catch (GeoWebCacheException e) {
+                log.debug(e);
+                continue;
+            }
+            cacheInfoBuilder.buildCacheInfo(tileLayer);
         }
         return cacheInfoBuilder;
     }
@@ -434,6 +451,80 @@ public class DiskQuotaMonitor implements InitializingBean, DisposableBean {
         log.info("Disk quota periodic enforcement task set up every " + period + " " + unit);
     }
 
+    /**
+     * Enforces the write rates and quotas on each tile put, if configured through the {@code
+     * GEOWEBCACHE_QUOTA_LAYER_WRITE_RATE} and {@code GEOWEBCACHE_QUOTA_WRITE_RATE} properties, in
+     * bytes per second for each layer and for all of them, and the {@code
+     * GEOWEBCACHE_QUOTA_ENFORCE_ON_PUT} one. The configured quotas are reloaded every {@code
+     * GEOWEBCACHE_QUOTA_ADMISSION_REFRESH} milliseconds, defaults to 10 seconds.
+     */
+    private void setUpAdmissionControl() throws InterruptedException {
+        removeAdmissionControl();
+        long layerRate = getLongProperty("GEOWEBCACHE_QUOTA_LAYER_WRITE_RATE", 0);
+        long globalRate = getLongProperty("GEOWEBCACHE_QUOTA_WRITE_RATE", 0);
+        boolean enforceQuotas =
+                Boolean.parseBoolean(
+                        GeoWebCacheExtensions.getPropertyOrDefault(
+                                "GEOWEBCACHE_QUOTA_ENFORCE_ON_PUT", "false"));
+        if (layerRate <= 0 && globalRate <= 0 && !enforceQuotas) {
+            return;
+        }
+        long refresh = getLongProperty("GEOWEBCACHE_QUOTA_ADMISSION_REFRESH", 10000);
+        if (refresh <= 0) {
+            log.warn("GEOWEBCACHE_QUOTA_ADMISSION_REFRESH must be positive, using 10000");
+            refresh = 10000;
+        }
+
+        final QuotaAdmissionController controller =
+                new QuotaAdmissionController(
+                        quotaStore, quotaConfig, layerRate, globalRate, enforceQuotas);
+        controller.refresh();
+        storageBroker.addBlobStoreListener(controller);
+        storageBroker.addPutAdmissionController(controller);
+        cleanUpExecutorService.scheduleWithFixedDelay(
+                () -> {
+                    try {
+                        controller.refresh();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } catch (RuntimeException e) {
+                        log.warn("Error refreshing the used disk quotas", e);
+                    }
+                },
+                refresh,
+                refresh,
+                TimeUnit.MILLISECONDS);
+        this.admissionController = controller;
+        log.info(
+                "Disk quota admission control set up, layer write rate: "
+                        + layerRate
+                        + "B/s, global write rate: "
+                        + globalRate
+                        + "B/s, quotas enforced: "
+                        + enforceQuotas);
+    }
+
+    /** Parses a numeric property, falling back to the default value if it's missing or invalid */
+    private static long getLongProperty(String name, long defaultValue) {
+        String value = GeoWebCacheExtensions.getProperty(name);
+        if (value != null) {
+            try {
+                return Long.parseLong(value.trim());
+            } catch (NumberFormatException e) {
+                log.warn("Invalid value '" + value + "' for " + name + ", using " + defaultValue);
+            }
+        }
+        return defaultValue;
+    }
+
+    private void removeAdmissionControl() {
+        if (admissionController != null) {
+            storageBroker.removePutAdmissionController(admissionController);
+            storageBroker.removeBlobStoreListener(admissionController);
+            admissionController = null;
+        }
+    }
+
     /**
      * Sets the {@link LayerQuota#setExpirationPolicy(ExpirationPolicy) expiration policy} to all
      * the configured layer quotas based on their {@link LayerQuota#getExpirationPolicyName()
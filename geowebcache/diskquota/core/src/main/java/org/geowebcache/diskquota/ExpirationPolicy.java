@@ -16,5 +16,11 @@ package org.geowebcache.diskquota;
 
 public enum ExpirationPolicy {
     LRU,
-    LFU;
+    LFU,
+    /**
+     * Cost aware policy, expires first the pages with the lowest {@link
+     * org.geowebcache.diskquota.storage.PageStats#getCostPriority() cost priority}, so that the
+     * pages most expensive to render again stay longer
+     */
+    COST;
 }
@@ -0,0 +1,575 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.diskquota;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.geowebcache.diskquota.QuotaDeltaLog.Record;
+import org.geowebcache.diskquota.QuotaDeltaLog.TileSetDelta;
+import org.geowebcache.diskquota.storage.PageStatsPayload;
+import org.geowebcache.diskquota.storage.TilePage;
+import org.geowebcache.diskquota.storage.TilePageCalculator;
+import org.geowebcache.diskquota.storage.TileSet;
+import org.geowebcache.storage.BlobStoreListener;
+import org.springframework.util.Assert;
+
+/**
+ * Alternative to the {@link QueuedQuotaUpdatesProducer}/{@link QueuedQuotaUpdatesConsumer} pair
+ * that keeps track of the disk usage without queueing an update per tile event.
+ *
+ * <p>Tile events are added to per tile set and per page {@link LongAdder}s, so storing tiles
+ * never blocks on the accounting, and only contends on the hash bin of its tile set while adding.
+ * A background task, run by {@link #call()}, appends the differences accumulated since its last
+ * run to a {@link QuotaDeltaLog} every {@code logIntervalMillis}, and every {@code
+ * snapshotIntervalMillis} saves the differences to the {@link QuotaStore} in a single batch and
+ * empties the log. Pages and tile sets with nothing left to save are then dropped, so memory
+ * usage follows the recently changed pages rather than all the pages ever touched. At startup
+ * {@link #recover()} saves whatever was left in the log by a previous run that did not shut down
+ * cleanly, skipping the tile sets the interrupted flush already saved.
+ *
+ * <p>Tile events received less than {@code logIntervalMillis} before a crash are lost. Render
+ * times are only kept in memory until the next snapshot, they are statistics rather than usage.
+ */
+class InMemoryQuotaAccounting implements BlobStoreListener, Callable<Long> {
+
+    private static final Log log = LogFactory.getLog(InMemoryQuotaAccounting.class);
+
+    /**
+     * Running totals for a page. The total is never reset, the logged and flushed watermarks are
+     * only accessed while holding the snapshot lock. Pages are only added to and removed from
+     * their tile set while holding the tile set map bin lock, see {@link #update}.
+     */
+    private static class PageCounter {
+
+        final TilePage page;
+
+        final LongAdder tiles = new LongAdder();
+
+        final LongAdder rendered = new LongAdder();
+
+        final LongAdder renderTime = new LongAdder();
+
+        long sampled;
+
+        long logged;
+
+        long flushed;
+
+        PageCounter(TilePage page) {
+            this.page = page;
+        }
+    }
+
+    /** Running totals for a tile set and its pages, see {@link PageCounter} */
+    private static class TileSetCounter {
+
+        final TileSet tileSet;
+
+        final LongAdder bytes = new LongAdder();
+
+        final ConcurrentMap<String, PageCounter> pages = new ConcurrentHashMap<>();
+
+        long sampled;
+
+        long logged;
+
+        long flushed;
+
+        TileSetCounter(TileSet tileSet) {
+            this.tileSet = tileSet;
+        }
+    }
+
+    private final QuotaStore quotaStore;
+
+    private final TilePageCalculator tilePageCalculator;
+
+    private final QuotaDeltaLog deltaLog;
+
+    private final long logIntervalMillis;
+
+    private final long snapshotIntervalMillis;
+
+    private final ConcurrentMap<TileSet, TileSetCounter> counters = new ConcurrentHashMap<>();
+
+    /** Guards the watermarks, only held to sample or update them, never while doing I/O */
+    private final Object snapshotLock = new Object();
+
+    /** Serializes the writes to the delta log and the quota store */
+    private final Object flushLock = new Object();
+
+    /** Sequence of the next flush, tags the delta log records. Guarded by the flush lock */
+    private long sequence;
+
+    private volatile boolean terminate;
+
+    public InMemoryQuotaAccounting(
+            QuotaStore quotaStore,
+            QuotaDeltaLog deltaLog,
+            long logIntervalMillis,
+            long snapshotIntervalMillis) {
+        Assert.notNull(quotaStore, "quotaStore is null");
+        Assert.notNull(deltaLog, "deltaLog is null");
+        Assert.isTrue(logIntervalMillis > 0, "logIntervalMillis shall be positive");
+        this.quotaStore = quotaStore;
+        this.tilePageCalculator = quotaStore.getTilePageCalculator();
+        this.deltaLog = deltaLog;
+        this.logIntervalMillis = logIntervalMillis;
+        this.snapshotIntervalMillis = Math.max(logIntervalMillis, snapshotIntervalMillis);
+    }
+
+    /**
+     * Saves to the quota store the differences left in the delta log by a previous run. The
+     * differences of an interrupted flush are only saved for the tile sets it didn't get to.
+     */
+    public void recover() throws IOException, InterruptedException {
+        synchronized (flushLock) {
+            List<Record> records = deltaLog.replay();
+            long lastFlush = Long.MIN_VALUE;
+            for (Record record : records) {
+                sequence = Math.max(sequence, record.getSequence() + 1);
+                if (record.isFlush()) {
+                    lastFlush = Math.max(lastFlush, record.getSequence());
+                }
+            }
+            Map<TileSet, TileSetDelta> unsaved = new LinkedHashMap<>();
+            for (Record record : records) {
+                if (record.getSequence() < lastFlush
+                        || (record.getSequence() == lastFlush && !record.isFlush())) {
+                    // superseded by the last flush record
+                    continue;
+                }
+                for (TileSetDelta delta : record.getDeltas()) {
+                    if (record.isFlush()) {
+                        String tileSetId = delta.getTileSet().getId();
+                        if (delta.isSavedIn(quotaStore.getUsedQuotaByTileSetId(tileSetId))) {
+                            continue;
+                        }
+                    }
+                    unsaved.computeIfAbsent(delta.getTileSet(), TileSetDelta::new).add(delta);
+                }
+            }
+            unsaved.values().removeIf(TileSetDelta::isEmpty);
+            List<TileSetDelta> failed = flush(unsaved.values());
+            // keep what could not be saved for the next snapshot, as already logged
+            for (TileSetDelta delta : failed) {
+                restore(delta);
+            }
+            deltaLog.rewrite(sequence, false, failed);
+        }
+    }
+
+    private void restore(TileSetDelta delta) {
+        synchronized (snapshotLock) {
+            counters.compute(
+                    delta.getTileSet(),
+                    (k, counter) -> {
+                        if (counter == null) {
+                            counter = new TileSetCounter(k);
+                        }
+                        counter.bytes.add(delta.getBytes());
+                        counter.logged += delta.getBytes();
+                        for (PageStatsPayload payload : delta.getTileCountDifferences()) {
+                            TilePage page = payload.getPage();
+                            PageCounter pageCounter =
+                                    counter.pages.computeIfAbsent(
+                                            page.getKey(), key -> new PageCounter(page));
+                            pageCounter.tiles.add(payload.getNumTiles());
+                            pageCounter.logged += payload.getNumTiles();
+                        }
+                        return counter;
+                    });
+        }
+    }
+
+    /**
+     * Appends a flush record for the differences, then saves them to the quota store
+     *
+     * @return the differences that could not be saved
+     */
+    private List<TileSetDelta> flush(Collection<TileSetDelta> deltas)
+            throws IOException, InterruptedException {
+        List<TileSetDelta> failed = new ArrayList<>();
+        if (deltas.isEmpty()) {
+            return failed;
+        }
+        for (TileSetDelta delta : deltas) {
+            String tileSetId = delta.getTileSet().getId();
+            delta.setBaseQuota(quotaStore.getUsedQuotaByTileSetId(tileSetId).getBytes());
+        }
+        deltaLog.append(sequence, true, deltas);
+        for (TileSetDelta delta : deltas) {
+            try {
+                quotaStore.addToQuotaAndTileCounts(
+                        delta.getTileSet(),
+                        delta.getQuotaDifference(),
+                        delta.getTileCountDifferences());
+            } catch (RuntimeException e) {
+                log.warn("Error saving disk quota usage of " + delta.getTileSet(), e);
+                delta.setBaseQuota(null);
+                failed.add(delta);
+            }
+        }
+        sequence++;
+        return failed;
+    }
+
+    @Override
+    public Long call() {
+        long lastSnapshot = System.currentTimeMillis();
+        while (!terminate && !Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(logIntervalMillis);
+                if (System.currentTimeMillis() - lastSnapshot >= snapshotIntervalMillis) {
+                    snapshot();
+                    lastSnapshot = System.currentTimeMillis();
+                } else {
+                    writeLog();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException | RuntimeException e) {
+                log.warn("Error saving disk quota usage, will retry", e);
+            }
+        }
+        try {
+            if (Thread.currentThread().isInterrupted()) {
+                // can't talk to the store while interrupted, make sure the log is up to date
+                log.info("Disk quota accounting interrupted, saving pending updates to log");
+                writeLog();
+            } else {
+                snapshot();
+            }
+            deltaLog.close();
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            log.warn("Error saving disk quota usage on shut down", e);
+        }
+        return null;
+    }
+
+    public void shutdown() {
+        this.terminate = true;
+    }
+
+    /** Appends to the delta log the differences accumulated since the last append */
+    void writeLog() throws IOException {
+        synchronized (flushLock) {
+            List<TileSetDelta> deltas = new ArrayList<>();
+            synchronized (snapshotLock) {
+                for (TileSetCounter counter : counters.values()) {
+                    counter.sampled = counter.bytes.sum();
+                    TileSetDelta delta = new TileSetDelta(counter.tileSet);
+                    delta.addBytes(counter.sampled - counter.logged);
+                    for (PageCounter page : counter.pages.values()) {
+                        page.sampled = page.tiles.sum();
+                        delta.addTiles(page.page, (int) (page.sampled - page.logged));
+                    }
+                    if (!delta.isEmpty()) {
+                        deltas.add(delta);
+                    }
+                }
+            }
+            deltaLog.append(sequence, false, deltas);
+            synchronized (snapshotLock) {
+                // counters created after sampling have nothing sampled nor logged
+                for (TileSetCounter counter : counters.values()) {
+                    counter.logged = counter.sampled;
+                    for (PageCounter page : counter.pages.values()) {
+                        page.logged = page.sampled;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Saves the differences accumulated since the last snapshot to the quota store, replaces the
+     * delta log with whatever could not be saved, and drops the counters with nothing left to save
+     */
+    void snapshot() throws IOException, InterruptedException {
+        synchronized (flushLock) {
+            writeLog();
+            Map<TileSet, TileSetDelta> deltas = new LinkedHashMap<>();
+            synchronized (snapshotLock) {
+                for (TileSetCounter counter : counters.values()) {
+                    TileSetDelta delta = new TileSetDelta(counter.tileSet);
+                    delta.addBytes(counter.logged - counter.flushed);
+                    for (PageCounter page : counter.pages.values()) {
+                        delta.addTiles(page.page, (int) (page.logged - page.flushed));
+                        delta.addRenderTime(
+                                page.page,
+                                (int) page.rendered.sumThenReset(),
+                                page.renderTime.sumThenReset());
+                    }
+                    if (!delta.isEmpty()) {
+                        deltas.put(counter.tileSet, delta);
+                    }
+                }
+            }
+            List<TileSetDelta> failed = flush(deltas.values());
+            for (TileSetDelta delta : failed) {
+                deltas.remove(delta.getTileSet());
+            }
+            synchronized (snapshotLock) {
+                for (TileSet tileSet : deltas.keySet()) {
+                    TileSetCounter counter = counters.get(tileSet);
+                    counter.flushed = counter.logged;
+                    for (PageCounter page : counter.pages.values()) {
+                        page.flushed = page.logged;
+                    }
+                }
+                evictFlushed();
+            }
+            deltaLog.rewrite(sequence, false, failed);
+        }
+    }
+
+    /**
+     * Drops the pages and tile sets whose running totals are all saved, under the same bin locks
+     * {@link #update} holds, so no event can be added to a dropped counter
+     */
+    private void evictFlushed() {
+        for (TileSet tileSet : counters.keySet()) {
+            counters.computeIfPresent(
+                    tileSet,
+                    (k, counter) -> {
+                        if (counter.logged != counter.flushed) {
+                            // failed to save, keep everything
+                            return counter;
+                        }
+                        counter.pages
+                                .values()
+                                .removeIf(
+                                        page ->
+                                                page.logged == page.flushed
+                                                        && page.tiles.sum() == page.flushed);
+                        boolean idle =
+                                counter.pages.isEmpty() && counter.bytes.sum() == counter.flushed;
+                        return idle ? null : counter;
+                    });
+        }
+    }
+
+    /** @return the number of pages whose tile counts are being tracked */
+    int getTrackedPageCount() {
+        int count = 0;
+        for (TileSetCounter counter : counters.values()) {
+            count += counter.pages.size();
+        }
+        return count;
+    }
+
+    /**
+     * Saves the pending differences and stops tracking the tile sets matching the filter, before
+     * they get changed in the quota store
+     */
+    private void discard(Predicate<TileSet> filter) {
+        synchronized (flushLock) {
+            try {
+                snapshot();
+            } catch (IOException e) {
+                log.warn("Error saving disk quota usage", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            counters.keySet().removeIf(filter);
+        }
+    }
+
+    private void update(
+            String layerName,
+            String gridSetId,
+            String blobFormat,
+            String parametersId,
+            long bytes,
+            int tiles,
+            long renderTime,
+            long[] tileIndex) {
+        TileSet key = new TileSet(layerName, gridSetId, blobFormat, parametersId);
+        final String pageKey;
+        final int[] pageIndex;
+        if (tiles == 0) {
+            pageKey = null;
+            pageIndex = null;
+        } else {
+            pageIndex = tilePageCalculator.pageIndexForTile(key, tileIndex, new int[3]);
+            StringBuilder pageId = new StringBuilder(128);
+            TilePage.computeId(key.getId(), pageIndex[0], pageIndex[1], pageIndex[2], pageId);
+            pageKey = pageId.toString();
+        }
+        // adding under the bin lock keeps the counters from being dropped in the meantime
+        counters.compute(
+                key,
+                (k, counter) -> {
+                    if (counter == null) {
+                        counter = new TileSetCounter(k);
+                    }
+                    counter.bytes.add(bytes);
+                    if (pageKey != null) {
+                        PageCounter page = counter.pages.get(pageKey);
+                        if (page == null) {
+                            page =
+                                    new PageCounter(
+                                            new TilePage(
+                                                    k.getId(),
+                                                    pageIndex[0],
+                                                    pageIndex[1],
+                                                    pageIndex[2]));
+                            counter.pages.put(pageKey, page);
+                        }
+                        page.tiles.add(tiles);
+                        if (renderTime > 0) {
+                            page.rendered.increment();
+                            page.renderTime.add(renderTime);
+                        }
+                    }
+                    return counter;
+                });
+    }
+
+    @Override
+    public void tileStored(
+            String layerName,
+            String gridSetId,
+            String blobFormat,
+            String parametersId,
+            long x,
+            long y,
+            int z,
+            long blobSize) {
+        if (blobSize == 0) {
+            return;
+        }
+        update(
+                layerName,
+                gridSetId,
+                blobFormat,
+                parametersId,
+                blobSize,
+                1,
+                0,
+                new long[] {x, y, z});
+    }
+
+    @Override
+    public void tileStored(
+            String layerName,
+            String gridSetId,
+            String blobFormat,
+            String parametersId,
+            long x,
+            long y,
+            int z,
+            long blobSize,
+            long renderTime) {
+        if (blobSize == 0) {
+            return;
+        }
+        update(
+                layerName,
+                gridSetId,
+                blobFormat,
+                parametersId,
+                blobSize,
+                1,
+                renderTime,
+                new long[] {x, y, z});
+    }
+
+    @Override
+    public void tileDeleted(
+            String layerName,
+            String gridSetId,
+            String blobFormat,
+            String parametersId,
+            long x,
+            long y,
+            int z,
+            long blobSize) {
+        update(
+                layerName,
+                gridSetId,
+                blobFormat,
+                parametersId,
+                -blobSize,
+                -1,
+                0,
+                new long[] {x, y, z});
+    }
+
+    @Override
+    public void tileUpdated(
+            String layerName,
+            String gridSetId,
+            String blobFormat,
+            String parametersId,
+            long x,
+            long y,
+            int z,
+            long blobSize,
+            long oldSize) {
+        long delta = blobSize - oldSize;
+        if (delta == 0) {
+            return;
+        }
+        update(layerName, gridSetId, blobFormat, parametersId, delta, 0, 0, new long[] {x, y, z});
+    }
+
+    @Override
+    public void layerDeleted(String layerName) {
+        discard(ts -> ts.getLayerName().equals(layerName));
+        quotaStore.deleteLayer(layerName);
+    }
+
+    @Override
+    public void layerRenamed(String oldLayerName, String newLayerName) {
+        discard(ts -> ts.getLayerName().equals(oldLayerName));
+        try {
+            quotaStore.renameLayer(oldLayerName, newLayerName);
+        } catch (InterruptedException e) {
+            log.error(
+                    "Can't rename " + oldLayerName + " to " + newLayerName + " in quota store", e);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void gridSubsetDeleted(String layerName, String gridSetId) {
+        discard(
+                ts -> ts.getLayerName().equals(layerName) && ts.getGridsetId().equals(gridSetId));
+        quotaStore.deleteGridSubset(layerName, gridSetId);
+    }
+
+    @Override
+    public void parametersDeleted(String layerName, String parametersId) {
+        discard(
+                ts ->
+                        ts.getLayerName().equals(layerName)
+                                && Objects.equals(ts.getParametersId(), parametersId));
+        quotaStore.deleteParameters(layerName, parametersId);
+    }
+}
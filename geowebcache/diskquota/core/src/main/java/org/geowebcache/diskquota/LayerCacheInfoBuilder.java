@@ -16,7 +16,11 @@ package org.geowebcache.diskquota;
 
 import java.io.File;
 import java.io.FileFilter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -24,14 +28,21 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
-import org.apache.commons.io.FilenameUtils;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.geowebcache.diskquota.CacheScanCheckpoint.DirectoryRecord;
+import org.geowebcache.diskquota.CacheScanCheckpoint.PageRecord;
 import org.geowebcache.diskquota.storage.LayerQuota;
+import org.geowebcache.diskquota.storage.PageStatsPayload;
 import org.geowebcache.diskquota.storage.Quota;
 import org.geowebcache.diskquota.storage.TilePage;
+import org.geowebcache.diskquota.storage.TilePageCalculator.PageIndexer;
 import org.geowebcache.diskquota.storage.TileSet;
 import org.geowebcache.grid.GridSubset;
 import org.geowebcache.layer.TileLayer;
@@ -49,6 +60,8 @@ final class LayerCacheInfoBuilder {
 
     private static final Log log = LogFactory.getLog(LayerCacheInfoBuilder.class);
 
+    private static final String SCANNING_MARKER = "scanning";
+
     private final File rootCacheDir;
 
     private final ExecutorService threadPool;
@@ -57,16 +70,29 @@ final class LayerCacheInfoBuilder {
 
     private final QuotaUpdatesMonitor quotaUsageMonitor;
 
-    private boolean closed = false;
+    private final ForkJoinPool scanPool;
+
+    /** Where to keep the {@link CacheScanCheckpoint}s, a directory per layer, may be null */
+    private final File scanStateDir;
+
+    private volatile boolean closed = false;
 
+    /**
+     * @param scanStateDir where to keep the progress of the scans for them to be resumed if
+     *     interrupted, usually next to the quota store data, or {@code null} if interrupted scans
+     *     shall start over
+     */
     public LayerCacheInfoBuilder(
             final File rootCacheDir,
+            final File scanStateDir,
             final ExecutorService threadPool,
             QuotaUpdatesMonitor quotaUsageMonitor) {
         this.rootCacheDir = rootCacheDir;
+        this.scanStateDir = scanStateDir;
         this.threadPool = threadPool;
         this.quotaUsageMonitor = quotaUsageMonitor;
         this.perLayerRunningTasks = new HashMap<String, List<Future<ZoomLevelVisitor.Stats>>>();
+        this.scanPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
     }
 
     /**
@@ -97,6 +123,10 @@ final class LayerCacheInfoBuilder {
         final File layerDir = new File(rootCacheDir, layerDirName);
 
         if (!layerDir.exists()) {
+            if (hasIncompleteScan(layerName)) {
+                quotaUsageMonitor.resetLayerUsage(layerName);
+                FileUtils.rmFileCacheDir(getScanStateDir(layerName), null);
+            }
             return;
         }
 
@@ -104,6 +134,29 @@ final class LayerCacheInfoBuilder {
 
         final Set<TileSet> onDiskTileSets = findOnDiskTileSets(tileLayer, layerDir);
 
+        final File layerStateDir = getScanStateDir(layerName);
+        if (hasIncompleteScan(layerName)) {
+            // the store has an unknown part of the recorded tiles, they'll be sent again
+            quotaUsageMonitor.resetLayerUsage(layerName);
+        } else if (layerStateDir != null) {
+            // flags the layer scan as incomplete until all its zoom levels are done
+            FileUtils.rmFileCacheDir(layerStateDir, null);
+            File scanningMarker = new File(layerStateDir, SCANNING_MARKER);
+            try {
+                layerStateDir.mkdirs();
+                scanningMarker.createNewFile();
+            } catch (IOException e) {
+                log.warn("Can't create " + scanningMarker + ", the scan won't be resumable");
+            }
+        }
+        final AtomicInteger pendingZoomLevels = new AtomicInteger(1);
+        final Runnable onCompletion =
+                () -> {
+                    if (pendingZoomLevels.decrementAndGet() == 0 && layerStateDir != null) {
+                        FileUtils.rmFileCacheDir(layerStateDir, null);
+                    }
+                };
+
         for (TileSet tileSet : onDiskTileSets) {
             final String gridSetId = tileSet.getGridsetId();
             // final String blobFormat = tileSet.getBlobFormat();
@@ -122,6 +175,7 @@ final class LayerCacheInfoBuilder {
                 final File gridsetZLevelDir = new File(layerDir, gridsetZLevelParamsDirName);
 
                 if (gridsetZLevelDir.exists()) {
+                    pendingZoomLevels.incrementAndGet();
                     ZoomLevelVisitor cacheInfoBuilder;
                     cacheInfoBuilder =
                             new ZoomLevelVisitor(
@@ -130,7 +184,8 @@ final class LayerCacheInfoBuilder {
                                     gridSetId,
                                     zoomLevel,
                                     parametersId,
-                                    quotaUsageMonitor);
+                                    quotaUsageMonitor,
+                                    onCompletion);
 
                     Future<ZoomLevelVisitor.Stats> cacheTask;
                     cacheTask = threadPool.submit(cacheInfoBuilder);
@@ -146,6 +201,7 @@ final class LayerCacheInfoBuilder {
                 }
             }
         }
+        onCompletion.run();
     }
 
     private Set<TileSet> findOnDiskTileSets(final TileLayer tileLayer, final File layerDir) {
@@ -186,11 +242,15 @@ final class LayerCacheInfoBuilder {
     }
 
     /**
-     * Builds the cache information for a single layer/gridsetId/parametersId/zoomLevel combo
+     * Builds the cache information for a single layer/gridsetId/parametersId/zoomLevel combo.
+     *
+     * <p>The zoom level directory is scanned by a {@link DirectoryScan} fork join task per
+     * directory. Tiles are aggregated per page for each directory, which is recorded in a {@link
+     * CacheScanCheckpoint} before its tiles are sent to the quota store.
      *
      * @author groldan
      */
-    private final class ZoomLevelVisitor implements FileFilter, Callable<ZoomLevelVisitor.Stats> {
+    private final class ZoomLevelVisitor implements Callable<ZoomLevelVisitor.Stats> {
 
         private final String gridSetId;
 
@@ -206,11 +266,21 @@ final class LayerCacheInfoBuilder {
 
         private final String parametersId;
 
+        private final Runnable onCompletion;
+
+        private final Map<String, String> formatsByExtension = new ConcurrentHashMap<>();
+
+        private PageIndexer pageIndexer;
+
+        private CacheScanCheckpoint checkpoint;
+
         private class Stats {
             long runTimeMillis;
 
             long numTiles;
 
+            long replayedDirectories;
+
             Quota collectedQuota = new Quota();
         }
 
@@ -220,13 +290,15 @@ final class LayerCacheInfoBuilder {
                 final String gridsetId,
                 final int zoomLevel,
                 String parametersId,
-                final QuotaUpdatesMonitor quotaUsageMonitor) {
+                final QuotaUpdatesMonitor quotaUsageMonitor,
+                final Runnable onCompletion) {
             this.layerName = layerName;
             this.zoomLevelPath = zoomLevelPath;
             this.gridSetId = gridsetId;
             this.parametersId = parametersId;
             this.quotaUsageMonitor = quotaUsageMonitor;
             this.tileZ = zoomLevel;
+            this.onCompletion = onCompletion;
             this.stats = new Stats();
         }
 
@@ -240,20 +312,44 @@ final class LayerCacheInfoBuilder {
                             + (parametersId == null ? "default" : parametersId)
                             + "/zlevel:"
                             + tileZ;
-            try {
-                log.debug("Gathering cache information for '" + zLevelKey);
+            final File layerStateDir = getScanStateDir(layerName);
+            try (CacheScanCheckpoint checkpoint =
+                    layerStateDir == null
+                            ? CacheScanCheckpoint.none()
+                            : CacheScanCheckpoint.open(
+                                    new File(
+                                            layerStateDir,
+                                            zoomLevelPath.getName() + ".checkpoint"))) {
+                log.debug(
+                        (checkpoint.getRecords().isEmpty() ? "Gathering" : "Resuming")
+                                + " cache information for '"
+                                + zLevelKey);
                 stats.numTiles = 0L;
                 stats.runTimeMillis = 0L;
                 long runTime = System.currentTimeMillis();
-                FileUtils.traverseDepth(zoomLevelPath, this);
+
+                this.checkpoint = checkpoint;
+                TileSet tileSet = new TileSet(layerName, gridSetId, null, parametersId);
+                this.pageIndexer =
+                        quotaUsageMonitor.getTilePageCalculator().getPageIndexer(tileSet);
+                // set up the zoom level pages before the scan goes multi threaded
+                pageIndexer.pageIndexForTile(0, 0, tileZ, new int[3]);
+
+                replay(checkpoint.getRecords());
+                if (!checkpoint.isComplete()) {
+                    scanPool.invoke(new DirectoryScan(zoomLevelPath, ""));
+                    checkpoint.complete();
+                }
+
                 runTime = System.currentTimeMillis() - runTime;
                 stats.runTimeMillis = runTime;
             } catch (TraversalCanceledException cancel) {
                 log.debug("Gathering cache information for " + zLevelKey + " was canceled.");
                 return null;
-            } catch (Exception e) {
-                throw e;
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
             }
+            onCompletion.run();
             log.debug(
                     "Cache information for "
                             + zLevelKey
@@ -262,57 +358,212 @@ final class LayerCacheInfoBuilder {
                             + "s. Counted "
                             + stats.numTiles
                             + " tiles for a storage space of "
-                            + stats.collectedQuota.toNiceString());
+                            + stats.collectedQuota.toNiceString()
+                            + ", resuming after "
+                            + stats.replayedDirectories
+                            + " directories scanned before an interruption");
             return stats;
         }
 
-        /** @see java.io.FileFilter#accept(java.io.File) */
-        public boolean accept(final File file) {
-            if (closed) {
-                throw new TraversalCanceledException();
-            }
-            if (file.isDirectory()) {
-                log.trace("Processing files in " + file.getAbsolutePath());
-                return true;
+        /**
+         * Scans the files of a directory and forks a task per subdirectory. The directory is
+         * skipped if it was already recorded by the interrupted scan being resumed, as its tiles
+         * were {@link ZoomLevelVisitor#replay replayed}.
+         */
+        private class DirectoryScan extends RecursiveAction {
+
+            private static final long serialVersionUID = 1L;
+
+            private final File directory;
+
+            /** path relative to the zoom level directory */
+            private final String path;
+
+            DirectoryScan(File directory, String path) {
+                this.directory = directory;
+                this.path = path;
             }
 
-            final long length = file.length();
+            @Override
+            protected void compute() {
+                if (closed) {
+                    throw new TraversalCanceledException();
+                }
+                final DirectoryRecord recorded = checkpoint.get(path);
+                if (recorded != null) {
+                    if (recorded.hasSubdirectories) {
+                        File[] subdirs =
+                                FileUtils.listFilesNullSafe(
+                                        directory, (FileFilter) File::isDirectory);
+                        invokeAll(scans(Arrays.asList(subdirs)));
+                    }
+                    return;
+                }
+
+                List<File> subdirs = new ArrayList<>();
+                Map<String, PageRecord> pages = new HashMap<>();
+                final int[] pageIndex = new int[3];
+                for (File file : FileUtils.listFilesNullSafe(directory)) {
+                    if (file.isDirectory()) {
+                        subdirs.add(file);
+                    } else {
+                        addTile(file, pages, pageIndex);
+                    }
+                }
+                DirectoryRecord record =
+                        new DirectoryRecord(
+                                path, !subdirs.isEmpty(), new ArrayList<>(pages.values()));
+                try {
+                    checkpoint.record(record);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                emit(record.pages);
+                invokeAll(scans(subdirs));
+            }
 
-            // we know path is a direct child of processingDir and represents a tile file...
-            final String path = file.getPath();
+            private List<DirectoryScan> scans(List<File> subdirs) {
+                List<DirectoryScan> scans = new ArrayList<>(subdirs.size());
+                for (File subdir : subdirs) {
+                    String subPath =
+                            path.isEmpty() ? subdir.getName() : path + "/" + subdir.getName();
+                    scans.add(new DirectoryScan(subdir, subPath));
+                }
+                return scans;
+            }
+        }
 
-            final int fileNameIdx = 1 + path.lastIndexOf(File.separatorChar);
-            final int coordSepIdx = path.lastIndexOf('_');
-            final int dotIdx = path.lastIndexOf('.');
-            final String extension = FilenameUtils.getExtension(file.getName());
-            String blobFormat;
+        private void addTile(File file, Map<String, PageRecord> pages, int[] pageIndex) {
+            // tile files are named <x>_<y>.<extension>
+            final String name = file.getName();
+            final int coordSepIdx = name.lastIndexOf('_');
+            final int dotIdx = name.lastIndexOf('.');
+            if (coordSepIdx < 1 || dotIdx < coordSepIdx) {
+                return;
+            }
+            final String blobFormat = getBlobFormat(name.substring(dotIdx + 1));
+            if (blobFormat == null) {
+                return;
+            }
+            final long x;
+            final long y;
             try {
-                blobFormat = MimeType.createFromExtension(extension).getFormat();
-            } catch (MimeException e) {
-                throw new RuntimeException(e);
+                x = Long.parseLong(name.substring(0, coordSepIdx));
+                y = Long.parseLong(name.substring(1 + coordSepIdx, dotIdx));
+            } catch (NumberFormatException e) {
+                return;
             }
-            final long x = Long.valueOf(path.substring(fileNameIdx, coordSepIdx));
-            final long y = Long.valueOf(path.substring(1 + coordSepIdx, dotIdx));
-
-            this.quotaUsageMonitor.tileStored(
-                    layerName, gridSetId, blobFormat, parametersId, x, y, (int) tileZ, length);
-            stats.numTiles++;
-            stats.collectedQuota.addBytes(length);
-            return true;
+            pageIndexer.pageIndexForTile(x, y, tileZ, pageIndex);
+            String key = blobFormat + "," + pageIndex[0] + "," + pageIndex[1];
+            PageRecord page = pages.get(key);
+            if (page == null) {
+                page = new PageRecord(blobFormat, pageIndex[0], pageIndex[1]);
+                pages.put(key, page);
+            }
+            page.tiles++;
+            page.bytes += file.length();
+        }
+
+        private String getBlobFormat(String extension) {
+            String format = formatsByExtension.get(extension);
+            if (format == null) {
+                try {
+                    format = MimeType.createFromExtension(extension).getFormat();
+                } catch (MimeException e) {
+                    log.debug("Ignoring file with unknown extension " + extension);
+                    format = "";
+                }
+                formatsByExtension.put(extension, format);
+            }
+            return format.isEmpty() ? null : format;
         }
 
         /**
-         * Used to brute-force cancel a cache inspection (as InterruptedException is checked and
-         * hence can't use it in accept(File) above
-         *
-         * @author groldan
+         * Sends the tiles of the directories recorded before the scan was interrupted to the quota
+         * store again, which no longer has the layer usage
          */
-        private class TraversalCanceledException extends RuntimeException {
-            private static final long serialVersionUID = 1L;
-            // doesn't need a body
+        private void replay(Collection<DirectoryRecord> records) {
+            Map<String, PageRecord> pages = new HashMap<>();
+            for (DirectoryRecord record : records) {
+                for (PageRecord page : record.pages) {
+                    String key = page.blobFormat + "," + page.pageX + "," + page.pageY;
+                    PageRecord merged = pages.get(key);
+                    if (merged == null) {
+                        merged = new PageRecord(page.blobFormat, page.pageX, page.pageY);
+                        pages.put(key, merged);
+                    }
+                    merged.tiles += page.tiles;
+                    merged.bytes += page.bytes;
+                }
+            }
+            if (!pages.isEmpty()) {
+                emit(pages.values());
+            }
+            stats.replayedDirectories = records.size();
+        }
+
+        /** Sends the given tiles to the quota store, each page shall be listed once */
+        private void emit(Collection<PageRecord> pages) {
+            Map<String, List<PageRecord>> byFormat = new HashMap<>();
+            for (PageRecord page : pages) {
+                byFormat.computeIfAbsent(page.blobFormat, f -> new ArrayList<>()).add(page);
+            }
+            for (Map.Entry<String, List<PageRecord>> entry : byFormat.entrySet()) {
+                TileSet tileSet = new TileSet(layerName, gridSetId, entry.getKey(), parametersId);
+                Quota quota = new Quota();
+                long tiles = 0;
+                List<PageStatsPayload> tileCounts = new ArrayList<>(entry.getValue().size());
+                for (PageRecord page : entry.getValue()) {
+                    PageStatsPayload payload =
+                            new PageStatsPayload(
+                                    new TilePage(tileSet.getId(), page.pageX, page.pageY, tileZ));
+                    payload.setNumTiles(page.tiles);
+                    tileCounts.add(payload);
+                    quota.addBytes(page.bytes);
+                    tiles += page.tiles;
+                }
+                try {
+                    quotaUsageMonitor.tilesStored(tileSet, quota, tileCounts);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new TraversalCanceledException();
+                }
+                synchronized (stats) {
+                    stats.numTiles += tiles;
+                    stats.collectedQuota.add(quota);
+                }
+            }
         }
     }
 
+    /**
+     * Used to brute-force cancel a cache inspection (as InterruptedException is checked and hence
+     * can't use it in a fork join task)
+     *
+     * @author groldan
+     */
+    private static class TraversalCanceledException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        // doesn't need a body
+    }
+
+    private File getScanStateDir(String layerName) {
+        if (scanStateDir == null) {
+            return null;
+        }
+        return new File(scanStateDir, FilePathUtils.filteredLayerName(layerName));
+    }
+
+    /**
+     * Returns whether the cache information gathering for the given layer was interrupted before
+     * completion, in which case {@link #buildCacheInfo(TileLayer)} should be called again to resume
+     * it even if the quota store already has usage information for the layer.
+     */
+    public boolean hasIncompleteScan(String layerName) {
+        File layerStateDir = getScanStateDir(layerName);
+        return layerStateDir != null && new File(layerStateDir, SCANNING_MARKER).exists();
+    }
+
     /**
      * Returns whether cache information is still being gathered for the layer named after {@code
      * layerName}.
@@ -348,5 +599,6 @@ final class LayerCacheInfoBuilder {
     public void shutDown() {
         this.closed = true;
         this.threadPool.shutdownNow();
+        this.scanPool.shutdownNow();
     }
 }
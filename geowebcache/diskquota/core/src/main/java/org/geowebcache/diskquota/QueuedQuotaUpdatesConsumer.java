@@ -127,6 +127,9 @@ public class QueuedQuotaUpdatesConsumer implements Callable<Long> {
             }
             int previousCount = payload.getNumTiles();
             payload.setNumTiles(previousCount + tileCountDiff);
+            if (quotaUpdate.getRenderTime() > 0) {
+                payload.addRenderTime(1, quotaUpdate.getRenderTime());
+            }
 
             ++numAggregations;
         }
@@ -82,7 +82,39 @@ class QueuedQuotaUpdatesProducer implements BlobStoreListener {
             return;
         }
 
-        quotaUpdate(layerName, gridSetId, blobFormat, parametersId, blobSize, new long[] {x, y, z});
+        quotaUpdate(
+                layerName, gridSetId, blobFormat, parametersId, blobSize, new long[] {x, y, z}, 0);
+    }
+
+    /**
+     * Receives notification of a tile rendered and stored, and updates the corresponding layer
+     * quota info and page render time.
+     *
+     * @see org.geowebcache.storage.BlobStoreListener#tileStored
+     */
+    @Override
+    public void tileStored(
+            final String layerName,
+            final String gridSetId,
+            final String blobFormat,
+            final String parametersId,
+            final long x,
+            final long y,
+            final int z,
+            final long blobSize,
+            final long renderTime) {
+        if (blobSize == 0) {
+            return;
+        }
+
+        quotaUpdate(
+                layerName,
+                gridSetId,
+                blobFormat,
+                parametersId,
+                blobSize,
+                new long[] {x, y, z},
+                renderTime);
     }
 
     /** @see org.geowebcache.storage.BlobStoreListener#tileDeleted */
@@ -104,7 +136,8 @@ class QueuedQuotaUpdatesProducer implements BlobStoreListener {
                 blobFormat,
                 parametersId,
                 actualSizeFreed,
-                new long[] {x, y, z});
+                new long[] {x, y, z},
+                0);
     }
 
     /** @see org.geowebcache.storage.BlobStoreListener#tileUpdated */
@@ -126,7 +159,7 @@ class QueuedQuotaUpdatesProducer implements BlobStoreListener {
         }
 
         long[] tileIndex = new long[] {x, y, z};
-        quotaUpdate(layerName, gridSetId, blobFormat, parametersId, delta, tileIndex);
+        quotaUpdate(layerName, gridSetId, blobFormat, parametersId, delta, tileIndex, 0);
     }
 
     /**
@@ -166,6 +199,7 @@ class QueuedQuotaUpdatesProducer implements BlobStoreListener {
      * @param parametersId
      * @param amount positive to signal a quota increase, negative to signal a quota decrease
      * @param tileIndex tile index
+     * @param renderTime time the backend took to render the tile, zero if unknown
      */
     private void quotaUpdate(
             String layerName,
@@ -173,13 +207,15 @@ class QueuedQuotaUpdatesProducer implements BlobStoreListener {
             String blobFormat,
             String parametersId,
             long amount,
-            long[] tileIndex) {
+            long[] tileIndex,
+            long renderTime) {
 
         if (cancelled(layerName)) {
             return;
         }
         QuotaUpdate payload =
                 new QuotaUpdate(layerName, gridSetId, blobFormat, parametersId, amount, tileIndex);
+        payload.setRenderTime(renderTime);
         try {
             if (updateOfferTimeoutSeconds <= 0) {
                 this.queuedUpdates.put(payload);
@@ -0,0 +1,353 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.diskquota;
+
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.geowebcache.diskquota.storage.LayerQuota;
+import org.geowebcache.diskquota.storage.Quota;
+import org.geowebcache.io.Resource;
+import org.geowebcache.storage.BlobStoreListener;
+import org.geowebcache.storage.PutAdmissionController;
+import org.geowebcache.storage.StorageBroker;
+import org.geowebcache.storage.TileObject;
+import org.springframework.util.Assert;
+
+/**
+ * Keeps a runaway layer from filling the disk between two runs of the {@link CacheCleanerTask}, by
+ * deciding on each {@link StorageBroker#put(TileObject) put} whether the tile gets stored.
+ *
+ * <p>Each layer, and all the layers together, may get a token bucket refilled with a number of
+ * bytes per second, that can hold up to a second worth of bytes. A tile is not stored when any of
+ * its buckets is empty. Besides, when quotas are enforced a tile is not stored if its layer already
+ * uses its configured quota, or for the layers with no quota of their own, if they together use the
+ * global quota. The used bytes of each layer are read from the {@link QuotaStore} the first time
+ * it's seen, then kept up to date in process from the tile events, as the store may persist these
+ * events long after they are received.
+ *
+ * <p>Tiles that are not admitted are kept on the transient cache only, they are still served to the
+ * client requesting them.
+ */
+class QuotaAdmissionController implements PutAdmissionController, BlobStoreListener {
+
+    private static final Log log = LogFactory.getLog(QuotaAdmissionController.class);
+
+    /** A token bucket holding up to one second worth of bytes, allowed to go into debt */
+    static final class TokenBucket {
+
+        private final long bytesPerSecond;
+
+        private double tokens;
+
+        private long lastRefill;
+
+        TokenBucket(long bytesPerSecond) {
+            this.bytesPerSecond = bytesPerSecond;
+            this.tokens = bytesPerSecond;
+            this.lastRefill = System.nanoTime();
+        }
+
+        /**
+         * Takes {@code bytes} out of the bucket if it's not empty, so that tiles bigger than the
+         * bucket are not refused forever, the debt is paid by the next refills
+         */
+        synchronized boolean tryConsume(long bytes) {
+            final long now = System.nanoTime();
+            tokens = Math.min(bytesPerSecond, tokens + (now - lastRefill) * bytesPerSecond / 1e9);
+            lastRefill = now;
+            if (tokens <= 0) {
+                return false;
+            }
+            tokens -= bytes;
+            return true;
+        }
+
+        /** Gives back the bytes taken by a tile that ended up not stored */
+        synchronized void refund(long bytes) {
+            tokens = Math.min(bytesPerSecond, tokens + bytes);
+        }
+    }
+
+    /** Bytes used by a layer, and its rate limit */
+    private static final class LayerUsage {
+
+        final LongAdder used = new LongAdder();
+
+        final TokenBucket bucket;
+
+        /**
+         * Whether the used bytes are to be read again from the store, after deletions that are not
+         * notified tile by tile
+         */
+        volatile boolean stale;
+
+        LayerUsage(TokenBucket bucket) {
+            this.bucket = bucket;
+        }
+    }
+
+    private final QuotaStore quotaStore;
+
+    private final DiskQuotaConfig config;
+
+    private final long layerBytesPerSecond;
+
+    private final TokenBucket globalBucket;
+
+    private final boolean enforceQuotas;
+
+    private final ConcurrentMap<String, LayerUsage> layers = new ConcurrentHashMap<>();
+
+    /** The configured quotas of the layers having one, in bytes */
+    private volatile Map<String, Long> layerLimits = new HashMap<>();
+
+    /** The global quota in bytes, {@code -1} if none */
+    private volatile long globalLimit = -1;
+
+    /** Bytes used by the layers with no quota of their own */
+    private final LongAdder globalUsed = new LongAdder();
+
+    /**
+     * @param layerBytesPerSecond the write rate of each layer, no limit if {@code <= 0}
+     * @param globalBytesPerSecond the write rate of all the layers together, no limit if {@code <=
+     *     0}
+     * @param enforceQuotas whether to refuse the tiles of layers using up their quota
+     */
+    public QuotaAdmissionController(
+            QuotaStore quotaStore,
+            DiskQuotaConfig config,
+            long layerBytesPerSecond,
+            long globalBytesPerSecond,
+            boolean enforceQuotas) {
+        Assert.notNull(quotaStore, "quotaStore is null");
+        Assert.notNull(config, "config is null");
+        this.quotaStore = quotaStore;
+        this.config = config;
+        this.layerBytesPerSecond = layerBytesPerSecond;
+        this.globalBucket =
+                globalBytesPerSecond > 0 ? new TokenBucket(globalBytesPerSecond) : null;
+        this.enforceQuotas = enforceQuotas;
+    }
+
+    /**
+     * Reloads the configured quotas, and reads the used bytes of the layers seen for the first time
+     * or {@link LayerUsage#stale stale} from the quota store
+     */
+    public void refresh() throws InterruptedException {
+        Map<String, Long> limits = new HashMap<>();
+        List<LayerQuota> layerQuotas = config.getLayerQuotas();
+        if (layerQuotas != null) {
+            for (LayerQuota layerQuota : layerQuotas) {
+                if (layerQuota.getQuota() != null) {
+                    limits.put(layerQuota.getLayer(), bytes(layerQuota.getQuota()));
+                }
+            }
+        }
+        Quota globalQuota = config.getGlobalQuota();
+        final Map<String, Long> previousLimits = this.layerLimits;
+        this.layerLimits = limits;
+        this.globalLimit = globalQuota == null ? -1 : bytes(globalQuota);
+
+        // the layers getting or losing a quota of their own move out of or into the global one
+        for (Map.Entry<String, LayerUsage> layer : layers.entrySet()) {
+            boolean wasGlobal = !previousLimits.containsKey(layer.getKey());
+            boolean isGlobal = !limits.containsKey(layer.getKey());
+            if (wasGlobal != isGlobal) {
+                long used = layer.getValue().used.sum();
+                globalUsed.add(isGlobal ? used : -used);
+            }
+        }
+
+        for (String layerName : quotaStore.getTilePageCalculator().getLayerNames()) {
+            LayerUsage usage = layers.get(layerName);
+            if (usage == null || usage.stale) {
+                load(layerName);
+            }
+        }
+    }
+
+    /**
+     * Sets the used bytes of a layer to the ones in the store. The events received while querying
+     * may be counted twice or missed, which only happens for new layers and after bulk deletions.
+     */
+    private void load(String layerName) throws InterruptedException {
+        LayerUsage usage = usage(layerName);
+        usage.stale = false;
+        long stored = bytes(quotaStore.getUsedQuotaByLayerName(layerName));
+        long delta = stored - usage.used.sum();
+        usage.used.add(delta);
+        if (!layerLimits.containsKey(layerName)) {
+            globalUsed.add(delta);
+        }
+    }
+
+    private static long bytes(Quota quota) {
+        BigInteger bytes = quota.getBytes();
+        return bytes.bitLength() < 64 ? bytes.longValue() : Long.MAX_VALUE;
+    }
+
+    private LayerUsage usage(String layerName) {
+        LayerUsage usage = layers.get(layerName);
+        if (usage == null) {
+            usage =
+                    layers.computeIfAbsent(
+                            layerName,
+                            k ->
+                                    new LayerUsage(
+                                            layerBytesPerSecond > 0
+                                                    ? new TokenBucket(layerBytesPerSecond)
+                                                    : null));
+        }
+        return usage;
+    }
+
+    @Override
+    public Admission admit(TileObject tile) {
+        final String layerName = tile.getLayerName();
+        final Resource blob = tile.getBlob();
+        final long size = blob == null ? 0 : blob.getSize();
+        final LayerUsage usage = usage(layerName);
+        if (enforceQuotas && isQuotaExceeded(layerName, usage)) {
+            if (log.isDebugEnabled()) {
+                log.debug("Disk quota used up, not storing tile of layer " + layerName);
+            }
+            return Admission.TRANSIENT;
+        }
+        if (usage.bucket != null && !usage.bucket.tryConsume(size)) {
+            if (log.isDebugEnabled()) {
+                log.debug("Write rate exceeded, not storing tile of layer " + layerName);
+            }
+            return Admission.TRANSIENT;
+        }
+        if (globalBucket != null && !globalBucket.tryConsume(size)) {
+            // the tile is not stored, so it does not count against the layer rate either
+            if (usage.bucket != null) {
+                usage.bucket.refund(size);
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("Global write rate exceeded, not storing tile of layer " + layerName);
+            }
+            return Admission.TRANSIENT;
+        }
+        return Admission.STORE;
+    }
+
+    private boolean isQuotaExceeded(String layerName, LayerUsage usage) {
+        Long limit = layerLimits.get(layerName);
+        if (limit != null) {
+            return usage.used.sum() >= limit;
+        }
+        final long global = globalLimit;
+        return global >= 0 && globalUsed.sum() >= global;
+    }
+
+    private void add(String layerName, long bytes) {
+        if (bytes == 0) {
+            return;
+        }
+        usage(layerName).used.add(bytes);
+        if (!layerLimits.containsKey(layerName)) {
+            globalUsed.add(bytes);
+        }
+    }
+
+    @Override
+    public void tileStored(
+            String layerName,
+            String gridSetId,
+            String blobFormat,
+            String parametersId,
+            long x,
+            long y,
+            int z,
+            long blobSize) {
+        add(layerName, blobSize);
+    }
+
+    @Override
+    public void tileDeleted(
+            String layerName,
+            String gridSetId,
+            String blobFormat,
+            String parametersId,
+            long x,
+            long y,
+            int z,
+            long blobSize) {
+        add(layerName, -blobSize);
+    }
+
+    @Override
+    public void tileUpdated(
+            String layerName,
+            String gridSetId,
+            String blobFormat,
+            String parametersId,
+            long x,
+            long y,
+            int z,
+            long blobSize,
+            long oldSize) {
+        add(layerName, blobSize - oldSize);
+    }
+
+    @Override
+    public void layerDeleted(String layerName) {
+        LayerUsage usage = layers.remove(layerName);
+        if (usage != null && !layerLimits.containsKey(layerName)) {
+            globalUsed.add(-usage.used.sum());
+        }
+    }
+
+    @Override
+    public void layerRenamed(String oldLayerName, String newLayerName) {
+        LayerUsage usage = layers.remove(oldLayerName);
+        if (usage != null) {
+            long used = usage.used.sum();
+            if (!layerLimits.containsKey(oldLayerName)) {
+                globalUsed.add(-used);
+            }
+            usage(newLayerName).used.add(used);
+            if (!layerLimits.containsKey(newLayerName)) {
+                globalUsed.add(used);
+            }
+        }
+    }
+
+    @Override
+    public void gridSubsetDeleted(String layerName, String gridSetId) {
+        markStale(layerName);
+    }
+
+    @Override
+    public void parametersDeleted(String layerName, String parametersId) {
+        markStale(layerName);
+    }
+
+    /** The usage of the layer is read again from the store on the next refresh */
+    private void markStale(String layerName) {
+        LayerUsage usage = layers.get(layerName);
+        if (usage != null) {
+            usage.stale = true;
+        }
+    }
+}
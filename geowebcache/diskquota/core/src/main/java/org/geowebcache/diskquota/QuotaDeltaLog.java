@@ -0,0 +1,345 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.diskquota;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.geowebcache.diskquota.storage.PageStatsPayload;
+import org.geowebcache.diskquota.storage.Quota;
+import org.geowebcache.diskquota.storage.TilePage;
+import org.geowebcache.diskquota.storage.TileSet;
+
+/**
+ * Append-only log of the quota and tile count differences accumulated by {@link
+ * InMemoryQuotaAccounting} that are not yet saved to the {@link QuotaStore}, replayed at startup
+ * to recover from a crash.
+ *
+ * <p>Each {@link #append} writes a single record made of its length, the serialized differences
+ * and their CRC32 checksum, so that a record torn by a crash is detected and skipped on {@link
+ * #replay()}.
+ *
+ * <p>Records are tagged with the sequence number of the flush that will save them. Before saving
+ * the differences to the quota store a flush record is appended, which supersedes the plain
+ * records of its sequence and also holds the used quota of each tile set before the flush. The
+ * quota store can't keep the sequence along with the differences, so that quota is what tells on
+ * replay whether a tile set was already saved when the process died.
+ */
+class QuotaDeltaLog {
+
+    private static final Log log = LogFactory.getLog(QuotaDeltaLog.class);
+
+    /** Accumulated quota difference for a tile set and tile count differences for its pages */
+    static class TileSetDelta {
+
+        private final TileSet tileSet;
+
+        private long bytes;
+
+        private final Map<String, PageStatsPayload> pages = new LinkedHashMap<>();
+
+        private BigInteger baseQuota;
+
+        TileSetDelta(TileSet tileSet) {
+            this.tileSet = tileSet;
+        }
+
+        public TileSet getTileSet() {
+            return tileSet;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public Quota getQuotaDifference() {
+            return new Quota(BigInteger.valueOf(bytes));
+        }
+
+        public Collection<PageStatsPayload> getTileCountDifferences() {
+            return pages.values();
+        }
+
+        void addBytes(long bytes) {
+            this.bytes += bytes;
+        }
+
+        void addTiles(TilePage page, int tiles) {
+            if (tiles == 0) {
+                return;
+            }
+            PageStatsPayload payload =
+                    pages.computeIfAbsent(page.getKey(), k -> new PageStatsPayload(page));
+            payload.setNumTiles(payload.getNumTiles() + tiles);
+        }
+
+        /** Adds the render time of some tiles of a page, never written to the log */
+        void addRenderTime(TilePage page, int rendered, long renderTime) {
+            if (rendered == 0) {
+                return;
+            }
+            PageStatsPayload payload =
+                    pages.computeIfAbsent(page.getKey(), k -> new PageStatsPayload(page));
+            payload.addRenderTime(rendered, renderTime);
+        }
+
+        void add(TileSetDelta other) {
+            addBytes(other.bytes);
+            for (PageStatsPayload payload : other.pages.values()) {
+                addTiles(payload.getPage(), payload.getNumTiles());
+            }
+        }
+
+        /** @return the tile set used quota before the flush, only set in flush records */
+        public BigInteger getBaseQuota() {
+            return baseQuota;
+        }
+
+        void setBaseQuota(BigInteger baseQuota) {
+            this.baseQuota = baseQuota;
+        }
+
+        /**
+         * @return whether the flush of these differences made it to the store, given the current
+         *     used quota of the tile set. Differences not changing the quota can't be told apart
+         *     and are considered not saved.
+         */
+        public boolean isSavedIn(Quota usedQuota) {
+            return baseQuota != null
+                    && bytes != 0
+                    && baseQuota.add(BigInteger.valueOf(bytes)).equals(usedQuota.getBytes());
+        }
+
+        public boolean isEmpty() {
+            return bytes == 0 && pages.isEmpty();
+        }
+    }
+
+    /** A record read back from the log */
+    static class Record {
+
+        private final long sequence;
+
+        private final boolean flush;
+
+        private final List<TileSetDelta> deltas = new ArrayList<>();
+
+        Record(long sequence, boolean flush) {
+            this.sequence = sequence;
+            this.flush = flush;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        /** @return whether this is a flush record, whose deltas carry their base quota */
+        public boolean isFlush() {
+            return flush;
+        }
+
+        public List<TileSetDelta> getDeltas() {
+            return deltas;
+        }
+    }
+
+    private final File file;
+
+    private FileOutputStream out;
+
+    /** @param file the log file, created on the first append */
+    QuotaDeltaLog(File file) {
+        this.file = file;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Appends a record and syncs it to disk before returning
+     *
+     * @param sequence the sequence of the flush the differences belong to
+     * @param flush whether this is a flush record, the deltas shall have their base quota set
+     */
+    public synchronized void append(long sequence, boolean flush, Collection<TileSetDelta> deltas)
+            throws IOException {
+        if (deltas.isEmpty()) {
+            return;
+        }
+        if (out == null) {
+            out = new FileOutputStream(file, true);
+        }
+        write(sequence, flush, deltas, out);
+    }
+
+    /**
+     * Atomically replaces the log contents with a single record holding the given differences, or
+     * deletes the log if there are none
+     */
+    public synchronized void rewrite(long sequence, boolean flush, Collection<TileSetDelta> deltas)
+            throws IOException {
+        close();
+        if (deltas.isEmpty()) {
+            Files.deleteIfExists(file.toPath());
+            return;
+        }
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (FileOutputStream tmpOut = new FileOutputStream(tmp)) {
+            write(sequence, flush, deltas, tmpOut);
+        }
+        Files.move(
+                tmp.toPath(),
+                file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** @return all the complete records in the log, in the order they were written */
+    public synchronized List<Record> replay() throws IOException {
+        List<Record> records = new ArrayList<>();
+        if (!file.exists()) {
+            return records;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            while (true) {
+                byte[] record;
+                try {
+                    int length = in.readInt();
+                    record = new byte[length];
+                    in.readFully(record);
+                    CRC32 crc = new CRC32();
+                    crc.update(record);
+                    if (crc.getValue() != in.readLong()) {
+                        log.warn("Checksum mismatch in disk quota delta log " + file);
+                        break;
+                    }
+                } catch (EOFException | NegativeArraySizeException e) {
+                    // torn record from a crash while appending
+                    break;
+                }
+                records.add(read(new ByteArrayInputStream(record)));
+            }
+        }
+        log.info("Read " + records.size() + " records from disk quota delta log " + file);
+        return records;
+    }
+
+    public synchronized void close() throws IOException {
+        if (out != null) {
+            try {
+                out.close();
+            } finally {
+                out = null;
+            }
+        }
+    }
+
+    private static void write(
+            long sequence, boolean flush, Collection<TileSetDelta> deltas, FileOutputStream target)
+            throws IOException {
+        ByteArrayOutputStream buff = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(buff);
+        data.writeLong(sequence);
+        data.writeBoolean(flush);
+        data.writeInt(deltas.size());
+        for (TileSetDelta delta : deltas) {
+            TileSet tileSet = delta.getTileSet();
+            data.writeUTF(tileSet.getLayerName());
+            data.writeUTF(tileSet.getGridsetId());
+            data.writeUTF(tileSet.getBlobFormat());
+            data.writeBoolean(tileSet.getParametersId() != null);
+            if (tileSet.getParametersId() != null) {
+                data.writeUTF(tileSet.getParametersId());
+            }
+            if (flush) {
+                byte[] baseQuota = delta.getBaseQuota().toByteArray();
+                data.writeInt(baseQuota.length);
+                data.write(baseQuota);
+            }
+            data.writeLong(delta.getBytes());
+            data.writeInt(delta.pages.size());
+            for (PageStatsPayload payload : delta.pages.values()) {
+                TilePage page = payload.getPage();
+                data.writeInt(page.getPageX());
+                data.writeInt(page.getPageY());
+                data.writeByte(page.getZoomLevel());
+                data.writeInt(payload.getNumTiles());
+            }
+        }
+        data.flush();
+        byte[] record = buff.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(record);
+
+        DataOutputStream recordOut = new DataOutputStream(buff);
+        buff.reset();
+        recordOut.writeInt(record.length);
+        recordOut.write(record);
+        recordOut.writeLong(crc.getValue());
+        recordOut.flush();
+        target.write(buff.toByteArray());
+        target.flush();
+        target.getFD().sync();
+    }
+
+    private static Record read(InputStream input) throws IOException {
+        DataInputStream data = new DataInputStream(input);
+        Record record = new Record(data.readLong(), data.readBoolean());
+        final int tileSets = data.readInt();
+        for (int i = 0; i < tileSets; i++) {
+            String layerName = data.readUTF();
+            String gridsetId = data.readUTF();
+            String blobFormat = data.readUTF();
+            String parametersId = data.readBoolean() ? data.readUTF() : null;
+            TileSet tileSet = new TileSet(layerName, gridsetId, blobFormat, parametersId);
+            TileSetDelta delta = new TileSetDelta(tileSet);
+            if (record.isFlush()) {
+                byte[] baseQuota = new byte[data.readInt()];
+                data.readFully(baseQuota);
+                delta.setBaseQuota(new BigInteger(baseQuota));
+            }
+            delta.addBytes(data.readLong());
+            final int pages = data.readInt();
+            for (int p = 0; p < pages; p++) {
+                int pageX = data.readInt();
+                int pageY = data.readInt();
+                byte pageZ = data.readByte();
+                int tiles = data.readInt();
+                delta.addTiles(new TilePage(tileSet.getId(), pageX, pageY, pageZ), tiles);
+            }
+            record.getDeltas().add(delta);
+        }
+        return record;
+    }
+}
@@ -14,7 +14,9 @@
  */
 package org.geowebcache.diskquota;
 
+import java.io.File;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Future;
@@ -115,12 +117,61 @@ public interface QuotaStore {
     public abstract TilePage getLeastRecentlyUsedPage(final Set<String> layerNames)
             throws InterruptedException;
 
+    /**
+     * Returns a batch of pages to expire for the given layers, in the order established by the
+     * expiration policy. Only pages with tiles (i.e., a non zero fill factor) are returned.
+     *
+     * <p>The default implementation relies on {@link #getLeastFrequentlyUsedPage(Set)} and {@link
+     * #getLeastRecentlyUsedPage(Set)}, hence returns at most one page per call; stores should
+     * override it to fetch the whole batch in one go.
+     *
+     * @param layerNames the layers to look for pages into
+     * @param policy the expiration policy establishing the order of the pages
+     * @param after the last page of the previous batch, to page through the candidates, or {@code
+     *     null} to start from the first one
+     * @param maxPages the maximum number of pages to return
+     * @return the candidate pages, empty if there are no more pages to expire
+     * @throws InterruptedException
+     */
+    public default List<TilePage> getPagesToExpire(
+            final Set<String> layerNames,
+            final ExpirationPolicy policy,
+            final TilePage after,
+            final int maxPages)
+            throws InterruptedException {
+        TilePage page;
+        if (ExpirationPolicy.LFU.equals(policy)) {
+            page = getLeastFrequentlyUsedPage(layerNames);
+        } else if (ExpirationPolicy.LRU.equals(policy)) {
+            page = getLeastRecentlyUsedPage(layerNames);
+        } else if (ExpirationPolicy.COST.equals(policy)) {
+            // stores with no cost index fall back to the frequency of use
+            page = getLeastFrequentlyUsedPage(layerNames);
+        } else {
+            throw new IllegalArgumentException("Unrecognized expiration policy: " + policy);
+        }
+        if (page == null || page.equals(after)) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(page);
+    }
+
     public abstract PageStats setTruncated(final TilePage tilePage) throws InterruptedException;
 
     public abstract void deleteGridSubset(String layerName, String gridSetId);
 
     public abstract void deleteParameters(String layerName, String parametersId);
 
+    /**
+     * Returns the local directory the store keeps its data into, if any, where companion state such
+     * as the progress of the cache scans can be kept too
+     *
+     * @return the store directory, or {@code null} if the store has no local directory
+     */
+    public default File getStoreDirectory() {
+        return null;
+    }
+
     /**
      * Closes the quota store, releasing any resources the store might be depending onto
      *
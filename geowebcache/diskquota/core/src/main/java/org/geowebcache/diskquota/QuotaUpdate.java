@@ -24,6 +24,8 @@ public class QuotaUpdate {
 
     private long[] tileIndex;
 
+    private long renderTime;
+
     /**
      * @param layerName
      * @param gridsetId
@@ -65,6 +67,18 @@ public class QuotaUpdate {
         return tileIndex;
     }
 
+    /**
+     * @return the time in milliseconds the backend took to render the stored tile, zero if not
+     *     known
+     */
+    public long getRenderTime() {
+        return renderTime;
+    }
+
+    public void setRenderTime(long renderTime) {
+        this.renderTime = renderTime;
+    }
+
     @Override
     public String toString() {
         return new StringBuilder("[")
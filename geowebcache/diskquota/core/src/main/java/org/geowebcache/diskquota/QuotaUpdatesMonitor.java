@@ -14,15 +14,35 @@
  */
 package org.geowebcache.diskquota;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.geowebcache.GeoWebCacheExtensions;
+import org.geowebcache.diskquota.storage.PageStatsPayload;
+import org.geowebcache.diskquota.storage.Quota;
+import org.geowebcache.diskquota.storage.TilePageCalculator;
+import org.geowebcache.diskquota.storage.TileSet;
+import org.geowebcache.storage.BlobStoreListener;
 import org.geowebcache.storage.StorageBroker;
 import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.util.Assert;
 
+/**
+ * Keeps the {@link QuotaStore} up to date with the tiles stored and deleted through the {@link
+ * StorageBroker}.
+ *
+ * <p>By default every tile event is queued by a {@link QueuedQuotaUpdatesProducer} and saved to
+ * the store by a {@link QueuedQuotaUpdatesConsumer}. Setting the {@code
+ * GEOWEBCACHE_QUOTA_ACCOUNTING} property to {@code memory} switches to {@link
+ * InMemoryQuotaAccounting} instead, which accumulates the events in memory, logs them to {@code
+ * diskquota_deltas.log} in the cache directory every {@code GEOWEBCACHE_QUOTA_LOG_INTERVAL}
+ * milliseconds (defaults to one second) and saves them to the store every {@code
+ * GEOWEBCACHE_QUOTA_SNAPSHOT_INTERVAL} milliseconds (defaults to 30 seconds).
+ */
 public class QuotaUpdatesMonitor extends AbstractMonitor {
 
     private static final Log log = LogFactory.getLog(QuotaUpdatesMonitor.class);
@@ -39,12 +59,28 @@ public class QuotaUpdatesMonitor extends AbstractMonitor {
 
     private QueuedQuotaUpdatesConsumer quotaUsageUpdatesConsumer;
 
+    private final File deltaLogDirectory;
+
+    private InMemoryQuotaAccounting inMemoryAccounting;
+
     public QuotaUpdatesMonitor(final StorageBroker storageBroker, final QuotaStore quotaStore) {
+        this(storageBroker, quotaStore, null);
+    }
+
+    /**
+     * @param deltaLogDirectory where to keep the delta log when using in memory accounting, may be
+     *     {@code null} in which case in memory accounting is not available
+     */
+    public QuotaUpdatesMonitor(
+            final StorageBroker storageBroker,
+            final QuotaStore quotaStore,
+            final File deltaLogDirectory) {
         Assert.notNull(storageBroker, "storageBroker is null");
         Assert.notNull(quotaStore, "quotaStore is null");
 
         this.storageBroker = storageBroker;
         this.quotaStore = quotaStore;
+        this.deltaLogDirectory = deltaLogDirectory;
 
         String sizeStr = GeoWebCacheExtensions.getProperty("GEOWEBCACHE_QUOTA_QUEUE_SIZE");
         int quotaQueueSize = 1000;
@@ -62,6 +98,14 @@ public class QuotaUpdatesMonitor extends AbstractMonitor {
     public void startUp() {
         super.startUp();
 
+        if ("memory".equalsIgnoreCase(getProperty("GEOWEBCACHE_QUOTA_ACCOUNTING", null))) {
+            if (deltaLogDirectory != null) {
+                startUpInMemoryAccounting();
+                return;
+            }
+            log.warn("No directory for the disk quota delta log, using queued quota updates");
+        }
+
         quotaDiffsProducer = new QueuedQuotaUpdatesProducer(sharedQueue, quotaStore);
 
         // the task that takes quota updates from the queue and saves them to the store
@@ -73,11 +117,43 @@ public class QuotaUpdatesMonitor extends AbstractMonitor {
         getExecutorService().submit(quotaUsageUpdatesConsumer);
     }
 
+    private void startUpInMemoryAccounting() {
+        long logInterval = Long.parseLong(getProperty("GEOWEBCACHE_QUOTA_LOG_INTERVAL", "1000"));
+        long snapshotInterval =
+                Long.parseLong(getProperty("GEOWEBCACHE_QUOTA_SNAPSHOT_INTERVAL", "30000"));
+        QuotaDeltaLog deltaLog =
+                new QuotaDeltaLog(new File(deltaLogDirectory, "diskquota_deltas.log"));
+        inMemoryAccounting =
+                new InMemoryQuotaAccounting(quotaStore, deltaLog, logInterval, snapshotInterval);
+        try {
+            inMemoryAccounting.recover();
+        } catch (IOException e) {
+            log.error("Error replaying disk quota delta log " + deltaLog.getFile(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.info(
+                "Using in memory disk quota accounting, saving to the quota store every "
+                        + snapshotInterval
+                        + "ms");
+        storageBroker.addBlobStoreListener(inMemoryAccounting);
+        getExecutorService().submit(inMemoryAccounting);
+    }
+
+    private static String getProperty(String name, String defaultValue) {
+        String value = GeoWebCacheExtensions.getProperty(name);
+        return value == null ? defaultValue : value;
+    }
+
     @Override
     protected void shutDown(final boolean cancel) {
         log.info("Shutting down quota usage monitor...");
         try {
-            storageBroker.removeBlobStoreListener(quotaDiffsProducer);
+            if (inMemoryAccounting != null) {
+                storageBroker.removeBlobStoreListener(inMemoryAccounting);
+            } else {
+                storageBroker.removeBlobStoreListener(quotaDiffsProducer);
+            }
         } catch (RuntimeException e) {
             log.error(
                     "Unexpected exception while removing the disk quota monitor listener from the StorageBroker."
@@ -87,7 +163,9 @@ public class QuotaUpdatesMonitor extends AbstractMonitor {
         }
 
         if (cancel) {
-            quotaDiffsProducer.setCancelled(true);
+            if (quotaDiffsProducer != null) {
+                quotaDiffsProducer.setCancelled(true);
+            }
             getExecutorService().shutdownNow();
         } else {
             getExecutorService().shutdown();
@@ -97,7 +175,11 @@ public class QuotaUpdatesMonitor extends AbstractMonitor {
 
     @Override
     public void shutDown() {
-        quotaUsageUpdatesConsumer.shutdown();
+        if (inMemoryAccounting != null) {
+            inMemoryAccounting.shutdown();
+        } else {
+            quotaUsageUpdatesConsumer.shutdown();
+        }
         super.shutDown();
     }
 
@@ -110,8 +192,36 @@ public class QuotaUpdatesMonitor extends AbstractMonitor {
             final long y,
             final int z,
             final long blobSize) {
-        this.quotaDiffsProducer.tileStored(
-                layerName, gridSetId, blobFormat, parametersId, x, y, z, blobSize);
+        BlobStoreListener listener =
+                inMemoryAccounting != null ? inMemoryAccounting : quotaDiffsProducer;
+        listener.tileStored(layerName, gridSetId, blobFormat, parametersId, x, y, z, blobSize);
+    }
+
+    /**
+     * Adds the size and tile counts of many tiles of the same tile set at once, straight to the
+     * quota store
+     *
+     * @param quotaDiff the size of the tiles
+     * @param tileCountDiffs the number of tiles per page
+     */
+    public void tilesStored(
+            final TileSet tileSet,
+            final Quota quotaDiff,
+            final Collection<PageStatsPayload> tileCountDiffs)
+            throws InterruptedException {
+        quotaStore.addToQuotaAndTileCounts(tileSet, quotaDiff, tileCountDiffs);
+    }
+
+    /**
+     * Drops the usage information of a layer from the quota store, for its disk usage to be
+     * computed again
+     */
+    public void resetLayerUsage(final String layerName) {
+        quotaStore.deleteLayer(layerName);
+    }
+
+    public TilePageCalculator getTilePageCalculator() {
+        return quotaStore.getTilePageCalculator();
     }
 
     @Override
@@ -0,0 +1,242 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.diskquota;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.geowebcache.conveyor.ConveyorTile;
+import org.geowebcache.diskquota.storage.PageStatsPayload;
+import org.geowebcache.diskquota.storage.TilePage;
+import org.geowebcache.diskquota.storage.TilePageCalculator;
+import org.geowebcache.diskquota.storage.TileSet;
+import org.geowebcache.layer.TileLayer;
+import org.geowebcache.layer.TileLayerListener;
+import org.springframework.util.Assert;
+
+/**
+ * Alternative to the {@link QueuedUsageStatsProducer}/{@link QueuedUsageStatsConsumer} pair that
+ * trades exact page hit counts for a much lower write load on the {@link QuotaStore}.
+ *
+ * <p>Only a random sample of the tile requests is accounted for. The pages hit by the sampled
+ * requests are remembered as flush candidates, along with their sampled hits and last access time.
+ * Every {@code flushIntervalMillis} the background task run by {@link #call()} scales the sampled
+ * hits of each candidate back by the sample rate, and saves only the {@code topK} most hit pages to
+ * the store. The remaining candidates, and their estimated hits, are carried over to the next
+ * flush up to {@code maxCandidates}, so that less popular pages get their hits saved eventually,
+ * while the least popular ones are dropped.
+ */
+class SampledUsageStats implements TileLayerListener, Callable<Long> {
+
+    private static final Log log = LogFactory.getLog(SampledUsageStats.class);
+
+    /** A page hit since the last flush */
+    private static class Candidate {
+
+        final TileSet tileSet;
+
+        final TilePage page;
+
+        volatile long lastAccessTime;
+
+        /** sampled hits since the last flush */
+        final LongAdder sampledHits = new LongAdder();
+
+        /** estimated hits carried over from previous flushes */
+        long carriedHits;
+
+        Candidate(TileSet tileSet, TilePage page) {
+            this.tileSet = tileSet;
+            this.page = page;
+        }
+    }
+
+    /** Candidates gathered between two flushes */
+    private static class Generation {
+
+        final ConcurrentMap<String, Candidate> candidates = new ConcurrentHashMap<>();
+    }
+
+    private final QuotaStore quotaStore;
+
+    private final TilePageCalculator tilePageCalculator;
+
+    private final double sampleRate;
+
+    private final int topK;
+
+    private final int maxCandidates;
+
+    private final long flushIntervalMillis;
+
+    private volatile Generation current = new Generation();
+
+    private volatile boolean cancelled;
+
+    private volatile boolean terminate;
+
+    /**
+     * @param sampleRate fraction of the requests accounted for, in {@code (0, 1]}
+     * @param topK maximum number of pages saved to the store on each flush
+     * @param flushIntervalMillis how often to save the most hit pages to the store
+     */
+    public SampledUsageStats(
+            QuotaStore quotaStore, double sampleRate, int topK, long flushIntervalMillis) {
+        Assert.notNull(quotaStore, "quotaStore can't be null");
+        Assert.isTrue(sampleRate > 0 && sampleRate <= 1, "sampleRate shall be in (0, 1]");
+        Assert.isTrue(topK > 0, "topK shall be positive");
+        this.quotaStore = quotaStore;
+        this.tilePageCalculator = quotaStore.getTilePageCalculator();
+        this.sampleRate = sampleRate;
+        this.topK = topK;
+        this.maxCandidates = 10 * topK;
+        this.flushIntervalMillis = flushIntervalMillis;
+    }
+
+    /** @see org.geowebcache.layer.TileLayerListener#tileRequested */
+    public void tileRequested(TileLayer layer, ConveyorTile tile) {
+        if (cancelled) {
+            return;
+        }
+        if (sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return;
+        }
+        String blobFormat = tile.getMimeType().getFormat();
+        TileSet tileSet =
+                new TileSet(
+                        layer.getName(), tile.getGridSetId(), blobFormat, tile.getParametersId());
+        hit(tileSet, tile.getTileIndex());
+    }
+
+    /** Accounts for a sampled request of the given tile */
+    void hit(TileSet tileSet, long[] tileIndex) {
+        int[] pageIndex = tilePageCalculator.pageIndexForTile(tileSet, tileIndex, new int[3]);
+        StringBuilder pageId = new StringBuilder(128);
+        TilePage.computeId(tileSet.getId(), pageIndex[0], pageIndex[1], pageIndex[2], pageId);
+        final String pageKey = pageId.toString();
+
+        final Generation generation = this.current;
+        Candidate candidate = generation.candidates.get(pageKey);
+        if (candidate == null) {
+            candidate =
+                    generation.candidates.computeIfAbsent(
+                            pageKey,
+                            k ->
+                                    new Candidate(
+                                            tileSet,
+                                            new TilePage(
+                                                    tileSet.getId(),
+                                                    pageIndex[0],
+                                                    pageIndex[1],
+                                                    pageIndex[2])));
+        }
+        candidate.sampledHits.increment();
+        candidate.lastAccessTime = System.currentTimeMillis();
+    }
+
+    @Override
+    public Long call() {
+        while (!terminate && !Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(flushIntervalMillis);
+                flush();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                log.warn("Error saving sampled page hits to the quota store", e);
+            }
+        }
+        if (!Thread.currentThread().isInterrupted()) {
+            flush();
+        }
+        return null;
+    }
+
+    /**
+     * Saves the hits of the {@code topK} most hit pages since the last flush to the
+     * store
+     *
+     * @return the pages sent to the store
+     */
+    List<PageStatsPayload> flush() {
+        final Generation flushed = this.current;
+        final Generation next = new Generation();
+        this.current = next;
+
+        // min heap, to keep the topK most hit candidates
+        PriorityQueue<PageStatsPayload> top =
+                new PriorityQueue<>(
+                        topK + 1, Comparator.comparingInt(PageStatsPayload::getNumHits));
+        List<Candidate> rest = new ArrayList<>();
+        for (Candidate candidate : flushed.candidates.values()) {
+            long sampled = candidate.sampledHits.sumThenReset();
+            long hits = Math.round(sampled / sampleRate) + candidate.carriedHits;
+            if (hits <= 0) {
+                continue;
+            }
+            PageStatsPayload payload = new PageStatsPayload(candidate.page, candidate.tileSet);
+            payload.setNumHits((int) Math.min(Integer.MAX_VALUE, hits));
+            payload.setLastAccessTime(candidate.lastAccessTime);
+            top.add(payload);
+            if (top.size() > topK) {
+                PageStatsPayload evicted = top.poll();
+                Candidate carried = flushed.candidates.get(evicted.getPage().getKey());
+                carried.carriedHits = evicted.getNumHits();
+                rest.add(carried);
+            }
+        }
+        carryOver(rest, next);
+
+        List<PageStatsPayload> pages = new ArrayList<>(top);
+        if (!pages.isEmpty()) {
+            quotaStore.addHitsAndSetAccesTime(pages);
+        }
+        return pages;
+    }
+
+    /** Keeps the most hit of the pages that did not make it to the store for the next flush */
+    private void carryOver(List<Candidate> rest, Generation next) {
+        if (rest.size() > maxCandidates) {
+            rest.sort(Comparator.comparingLong((Candidate c) -> c.carriedHits).reversed());
+            if (log.isDebugEnabled()) {
+                log.debug("Dropping usage stats of " + (rest.size() - maxCandidates) + " pages");
+            }
+            rest = rest.subList(0, maxCandidates);
+        }
+        for (Candidate candidate : rest) {
+            Candidate existing = next.candidates.putIfAbsent(candidate.page.getKey(), candidate);
+            if (existing != null) {
+                // hit again while flushing
+                existing.carriedHits += candidate.carriedHits;
+            }
+        }
+    }
+
+    public void setCancelled(boolean cancelled) {
+        this.cancelled = cancelled;
+    }
+
+    public void shutdown() {
+        this.terminate = true;
+    }
+}
@@ -18,6 +18,7 @@ import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.geowebcache.GeoWebCacheExtensions;
 import org.geowebcache.diskquota.storage.TilePageCalculator;
 import org.geowebcache.layer.TileLayer;
 import org.geowebcache.layer.TileLayerDispatcher;
@@ -55,6 +56,12 @@ public class UsageStatsMonitor extends AbstractMonitor {
      */
     private QueuedUsageStatsConsumer usageStatsConsumer;
 
+    /**
+     * Replaces {@link #usageStatsProducer} and {@link #usageStatsConsumer} when the {@code
+     * GEOWEBCACHE_USAGE_STATS_MODE} property is set to {@code sampled}
+     */
+    private SampledUsageStats sampledUsageStats;
+
     public UsageStatsMonitor(
             final QuotaStore quotaStore, final TileLayerDispatcher tileLayerDispatcher) {
 
@@ -70,6 +77,11 @@ public class UsageStatsMonitor extends AbstractMonitor {
     public void startUp() {
         super.startUp();
 
+        if ("sampled".equalsIgnoreCase(getProperty("GEOWEBCACHE_USAGE_STATS_MODE", null))) {
+            startUpSampled();
+            return;
+        }
+
         sharedQueue = new LinkedBlockingQueue<>(1000);
 
         usageStatsConsumer =
@@ -83,8 +95,44 @@ public class UsageStatsMonitor extends AbstractMonitor {
         }
     }
 
+    /**
+     * Sets up {@link SampledUsageStats}, configured through the {@code
+     * GEOWEBCACHE_USAGE_STATS_SAMPLE_RATE} (defaults to 0.1), {@code GEOWEBCACHE_USAGE_STATS_TOP_K}
+     * (defaults to 1000 pages) and {@code GEOWEBCACHE_USAGE_STATS_FLUSH_INTERVAL} (defaults to 10
+     * seconds) properties
+     */
+    private void startUpSampled() {
+        double sampleRate =
+                Double.parseDouble(getProperty("GEOWEBCACHE_USAGE_STATS_SAMPLE_RATE", "0.1"));
+        int topK = Integer.parseInt(getProperty("GEOWEBCACHE_USAGE_STATS_TOP_K", "1000"));
+        long flushInterval =
+                Long.parseLong(getProperty("GEOWEBCACHE_USAGE_STATS_FLUSH_INTERVAL", "10000"));
+        log.info(
+                "Sampling "
+                        + (sampleRate * 100)
+                        + "% of the tile requests for disk quota usage stats, saving the "
+                        + topK
+                        + " most hit pages every "
+                        + flushInterval
+                        + "ms");
+        sampledUsageStats = new SampledUsageStats(quotaStore, sampleRate, topK, flushInterval);
+        getExecutorService().submit(sampledUsageStats);
+        for (TileLayer layer : tileLayerDispatcher.getLayerList()) {
+            layer.addLayerListener(sampledUsageStats);
+        }
+    }
+
+    private static String getProperty(String name, String defaultValue) {
+        String value = GeoWebCacheExtensions.getProperty(name);
+        return value == null ? defaultValue : value;
+    }
+
     @Override
     protected void shutDown(final boolean cancel) {
+        if (sampledUsageStats != null) {
+            shutDownSampled(cancel);
+            return;
+        }
         Iterable<TileLayer> allLayers = tileLayerDispatcher.getLayerList();
         for (TileLayer layer : allLayers) {
             try {
@@ -110,6 +158,29 @@ public class UsageStatsMonitor extends AbstractMonitor {
         sharedQueue = null;
     }
 
+    private void shutDownSampled(final boolean cancel) {
+        for (TileLayer layer : tileLayerDispatcher.getLayerList()) {
+            try {
+                layer.removeLayerListener(sampledUsageStats);
+            } catch (RuntimeException e) {
+                log.error(
+                        "Unexpected exception while removing the usage stats "
+                                + "listener from layer '"
+                                + layer
+                                + "'. Ignoring in order to continue with the monitor's shutdown "
+                                + "process",
+                        e);
+            }
+        }
+        sampledUsageStats.shutdown();
+        if (cancel) {
+            sampledUsageStats.setCancelled(true);
+            getExecutorService().shutdownNow();
+        } else {
+            getExecutorService().shutdown();
+        }
+    }
+
     @Override
     protected CustomizableThreadFactory getThreadFactory() {
         return tf;
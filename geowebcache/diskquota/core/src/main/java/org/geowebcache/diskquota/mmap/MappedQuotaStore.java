@@ -0,0 +1,1146 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.diskquota.mmap;
+
+import static org.geowebcache.diskquota.DiskQuotaMonitor.GWC_DISKQUOTA_DISABLED;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.geowebcache.config.ConfigurationException;
+import org.geowebcache.diskquota.ExpirationPolicy;
+import org.geowebcache.diskquota.QuotaStore;
+import org.geowebcache.diskquota.storage.PageStats;
+import org.geowebcache.diskquota.storage.PageStatsPayload;
+import org.geowebcache.diskquota.storage.Quota;
+import org.geowebcache.diskquota.storage.TilePage;
+import org.geowebcache.diskquota.storage.TilePageCalculator;
+import org.geowebcache.diskquota.storage.TileSet;
+import org.geowebcache.diskquota.storage.TileSetVisitor;
+import org.geowebcache.storage.DefaultStorageFinder;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+
+/**
+ * Embedded {@link QuotaStore} keeping the page statistics in a memory mapped {@link PageTable},
+ * with no external database or service involved.
+ *
+ * <p>Pages are keyed by a primitive {@code long} packing the tile set index and the page x/y/z
+ * coordinates, tile sets and their used quota are kept on the heap. The pages holding tiles are
+ * also kept in ordered on-heap indexes by frequency of use, last access time and cost priority,
+ * so that the expiration candidates are found in logarithmic time, and the layers filter is a bit
+ * set lookup.
+ *
+ * <p>Every change is recorded in a {@link PageStoreLog write-ahead log} as after images of the
+ * modified tile sets and pages before returning. The log is synced to disk every {@link
+ * #setSyncIntervalMillis(long) sync interval}, and once it grows past the {@link
+ * #setCheckpointLogSize(long) checkpoint size} the page table is flushed, the tile sets are saved
+ * and the log is emptied. On startup the last checkpoint is loaded and the log replayed over it,
+ * so after a system crash at most the changes of the last sync interval are lost.
+ *
+ * <p>All the operations run in the calling thread, guarded by a read/write lock.
+ */
+public class MappedQuotaStore implements QuotaStore {
+
+    private static final Log log = LogFactory.getLog(MappedQuotaStore.class);
+
+    static final String GLOBAL_QUOTA_NAME = "___GLOBAL_QUOTA___";
+
+    static final String STORE_DIRECTORY = "diskquota_mapped_store";
+
+    private static final String TILESETS_FILE = "tilesets.dat";
+
+    private static final String LOG_FILE = "pages.log";
+
+    private static final String TABLE_PREFIX = "pages-";
+
+    private static final String TABLE_SUFFIX = ".dat";
+
+    private static final int TILESETS_MAGIC = 0x47575453; // GWTS
+
+    private static final int TILESETS_VERSION = 1;
+
+    // page key layout, from the least significant bits
+    private static final int Y_BITS = 18;
+
+    private static final int X_BITS = 18;
+
+    private static final int Z_BITS = 7;
+
+    private static final int TILESET_SHIFT = Y_BITS + X_BITS + Z_BITS;
+
+    static final int MAX_TILESETS = 1 << (63 - TILESET_SHIFT);
+
+    // log entry types
+    private static final byte TILESET_ENTRY = 1;
+
+    private static final byte PAGE_ENTRY = 2;
+
+    private static final byte REMOVE_TILESET_ENTRY = 3;
+
+    /** Page entry followed by the page render time */
+    private static final byte RENDERED_PAGE_ENTRY = 4;
+
+    /** A tile set, its used quota and its index in the page keys */
+    private static final class TileSetEntry {
+
+        final int index;
+
+        TileSet tileSet;
+
+        long bytes;
+
+        TileSetEntry(int index, TileSet tileSet, long bytes) {
+            this.index = index;
+            this.tileSet = tileSet;
+            this.bytes = bytes;
+        }
+
+        Quota getQuota() {
+            Quota quota = new Quota(BigInteger.valueOf(bytes));
+            quota.setTileSetId(tileSet.getId());
+            return quota;
+        }
+    }
+
+    /** Entry of the expiration indexes, ordered by score and then by page key */
+    private static final class IndexEntry implements Comparable<IndexEntry> {
+
+        final double score;
+
+        final long key;
+
+        IndexEntry(double score, long key) {
+            this.score = score;
+            this.key = key;
+        }
+
+        @Override
+        public int compareTo(IndexEntry o) {
+            int c = Double.compare(score, o.score);
+            return c != 0 ? c : Long.compare(key, o.key);
+        }
+    }
+
+    private final String cacheRootDir;
+
+    private final TilePageCalculator tilePageCalculator;
+
+    private final boolean diskQuotaEnabled;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private File storeDirectory;
+
+    private long generation;
+
+    private PageTable table;
+
+    private PageStoreLog pageLog;
+
+    private final Map<String, TileSetEntry> tileSetsById = new HashMap<>();
+
+    /** Tile sets by index, the global quota is at index zero */
+    private TileSetEntry[] tileSetsByIndex = new TileSetEntry[64];
+
+    private final NavigableSet<IndexEntry> lfuIndex = new TreeSet<>();
+
+    private final NavigableSet<IndexEntry> lruIndex = new TreeSet<>();
+
+    private final NavigableSet<IndexEntry> costIndex = new TreeSet<>();
+
+    /**
+     * Inflation value of the {@link ExpirationPolicy#COST cost} policy, the highest priority of the
+     * pages truncated so far. Not persisted, on startup it's taken from the lowest priority page.
+     */
+    private float costInflation;
+
+    private final ByteArrayOutputStream logBuffer = new ByteArrayOutputStream();
+
+    private final DataOutputStream logOutput = new DataOutputStream(logBuffer);
+
+    private ScheduledExecutorService syncExecutor;
+
+    private long syncIntervalMillis = 1000;
+
+    private long checkpointLogSize = 32 * 1024 * 1024;
+
+    private volatile boolean open;
+
+    public MappedQuotaStore(
+            final DefaultStorageFinder cacheDirFinder, TilePageCalculator tilePageCalculator)
+            throws ConfigurationException {
+
+        Assert.notNull(cacheDirFinder, "cacheDirFinder can't be null");
+        Assert.notNull(tilePageCalculator, "tilePageCalculator can't be null");
+
+        this.tilePageCalculator = tilePageCalculator;
+        this.cacheRootDir = cacheDirFinder.getDefaultPath();
+
+        boolean disabled =
+                Boolean.valueOf(cacheDirFinder.findEnvVar(GWC_DISKQUOTA_DISABLED)).booleanValue();
+        if (disabled) {
+            log.warn(
+                    " -- Found environment variable "
+                            + GWC_DISKQUOTA_DISABLED
+                            + " set to true. DiskQuotaMonitor is disabled.");
+        }
+        this.diskQuotaEnabled = !disabled;
+    }
+
+    public long getSyncIntervalMillis() {
+        return syncIntervalMillis;
+    }
+
+    /** How often the write-ahead log is synced to disk, defaults to one second */
+    public void setSyncIntervalMillis(long syncIntervalMillis) {
+        this.syncIntervalMillis = syncIntervalMillis;
+    }
+
+    public long getCheckpointLogSize() {
+        return checkpointLogSize;
+    }
+
+    /** Size of the write-ahead log triggering a checkpoint, defaults to 32MB */
+    public void setCheckpointLogSize(long checkpointLogSize) {
+        this.checkpointLogSize = checkpointLogSize;
+    }
+
+    /** @see #close() */
+    public void startUp() throws IOException {
+        if (!diskQuotaEnabled) {
+            log.info(
+                    getClass().getName()
+                            + " won't start, got env variable "
+                            + GWC_DISKQUOTA_DISABLED
+                            + "=true");
+            return;
+        }
+        storeDirectory = new File(cacheRootDir, STORE_DIRECTORY);
+        storeDirectory.mkdirs();
+
+        lock.writeLock().lock();
+        try {
+            recover();
+            deleteStaleLayersAndCreateMissingTileSets();
+            checkpoint();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        open = true;
+
+        CustomizableThreadFactory tf = new CustomizableThreadFactory("GWC DiskQuota Store Sync-");
+        tf.setDaemon(true);
+        syncExecutor = Executors.newSingleThreadScheduledExecutor(tf);
+        syncExecutor.scheduleWithFixedDelay(
+                this::sync, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+
+        log.info(
+                "Memory mapped Disk Quota page store configured at "
+                        + storeDirectory.getAbsolutePath()
+                        + " with "
+                        + table.size()
+                        + " pages");
+        log.info(
+                "Quota Store initialized. Global quota: "
+                        + tileSetsByIndex[0].getQuota().toNiceString());
+    }
+
+    public void close() throws Exception {
+        if (!diskQuotaEnabled || !open) {
+            return;
+        }
+        open = false;
+        log.info("Requesting to close quota store...");
+        syncExecutor.shutdown();
+        try {
+            syncExecutor.awaitTermination(30 * 1000, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        lock.writeLock().lock();
+        try {
+            checkpoint();
+            table.close();
+            pageLog.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Quota store closed.");
+    }
+
+    /** Loads the last checkpoint and replays the write-ahead log over it */
+    private void recover() throws IOException {
+        File tileSetsFile = new File(storeDirectory, TILESETS_FILE);
+        if (tileSetsFile.exists()) {
+            readTileSets(tileSetsFile);
+        }
+        File tableFile = tableFile(generation);
+        if (!tableFile.exists()) {
+            table = PageTable.create(tableFile, PageTable.capacityFor(0));
+        } else {
+            PageTable existing = PageTable.open(tableFile);
+            if (existing.isClean()) {
+                table = existing;
+            } else {
+                log.warn(
+                        "The disk quota page store was not properly closed, rebuilding "
+                                + tableFile);
+                generation++;
+                table = PageTable.create(tableFile(generation), existing.capacity());
+                existing.copyTo(table);
+                existing.discard();
+            }
+        }
+        if (tileSetsByIndex[0] == null) {
+            log.debug("First time run: creating global quota object");
+            putTileSet(new TileSetEntry(0, new TileSet(GLOBAL_QUOTA_NAME), 0));
+        }
+        for (int slot = 0; slot < table.capacity(); slot++) {
+            index(slot);
+        }
+        costInflation = costIndex.isEmpty() ? 0f : (float) costIndex.first().score;
+
+        pageLog = new PageStoreLog(new File(storeDirectory, LOG_FILE));
+        int replayed = pageLog.replay(this::replay);
+        if (replayed > 0) {
+            log.info("Replayed " + replayed + " disk quota page store log records");
+        }
+    }
+
+    private void replay(DataInputStream in) throws IOException {
+        while (in.available() > 0) {
+            byte type = in.readByte();
+            switch (type) {
+                case TILESET_ENTRY:
+                    putTileSet(readTileSet(in));
+                    break;
+                case PAGE_ENTRY:
+                case RENDERED_PAGE_ENTRY:
+                    long key = in.readLong();
+                    ensureCapacity(1);
+                    int slot = table.findOrInsert(key);
+                    unindex(slot);
+                    table.setHits(slot, in.readLong());
+                    table.setFillFactor(slot, in.readFloat());
+                    table.setFrequencyOfUse(slot, in.readFloat());
+                    table.setLastAccessMinutes(slot, in.readInt());
+                    table.setCreationMinutes(slot, in.readInt());
+                    table.setCostPriority(slot, in.readFloat());
+                    table.setRenderTime(slot, type == PAGE_ENTRY ? 0f : in.readFloat());
+                    index(slot);
+                    break;
+                case REMOVE_TILESET_ENTRY:
+                    removeTileSet(in.readInt());
+                    break;
+                default:
+                    throw new IOException("Unknown disk quota page store log entry: " + type);
+            }
+        }
+    }
+
+    private void deleteStaleLayersAndCreateMissingTileSets() {
+        final Set<String> layerNames = tilePageCalculator.getLayerNames();
+        final Set<String> existingLayers = new HashSet<>();
+        for (TileSetEntry entry : tileSetsById.values()) {
+            if (entry.index > 0) {
+                existingLayers.add(entry.tileSet.getLayerName());
+            }
+        }
+        existingLayers.removeAll(layerNames);
+        for (String layerName : existingLayers) {
+            log.info(
+                    "Deleting disk quota information for layer '"
+                            + layerName
+                            + "' as it does not exist anymore...");
+            delete(layerName, ts -> true);
+        }
+        for (String layerName : layerNames) {
+            for (TileSet tileSet : tilePageCalculator.getTileSetsFor(layerName)) {
+                getOrCreateTileSet(tileSet);
+            }
+        }
+        commitLog();
+    }
+
+    /**
+     * Flushes the page table, saves the tile sets and empties the write-ahead log. Shall be called
+     * holding the write lock.
+     */
+    private void checkpoint() throws IOException {
+        table.force();
+        writeTileSets(new File(storeDirectory, TILESETS_FILE));
+        pageLog.reset();
+        deleteStaleTables();
+    }
+
+    /** Syncs the log, or checkpoints if it grew too much */
+    private void sync() {
+        if (!open) {
+            return;
+        }
+        try {
+            if (pageLog.size() < checkpointLogSize) {
+                pageLog.sync();
+                return;
+            }
+            lock.writeLock().lock();
+            try {
+                if (open) {
+                    checkpoint();
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("Error syncing the disk quota page store", e);
+        }
+    }
+
+    private File tableFile(long generation) {
+        return new File(storeDirectory, TABLE_PREFIX + generation + TABLE_SUFFIX);
+    }
+
+    private void deleteStaleTables() {
+        final String current = table.getFile().getName();
+        File[] tables =
+                storeDirectory.listFiles(
+                        (dir, name) ->
+                                name.startsWith(TABLE_PREFIX)
+                                        && name.endsWith(TABLE_SUFFIX)
+                                        && !name.equals(current));
+        if (tables != null) {
+            for (File stale : tables) {
+                if (!stale.delete()) {
+                    log.debug("Could not delete stale page table " + stale + ", will retry later");
+                }
+            }
+        }
+    }
+
+    /** Moves the pages to a bigger table if {@code newPages} would not fit in the current one */
+    private void ensureCapacity(int newPages) throws IOException {
+        if (!table.needsResize(newPages)) {
+            return;
+        }
+        int capacity =
+                Math.max(
+                        table.capacity() * 2,
+                        PageTable.capacityFor((long) table.size() + newPages));
+        PageTable bigger = PageTable.create(tableFile(generation + 1), capacity);
+        table.copyTo(bigger);
+        // the old table stays around until the next checkpoint, as the base for log replay
+        table.close();
+        table = bigger;
+        generation++;
+        log.info("Disk quota page table grown to " + capacity + " slots");
+    }
+
+    private void readTileSets(File file) throws IOException {
+        try (DataInputStream in =
+                new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != TILESETS_MAGIC || in.readInt() != TILESETS_VERSION) {
+                throw new IOException(file + " is not a version " + TILESETS_VERSION + " file");
+            }
+            generation = in.readLong();
+            final int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                putTileSet(readTileSet(in));
+            }
+        }
+    }
+
+    private void writeTileSets(File file) throws IOException {
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+            out.writeInt(TILESETS_MAGIC);
+            out.writeInt(TILESETS_VERSION);
+            out.writeLong(generation);
+            out.writeInt(tileSetsById.size());
+            for (TileSetEntry entry : tileSetsById.values()) {
+                writeTileSet(out, entry);
+            }
+            out.flush();
+            fos.getFD().sync();
+        }
+        Files.move(
+                tmp.toPath(),
+                file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static TileSetEntry readTileSet(DataInput in) throws IOException {
+        final int index = in.readInt();
+        final String id = in.readUTF();
+        final String layerName = readNullable(in);
+        final String gridsetId = readNullable(in);
+        final String blobFormat = readNullable(in);
+        final String parametersId = readNullable(in);
+        final long bytes = in.readLong();
+        TileSet tileSet;
+        if (layerName == null) {
+            tileSet = new TileSet(id);
+        } else {
+            tileSet = new TileSet(layerName, gridsetId, blobFormat, parametersId);
+        }
+        return new TileSetEntry(index, tileSet, bytes);
+    }
+
+    private static void writeTileSet(DataOutput out, TileSetEntry entry) throws IOException {
+        TileSet tileSet = entry.tileSet;
+        out.writeInt(entry.index);
+        out.writeUTF(tileSet.getId());
+        writeNullable(out, tileSet.getLayerName());
+        writeNullable(out, tileSet.getGridsetId());
+        writeNullable(out, tileSet.getBlobFormat());
+        writeNullable(out, tileSet.getParametersId());
+        out.writeLong(entry.bytes);
+    }
+
+    private static String readNullable(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeNullable(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private void logTileSet(TileSetEntry entry) {
+        try {
+            logOutput.writeByte(TILESET_ENTRY);
+            writeTileSet(logOutput, entry);
+        } catch (IOException e) {
+            // can't happen writing to memory
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void logPage(int slot) {
+        try {
+            logOutput.writeByte(RENDERED_PAGE_ENTRY);
+            logOutput.writeLong(table.key(slot));
+            logOutput.writeLong(table.getHits(slot));
+            logOutput.writeFloat(table.getFillFactor(slot));
+            logOutput.writeFloat(table.getFrequencyOfUse(slot));
+            logOutput.writeInt(table.getLastAccessMinutes(slot));
+            logOutput.writeInt(table.getCreationMinutes(slot));
+            logOutput.writeFloat(table.getCostPriority(slot));
+            logOutput.writeFloat(table.getRenderTime(slot));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void logRemoveTileSet(int index) {
+        try {
+            logOutput.writeByte(REMOVE_TILESET_ENTRY);
+            logOutput.writeInt(index);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Appends the entries logged so far as a single record */
+    private void commitLog() {
+        if (logBuffer.size() == 0) {
+            return;
+        }
+        try {
+            pageLog.append(logBuffer.toByteArray(), logBuffer.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error writing the disk quota page store log", e);
+        } finally {
+            logBuffer.reset();
+        }
+    }
+
+    /** @return the primitive key of a page */
+    static long pageKey(int tileSetIndex, int x, int y, int z) {
+        if (x < 0 || x >= 1 << X_BITS || y < 0 || y >= 1 << Y_BITS || z < 0 || z >= 1 << Z_BITS) {
+            throw new IllegalArgumentException(
+                    "Page out of the supported range: " + x + "," + y + "," + z);
+        }
+        return ((long) tileSetIndex << TILESET_SHIFT)
+                | ((long) z << (X_BITS + Y_BITS))
+                | ((long) x << Y_BITS)
+                | y;
+    }
+
+    private static long pageKey(TileSetEntry entry, TilePage page) {
+        return pageKey(entry.index, page.getPageX(), page.getPageY(), page.getZoomLevel());
+    }
+
+    private static int tileSetIndex(long key) {
+        return (int) (key >>> TILESET_SHIFT);
+    }
+
+    private TilePage toTilePage(int slot) {
+        final long key = table.key(slot);
+        final int y = (int) (key & ((1 << Y_BITS) - 1));
+        final int x = (int) ((key >>> Y_BITS) & ((1 << X_BITS) - 1));
+        final int z = (int) ((key >>> (X_BITS + Y_BITS)) & ((1 << Z_BITS) - 1));
+        final String tileSetId = tileSetsByIndex[tileSetIndex(key)].tileSet.getId();
+        return new TilePage(tileSetId, x, y, z, table.getCreationMinutes(slot));
+    }
+
+    /** Adds the page to the expiration indexes, if it has tiles */
+    private void index(int slot) {
+        final long key = table.key(slot);
+        if (key != 0 && table.getFillFactor(slot) > 0) {
+            lfuIndex.add(new IndexEntry(table.getFrequencyOfUse(slot), key));
+            lruIndex.add(new IndexEntry(table.getLastAccessMinutes(slot), key));
+            costIndex.add(new IndexEntry(table.getCostPriority(slot), key));
+        }
+    }
+
+    /** Removes the page from the expiration indexes, to be called before modifying it */
+    private void unindex(int slot) {
+        final long key = table.key(slot);
+        if (table.getFillFactor(slot) > 0) {
+            lfuIndex.remove(new IndexEntry(table.getFrequencyOfUse(slot), key));
+            lruIndex.remove(new IndexEntry(table.getLastAccessMinutes(slot), key));
+            costIndex.remove(new IndexEntry(table.getCostPriority(slot), key));
+        }
+    }
+
+    private PageStats getPageStats(int slot) {
+        PageStats stats = new PageStats(table.key(slot));
+        stats.setFillFactor(table.getFillFactor(slot));
+        stats.setFrequencyOfUsePerMinute(table.getFrequencyOfUse(slot));
+        stats.setLastAccessMinutes(table.getLastAccessMinutes(slot));
+        stats.setNumHits(BigInteger.valueOf(table.getHits(slot)));
+        stats.setCostPriority(table.getCostPriority(slot));
+        stats.setRenderTime(table.getRenderTime(slot));
+        return stats;
+    }
+
+    private void setPageStats(int slot, PageStats stats) {
+        final BigInteger hits = stats.getNumHits();
+        table.setHits(slot, hits.bitLength() < 64 ? hits.longValue() : Long.MAX_VALUE);
+        table.setFillFactor(slot, stats.getFillFactor());
+        table.setFrequencyOfUse(slot, stats.getFrequencyOfUsePerMinute());
+        table.setLastAccessMinutes(slot, stats.getLastAccessTimeMinutes());
+        table.setCostPriority(slot, stats.getCostPriority());
+        table.setRenderTime(slot, stats.getRenderTime());
+    }
+
+    /** Looks up a page, adding it if missing with the same initial stats as a new PageStats */
+    private int getOrCreatePage(TileSetEntry entry, TilePage page) {
+        final long key = pageKey(entry, page);
+        int slot = table.find(key);
+        if (slot == -1) {
+            slot = table.findOrInsert(key);
+            setPageStats(slot, new PageStats(key));
+            table.setCreationMinutes(slot, page.getCreationTimeMinutes());
+        }
+        return slot;
+    }
+
+    private TileSetEntry getOrCreateTileSet(final TileSet tileSet) {
+        TileSetEntry entry = tileSetsById.get(tileSet.getId());
+        if (entry == null) {
+            log.debug("Creating TileSet for quota tracking: " + tileSet);
+            int index = 1;
+            while (index < tileSetsByIndex.length && tileSetsByIndex[index] != null) {
+                index++;
+            }
+            if (index >= MAX_TILESETS) {
+                throw new IllegalStateException(
+                        "Can't track more than " + MAX_TILESETS + " tile sets");
+            }
+            entry = new TileSetEntry(index, tileSet, 0);
+            putTileSet(entry);
+            logTileSet(entry);
+        }
+        return entry;
+    }
+
+    private void putTileSet(TileSetEntry entry) {
+        if (entry.index >= tileSetsByIndex.length) {
+            tileSetsByIndex =
+                    Arrays.copyOf(
+                            tileSetsByIndex, Math.max(entry.index + 1, tileSetsByIndex.length * 2));
+        }
+        TileSetEntry previous = tileSetsByIndex[entry.index];
+        if (previous != null) {
+            tileSetsById.remove(previous.tileSet.getId());
+        }
+        tileSetsByIndex[entry.index] = entry;
+        tileSetsById.put(entry.tileSet.getId(), entry);
+    }
+
+    /** Removes a tile set and all its pages */
+    private void removeTileSet(int index) {
+        if (index >= tileSetsByIndex.length || tileSetsByIndex[index] == null) {
+            return;
+        }
+        TileSetEntry entry = tileSetsByIndex[index];
+        tileSetsByIndex[index] = null;
+        tileSetsById.remove(entry.tileSet.getId());
+
+        // collect first, removals shift the slots around
+        List<Long> keys = new ArrayList<>();
+        for (int slot = 0; slot < table.capacity(); slot++) {
+            long key = table.key(slot);
+            if (key != 0 && tileSetIndex(key) == index) {
+                unindex(slot);
+                keys.add(key);
+            }
+        }
+        for (Long key : keys) {
+            table.remove(key);
+        }
+    }
+
+    /** @return the indexes of the tile sets of the given layers */
+    private BitSet getTileSetIndexes(Set<String> layerNames) {
+        BitSet indexes = new BitSet();
+        for (TileSetEntry entry : tileSetsById.values()) {
+            if (entry.index > 0 && layerNames.contains(entry.tileSet.getLayerName())) {
+                indexes.set(entry.index);
+            }
+        }
+        return indexes;
+    }
+
+    private void checkOpen() {
+        if (!open) {
+            throw new IllegalStateException("QuotaStore is closed.");
+        }
+    }
+
+    /** @see org.geowebcache.diskquota.QuotaStore#createLayer(java.lang.String) */
+    public void createLayer(final String layerName) throws InterruptedException {
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            for (TileSet tileSet : tilePageCalculator.getTileSetsFor(layerName)) {
+                getOrCreateTileSet(tileSet);
+            }
+            commitLog();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** @see org.geowebcache.diskquota.QuotaStore#getGloballyUsedQuota() */
+    public Quota getGloballyUsedQuota() throws InterruptedException {
+        return getUsedQuotaByTileSetId(GLOBAL_QUOTA_NAME);
+    }
+
+    /** @see org.geowebcache.diskquota.QuotaStore#getUsedQuotaByTileSetId(java.lang.String) */
+    public Quota getUsedQuotaByTileSetId(final String tileSetId) throws InterruptedException {
+        lock.readLock().lock();
+        try {
+            TileSetEntry entry = tileSetsById.get(tileSetId);
+            return entry == null ? new Quota() : entry.getQuota();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** @see org.geowebcache.diskquota.QuotaStore#deleteLayer(java.lang.String) */
+    public void deleteLayer(final String layerName) {
+        Assert.notNull(layerName, "layerName can't be null");
+        deleteLocked(layerName, ts -> true);
+    }
+
+    public void deleteGridSubset(String layerName, String gridSetId) {
+        deleteLocked(layerName, ts -> Objects.equals(ts.getGridsetId(), gridSetId));
+    }
+
+    public void deleteParameters(String layerName, String parametersId) {
+        deleteLocked(layerName, ts -> Objects.equals(ts.getParametersId(), parametersId));
+    }
+
+    @Override
+    public File getStoreDirectory() {
+        return storeDirectory;
+    }
+
+    private void deleteLocked(String layerName, Predicate<TileSet> shouldDelete) {
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            delete(layerName, shouldDelete);
+            commitLog();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void delete(String layerName, Predicate<TileSet> shouldDelete) {
+        final TileSetEntry global = tileSetsByIndex[0];
+        for (TileSetEntry entry : new ArrayList<>(tileSetsById.values())) {
+            TileSet tileSet = entry.tileSet;
+            if (entry.index > 0
+                    && layerName.equals(tileSet.getLayerName())
+                    && shouldDelete.test(tileSet)) {
+                global.bytes -= entry.bytes;
+                logTileSet(global);
+                removeTileSet(entry.index);
+                logRemoveTileSet(entry.index);
+            }
+        }
+    }
+
+    /**
+     * Renames the tile sets of the layer in place, as pages refer to tile sets by index they don't
+     * need to be touched
+     *
+     * @see org.geowebcache.diskquota.QuotaStore#renameLayer(java.lang.String, java.lang.String)
+     */
+    public void renameLayer(String oldLayerName, String newLayerName) throws InterruptedException {
+        Assert.notNull(oldLayerName, "oldLayerName can't be null");
+        Assert.notNull(newLayerName, "newLayerName can't be null");
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            // drop any leftover of the new layer, its quota is about to be replaced
+            delete(newLayerName, ts -> true);
+            for (TileSetEntry entry : new ArrayList<>(tileSetsById.values())) {
+                TileSet old = entry.tileSet;
+                if (entry.index > 0 && oldLayerName.equals(old.getLayerName())) {
+                    tileSetsById.remove(old.getId());
+                    entry.tileSet =
+                            new TileSet(
+                                    newLayerName,
+                                    old.getGridsetId(),
+                                    old.getBlobFormat(),
+                                    old.getParametersId());
+                    putTileSet(entry);
+                    logTileSet(entry);
+                }
+            }
+            commitLog();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** @see org.geowebcache.diskquota.QuotaStore#getUsedQuotaByLayerName(java.lang.String) */
+    public Quota getUsedQuotaByLayerName(final String layerName) throws InterruptedException {
+        lock.readLock().lock();
+        try {
+            Quota aggregated = new Quota();
+            for (TileSetEntry entry : tileSetsById.values()) {
+                if (entry.index > 0 && layerName.equals(entry.tileSet.getLayerName())) {
+                    aggregated.addBytes(entry.bytes);
+                }
+            }
+            return aggregated;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @see
+     *     org.geowebcache.diskquota.QuotaStore#getTilesForPage(org.geowebcache.diskquota.storage.TilePage)
+     */
+    public long[][] getTilesForPage(TilePage page) throws InterruptedException {
+        TileSet tileSet = getTileSetById(page.getTileSetId());
+        long[][] gridCoverage = tilePageCalculator.toGridCoverage(tileSet, page);
+        return gridCoverage;
+    }
+
+    /** @see org.geowebcache.diskquota.QuotaStore#getTileSets() */
+    public Set<TileSet> getTileSets() {
+        lock.readLock().lock();
+        try {
+            Set<TileSet> tileSets = new HashSet<>();
+            for (TileSetEntry entry : tileSetsById.values()) {
+                if (entry.index > 0) {
+                    tileSets.add(entry.tileSet);
+                }
+            }
+            return tileSets;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** @see org.geowebcache.diskquota.QuotaStore#getTileSetById(java.lang.String) */
+    public TileSet getTileSetById(final String tileSetId) throws InterruptedException {
+        lock.readLock().lock();
+        try {
+            TileSetEntry entry = tileSetsById.get(tileSetId);
+            if (entry == null) {
+                throw new IllegalArgumentException("TileSet does not exist: " + tileSetId);
+            }
+            return entry.tileSet;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @see
+     *     org.geowebcache.diskquota.QuotaStore#accept(org.geowebcache.diskquota.storage.TileSetVisitor)
+     */
+    public void accept(TileSetVisitor visitor) {
+        // visit out of the lock, visitors usually call back into the store
+        for (TileSet tileSet : getTileSets()) {
+            visitor.visit(tileSet, this);
+        }
+    }
+
+    /** @see org.geowebcache.diskquota.QuotaStore#getTilePageCalculator() */
+    public TilePageCalculator getTilePageCalculator() {
+        return tilePageCalculator;
+    }
+
+    /**
+     * @see
+     *     org.geowebcache.diskquota.QuotaStore#addToQuotaAndTileCounts(org.geowebcache.diskquota.storage.TileSet,
+     *     org.geowebcache.diskquota.storage.Quota, java.util.Collection)
+     */
+    public void addToQuotaAndTileCounts(
+            final TileSet tileSet,
+            final Quota quotaDiff,
+            final Collection<PageStatsPayload> tileCountDiffs)
+            throws InterruptedException {
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            final TileSetEntry entry = getOrCreateTileSet(tileSet);
+            final TileSetEntry global = tileSetsByIndex[0];
+            final long bytes = quotaDiff.getBytes().longValue();
+            entry.bytes += bytes;
+            global.bytes += bytes;
+            logTileSet(entry);
+            logTileSet(global);
+
+            ensureCapacity(tileCountDiffs.size());
+            for (PageStatsPayload payload : tileCountDiffs) {
+                final TilePage page = payload.getPage();
+                final int slot = getOrCreatePage(entry, page);
+                final BigInteger tilesPerPage =
+                        tilePageCalculator.getTilesPerPage(tileSet, page.getZoomLevel());
+                PageStats pageStats = getPageStats(slot);
+                pageStats.addRenderTime(
+                        payload.getRenderTime(), payload.getNumRendered(), tilesPerPage);
+                pageStats.addTiles(payload.getNumTiles(), tilesPerPage);
+                pageStats.updateCostPriority(costInflation, tilesPerPage);
+                unindex(slot);
+                setPageStats(slot, pageStats);
+                index(slot);
+                logPage(slot);
+            }
+            commitLog();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** @see org.geowebcache.diskquota.QuotaStore#addHitsAndSetAccesTime(java.util.Collection) */
+    public Future<List<PageStats>> addHitsAndSetAccesTime(
+            final Collection<PageStatsPayload> statsUpdates) {
+
+        Assert.notNull(statsUpdates, "statsUpdates can't be null");
+
+        List<PageStats> allStats = new ArrayList<>(statsUpdates.size());
+        Map<String, BigInteger> tilesPerPage = new HashMap<>();
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            ensureCapacity(statsUpdates.size());
+            for (PageStatsPayload payload : statsUpdates) {
+                final TilePage page = payload.getPage();
+                final TileSetEntry entry = tileSetsById.get(page.getTileSetId());
+                if (entry == null) {
+                    log.info(
+                            "Can't add usage stats. TileSet does not exist. Was it deleted? "
+                                    + page.getTileSetId());
+                    continue;
+                }
+                final int slot = getOrCreatePage(entry, page);
+                final int lastAccessTimeMinutes = (int) (payload.getLastAccessTime() / 1000 / 60);
+                PageStats pageStats = getPageStats(slot);
+                final int creationTimeMinutes = table.getCreationMinutes(slot);
+                pageStats.addHitsAndAccessTime(
+                        payload.getNumHits(), lastAccessTimeMinutes, creationTimeMinutes);
+                final int level = page.getZoomLevel();
+                pageStats.updateCostPriority(
+                        costInflation,
+                        tilesPerPage.computeIfAbsent(
+                                entry.tileSet.getId() + "/" + level,
+                                k -> tilePageCalculator.getTilesPerPage(entry.tileSet, level)));
+                unindex(slot);
+                setPageStats(slot, pageStats);
+                index(slot);
+                logPage(slot);
+                allStats.add(pageStats);
+            }
+            commitLog();
+        } catch (IOException | RuntimeException e) {
+            CompletableFuture<List<PageStats>> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return CompletableFuture.completedFuture(allStats);
+    }
+
+    /** @see org.geowebcache.diskquota.QuotaStore#getLeastFrequentlyUsedPage(java.util.Set) */
+    public TilePage getLeastFrequentlyUsedPage(final Set<String> layerNames)
+            throws InterruptedException {
+        List<TilePage> pages = getPagesToExpire(layerNames, ExpirationPolicy.LFU, null, 1);
+        return pages.isEmpty() ? null : pages.get(0);
+    }
+
+    /** @see org.geowebcache.diskquota.QuotaStore#getLeastRecentlyUsedPage(java.util.Set) */
+    public TilePage getLeastRecentlyUsedPage(final Set<String> layerNames)
+            throws InterruptedException {
+        List<TilePage> pages = getPagesToExpire(layerNames, ExpirationPolicy.LRU, null, 1);
+        return pages.isEmpty() ? null : pages.get(0);
+    }
+
+    /**
+     * Walks the expiration index from the {@code after} page on, skipping the pages of other
+     * layers. If the cursor page is gone the walk starts over from the first page.
+     *
+     * @see org.geowebcache.diskquota.QuotaStore#getPagesToExpire(java.util.Set, ExpirationPolicy,
+     *     TilePage, int)
+     */
+    @Override
+    public List<TilePage> getPagesToExpire(
+            final Set<String> layerNames,
+            final ExpirationPolicy policy,
+            final TilePage after,
+            final int maxPages)
+            throws InterruptedException {
+        Assert.notNull(policy, "policy can't be null");
+        lock.readLock().lock();
+        try {
+            final BitSet tileSetIndexes = getTileSetIndexes(layerNames);
+            if (tileSetIndexes.isEmpty() || maxPages <= 0) {
+                return Collections.emptyList();
+            }
+            NavigableSet<IndexEntry> candidates = getIndex(policy);
+            TileSetEntry afterTileSet =
+                    after == null ? null : tileSetsById.get(after.getTileSetId());
+            if (afterTileSet != null) {
+                int slot = table.find(pageKey(afterTileSet, after));
+                if (slot != -1) {
+                    double score = getScore(policy, slot);
+                    candidates = candidates.tailSet(new IndexEntry(score, table.key(slot)), false);
+                }
+            }
+            final List<TilePage> pages = new ArrayList<>();
+            for (IndexEntry candidate : candidates) {
+                if (tileSetIndexes.get(tileSetIndex(candidate.key))) {
+                    pages.add(toTilePage(table.find(candidate.key)));
+                    if (pages.size() == maxPages) {
+                        break;
+                    }
+                }
+            }
+            return pages;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private NavigableSet<IndexEntry> getIndex(ExpirationPolicy policy) {
+        switch (policy) {
+            case LFU:
+                return lfuIndex;
+            case LRU:
+                return lruIndex;
+            case COST:
+                return costIndex;
+            default:
+                throw new IllegalArgumentException("Unrecognized expiration policy: " + policy);
+        }
+    }
+
+    private double getScore(ExpirationPolicy policy, int slot) {
+        switch (policy) {
+            case LFU:
+                return table.getFrequencyOfUse(slot);
+            case LRU:
+                return table.getLastAccessMinutes(slot);
+            default:
+                return table.getCostPriority(slot);
+        }
+    }
+
+    /**
+     * @see
+     *     org.geowebcache.diskquota.QuotaStore#setTruncated(org.geowebcache.diskquota.storage.TilePage)
+     */
+    public PageStats setTruncated(final TilePage tilePage) throws InterruptedException {
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            TileSetEntry entry = tileSetsById.get(tilePage.getTileSetId());
+            int slot = entry == null ? -1 : table.find(pageKey(entry, tilePage));
+            if (slot == -1) {
+                return null;
+            }
+            unindex(slot);
+            table.setFillFactor(slot, 0f);
+            costInflation = Math.max(costInflation, table.getCostPriority(slot));
+            logPage(slot);
+            commitLog();
+            return getPageStats(slot);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
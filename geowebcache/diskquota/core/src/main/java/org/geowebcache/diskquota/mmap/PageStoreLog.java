@@ -0,0 +1,148 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.diskquota.mmap;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Write-ahead log of the {@link MappedQuotaStore} changes since the last checkpoint.
+ *
+ * <p>Each record is made of its length, the payload and its CRC32 checksum. Payloads contain after
+ * images of the modified tile sets and pages, so replaying a record over a table that already got
+ * some of its changes is harmless. A record torn by a crash is detected on {@link
+ * #replay(RecordHandler)}, which stops there and truncates the log.
+ */
+final class PageStoreLog implements Closeable {
+
+    private static final Log log = LogFactory.getLog(PageStoreLog.class);
+
+    /** Callback for the records found in the log */
+    interface RecordHandler {
+        void handle(DataInputStream payload) throws IOException;
+    }
+
+    private final File file;
+
+    private final FileChannel channel;
+
+    private final CRC32 crc = new CRC32();
+
+    PageStoreLog(File file) throws IOException {
+        this.file = file;
+        this.channel =
+                FileChannel.open(
+                        file.toPath(),
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.READ,
+                        StandardOpenOption.WRITE);
+        channel.position(channel.size());
+    }
+
+    /** Appends a record, it reaches the disk on the next {@link #sync()} */
+    void append(byte[] payload, int length) throws IOException {
+        crc.reset();
+        crc.update(payload, 0, length);
+        ByteBuffer record = ByteBuffer.allocate(length + 8);
+        record.putInt(length);
+        record.put(payload, 0, length);
+        record.putInt((int) crc.getValue());
+        record.flip();
+        while (record.hasRemaining()) {
+            channel.write(record);
+        }
+    }
+
+    void sync() throws IOException {
+        channel.force(false);
+    }
+
+    long size() throws IOException {
+        return channel.size();
+    }
+
+    /** Empties the log, called once its changes are safely stored elsewhere */
+    void reset() throws IOException {
+        channel.truncate(0);
+        channel.position(0);
+        channel.force(true);
+    }
+
+    /**
+     * Feeds the complete records to the handler, in order, and truncates the log after the last
+     * valid one
+     *
+     * @return the number of records replayed
+     */
+    int replay(RecordHandler handler) throws IOException {
+        final long size = channel.size();
+        long position = 0;
+        int count = 0;
+        ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+        while (position + 8 <= size) {
+            lengthBuffer.clear();
+            readFully(lengthBuffer, position);
+            int length = lengthBuffer.getInt(0);
+            if (length < 0 || position + 8 + length > size) {
+                break;
+            }
+            ByteBuffer record = ByteBuffer.allocate(length + 4);
+            readFully(record, position + 4);
+            byte[] payload = record.array();
+            crc.reset();
+            crc.update(payload, 0, length);
+            if (record.getInt(length) != (int) crc.getValue()) {
+                break;
+            }
+            handler.handle(
+                    new DataInputStream(new ByteArrayInputStream(payload, 0, length)));
+            position += 8 + length;
+            count++;
+        }
+        if (position < size) {
+            log.warn(
+                    "Discarding "
+                            + (size - position)
+                            + " bytes of incomplete records at the end of "
+                            + file);
+            channel.truncate(position);
+        }
+        channel.position(position);
+        return count;
+    }
+
+    private void readFully(ByteBuffer target, long position) throws IOException {
+        while (target.hasRemaining()) {
+            int read = channel.read(target, position + target.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of " + file);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
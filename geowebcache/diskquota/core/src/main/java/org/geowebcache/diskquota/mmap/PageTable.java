@@ -0,0 +1,395 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.diskquota.mmap;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Open addressing hash table of page statistics, keyed by a primitive page key (see {@link
+ * MappedQuotaStore#pageKey}) and stored in fixed size slots of a memory mapped file.
+ *
+ * <p>The table uses linear probing and backward shift deletion, so there are no tombstones. It
+ * does not grow by itself, {@link #copyTo(PageTable)} is used to move the contents to a bigger
+ * table when {@link #needsResize(int)} says so. The table is not thread safe.
+ *
+ * <p>The header keeps a "clean" flag that is cleared when the table is opened and set back on
+ * {@link #close()}, a table found not clean on open may contain duplicate or half moved slots and
+ * should be {@link #copyTo(PageTable) copied} to a fresh one before use.
+ */
+final class PageTable implements Closeable {
+
+    private static final int MAGIC = 0x47574351; // GWCQ
+
+    private static final int VERSION = 2;
+
+    private static final int HEADER_SIZE = 32;
+
+    static final int SLOT_SIZE = 40;
+
+    static final int MAX_CAPACITY = 1 << 25;
+
+    static final float LOAD_FACTOR = 0.75f;
+
+    // header layout
+    private static final int H_MAGIC = 0;
+
+    private static final int H_VERSION = 4;
+
+    private static final int H_CAPACITY = 8;
+
+    private static final int H_SIZE = 12;
+
+    private static final int H_CLEAN = 16;
+
+    // slot layout, a zero key marks an empty slot
+    private static final int S_KEY = 0;
+
+    private static final int S_HITS = 8;
+
+    private static final int S_FILL = 16;
+
+    private static final int S_FREQUENCY = 20;
+
+    private static final int S_ACCESS = 24;
+
+    private static final int S_CREATION = 28;
+
+    private static final int S_COST = 32;
+
+    /** Was padding before render times were kept, hence zero (unknown) in older tables */
+    private static final int S_RENDER = 36;
+
+    private final File file;
+
+    private final FileChannel channel;
+
+    private final MappedByteBuffer buffer;
+
+    private final int capacity;
+
+    private final int mask;
+
+    private int size;
+
+    private final boolean clean;
+
+    private PageTable(File file, FileChannel channel, int capacity, boolean create)
+            throws IOException {
+        this.file = file;
+        this.channel = channel;
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        long length = HEADER_SIZE + (long) SLOT_SIZE * capacity;
+        this.buffer = channel.map(MapMode.READ_WRITE, 0, length);
+        if (create) {
+            buffer.putInt(H_MAGIC, MAGIC);
+            buffer.putInt(H_VERSION, VERSION);
+            buffer.putInt(H_CAPACITY, capacity);
+            buffer.putInt(H_SIZE, 0);
+            this.size = 0;
+            this.clean = true;
+        } else {
+            this.size = buffer.getInt(H_SIZE);
+            this.clean = buffer.getInt(H_CLEAN) == 1;
+        }
+        buffer.putInt(H_CLEAN, 0);
+        buffer.force();
+    }
+
+    /** Creates a new, empty, table, overwriting the file if it exists */
+    static PageTable create(File file, int capacity) throws IOException {
+        if (Integer.bitCount(capacity) != 1 || capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException(
+                    "Capacity shall be a power of two up to " + MAX_CAPACITY + ": " + capacity);
+        }
+        FileChannel channel =
+                FileChannel.open(
+                        file.toPath(),
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.READ,
+                        StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            return new PageTable(file, channel, capacity, true);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /** Opens an existing table */
+    static PageTable open(File file) throws IOException {
+        FileChannel channel =
+                FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            MappedByteBuffer header = channel.map(MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt(H_MAGIC) != MAGIC || header.getInt(H_VERSION) != VERSION) {
+                throw new IOException(file + " is not a version " + VERSION + " page table");
+            }
+            int capacity = header.getInt(H_CAPACITY);
+            if (channel.size() < HEADER_SIZE + (long) SLOT_SIZE * capacity) {
+                throw new IOException(file + " is truncated");
+            }
+            return new PageTable(file, channel, capacity, false);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /** @return whether the table was properly closed the last time it was used */
+    boolean isClean() {
+        return clean;
+    }
+
+    /** @return whether adding {@code newEntries} pages would exceed the table load factor */
+    boolean needsResize(int newEntries) {
+        return size + (long) newEntries > (long) (capacity * LOAD_FACTOR);
+    }
+
+    /** @return the capacity of a table able to hold {@code entries} pages */
+    static int capacityFor(long entries) {
+        long needed = (long) Math.ceil(entries / (double) LOAD_FACTOR);
+        int capacity = 1024;
+        while (capacity < needed) {
+            if (capacity == MAX_CAPACITY) {
+                throw new IllegalStateException(
+                        "Can't track more than " + (long) (MAX_CAPACITY * LOAD_FACTOR) + " pages");
+            }
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static int hash(long key) {
+        // murmur3 finalizer, page keys are very regular
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    private static int offset(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    /** @return the slot holding the page, or {@code -1} if not found */
+    int find(final long key) {
+        int slot = hash(key) & mask;
+        long current;
+        while ((current = key(slot)) != 0) {
+            if (current == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Looks up a page, adding it with zeroed statistics if not found. Callers are expected to
+     * check {@link #needsResize(int)} beforehand.
+     *
+     * @return the slot holding the page
+     */
+    int findOrInsert(final long key) {
+        if (key == 0) {
+            throw new IllegalArgumentException("Zero is not a valid page key");
+        }
+        int slot = hash(key) & mask;
+        long current;
+        while ((current = key(slot)) != 0) {
+            if (current == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (size >= capacity - 1) {
+            throw new IllegalStateException("Page table is full");
+        }
+        int offset = offset(slot);
+        buffer.putLong(offset + S_HITS, 0);
+        buffer.putFloat(offset + S_FILL, 0f);
+        buffer.putFloat(offset + S_FREQUENCY, 0f);
+        buffer.putInt(offset + S_ACCESS, 0);
+        buffer.putInt(offset + S_CREATION, 0);
+        buffer.putFloat(offset + S_COST, 0f);
+        buffer.putFloat(offset + S_RENDER, 0f);
+        buffer.putLong(offset + S_KEY, key);
+        buffer.putInt(H_SIZE, ++size);
+        return slot;
+    }
+
+    /**
+     * Removes the page from the table, shifting back the following slots of the probe sequence
+     *
+     * @return whether the page was found
+     */
+    boolean remove(final long key) {
+        int slot = find(key);
+        if (slot == -1) {
+            return false;
+        }
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        long nextKey;
+        while ((nextKey = key(next)) != 0) {
+            int home = hash(nextKey) & mask;
+            // move the entry back if its home slot is not within (gap, next]
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                copySlot(next, gap);
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        buffer.putLong(offset(gap) + S_KEY, 0L);
+        buffer.putInt(H_SIZE, --size);
+        return true;
+    }
+
+    private void copySlot(int from, int to) {
+        int src = offset(from);
+        int dst = offset(to);
+        // key last, so that a torn copy is never visible under the new key only
+        buffer.putLong(dst + S_HITS, buffer.getLong(src + S_HITS));
+        buffer.putFloat(dst + S_FILL, buffer.getFloat(src + S_FILL));
+        buffer.putFloat(dst + S_FREQUENCY, buffer.getFloat(src + S_FREQUENCY));
+        buffer.putInt(dst + S_ACCESS, buffer.getInt(src + S_ACCESS));
+        buffer.putInt(dst + S_CREATION, buffer.getInt(src + S_CREATION));
+        buffer.putFloat(dst + S_COST, buffer.getFloat(src + S_COST));
+        buffer.putFloat(dst + S_RENDER, buffer.getFloat(src + S_RENDER));
+        buffer.putLong(dst + S_KEY, buffer.getLong(src + S_KEY));
+    }
+
+    /**
+     * Adds all the pages of this table to {@code target}, keeping the first copy of a page
+     * appearing more than once
+     */
+    void copyTo(PageTable target) {
+        for (int slot = 0; slot < capacity; slot++) {
+            long key = key(slot);
+            if (key != 0 && target.find(key) == -1) {
+                int dst = target.findOrInsert(key);
+                target.setHits(dst, getHits(slot));
+                target.setFillFactor(dst, getFillFactor(slot));
+                target.setFrequencyOfUse(dst, getFrequencyOfUse(slot));
+                target.setLastAccessMinutes(dst, getLastAccessMinutes(slot));
+                target.setCreationMinutes(dst, getCreationMinutes(slot));
+                target.setCostPriority(dst, getCostPriority(slot));
+                target.setRenderTime(dst, getRenderTime(slot));
+            }
+        }
+    }
+
+    /** @return the key of the page in the given slot, zero if the slot is empty */
+    long key(int slot) {
+        return buffer.getLong(offset(slot) + S_KEY);
+    }
+
+    long getHits(int slot) {
+        return buffer.getLong(offset(slot) + S_HITS);
+    }
+
+    void setHits(int slot, long hits) {
+        buffer.putLong(offset(slot) + S_HITS, hits);
+    }
+
+    float getFillFactor(int slot) {
+        return buffer.getFloat(offset(slot) + S_FILL);
+    }
+
+    void setFillFactor(int slot, float fillFactor) {
+        buffer.putFloat(offset(slot) + S_FILL, fillFactor);
+    }
+
+    float getFrequencyOfUse(int slot) {
+        return buffer.getFloat(offset(slot) + S_FREQUENCY);
+    }
+
+    void setFrequencyOfUse(int slot, float frequencyOfUse) {
+        buffer.putFloat(offset(slot) + S_FREQUENCY, frequencyOfUse);
+    }
+
+    int getLastAccessMinutes(int slot) {
+        return buffer.getInt(offset(slot) + S_ACCESS);
+    }
+
+    void setLastAccessMinutes(int slot, int minutes) {
+        buffer.putInt(offset(slot) + S_ACCESS, minutes);
+    }
+
+    int getCreationMinutes(int slot) {
+        return buffer.getInt(offset(slot) + S_CREATION);
+    }
+
+    void setCreationMinutes(int slot, int minutes) {
+        buffer.putInt(offset(slot) + S_CREATION, minutes);
+    }
+
+    float getCostPriority(int slot) {
+        return buffer.getFloat(offset(slot) + S_COST);
+    }
+
+    void setCostPriority(int slot, float costPriority) {
+        buffer.putFloat(offset(slot) + S_COST, costPriority);
+    }
+
+    float getRenderTime(int slot) {
+        return buffer.getFloat(offset(slot) + S_RENDER);
+    }
+
+    void setRenderTime(int slot, float renderTime) {
+        buffer.putFloat(offset(slot) + S_RENDER, renderTime);
+    }
+
+    /** Flushes the modified slots to disk */
+    void force() {
+        buffer.force();
+    }
+
+    /** Marks the table as clean and releases the file */
+    @Override
+    public void close() throws IOException {
+        buffer.force();
+        buffer.putInt(H_CLEAN, 1);
+        buffer.force();
+        channel.close();
+    }
+
+    /** Releases the file without marking the table as clean, used for discarded tables */
+    void discard() throws IOException {
+        channel.close();
+    }
+}
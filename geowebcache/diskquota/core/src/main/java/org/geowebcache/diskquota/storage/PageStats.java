@@ -29,7 +29,6 @@ public class PageStats implements Serializable {
 
     private static final long serialVersionUID = 719776699585233200L;
 
-    @SuppressWarnings("PMD.UnusedPrivateField")
     private long id;
 
     private long pageId;
@@ -48,6 +47,17 @@ public class PageStats implements Serializable {
 
     private BigInteger numHits;
 
+    /**
+     * Priority of this page for the {@link org.geowebcache.diskquota.ExpirationPolicy#COST cost
+     * aware} expiration policy, see {@link #updateCostPriority(float, BigInteger)}
+     */
+    private float costPriority;
+
+    /**
+     * Average time in milliseconds the backend took to render a tile of this page, zero if unknown
+     */
+    private float renderTime;
+
     PageStats() {
         //
     }
@@ -110,6 +120,32 @@ public class PageStats implements Serializable {
         }
     }
 
+    /**
+     * Adds the time the backend took to render some tiles of this page to its average render time,
+     * to be called before the tiles are {@link #addTiles added}
+     *
+     * @param renderTime the total render time of the tiles, in milliseconds
+     * @param renderedTiles the number of tiles rendered
+     * @param maxTiles the maximum number of tiles of the page
+     */
+    public void addRenderTime(long renderTime, int renderedTiles, BigInteger maxTiles) {
+        if (renderedTiles <= 0 || renderTime <= 0) {
+            return;
+        }
+        // tiles stored before render times were measured don't count towards the average
+        double tiles = this.renderTime > 0f ? fillFactor * maxTiles.doubleValue() : 0d;
+        double total = this.renderTime * tiles + renderTime;
+        this.renderTime = (float) (total / (tiles + renderedTiles));
+    }
+
+    public float getRenderTime() {
+        return renderTime;
+    }
+
+    public void setRenderTime(float renderTime) {
+        this.renderTime = renderTime;
+    }
+
     public float getFillFactor() {
         return fillFactor;
     }
@@ -126,6 +162,11 @@ public class PageStats implements Serializable {
         this.lastAccessTimeMinutes = lastAccessMinutes;
     }
 
+    /** @return the identifier assigned by the quota store, if any */
+    public long getId() {
+        return id;
+    }
+
     public long getPageId() {
         return pageId;
     }
@@ -154,6 +195,34 @@ public class PageStats implements Serializable {
         return sb.toString();
     }
 
+    public float getCostPriority() {
+        return costPriority;
+    }
+
+    public void setCostPriority(float costPriority) {
+        this.costPriority = costPriority;
+    }
+
+    /**
+     * Updates the cost priority following the GreedyDual-Size-Frequency algorithm, to be called
+     * after the frequency of use or the fill factor change.
+     *
+     * <p>The priority is the frequency of use times the cost of rendering a tile again on a miss,
+     * divided by the size of the page, the number of tiles it holds, which is the space freed by
+     * expiring it. The cost is the measured {@link #getRenderTime() average render time} of the
+     * tiles of the page, pages whose render time is unknown have no cost and are expired first, in
+     * least recently used order. The inflation value kept by the quota store, the priority of the
+     * last page expired, is added to make the pages not used for a while fall behind the recently
+     * used ones, no matter how expensive they were.
+     *
+     * @param inflation the current inflation value
+     * @param tilesPerPage the maximum number of tiles of the page
+     */
+    public void updateCostPriority(final float inflation, final BigInteger tilesPerPage) {
+        double size = Math.max(1d, fillFactor * tilesPerPage.doubleValue());
+        this.costPriority = (float) (inflation + frequencyOfUse * renderTime / size);
+    }
+
     public void setNumHits(BigInteger numHits) {
         this.numHits = numHits;
     }
@@ -29,6 +29,10 @@ public class PageStatsPayload {
 
     private int numHits;
 
+    private int numRendered;
+
+    private long renderTime;
+
     private final TilePage page;
 
     private TileSet tileSet;
@@ -72,6 +76,22 @@ public class PageStatsPayload {
         this.numHits = numHits;
     }
 
+    /** @return the number of tiles of the page rendered by the backend, with a known time */
+    public int getNumRendered() {
+        return numRendered;
+    }
+
+    /** @return the total time in milliseconds the backend took to render them */
+    public long getRenderTime() {
+        return renderTime;
+    }
+
+    /** Adds the time the backend took to render some tiles of the page */
+    public void addRenderTime(int numRendered, long renderTime) {
+        this.numRendered += numRendered;
+        this.renderTime += renderTime;
+    }
+
     public TileSet getTileSet() {
         return tileSet;
     }
@@ -88,6 +108,10 @@ public class PageStatsPayload {
                 + lastAccessTime
                 + ", numHits="
                 + numHits
+                + ", numRendered="
+                + numRendered
+                + ", renderTime="
+                + renderTime
                 + ", page="
                 + page
                 + ", tileSet="
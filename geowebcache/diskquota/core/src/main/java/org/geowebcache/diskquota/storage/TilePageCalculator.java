@@ -73,6 +73,20 @@ public class TilePageCalculator {
         return pageIndexTarget;
     }
 
+    /** Computes the page index of tiles, see {@link TilePageCalculator#getPageIndexer(TileSet)} */
+    public static interface PageIndexer {
+        int[] pageIndexForTile(long x, long y, int z, int[] pageIndexTarget);
+    }
+
+    /**
+     * Returns a {@link PageIndexer} for the tiles of the given tile set, which unlike {@link
+     * #pageIndexForTile(TileSet, long[], int[])} sets up the tile set pages only once, to compute
+     * the pages of many tiles of the same tile set.
+     */
+    public PageIndexer getPageIndexer(final TileSet tileSet) {
+        return getPagePyramid(tileSet)::pageIndexForTile;
+    }
+
     private PagePyramid getPagePyramid(TileSet tileSet) {
         PagePyramid pagePyramid = newPagePyramid(tileSet);
         return pagePyramid;
@@ -0,0 +1,100 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.diskquota;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import org.geowebcache.diskquota.CacheScanCheckpoint.DirectoryRecord;
+import org.geowebcache.diskquota.CacheScanCheckpoint.PageRecord;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CacheScanCheckpointTest {
+
+    @Rule public TemporaryFolder temp = new TemporaryFolder();
+
+    private PageRecord page(String format, int x, int y, int tiles, long bytes) {
+        PageRecord page = new PageRecord(format, x, y);
+        page.tiles = tiles;
+        page.bytes = bytes;
+        return page;
+    }
+
+    @Test
+    public void testResume() throws Exception {
+        File file = new File(temp.getRoot(), "layer/EPSG_4326_05.checkpoint");
+
+        try (CacheScanCheckpoint checkpoint = CacheScanCheckpoint.open(file)) {
+            assertTrue(checkpoint.getRecords().isEmpty());
+            assertFalse(checkpoint.isComplete());
+            checkpoint.record(new DirectoryRecord("", true, Collections.emptyList()));
+            checkpoint.record(
+                    new DirectoryRecord(
+                            "00_01",
+                            false,
+                            Arrays.asList(
+                                    page("image/png", 0, 1, 3, 300),
+                                    page("image/jpeg", 0, 1, 1, 50))));
+        }
+        // torn line from a crash, with a valid looking but truncated size
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write("01_01\tfalse\timage/png,1,1,2,2".getBytes("UTF-8"));
+        }
+
+        try (CacheScanCheckpoint checkpoint = CacheScanCheckpoint.open(file)) {
+            assertFalse(checkpoint.isComplete());
+            assertEquals(2, checkpoint.getRecords().size());
+            assertTrue(checkpoint.get("").hasSubdirectories);
+            assertNull(checkpoint.get("01_01"));
+            DirectoryRecord record = checkpoint.get("00_01");
+            assertFalse(record.hasSubdirectories);
+            assertEquals(2, record.pages.size());
+            assertEquals("image/png", record.pages.get(0).blobFormat);
+            assertEquals(3, record.pages.get(0).tiles);
+            assertEquals(300, record.pages.get(0).bytes);
+            assertEquals(1, record.pages.get(1).pageY);
+
+            checkpoint.record(
+                    new DirectoryRecord(
+                            "01_01", false, Arrays.asList(page("image/png", 1, 1, 2, 200))));
+            checkpoint.complete();
+        }
+
+        try (CacheScanCheckpoint checkpoint = CacheScanCheckpoint.open(file)) {
+            assertTrue(checkpoint.isComplete());
+            assertEquals(3, checkpoint.getRecords().size());
+            assertEquals(200, checkpoint.get("01_01").pages.get(0).bytes);
+        }
+    }
+
+    @Test
+    public void testNone() throws Exception {
+        try (CacheScanCheckpoint checkpoint = CacheScanCheckpoint.none()) {
+            checkpoint.record(new DirectoryRecord("", false, Collections.emptyList()));
+            checkpoint.complete();
+            assertTrue(checkpoint.getRecords().isEmpty());
+            assertNull(checkpoint.get(""));
+            assertFalse(checkpoint.isComplete());
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.diskquota;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import org.easymock.Capture;
+import org.easymock.CaptureType;
+import org.easymock.EasyMock;
+import org.geowebcache.diskquota.storage.PageStatsPayload;
+import org.geowebcache.diskquota.storage.Quota;
+import org.geowebcache.diskquota.storage.TilePageCalculator;
+import org.geowebcache.diskquota.storage.TileSet;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class InMemoryQuotaAccountingTest {
+
+    @Rule public TemporaryFolder temp = new TemporaryFolder();
+
+    private File logFile;
+
+    private QuotaStore store;
+
+    private Capture<TileSet> tileSets;
+
+    private Capture<Quota> quotas;
+
+    private Capture<Collection<PageStatsPayload>> pages;
+
+    /** Used quota saved to the store, by tile set id */
+    private Map<String, BigInteger> usedQuota;
+
+    /** The store call that kills the process, if any */
+    private int crashOnCall = -1;
+
+    @SuppressWarnings("serial")
+    private static class SimulatedCrash extends Error {}
+
+    @Before
+    public void setUp() throws Exception {
+        logFile = new File(temp.getRoot(), "diskquota_deltas.log");
+        // two by two tiles per page
+        TilePageCalculator tpc =
+                new TilePageCalculator(null, null) {
+                    @Override
+                    public int[] pageIndexForTile(
+                            TileSet tileSet, long[] tileIndex, int[] pageIndexTarget) {
+                        pageIndexTarget[0] = (int) tileIndex[0] / 2;
+                        pageIndexTarget[1] = (int) tileIndex[1] / 2;
+                        pageIndexTarget[2] = (int) tileIndex[2];
+                        return pageIndexTarget;
+                    }
+                };
+        tileSets = new Capture<>(CaptureType.ALL);
+        quotas = new Capture<>(CaptureType.ALL);
+        pages = new Capture<>(CaptureType.ALL);
+        usedQuota = new HashMap<>();
+        store = EasyMock.createMock(QuotaStore.class);
+        EasyMock.expect(store.getTilePageCalculator()).andStubReturn(tpc);
+        store.addToQuotaAndTileCounts(
+                EasyMock.capture(tileSets), EasyMock.capture(quotas), EasyMock.capture(pages));
+        EasyMock.expectLastCall()
+                .andAnswer(
+                        () -> {
+                            if (tileSets.getValues().size() == crashOnCall) {
+                                throw new SimulatedCrash();
+                            }
+                            usedQuota.merge(
+                                    tileSets.getValue().getId(),
+                                    quotas.getValue().getBytes(),
+                                    BigInteger::add);
+                            return null;
+                        })
+                .anyTimes();
+        EasyMock.expect(store.getUsedQuotaByTileSetId(EasyMock.anyObject(String.class)))
+                .andStubAnswer(
+                        () -> {
+                            String id = (String) EasyMock.getCurrentArguments()[0];
+                            return new Quota(usedQuota.getOrDefault(id, BigInteger.ZERO));
+                        });
+        EasyMock.replay(store);
+    }
+
+    private InMemoryQuotaAccounting newAccounting() {
+        return new InMemoryQuotaAccounting(store, new QuotaDeltaLog(logFile), 1000, 30000);
+    }
+
+    private Map<String, Integer> tileCounts(Collection<PageStatsPayload> payloads) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (PageStatsPayload payload : payloads) {
+            counts.put(payload.getPage().getKey(), payload.getNumTiles());
+        }
+        return counts;
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        InMemoryQuotaAccounting accounting = newAccounting();
+        accounting.tileStored("layer", "EPSG:4326", "image/png", null, 0, 0, 1, 100);
+        accounting.tileStored("layer", "EPSG:4326", "image/png", null, 1, 1, 1, 50);
+        accounting.tileStored("layer", "EPSG:4326", "image/png", null, 2, 0, 1, 10);
+        accounting.tileDeleted("layer", "EPSG:4326", "image/png", null, 0, 0, 1, 100);
+        accounting.tileUpdated("layer", "EPSG:4326", "image/png", null, 1, 1, 1, 70, 50);
+
+        accounting.writeLog();
+        assertTrue(logFile.exists());
+        assertFalse(tileSets.hasCaptured());
+
+        accounting.snapshot();
+        assertEquals(1, tileSets.getValues().size());
+        TileSet tileSet = tileSets.getValue();
+        assertEquals(new TileSet("layer", "EPSG:4326", "image/png", null), tileSet);
+        assertEquals(BigInteger.valueOf(80), quotas.getValue().getBytes());
+        Map<String, Integer> counts = tileCounts(pages.getValue());
+        assertEquals(2, counts.size());
+        assertEquals(Integer.valueOf(1), counts.get(tileSet.getId() + "@0,0,1"));
+        assertEquals(Integer.valueOf(1), counts.get(tileSet.getId() + "@1,0,1"));
+        assertFalse(logFile.exists());
+
+        // nothing new, nothing to save
+        accounting.snapshot();
+        assertEquals(1, tileSets.getValues().size());
+
+        accounting.tileDeleted("layer", "EPSG:4326", "image/png", null, 2, 0, 1, 10);
+        accounting.snapshot();
+        assertEquals(2, tileSets.getValues().size());
+        assertEquals(BigInteger.valueOf(-10), quotas.getValue().getBytes());
+        counts = tileCounts(pages.getValue());
+        assertEquals(1, counts.size());
+        assertEquals(Integer.valueOf(-1), counts.get(tileSet.getId() + "@1,0,1"));
+    }
+
+    @Test
+    public void testRecover() throws Exception {
+        InMemoryQuotaAccounting accounting = newAccounting();
+        accounting.tileStored("layer", "EPSG:4326", "image/png", "abc", 0, 0, 1, 100);
+        accounting.writeLog();
+        accounting.tileStored("layer", "EPSG:4326", "image/png", "abc", 1, 0, 1, 50);
+        accounting.writeLog();
+        // not logged, lost on crash
+        accounting.tileStored("layer", "EPSG:4326", "image/png", "abc", 1, 1, 1, 25);
+
+        // torn record at the end of the log
+        try (FileOutputStream out = new FileOutputStream(logFile, true)) {
+            out.write(new byte[] {0, 0, 1, 0, 42});
+        }
+
+        newAccounting().recover();
+        assertEquals(1, tileSets.getValues().size());
+        TileSet tileSet = tileSets.getValue();
+        assertEquals("abc", tileSet.getParametersId());
+        assertEquals(BigInteger.valueOf(150), quotas.getValue().getBytes());
+        Map<String, Integer> counts = tileCounts(pages.getValue());
+        assertEquals(1, counts.size());
+        assertEquals(Integer.valueOf(2), counts.get(tileSet.getId() + "@0,0,1"));
+        assertFalse(logFile.exists());
+    }
+
+    @Test
+    public void testSavedCountersAreDropped() throws Exception {
+        InMemoryQuotaAccounting accounting = newAccounting();
+        accounting.tileStored("layer", "EPSG:4326", "image/png", null, 0, 0, 1, 100);
+        accounting.tileStored("layer", "EPSG:4326", "image/png", null, 5, 5, 1, 10);
+        assertEquals(2, accounting.getTrackedPageCount());
+
+        accounting.snapshot();
+        assertEquals(0, accounting.getTrackedPageCount());
+
+        accounting.tileDeleted("layer", "EPSG:4326", "image/png", null, 0, 0, 1, 100);
+        assertEquals(1, accounting.getTrackedPageCount());
+        accounting.snapshot();
+        assertEquals(0, accounting.getTrackedPageCount());
+
+        TileSet tileSet = new TileSet("layer", "EPSG:4326", "image/png", null);
+        assertEquals(BigInteger.valueOf(10), usedQuota.get(tileSet.getId()));
+    }
+
+    @Test
+    public void testRecoverInterruptedFlush() throws Exception {
+        TileSet tileSet1 = new TileSet("layer1", "EPSG:4326", "image/png", null);
+        TileSet tileSet2 = new TileSet("layer2", "EPSG:4326", "image/png", null);
+        InMemoryQuotaAccounting accounting = newAccounting();
+        accounting.tileStored("layer1", "EPSG:4326", "image/png", null, 0, 0, 1, 100);
+        accounting.writeLog();
+        accounting.tileStored("layer2", "EPSG:4326", "image/png", null, 0, 0, 1, 50);
+
+        // the process dies after saving the first tile set
+        crashOnCall = 2;
+        try {
+            accounting.snapshot();
+            fail("Expected the flush to be interrupted");
+        } catch (SimulatedCrash e) {
+            // expected
+        }
+        assertEquals(1, usedQuota.size());
+        assertTrue(logFile.exists());
+
+        // the tile set saved before dying is not saved again
+        crashOnCall = -1;
+        newAccounting().recover();
+        assertEquals(3, tileSets.getValues().size());
+        assertEquals(BigInteger.valueOf(100), usedQuota.get(tileSet1.getId()));
+        assertEquals(BigInteger.valueOf(50), usedQuota.get(tileSet2.getId()));
+        assertFalse(logFile.exists());
+    }
+}
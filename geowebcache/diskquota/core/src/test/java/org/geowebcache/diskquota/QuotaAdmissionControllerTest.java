@@ -0,0 +1,160 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.diskquota;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import org.easymock.EasyMock;
+import org.geowebcache.diskquota.storage.LayerQuota;
+import org.geowebcache.diskquota.storage.Quota;
+import org.geowebcache.diskquota.storage.TilePageCalculator;
+import org.geowebcache.io.ByteArrayResource;
+import org.geowebcache.storage.PutAdmissionController.Admission;
+import org.geowebcache.storage.TileObject;
+import org.junit.Before;
+import org.junit.Test;
+
+public class QuotaAdmissionControllerTest {
+
+    private QuotaStore store;
+
+    private DiskQuotaConfig config;
+
+    @Before
+    public void setUp() throws Exception {
+        TilePageCalculator tpc =
+                new TilePageCalculator(null, null) {
+                    @Override
+                    public Set<String> getLayerNames() {
+                        return new HashSet<>(Arrays.asList("layer1", "layer2"));
+                    }
+                };
+        store = EasyMock.createMock(QuotaStore.class);
+        EasyMock.expect(store.getTilePageCalculator()).andStubReturn(tpc);
+        EasyMock.expect(store.getUsedQuotaByLayerName("layer1"))
+                .andStubReturn(new Quota(BigInteger.valueOf(900)));
+        EasyMock.expect(store.getUsedQuotaByLayerName("layer2"))
+                .andStubReturn(new Quota(BigInteger.valueOf(600)));
+        EasyMock.replay(store);
+
+        config = new DiskQuotaConfig();
+        config.setGlobalQuota(new Quota(BigInteger.valueOf(1000)));
+        Quota layerQuota = new Quota(BigInteger.valueOf(1000));
+        config.addLayerQuota(new LayerQuota("layer1", ExpirationPolicy.LRU, layerQuota));
+    }
+
+    private TileObject tile(String layerName, int size) {
+        return TileObject.createCompleteTileObject(
+                layerName,
+                new long[] {0, 0, 0},
+                "EPSG:4326",
+                "image/png",
+                null,
+                new ByteArrayResource(new byte[size]));
+    }
+
+    @Test
+    public void testWriteRate() throws Exception {
+        QuotaAdmissionController controller =
+                new QuotaAdmissionController(store, config, 100, 0, false);
+        controller.refresh();
+        // the first tile empties the bucket for several seconds
+        assertEquals(Admission.STORE, controller.admit(tile("layer1", 1000)));
+        assertEquals(Admission.TRANSIENT, controller.admit(tile("layer1", 1000)));
+        // other layers have their own bucket
+        assertEquals(Admission.STORE, controller.admit(tile("layer2", 1000)));
+    }
+
+    @Test
+    public void testGlobalWriteRate() throws Exception {
+        QuotaAdmissionController controller =
+                new QuotaAdmissionController(store, config, 0, 100, false);
+        controller.refresh();
+        assertEquals(Admission.STORE, controller.admit(tile("layer1", 1000)));
+        assertEquals(Admission.TRANSIENT, controller.admit(tile("layer2", 1000)));
+    }
+
+    @Test
+    public void testRefund() throws Exception {
+        QuotaAdmissionController.TokenBucket bucket = new QuotaAdmissionController.TokenBucket(100);
+        assertTrue(bucket.tryConsume(100));
+        assertFalse(bucket.tryConsume(1));
+        // a tile refused by the global bucket gives back what its layer bucket took
+        bucket.refund(100);
+        assertTrue(bucket.tryConsume(1));
+    }
+
+    @Test
+    public void testLayerQuota() throws Exception {
+        QuotaAdmissionController controller =
+                new QuotaAdmissionController(store, config, 0, 0, true);
+        controller.refresh();
+        assertEquals(Admission.STORE, controller.admit(tile("layer1", 100)));
+
+        controller.tileStored("layer1", "EPSG:4326", "png", null, 0, 0, 0, 100);
+        assertEquals(Admission.TRANSIENT, controller.admit(tile("layer1", 100)));
+
+        controller.tileDeleted("layer1", "EPSG:4326", "png", null, 0, 0, 0, 50);
+        assertEquals(Admission.STORE, controller.admit(tile("layer1", 100)));
+    }
+
+    @Test
+    public void testRefresh() throws Exception {
+        // the used bytes are only read once from the store
+        QuotaStore store = EasyMock.createMock(QuotaStore.class);
+        EasyMock.expect(store.getTilePageCalculator())
+                .andStubReturn(this.store.getTilePageCalculator());
+        EasyMock.expect(store.getUsedQuotaByLayerName("layer1"))
+                .andReturn(new Quota(BigInteger.valueOf(900)))
+                .times(2);
+        EasyMock.expect(store.getUsedQuotaByLayerName("layer2"))
+                .andReturn(new Quota(BigInteger.valueOf(600)))
+                .once();
+        EasyMock.replay(store);
+        QuotaAdmissionController controller =
+                new QuotaAdmissionController(store, config, 0, 0, true);
+        controller.refresh();
+
+        // the store has not persisted the tile yet, it still counts
+        controller.tileStored("layer1", "EPSG:4326", "png", null, 0, 0, 0, 100);
+        controller.refresh();
+        assertEquals(Admission.TRANSIENT, controller.admit(tile("layer1", 100)));
+
+        // no tile events for bulk deletions, the usage is read again
+        controller.gridSubsetDeleted("layer1", "EPSG:4326");
+        controller.refresh();
+        assertEquals(Admission.STORE, controller.admit(tile("layer1", 100)));
+        EasyMock.verify(store);
+    }
+
+    @Test
+    public void testGlobalQuota() throws Exception {
+        QuotaAdmissionController controller =
+                new QuotaAdmissionController(store, config, 0, 0, true);
+        controller.refresh();
+        // layer1 has its own quota, so only layer2 counts against the global one
+        assertEquals(Admission.STORE, controller.admit(tile("layer2", 100)));
+
+        controller.tileUpdated("layer2", "EPSG:4326", "png", null, 0, 0, 0, 500, 100);
+        assertEquals(Admission.TRANSIENT, controller.admit(tile("layer2", 100)));
+        assertEquals(Admission.STORE, controller.admit(tile("layer1", 100)));
+    }
+}
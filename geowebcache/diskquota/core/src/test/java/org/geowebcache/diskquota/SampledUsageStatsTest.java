@@ -0,0 +1,99 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.diskquota;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.easymock.EasyMock;
+import org.geowebcache.diskquota.storage.PageStatsPayload;
+import org.geowebcache.diskquota.storage.TilePageCalculator;
+import org.geowebcache.diskquota.storage.TileSet;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SampledUsageStatsTest {
+
+    private QuotaStore store;
+
+    private TileSet tileSet = new TileSet("layer", "EPSG:4326", "image/png", null);
+
+    @Before
+    public void setUp() {
+        // one tile per page
+        TilePageCalculator tpc =
+                new TilePageCalculator(null, null) {
+                    @Override
+                    public int[] pageIndexForTile(
+                            TileSet tileSet, long[] tileIndex, int[] pageIndexTarget) {
+                        pageIndexTarget[0] = (int) tileIndex[0];
+                        pageIndexTarget[1] = (int) tileIndex[1];
+                        pageIndexTarget[2] = (int) tileIndex[2];
+                        return pageIndexTarget;
+                    }
+                };
+        store = EasyMock.createNiceMock(QuotaStore.class);
+        EasyMock.expect(store.getTilePageCalculator()).andStubReturn(tpc);
+        EasyMock.replay(store);
+    }
+
+    private void hit(SampledUsageStats stats, long x, int times) {
+        for (int i = 0; i < times; i++) {
+            stats.hit(tileSet, new long[] {x, 0, 5});
+        }
+    }
+
+    private Map<Integer, Integer> hitsByPageX(List<PageStatsPayload> pages) {
+        Map<Integer, Integer> hits = new HashMap<>();
+        for (PageStatsPayload page : pages) {
+            hits.put(page.getPage().getPageX(), page.getNumHits());
+        }
+        return hits;
+    }
+
+    @Test
+    public void testFlushTopK() {
+        SampledUsageStats stats = new SampledUsageStats(store, 1, 2, 1000);
+        hit(stats, 0, 5);
+        hit(stats, 1, 3);
+        hit(stats, 2, 1);
+
+        Map<Integer, Integer> hits = hitsByPageX(stats.flush());
+        assertEquals(2, hits.size());
+        assertEquals(Integer.valueOf(5), hits.get(0));
+        assertEquals(Integer.valueOf(3), hits.get(1));
+
+        // the page left out is carried over to the next flush
+        hit(stats, 3, 2);
+        hit(stats, 2, 1);
+        hits = hitsByPageX(stats.flush());
+        assertEquals(2, hits.size());
+        assertEquals(Integer.valueOf(2), hits.get(2));
+        assertEquals(Integer.valueOf(2), hits.get(3));
+
+        assertTrue(stats.flush().isEmpty());
+    }
+
+    @Test
+    public void testSampledHitsAreScaled() {
+        SampledUsageStats stats = new SampledUsageStats(store, 0.25, 10, 1000);
+        hit(stats, 0, 4);
+        Map<Integer, Integer> hits = hitsByPageX(stats.flush());
+        assertEquals(Integer.valueOf(16), hits.get(0));
+    }
+}
@@ -0,0 +1,274 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.diskquota.mmap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.easymock.EasyMock;
+import org.geowebcache.diskquota.DiskQuotaMonitor;
+import org.geowebcache.diskquota.ExpirationPolicy;
+import org.geowebcache.diskquota.storage.PageStats;
+import org.geowebcache.diskquota.storage.PageStatsPayload;
+import org.geowebcache.diskquota.storage.Quota;
+import org.geowebcache.diskquota.storage.TilePage;
+import org.geowebcache.diskquota.storage.TilePageCalculator;
+import org.geowebcache.diskquota.storage.TileSet;
+import org.geowebcache.storage.DefaultStorageFinder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MappedQuotaStoreTest {
+
+    @Rule public TemporaryFolder temp = new TemporaryFolder();
+
+    private DefaultStorageFinder cacheDirFinder;
+
+    private TilePageCalculator tilePageCalculator;
+
+    private Set<String> layerNames;
+
+    private TileSet png;
+
+    private TileSet jpeg;
+
+    private MappedQuotaStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        cacheDirFinder = EasyMock.createMock(DefaultStorageFinder.class);
+        EasyMock.expect(cacheDirFinder.getDefaultPath())
+                .andReturn(temp.getRoot().getAbsolutePath())
+                .anyTimes();
+        EasyMock.expect(cacheDirFinder.findEnvVar(DiskQuotaMonitor.GWC_DISKQUOTA_DISABLED))
+                .andReturn(null)
+                .anyTimes();
+        EasyMock.replay(cacheDirFinder);
+
+        layerNames = new HashSet<>(Arrays.asList("layer1", "layer2"));
+        png = new TileSet("layer1", "EPSG:4326", "image/png", null);
+        jpeg = new TileSet("layer2", "EPSG:4326", "image/jpeg", null);
+        // ten tiles per page
+        tilePageCalculator =
+                new TilePageCalculator(null, null) {
+                    @Override
+                    public Set<String> getLayerNames() {
+                        return layerNames;
+                    }
+
+                    @Override
+                    public Set<TileSet> getTileSetsFor(String layerName) {
+                        if ("layer1".equals(layerName)) {
+                            return Collections.singleton(png);
+                        } else if ("layer2".equals(layerName)) {
+                            return Collections.singleton(jpeg);
+                        }
+                        return Collections.emptySet();
+                    }
+
+                    @Override
+                    public BigInteger getTilesPerPage(TileSet tileSet, int zoomLevel) {
+                        return BigInteger.TEN;
+                    }
+                };
+        store = newStore();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        store.close();
+    }
+
+    private MappedQuotaStore newStore() throws Exception {
+        MappedQuotaStore store = new MappedQuotaStore(cacheDirFinder, tilePageCalculator);
+        store.startUp();
+        return store;
+    }
+
+    private PageStatsPayload tiles(TileSet tileSet, int x, int y, int z, int numTiles) {
+        PageStatsPayload payload = new PageStatsPayload(new TilePage(tileSet.getId(), x, y, z, 0));
+        payload.setNumTiles(numTiles);
+        return payload;
+    }
+
+    private PageStatsPayload tiles(
+            TileSet tileSet, int x, int y, int z, int numTiles, long renderTime) {
+        PageStatsPayload payload = tiles(tileSet, x, y, z, numTiles);
+        payload.addRenderTime(numTiles, renderTime);
+        return payload;
+    }
+
+    private PageStatsPayload hits(TileSet tileSet, int x, int y, int z, long minutes) {
+        PageStatsPayload payload = new PageStatsPayload(new TilePage(tileSet.getId(), x, y, z, 0));
+        payload.setNumHits(1);
+        payload.setLastAccessTime(minutes * 60 * 1000);
+        return payload;
+    }
+
+    private void addPages() throws Exception {
+        store.addToQuotaAndTileCounts(
+                png,
+                new Quota(BigInteger.valueOf(1000)),
+                Arrays.asList(tiles(png, 0, 0, 1, 5), tiles(png, 1, 0, 1, 5)));
+        store.addToQuotaAndTileCounts(
+                jpeg, new Quota(BigInteger.valueOf(500)), Arrays.asList(tiles(jpeg, 0, 0, 1, 10)));
+        store.addHitsAndSetAccesTime(
+                        Arrays.asList(
+                                hits(png, 0, 0, 1, 30),
+                                hits(png, 1, 0, 1, 10),
+                                hits(jpeg, 0, 0, 1, 20)))
+                .get();
+    }
+
+    private List<String> keys(List<TilePage> pages) {
+        List<String> keys = new ArrayList<>();
+        for (TilePage page : pages) {
+            keys.add(page.getKey());
+        }
+        return keys;
+    }
+
+    @Test
+    public void testInitialTileSets() throws Exception {
+        assertEquals(new HashSet<>(Arrays.asList(png, jpeg)), store.getTileSets());
+        assertEquals(BigInteger.ZERO, store.getGloballyUsedQuota().getBytes());
+    }
+
+    @Test
+    public void testQuotaAndExpiration() throws Exception {
+        addPages();
+        assertEquals(BigInteger.valueOf(1500), store.getGloballyUsedQuota().getBytes());
+        assertEquals(BigInteger.valueOf(1000), store.getUsedQuotaByLayerName("layer1").getBytes());
+        assertEquals(
+                BigInteger.valueOf(500), store.getUsedQuotaByTileSetId(jpeg.getId()).getBytes());
+
+        List<TilePage> lru =
+                store.getPagesToExpire(layerNames, ExpirationPolicy.LRU, null, Integer.MAX_VALUE);
+        assertEquals(
+                Arrays.asList(
+                        png.getId() + "@1,0,1", jpeg.getId() + "@0,0,1", png.getId() + "@0,0,1"),
+                keys(lru));
+
+        // page through, and filter by layer
+        List<TilePage> next =
+                store.getPagesToExpire(layerNames, ExpirationPolicy.LRU, lru.get(0), 1);
+        assertEquals(Collections.singletonList(jpeg.getId() + "@0,0,1"), keys(next));
+        TilePage layer1 = store.getLeastRecentlyUsedPage(Collections.singleton("layer1"));
+        assertEquals(png.getId() + "@1,0,1", layer1.getKey());
+
+        // truncated pages are not candidates anymore
+        PageStats stats = store.setTruncated(layer1);
+        assertEquals(0f, stats.getFillFactor(), 0f);
+        assertEquals(
+                png.getId() + "@0,0,1",
+                store.getLeastRecentlyUsedPage(Collections.singleton("layer1")).getKey());
+    }
+
+    @Test
+    public void testCostExpiration() throws Exception {
+        store.addToQuotaAndTileCounts(
+                png,
+                new Quota(BigInteger.valueOf(1000)),
+                Arrays.asList(tiles(png, 0, 0, 1, 10, 100000), tiles(png, 0, 0, 8, 10, 10)));
+        // the zoom 8 page is used more, but it's cheaper to render again
+        store.addHitsAndSetAccesTime(
+                        Arrays.asList(
+                                hits(png, 0, 0, 1, 0),
+                                hits(png, 0, 0, 8, 0),
+                                hits(png, 0, 0, 8, 0),
+                                hits(png, 0, 0, 8, 0)))
+                .get();
+        Set<String> layer1 = Collections.singleton("layer1");
+        assertEquals(png.getId() + "@0,0,1", store.getLeastFrequentlyUsedPage(layer1).getKey());
+        List<TilePage> cost =
+                store.getPagesToExpire(layer1, ExpirationPolicy.COST, null, Integer.MAX_VALUE);
+        assertEquals(Arrays.asList(png.getId() + "@0,0,8", png.getId() + "@0,0,1"), keys(cost));
+
+        // truncating inflates the priority of the pages used afterwards
+        store.setTruncated(cost.get(0));
+        store.addToQuotaAndTileCounts(
+                jpeg,
+                new Quota(BigInteger.valueOf(500)),
+                Arrays.asList(tiles(jpeg, 0, 0, 1, 10, 100000)));
+        store.addHitsAndSetAccesTime(Arrays.asList(hits(jpeg, 0, 0, 1, 0))).get();
+        cost = store.getPagesToExpire(layerNames, ExpirationPolicy.COST, null, Integer.MAX_VALUE);
+        assertEquals(Arrays.asList(png.getId() + "@0,0,1", jpeg.getId() + "@0,0,1"), keys(cost));
+
+        store.close();
+        store = newStore();
+        cost = store.getPagesToExpire(layerNames, ExpirationPolicy.COST, null, Integer.MAX_VALUE);
+        assertEquals(Arrays.asList(png.getId() + "@0,0,1", jpeg.getId() + "@0,0,1"), keys(cost));
+    }
+
+    @Test
+    public void testDeleteAndRename() throws Exception {
+        addPages();
+        store.renameLayer("layer1", "renamed");
+        assertEquals(BigInteger.valueOf(1000), store.getUsedQuotaByLayerName("renamed").getBytes());
+        assertEquals(BigInteger.ZERO, store.getUsedQuotaByLayerName("layer1").getBytes());
+        TilePage page = store.getLeastFrequentlyUsedPage(Collections.singleton("renamed"));
+        assertTrue(page.getTileSetId().startsWith("renamed#"));
+
+        store.deleteLayer("renamed");
+        assertNull(store.getLeastFrequentlyUsedPage(Collections.singleton("renamed")));
+        assertEquals(BigInteger.valueOf(500), store.getGloballyUsedQuota().getBytes());
+    }
+
+    @Test
+    public void testReopen() throws Exception {
+        addPages();
+        store.close();
+
+        store = newStore();
+        assertEquals(BigInteger.valueOf(1500), store.getGloballyUsedQuota().getBytes());
+        List<TilePage> lfu =
+                store.getPagesToExpire(layerNames, ExpirationPolicy.LFU, null, Integer.MAX_VALUE);
+        assertEquals(3, lfu.size());
+    }
+
+    @Test
+    public void testRecoverFromLog() throws Exception {
+        addPages();
+        // simulate a crash, the store is not closed and the log is not checkpointed
+        store = newStore();
+        assertEquals(BigInteger.valueOf(1500), store.getGloballyUsedQuota().getBytes());
+        List<TilePage> lru =
+                store.getPagesToExpire(layerNames, ExpirationPolicy.LRU, null, Integer.MAX_VALUE);
+        assertEquals(png.getId() + "@1,0,1", lru.get(0).getKey());
+        assertEquals(3, lru.size());
+    }
+
+    @Test
+    public void testStaleLayersDeletedOnStartup() throws Exception {
+        addPages();
+        store.close();
+
+        layerNames.remove("layer2");
+        store = newStore();
+        assertEquals(Collections.singleton(png), store.getTileSets());
+        assertEquals(BigInteger.valueOf(1000), store.getGloballyUsedQuota().getBytes());
+    }
+}
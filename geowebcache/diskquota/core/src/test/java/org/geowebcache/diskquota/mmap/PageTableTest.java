@@ -0,0 +1,92 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.diskquota.mmap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PageTableTest {
+
+    @Rule public TemporaryFolder temp = new TemporaryFolder();
+
+    private void assertContents(Map<Long, Long> expected, PageTable table) {
+        assertEquals(expected.size(), table.size());
+        for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+            int slot = table.find(entry.getKey());
+            assertTrue(slot >= 0);
+            assertEquals(entry.getValue().longValue(), table.getHits(slot));
+        }
+    }
+
+    @Test
+    public void testInsertRemove() throws Exception {
+        File file = new File(temp.getRoot(), "pages.dat");
+        PageTable table = PageTable.create(file, 1024);
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(1);
+        for (int i = 0; i < 20000; i++) {
+            // few distinct keys, so that probe sequences collide and get removed from often
+            long key = 1 + random.nextInt(700);
+            if (random.nextBoolean()) {
+                long hits = random.nextLong();
+                table.setHits(table.findOrInsert(key), hits);
+                expected.put(key, hits);
+            } else {
+                assertEquals(expected.remove(key) != null, table.remove(key));
+            }
+        }
+        assertContents(expected, table);
+        table.close();
+
+        PageTable reopened = PageTable.open(file);
+        assertTrue(reopened.isClean());
+        assertContents(expected, reopened);
+        reopened.discard();
+
+        // not closed properly last time
+        PageTable dirty = PageTable.open(file);
+        assertFalse(dirty.isClean());
+        dirty.discard();
+    }
+
+    @Test
+    public void testCopyToBiggerTable() throws Exception {
+        PageTable table = PageTable.create(new File(temp.getRoot(), "pages-0.dat"), 1024);
+        Map<Long, Long> expected = new HashMap<>();
+        for (long key = 1; key <= 700; key++) {
+            table.setHits(table.findOrInsert(key << 20), key);
+            expected.put(key << 20, key);
+        }
+        assertTrue(table.needsResize(100));
+
+        PageTable bigger =
+                PageTable.create(
+                        new File(temp.getRoot(), "pages-1.dat"), PageTable.capacityFor(800));
+        table.copyTo(bigger);
+        assertFalse(bigger.needsResize(100));
+        assertContents(expected, bigger);
+        table.close();
+        bigger.close();
+    }
+}
@@ -90,4 +90,22 @@ public class PageStatsTest extends TestCase {
         stats.addTiles(500, maxTiles);
         assertEquals(1f, stats.getFillFactor(), 1e-6f);
     }
+
+    public void testAddRenderTime() {
+        PageStats stats = new PageStats(1);
+        final BigInteger maxTiles = BigInteger.valueOf(100);
+
+        stats.addRenderTime(1000, 10, maxTiles);
+        stats.addTiles(10, maxTiles);
+        assertEquals(100f, stats.getRenderTime(), 1e-3f);
+
+        // averaged with the tiles already in the page
+        stats.addRenderTime(3000, 10, maxTiles);
+        stats.addTiles(10, maxTiles);
+        assertEquals(200f, stats.getRenderTime(), 1e-3f);
+
+        stats.setFrequencyOfUsePerMinute(2f);
+        stats.updateCostPriority(1f, maxTiles);
+        assertEquals(1f + 2f * 200f / 20f, stats.getCostPriority(), 1e-3f);
+    }
 }
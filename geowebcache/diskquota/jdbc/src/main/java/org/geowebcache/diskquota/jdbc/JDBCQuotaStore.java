@@ -15,6 +15,7 @@
 package org.geowebcache.diskquota.jdbc;
 
 import java.io.Closeable;
+import java.io.File;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.sql.ResultSet;
@@ -36,6 +37,7 @@ import javax.sql.DataSource;
 import org.apache.commons.dbcp.BasicDataSource;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.geowebcache.diskquota.ExpirationPolicy;
 import org.geowebcache.diskquota.QuotaStore;
 import org.geowebcache.diskquota.storage.PageStats;
 import org.geowebcache.diskquota.storage.PageStatsPayload;
@@ -48,9 +50,11 @@ import org.geowebcache.storage.DefaultStorageFinder;
 import org.geowebcache.util.SuppressFBWarnings;
 import org.springframework.dao.ConcurrencyFailureException;
 import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataAccessResourceFailureException;
 import org.springframework.dao.DeadlockLoserDataAccessException;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.support.MetaDataAccessException;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.support.TransactionCallback;
 import org.springframework.transaction.support.TransactionCallbackWithoutResult;
@@ -94,6 +98,16 @@ public class JDBCQuotaStore implements QuotaStore {
 
     private DataSource dataSource;
 
+    /** The directory of the embedded database, if any */
+    private File storeDirectory;
+
+    /**
+     * The cost priority of the last page truncated, raising the priority of the pages used
+     * afterwards. Kept by each instance, so in a cluster it only accounts for the pages truncated
+     * by this one, and for the lowest cost priority stored when the instance started up
+     */
+    private volatile float costInflation;
+
     public JDBCQuotaStore(DefaultStorageFinder finder, TilePageCalculator tilePageCalculator) {
         this.finder = finder;
         this.calculator = tilePageCalculator;
@@ -118,6 +132,20 @@ public class JDBCQuotaStore implements QuotaStore {
         this.dialect = dialect;
     }
 
+    @Override
+    public File getStoreDirectory() {
+        return storeDirectory;
+    }
+
+    /**
+     * Sets the directory of the embedded database, if the store uses one
+     *
+     * @param storeDirectory
+     */
+    public void setStoreDirectory(File storeDirectory) {
+        this.storeDirectory = storeDirectory;
+    }
+
     /**
      * Returns he database schema used by this store
      *
@@ -159,7 +187,12 @@ public class JDBCQuotaStore implements QuotaStore {
                     @Override
                     protected void doInTransactionWithoutResult(TransactionStatus status) {
                         // setup the tables if necessary
-                        dialect.initializeTables(schema, jt);
+                        try {
+                            dialect.initializeTables(schema, jt);
+                        } catch (MetaDataAccessException e) {
+                            throw new DataAccessResourceFailureException(
+                                    "Failed to check the disk quota tables", e);
+                        }
 
                         // get the existing table names
                         List<String> existingLayers =
@@ -193,10 +226,26 @@ public class JDBCQuotaStore implements QuotaStore {
                         if (global == null) {
                             createLayerInternal(GLOBAL_QUOTA_NAME);
                         }
+
+                        migrateCostPriority();
+                        Float minCostPriority =
+                                jt.queryForOptionalObject(
+                                        dialect.getMinCostPriority(schema),
+                                        (rs, rowNum) -> rs.getFloat(1),
+                                        Collections.emptyMap());
+                        costInflation = minCostPriority == null ? 0f : minCostPriority;
                     }
                 });
     }
 
+    /** Resets the cost priority of the pages stored before the database kept their render time */
+    private void migrateCostPriority() {
+        int pages = jt.update(dialect.getCostPriorityMigration(schema), Collections.emptyMap());
+        if (pages > 0) {
+            log.info("Reset the cost priority of " + pages + " pages with no render time");
+        }
+    }
+
     public void createLayer(String layerName) throws InterruptedException {
         createLayerInternal(layerName);
     }
@@ -551,18 +600,30 @@ public class JDBCQuotaStore implements QuotaStore {
                                 PageStats stats = getPageStats(page.getKey());
                                 if (stats != null) {
                                     float oldFillFactor = stats.getFillFactor();
+                                    float oldRenderTime = stats.getRenderTime();
+                                    stats.addRenderTime(
+                                            payload.getRenderTime(),
+                                            payload.getNumRendered(),
+                                            tilesPerPage);
                                     stats.addTiles(payload.getNumTiles(), tilesPerPage);
                                     // if no change, bail out early
-                                    if (oldFillFactor == stats.getFillFactor()) {
+                                    if (oldFillFactor == stats.getFillFactor()
+                                            && oldRenderTime == stats.getRenderTime()) {
                                         return;
                                     }
+                                    stats.updateCostPriority(costInflation, tilesPerPage);
 
                                     // update the record in the db
                                     modified = updatePageFillFactor(page, stats, oldFillFactor);
                                 } else {
                                     // create the stats and update the fill factor
                                     stats = new PageStats(0);
+                                    stats.addRenderTime(
+                                            payload.getRenderTime(),
+                                            payload.getNumRendered(),
+                                            tilesPerPage);
                                     stats.addTiles(payload.getNumTiles(), tilesPerPage);
+                                    stats.updateCostPriority(costInflation, tilesPerPage);
 
                                     modified = createNewPageStats(stats, page);
                                 }
@@ -619,11 +680,18 @@ public class JDBCQuotaStore implements QuotaStore {
 
         String update =
                 dialect.conditionalUpdatePageStatsFillFactor(
-                        schema, "key", "fillFactor", "oldFillFactor");
+                        schema,
+                        "key",
+                        "fillFactor",
+                        "oldFillFactor",
+                        "costPriority",
+                        "renderTime");
         Map<String, Object> params = new HashMap<String, Object>();
         params.put("key", page.getKey());
         params.put("fillFactor", stats.getFillFactor());
         params.put("oldFillFactor", oldFillFactor);
+        params.put("costPriority", stats.getCostPriority());
+        params.put("renderTime", stats.getRenderTime());
         return jt.update(update, params);
     }
 
@@ -657,7 +725,9 @@ public class JDBCQuotaStore implements QuotaStore {
                         "frequencyOfUse",
                         "lastAccessTime",
                         "fillFactor",
-                        "numHits");
+                        "numHits",
+                        "costPriority",
+                        "renderTime");
         Map<String, Object> params = new HashMap<String, Object>();
         params.put("key", page.getKey());
         params.put("tileSetId", page.getTileSetId());
@@ -669,6 +739,8 @@ public class JDBCQuotaStore implements QuotaStore {
         params.put("lastAccessTime", stats.getLastAccessTimeMinutes());
         params.put("fillFactor", stats.getFillFactor());
         params.put("numHits", new BigDecimal(stats.getNumHits()));
+        params.put("costPriority", stats.getCostPriority());
+        params.put("renderTime", stats.getRenderTime());
 
         // try the insert, mind, someone else might have done it as well, in such
         // case the insert will fail and return 0 record modified
@@ -683,11 +755,14 @@ public class JDBCQuotaStore implements QuotaStore {
 
                     public PageStats mapRow(ResultSet rs, int rowNum) throws SQLException {
                         PageStats ps = new PageStats(0);
-                        // FREQUENCY_OF_USE, LAST_ACCESS_TIME, FILL_FACTOR, NUM_HITS FROM
+                        // FREQUENCY_OF_USE, LAST_ACCESS_TIME, FILL_FACTOR, NUM_HITS,
+                        // COST_PRIORITY, RENDER_TIME FROM
                         ps.setFrequencyOfUsePerMinute(rs.getFloat(1));
                         ps.setLastAccessMinutes(rs.getInt(2));
                         ps.setFillFactor(rs.getFloat(3));
                         ps.setNumHits(rs.getBigDecimal(4).toBigInteger());
+                        ps.setCostPriority(rs.getFloat(5));
+                        ps.setRenderTime(rs.getFloat(6));
 
                         return ps;
                     }
@@ -709,6 +784,8 @@ public class JDBCQuotaStore implements QuotaStore {
                                             public Object doInTransaction(
                                                     TransactionStatus status) {
                                                 List<PageStats> result = new ArrayList<PageStats>();
+                                                Map<String, BigInteger> tilesPerPage =
+                                                        new HashMap<>();
                                                 if (statsUpdates != null) {
                                                     // sort the payloads by page id as a deadlock
                                                     // avoidance measure, out
@@ -739,9 +816,15 @@ public class JDBCQuotaStore implements QuotaStore {
                                                         }
 
                                                         // update the stats
+                                                        BigInteger pageSize =
+                                                                getTilesPerPage(
+                                                                        tilesPerPage,
+                                                                        tset,
+                                                                        payload.getPage()
+                                                                                .getZoomLevel());
                                                         PageStats stats =
                                                                 upsertTilePageHitAccessTime(
-                                                                        payload);
+                                                                        payload, pageSize);
                                                         result.add(stats);
                                                     }
                                                 }
@@ -750,7 +833,8 @@ public class JDBCQuotaStore implements QuotaStore {
                                             }
 
                                             private PageStats upsertTilePageHitAccessTime(
-                                                    PageStatsPayload payload) {
+                                                    PageStatsPayload payload,
+                                                    BigInteger tilesPerPage) {
                                                 TilePage page = payload.getPage();
 
                                                 if (log.isDebugEnabled()) {
@@ -781,7 +865,11 @@ public class JDBCQuotaStore implements QuotaStore {
                                                                             .getLastAccessTimeMinutes();
                                                             // update the page so that it computes
                                                             // the new stats
-                                                            updatePageStats(payload, page, stats);
+                                                            updatePageStats(
+                                                                    payload,
+                                                                    page,
+                                                                    stats,
+                                                                    tilesPerPage);
 
                                                             // update the record in the db
                                                             String update =
@@ -793,7 +881,8 @@ public class JDBCQuotaStore implements QuotaStore {
                                                                             "newFrequency",
                                                                             "oldFrequency",
                                                                             "newAccessTime",
-                                                                            "oldAccessTime");
+                                                                            "oldAccessTime",
+                                                                            "costPriority");
                                                             Map<String, Object> params =
                                                                     new HashMap<String, Object>();
                                                             params.put("key", page.getKey());
@@ -816,11 +905,18 @@ public class JDBCQuotaStore implements QuotaStore {
                                                                             .getLastAccessTimeMinutes());
                                                             params.put(
                                                                     "oldAccessTime", oldAccessTime);
+                                                            params.put(
+                                                                    "costPriority",
+                                                                    stats.getCostPriority());
                                                             modified = jt.update(update, params);
                                                         } else {
                                                             // create the new stats and insert it
                                                             stats = new PageStats(0);
-                                                            updatePageStats(payload, page, stats);
+                                                            updatePageStats(
+                                                                    payload,
+                                                                    page,
+                                                                    stats,
+                                                                    tilesPerPage);
                                                             modified =
                                                                     createNewPageStats(stats, page);
                                                         }
@@ -848,7 +944,8 @@ public class JDBCQuotaStore implements QuotaStore {
                                             private void updatePageStats(
                                                     PageStatsPayload payload,
                                                     TilePage page,
-                                                    PageStats stats) {
+                                                    PageStats stats,
+                                                    BigInteger tilesPerPage) {
                                                 final int addedHits = payload.getNumHits();
                                                 final int lastAccessTimeMinutes =
                                                         (int)
@@ -861,12 +958,28 @@ public class JDBCQuotaStore implements QuotaStore {
                                                         addedHits,
                                                         lastAccessTimeMinutes,
                                                         creationTimeMinutes);
+                                                stats.updateCostPriority(
+                                                        costInflation, tilesPerPage);
                                             }
                                         });
                     }
                 });
     }
 
+    /**
+     * Returns the number of tiles per page of a tile set zoom level, one if the tile set is not
+     * known, caching it in the provided map for the duration of a batch of updates
+     */
+    private BigInteger getTilesPerPage(
+            Map<String, BigInteger> tilesPerPage, TileSet tileSet, int zoomLevel) {
+        if (tileSet == null) {
+            return BigInteger.ONE;
+        }
+        return tilesPerPage.computeIfAbsent(
+                tileSet.getId() + "/" + zoomLevel,
+                k -> calculator.getTilesPerPage(tileSet, zoomLevel));
+    }
+
     public long[][] getTilesForPage(TilePage page) throws InterruptedException {
         TileSet tileSet = getTileSetById(page.getTileSetId());
         long[][] gridCoverage = calculator.toGridCoverage(tileSet, page);
@@ -901,6 +1014,29 @@ public class JDBCQuotaStore implements QuotaStore {
         return jt.queryForOptionalObject(select, mapper, params);
     }
 
+    @Override
+    public List<TilePage> getPagesToExpire(
+            Set<String> layerNames, ExpirationPolicy policy, TilePage after, int maxPages)
+            throws InterruptedException {
+        Map<String, Object> params = new HashMap<String, Object>();
+        List<String> layerParamNames = new ArrayList<String>();
+        int i = 0;
+        for (String layer : layerNames) {
+            i++;
+            String param = "Layer" + i;
+            params.put(param, layer);
+            layerParamNames.add(param);
+        }
+        String cursorKeyParam = null;
+        if (after != null) {
+            cursorKeyParam = "cursorKey";
+            params.put(cursorKeyParam, after.getKey());
+        }
+        String select =
+                dialect.getPagesToExpire(schema, layerParamNames, policy, cursorKeyParam, maxPages);
+        return jt.query(select, params, new TilePageRowMapper());
+    }
+
     public PageStats setTruncated(final TilePage page) throws InterruptedException {
         return (PageStats)
                 tt.execute(
@@ -922,6 +1058,8 @@ public class JDBCQuotaStore implements QuotaStore {
                                     if (modified == 0) {
                                         return null;
                                     }
+                                    costInflation =
+                                            Math.max(costInflation, stats.getCostPriority());
                                 }
 
                                 return stats;
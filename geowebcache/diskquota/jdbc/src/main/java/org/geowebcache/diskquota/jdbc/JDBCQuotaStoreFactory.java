@@ -232,11 +232,13 @@ public class JDBCQuotaStoreFactory implements QuotaStoreFactory, ApplicationCont
             DefaultStorageFinder cacheDirFinder, TilePageCalculator tilePageCalculator)
             throws ConfigurationException {
         // get a default data source located in the cache directory
-        DataSource ds = getH2DataSource(cacheDirFinder);
+        File storeDirectory = new File(cacheDirFinder.getDefaultPath(), "diskquota_page_store_h2");
+        DataSource ds = getH2DataSource(storeDirectory);
 
         // build up the store
         JDBCQuotaStore store = new JDBCQuotaStore(cacheDirFinder, tilePageCalculator);
         store.setDataSource(ds);
+        store.setStoreDirectory(storeDirectory);
         store.setDialect(new H2Dialect());
 
         // initialize it
@@ -248,13 +250,10 @@ public class JDBCQuotaStoreFactory implements QuotaStoreFactory, ApplicationCont
     /**
      * Prepares a simple data source for the embedded H2
      *
-     * @param cacheDirFinder
+     * @param storeDirectory
      * @return
-     * @throws ConfigurationException
      */
-    private DataSource getH2DataSource(DefaultStorageFinder cacheDirFinder)
-            throws ConfigurationException {
-        File storeDirectory = new File(cacheDirFinder.getDefaultPath(), "diskquota_page_store_h2");
+    private DataSource getH2DataSource(File storeDirectory) {
         storeDirectory.mkdirs();
 
         BasicDataSource dataSource = new BasicDataSource();
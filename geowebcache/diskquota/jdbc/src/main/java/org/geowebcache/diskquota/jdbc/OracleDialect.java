@@ -16,6 +16,7 @@ package org.geowebcache.diskquota.jdbc;
 
 import java.util.Arrays;
 import java.util.List;
+import org.geowebcache.diskquota.ExpirationPolicy;
 
 /**
  * Oracle dialect for the quota store, compared to the basic one creates index organized tables and
@@ -96,13 +97,25 @@ public class OracleDialect extends SQLDialect {
                                 + //
                                 " NUM_HITS NUMBER("
                                 + numberPrecision(NUM_HITS_SIZE)
-                                + ")\n"
+                                + "),\n"
+                                + //
+                                " COST_PRIORITY FLOAT,\n"
+                                + //
+                                " RENDER_TIME FLOAT\n"
                                 + //
                                 ") ORGANIZATION INDEX", //
                         "CREATE INDEX TILEPAGE_TILESET ON TILEPAGE(TILESET_ID)",
                         "CREATE INDEX TILEPAGE_FILL_FACTOR ON TILEPAGE(FILL_FACTOR)",
                         "CREATE INDEX TILEPAGE_FREQUENCY ON TILEPAGE(FREQUENCY_OF_USE DESC)",
-                        "CREATE INDEX TILEPAGE_LAST_ACCESS ON TILEPAGE(LAST_ACCESS_TIME_MINUTES DESC)"));
+                        "CREATE INDEX TILEPAGE_LAST_ACCESS ON TILEPAGE(LAST_ACCESS_TIME_MINUTES DESC)",
+                        "CREATE INDEX TILEPAGE_COST ON TILEPAGE(COST_PRIORITY DESC)"));
+    }
+
+    @Override
+    protected List<String> getCostPriorityColumnCreation() {
+        return Arrays.asList(
+                "ALTER TABLE ${schema}TILEPAGE ADD COST_PRIORITY FLOAT",
+                "CREATE INDEX TILEPAGE_COST ON TILEPAGE(COST_PRIORITY DESC)");
     }
 
     @Override
@@ -159,4 +172,18 @@ public class OracleDialect extends SQLDialect {
 
         return sb.toString();
     }
+
+    @Override
+    public String getPagesToExpire(
+            String schema,
+            List<String> layerParamNames,
+            ExpirationPolicy policy,
+            String cursorKeyParam,
+            int maxPages) {
+        StringBuilder sb = new StringBuilder("SELECT * FROM (");
+        appendPagesToExpire(sb, schema, layerParamNames, policy, cursorKeyParam);
+        sb.append(") WHERE ROWNUM <= ").append(maxPages);
+
+        return sb.toString();
+    }
 }
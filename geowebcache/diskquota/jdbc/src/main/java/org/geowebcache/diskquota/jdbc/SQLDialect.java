@@ -20,6 +20,7 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import javax.sql.DataSource;
+import org.geowebcache.diskquota.ExpirationPolicy;
 import org.springframework.jdbc.support.JdbcAccessor;
 import org.springframework.jdbc.support.JdbcUtils;
 import org.springframework.jdbc.support.MetaDataAccessException;
@@ -116,12 +117,17 @@ public class SQLDialect {
                                             + //
                                             " NUM_HITS NUMERIC("
                                             + NUM_HITS_SIZE
-                                            + ")\n"
+                                            + "),\n"
+                                            + //
+                                            " COST_PRIORITY FLOAT,\n"
+                                            + //
+                                            " RENDER_TIME FLOAT\n"
                                             + //
                                             ")", //
                                     "CREATE INDEX TILEPAGE_TILESET ON ${schema}TILEPAGE(TILESET_ID, FILL_FACTOR)",
                                     "CREATE INDEX TILEPAGE_FREQUENCY ON ${schema}TILEPAGE(FREQUENCY_OF_USE DESC)",
-                                    "CREATE INDEX TILEPAGE_LAST_ACCESS ON ${schema}TILEPAGE(LAST_ACCESS_TIME_MINUTES DESC)"));
+                                    "CREATE INDEX TILEPAGE_LAST_ACCESS ON ${schema}TILEPAGE(LAST_ACCESS_TIME_MINUTES DESC)",
+                                    "CREATE INDEX TILEPAGE_COST ON ${schema}TILEPAGE(COST_PRIORITY DESC)"));
                 }
             };
 
@@ -129,8 +135,10 @@ public class SQLDialect {
      * Checks if the database schema is present, if missing it generates it
      *
      * @param template
+     * @throws MetaDataAccessException if the existing tables and columns can't be checked
      */
-    public void initializeTables(String schema, SimpleJdbcTemplate template) {
+    public void initializeTables(String schema, SimpleJdbcTemplate template)
+            throws MetaDataAccessException {
         String prefix;
         if (schema == null) {
             prefix = "";
@@ -145,6 +153,39 @@ public class SQLDialect {
                 }
             }
         }
+
+        // tile pages created before the cost priority was stored
+        if (!columnExists(template, schema, "TILEPAGE", "COST_PRIORITY")) {
+            for (String command : getCostPriorityColumnCreation()) {
+                command = command.replace("${schema}", prefix);
+                template.getJdbcOperations().execute(command);
+            }
+        }
+        // tile pages created before the render time was stored
+        if (!columnExists(template, schema, "TILEPAGE", "RENDER_TIME")) {
+            for (String command : getRenderTimeColumnCreation()) {
+                command = command.replace("${schema}", prefix);
+                template.getJdbcOperations().execute(command);
+            }
+        }
+    }
+
+    /**
+     * Returns the commands adding the cost priority column, and its index, to a tile page table
+     * that lacks them. The column is left empty, see {@link #getCostPriorityMigration}
+     */
+    protected List<String> getCostPriorityColumnCreation() {
+        return Arrays.asList(
+                "ALTER TABLE ${schema}TILEPAGE ADD COST_PRIORITY FLOAT",
+                "CREATE INDEX TILEPAGE_COST ON ${schema}TILEPAGE(COST_PRIORITY DESC)");
+    }
+
+    /**
+     * Returns the commands adding the render time column to a tile page table that lacks it. The
+     * column is left empty, see {@link #getCostPriorityMigration}
+     */
+    protected List<String> getRenderTimeColumnCreation() {
+        return Arrays.asList("ALTER TABLE ${schema}TILEPAGE ADD RENDER_TIME FLOAT");
     }
 
     /**
@@ -153,37 +194,77 @@ public class SQLDialect {
      * @param template
      * @param tableName
      * @return
+     * @throws MetaDataAccessException if the database metadata can't be read
      */
     private boolean tableExists(
-            SimpleJdbcTemplate template, final String schema, final String tableName) {
-        try {
-            DataSource ds = ((JdbcAccessor) template.getJdbcOperations()).getDataSource();
-            if (ds == null) return false;
-            return (Boolean)
-                    JdbcUtils.extractDatabaseMetaData(
-                            ds,
-                            dbmd -> {
-                                ResultSet rs = null;
-                                try {
-                                    rs =
-                                            dbmd.getTables(
-                                                    null, schema, tableName.toLowerCase(), null);
-                                    boolean exists = rs.next();
+            SimpleJdbcTemplate template, final String schema, final String tableName)
+            throws MetaDataAccessException {
+        DataSource ds = ((JdbcAccessor) template.getJdbcOperations()).getDataSource();
+        if (ds == null) return false;
+        return (Boolean)
+                JdbcUtils.extractDatabaseMetaData(
+                        ds,
+                        dbmd -> {
+                            ResultSet rs = null;
+                            try {
+                                rs = dbmd.getTables(null, schema, tableName.toLowerCase(), null);
+                                boolean exists = rs.next();
+                                rs.close();
+                                if (exists) {
+                                    return true;
+                                }
+                                rs = dbmd.getTables(null, schema, tableName, null);
+                                return rs.next();
+                            } finally {
+                                if (rs != null) {
                                     rs.close();
-                                    if (exists) {
-                                        return true;
-                                    }
-                                    rs = dbmd.getTables(null, schema, tableName, null);
-                                    return rs.next();
-                                } finally {
-                                    if (rs != null) {
-                                        rs.close();
-                                    }
                                 }
-                            });
-        } catch (MetaDataAccessException e) {
-            return false;
-        }
+                            }
+                        });
+    }
+
+    /**
+     * Checks if the specified column exists
+     *
+     * @param template
+     * @param tableName
+     * @param columnName
+     * @return
+     * @throws MetaDataAccessException if the database metadata can't be read
+     */
+    private boolean columnExists(
+            SimpleJdbcTemplate template,
+            final String schema,
+            final String tableName,
+            final String columnName)
+            throws MetaDataAccessException {
+        DataSource ds = ((JdbcAccessor) template.getJdbcOperations()).getDataSource();
+        if (ds == null) return false;
+        return (Boolean)
+                JdbcUtils.extractDatabaseMetaData(
+                        ds,
+                        dbmd -> {
+                            ResultSet rs = null;
+                            try {
+                                rs =
+                                        dbmd.getColumns(
+                                                null,
+                                                schema,
+                                                tableName.toLowerCase(),
+                                                columnName.toLowerCase());
+                                boolean exists = rs.next();
+                                rs.close();
+                                if (exists) {
+                                    return true;
+                                }
+                                rs = dbmd.getColumns(null, schema, tableName, columnName);
+                                return rs.next();
+                            } finally {
+                                if (rs != null) {
+                                    rs.close();
+                                }
+                            }
+                        });
     }
 
     public String getAllLayersQuery(String schema) {
@@ -368,7 +449,8 @@ public class SQLDialect {
     public String getPageStats(String schema, String keyParam) {
         StringBuilder sb =
                 new StringBuilder(
-                        "SELECT FREQUENCY_OF_USE, LAST_ACCESS_TIME_MINUTES, FILL_FACTOR, NUM_HITS FROM ");
+                        "SELECT FREQUENCY_OF_USE, LAST_ACCESS_TIME_MINUTES, FILL_FACTOR, NUM_HITS, "
+                                + "COST_PRIORITY, RENDER_TIME FROM ");
         if (schema != null) {
             sb.append(schema).append(".");
         }
@@ -388,7 +470,9 @@ public class SQLDialect {
             String frequencyParam,
             String lastAccessParam,
             String fillFactorParam,
-            String numHitsParam) {
+            String numHitsParam,
+            String costPriorityParam,
+            String renderTimeParam) {
         StringBuilder sb = new StringBuilder("INSERT INTO ");
         if (schema != null) {
             sb.append(schema).append(".");
@@ -402,7 +486,9 @@ public class SQLDialect {
         sb.append(":").append(frequencyParam).append(", ");
         sb.append(":").append(lastAccessParam).append(", ");
         sb.append(":").append(fillFactorParam).append(", ");
-        sb.append(":").append(numHitsParam).append(" ");
+        sb.append(":").append(numHitsParam).append(", ");
+        sb.append(":").append(costPriorityParam).append(", ");
+        sb.append(":").append(renderTimeParam).append(" ");
 
         addEmtpyTableReference(sb);
         sb.append(" WHERE NOT EXISTS(SELECT 1 FROM ");
@@ -422,15 +508,24 @@ public class SQLDialect {
      * @param keyParam
      * @param newfillFactorParam
      * @param oldFillFactorParam
+     * @param costPriorityParam
+     * @param renderTimeParam
      * @return
      */
     public String conditionalUpdatePageStatsFillFactor(
-            String schema, String keyParam, String newfillFactorParam, String oldFillFactorParam) {
+            String schema,
+            String keyParam,
+            String newfillFactorParam,
+            String oldFillFactorParam,
+            String costPriorityParam,
+            String renderTimeParam) {
         StringBuilder sb = new StringBuilder("UPDATE ");
         if (schema != null) {
             sb.append(schema).append(".");
         }
         sb.append("TILEPAGE SET FILL_FACTOR = :").append(newfillFactorParam);
+        sb.append(", COST_PRIORITY = :").append(costPriorityParam);
+        sb.append(", RENDER_TIME = :").append(renderTimeParam);
         sb.append(" WHERE KEY = :").append(keyParam);
         // add this to avoid overwriting a fill factor that was updated by someone else
         sb.append(" AND FILL_FACTOR = :").append(oldFillFactorParam);
@@ -466,6 +561,7 @@ public class SQLDialect {
      * @param keyParam
      * @param newFrequencyParam
      * @param oldFrequencyParam
+     * @param costPriorityParam
      * @return
      */
     public String updatePageStats(
@@ -476,7 +572,8 @@ public class SQLDialect {
             String newFrequencyParam,
             String oldFrequencyParam,
             String newLastAccessTimeParam,
-            String oldLastAccessTimeParam) {
+            String oldLastAccessTimeParam,
+            String costPriorityParam) {
         StringBuilder sb = new StringBuilder("UPDATE ");
         if (schema != null) {
             sb.append(schema).append(".");
@@ -484,6 +581,7 @@ public class SQLDialect {
         sb.append("TILEPAGE SET NUM_HITS = :").append(newHitsParam);
         sb.append(", FREQUENCY_OF_USE = :").append(newFrequencyParam);
         sb.append(", LAST_ACCESS_TIME_MINUTES = :").append(newLastAccessTimeParam);
+        sb.append(", COST_PRIORITY = :").append(costPriorityParam);
         sb.append(" WHERE KEY = :").append(keyParam);
         // add this to avoid overwriting params that were updated by another instance
         sb.append(" AND NUM_HITS = :").append(oldHitsParam);
@@ -493,6 +591,41 @@ public class SQLDialect {
         return sb.toString();
     }
 
+    /**
+     * Returns the lowest cost priority of the pages holding tiles, the inflation value the cost
+     * priorities start from when the store is initialized
+     *
+     * @param schema
+     * @return
+     */
+    public String getMinCostPriority(String schema) {
+        StringBuilder sb = new StringBuilder("SELECT MIN(COST_PRIORITY) FROM ");
+        if (schema != null) {
+            sb.append(schema).append(".");
+        }
+        sb.append("TILEPAGE WHERE FILL_FACTOR > 0");
+
+        return sb.toString();
+    }
+
+    /**
+     * Resets the cost priority of the pages stored before the render times were recorded, which
+     * have no render time. Their render cost is unknown, so their priority is the one {@link
+     * org.geowebcache.diskquota.storage.PageStats#updateCostPriority} computes with no inflation
+     *
+     * @param schema
+     * @return
+     */
+    public String getCostPriorityMigration(String schema) {
+        StringBuilder sb = new StringBuilder("UPDATE ");
+        if (schema != null) {
+            sb.append(schema).append(".");
+        }
+        sb.append("TILEPAGE SET COST_PRIORITY = 0, RENDER_TIME = 0 WHERE RENDER_TIME IS NULL");
+
+        return sb.toString();
+    }
+
     public String getLeastFrequentlyUsedPage(String schema, List<String> layerParamNames) {
         StringBuilder sb =
                 new StringBuilder(
@@ -544,4 +677,80 @@ public class SQLDialect {
 
         return sb.toString();
     }
+
+    /**
+     * Returns a query for the next pages to expire, ordered by the expiration policy and then by
+     * key, so that a batch can start right after the last page of the previous one
+     *
+     * @param schema the schema, may be {@code null}
+     * @param layerParamNames the names of the parameters holding the layer names
+     * @param policy the expiration policy establishing the order of the pages
+     * @param cursorKeyParam the name of the parameter holding the key of the last page of the
+     *     previous batch, or {@code null} to start from the first page
+     * @param maxPages the maximum number of pages to return
+     */
+    public String getPagesToExpire(
+            String schema,
+            List<String> layerParamNames,
+            ExpirationPolicy policy,
+            String cursorKeyParam,
+            int maxPages) {
+        StringBuilder sb = new StringBuilder();
+        appendPagesToExpire(sb, schema, layerParamNames, policy, cursorKeyParam);
+        sb.append(" LIMIT ").append(maxPages);
+
+        return sb.toString();
+    }
+
+    protected void appendPagesToExpire(
+            StringBuilder sb,
+            String schema,
+            List<String> layerParamNames,
+            ExpirationPolicy policy,
+            String cursorKeyParam) {
+        final String tilePage = schema == null ? "TILEPAGE" : schema + ".TILEPAGE";
+        final String order = getExpirationOrder(policy);
+        sb.append("SELECT TILESET_ID, PAGE_X, PAGE_Y, PAGE_Z, CREATION_TIME_MINUTES FROM ");
+        sb.append(tilePage);
+        sb.append(" WHERE FILL_FACTOR > 0 ");
+        sb.append("AND TILESET_ID IN (");
+        sb.append("SELECT KEY FROM ");
+        if (schema != null) {
+            sb.append(schema).append(".");
+        }
+        sb.append("TILESET WHERE LAYER_NAME IN (");
+        for (int i = 0; i < layerParamNames.size(); i++) {
+            sb.append(":" + layerParamNames.get(i));
+            if (i < layerParamNames.size() - 1) {
+                sb.append(", ");
+            }
+        }
+        sb.append(")) ");
+        if (cursorKeyParam != null) {
+            // the sort value of the cursor page, looked up in place to save a round trip
+            String cursorValue = "(SELECT " + order + " FROM " + tilePage;
+            cursorValue += " WHERE KEY = :" + cursorKeyParam + ")";
+            sb.append("AND (").append(order).append(" > ").append(cursorValue);
+            sb.append(" OR (").append(order).append(" = ").append(cursorValue);
+            sb.append(" AND KEY > :").append(cursorKeyParam).append(")) ");
+        }
+        sb.append("ORDER BY ").append(order).append(" ASC, KEY ASC");
+    }
+
+    /**
+     * Returns the expression the pages are expired in ascending order of. The {@link
+     * ExpirationPolicy#COST cost} policy uses the stored {@link
+     * org.geowebcache.diskquota.storage.PageStats#getCostPriority() cost priority}, indexed like
+     * the frequency of use and the last access time.
+     */
+    protected String getExpirationOrder(ExpirationPolicy policy) {
+        if (ExpirationPolicy.LFU.equals(policy)) {
+            return "FREQUENCY_OF_USE";
+        } else if (ExpirationPolicy.LRU.equals(policy)) {
+            return "LAST_ACCESS_TIME_MINUTES";
+        } else if (ExpirationPolicy.COST.equals(policy)) {
+            return "COST_PRIORITY";
+        }
+        throw new IllegalArgumentException("Unrecognized expiration policy: " + policy);
+    }
 }
@@ -44,6 +44,7 @@ import org.geowebcache.config.TileLayerConfiguration;
 import org.geowebcache.config.XMLConfiguration;
 import org.geowebcache.config.XMLConfigurationBackwardsCompatibilityTest;
 import org.geowebcache.diskquota.DiskQuotaMonitor;
+import org.geowebcache.diskquota.ExpirationPolicy;
 import org.geowebcache.diskquota.QuotaStore;
 import org.geowebcache.diskquota.storage.PageStats;
 import org.geowebcache.diskquota.storage.PageStatsPayload;
@@ -825,6 +826,84 @@ public abstract class JDBCQuotaStoreTest {
         assertEquals(page1, leastFrequentlyUsedPage);
     }
 
+    @Test
+    public void testGetPagesToExpire() throws Exception {
+        final String layerName = testTileSet.getLayerName();
+        Set<String> layerNames = Collections.singleton(layerName);
+
+        assertTrue(store.getPagesToExpire(layerNames, ExpirationPolicy.LFU, null, 10).isEmpty());
+
+        TilePage page1 = new TilePage(testTileSet.getId(), 0, 1, 2);
+        TilePage page2 = new TilePage(testTileSet.getId(), 1, 1, 2);
+        TilePage page3 = new TilePage(testTileSet.getId(), 2, 1, 2);
+
+        PageStatsPayload payload1 = new PageStatsPayload(page1, testTileSet);
+        PageStatsPayload payload2 = new PageStatsPayload(page2, testTileSet);
+        PageStatsPayload payload3 = new PageStatsPayload(page3, testTileSet);
+
+        payload1.setNumHits(100);
+        payload2.setNumHits(10);
+        payload3.setNumHits(1000);
+        Collection<PageStatsPayload> statsUpdates = Arrays.asList(payload1, payload2, payload3);
+        store.addHitsAndSetAccesTime(statsUpdates).get();
+
+        List<TilePage> pages = store.getPagesToExpire(layerNames, ExpirationPolicy.LFU, null, 2);
+        assertEquals(Arrays.asList(page2, page1), pages);
+
+        // resume after the last page of the previous batch
+        pages = store.getPagesToExpire(layerNames, ExpirationPolicy.LFU, page1, 2);
+        assertEquals(Arrays.asList(page3), pages);
+
+        pages = store.getPagesToExpire(layerNames, ExpirationPolicy.LFU, page3, 2);
+        assertTrue(pages.isEmpty());
+
+        // truncated pages are skipped
+        store.setTruncated(page2);
+        pages = store.getPagesToExpire(layerNames, ExpirationPolicy.LFU, null, 10);
+        assertEquals(Arrays.asList(page1, page3), pages);
+    }
+
+    @Test
+    public void testGetPagesToExpireByCost() throws Exception {
+        Set<String> layerNames = Collections.singleton(testTileSet.getLayerName());
+
+        TilePage page1 = new TilePage(testTileSet.getId(), 0, 1, 2);
+        TilePage page2 = new TilePage(testTileSet.getId(), 1, 1, 2);
+        TilePage page3 = new TilePage(testTileSet.getId(), 2, 1, 2);
+        TilePage page4 = new TilePage(testTileSet.getId(), 3, 1, 2);
+        fillPages(page1, page2, page3);
+        addHits(page1, 100);
+        addHits(page2, 10);
+        addHits(page3, 1000);
+
+        List<TilePage> pages = store.getPagesToExpire(layerNames, ExpirationPolicy.COST, null, 10);
+        assertEquals(Arrays.asList(page2, page1, page3), pages);
+
+        // truncating inflates the priority of the pages used afterwards
+        store.setTruncated(page2);
+        fillPages(page4);
+        addHits(page4, 95);
+        pages = store.getPagesToExpire(layerNames, ExpirationPolicy.COST, null, 10);
+        assertEquals(Arrays.asList(page1, page4, page3), pages);
+    }
+
+    private void fillPages(TilePage... pages) throws InterruptedException {
+        List<PageStatsPayload> payloads = new ArrayList<>();
+        for (TilePage page : pages) {
+            PageStatsPayload payload = new PageStatsPayload(page);
+            payload.setNumTiles(10);
+            payload.addRenderTime(10, 1000);
+            payloads.add(payload);
+        }
+        store.addToQuotaAndTileCounts(testTileSet, new Quota(1, StorageUnit.MiB), payloads);
+    }
+
+    private void addHits(TilePage page, int hits) throws Exception {
+        PageStatsPayload payload = new PageStatsPayload(page, testTileSet);
+        payload.setNumHits(hits);
+        store.addHitsAndSetAccesTime(Collections.singletonList(payload)).get();
+    }
+
     @Test
     public void testGetLeastRecentlyUsedPage() throws Exception {
         MockSystemUtils mockSystemUtils = new MockSystemUtils();
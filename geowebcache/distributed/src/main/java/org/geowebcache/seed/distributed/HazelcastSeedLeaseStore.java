@@ -0,0 +1,48 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.seed.distributed;
+
+import com.hazelcast.core.HazelcastInstance;
+import org.geowebcache.seed.ConcurrentMapSeedLeaseStore;
+import org.geowebcache.seed.SeedLeaseStore;
+import org.geowebcache.storage.blobstore.memory.distributed.HazelcastLoader;
+
+/**
+ * {@link SeedLeaseStore} sharing the seed jobs and chunk leases among the cluster members through
+ * three Hazelcast distributed maps. Job and chunk state transitions rely on {@code
+ * IMap.replace(key, old, new)}, which is atomic cluster wide.
+ */
+public class HazelcastSeedLeaseStore extends ConcurrentMapSeedLeaseStore {
+
+    /** Name of the distributed map holding the job definitions */
+    public static final String JOBS_MAP = "gwc-seed-jobs";
+
+    /** Name of the distributed map holding the job progress states */
+    public static final String JOB_STATES_MAP = "gwc-seed-job-states";
+
+    /** Name of the distributed map holding the chunk lease states */
+    public static final String CHUNKS_MAP = "gwc-seed-chunks";
+
+    public HazelcastSeedLeaseStore(HazelcastLoader loader) {
+        this(loader.getInstance());
+    }
+
+    public HazelcastSeedLeaseStore(HazelcastInstance instance) {
+        super(
+                instance.getMap(JOBS_MAP),
+                instance.getMap(JOB_STATES_MAP),
+                instance.getMap(CHUNKS_MAP));
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.seed.distributed;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.instance.HazelcastInstanceFactory;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+import org.geowebcache.mime.ImageMime;
+import org.geowebcache.seed.DistributedSeedJob;
+import org.geowebcache.seed.DistributedSeedProgress;
+import org.geowebcache.seed.GWCTask.TYPE;
+import org.geowebcache.seed.SeedLease;
+import org.geowebcache.storage.TileRange;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** Checks chunk leases are shared, expired and reassigned among Hazelcast cluster members */
+public class HazelcastSeedLeaseStoreTest {
+
+    private static HazelcastInstance h1;
+
+    private static HazelcastInstance h2;
+
+    private static final AtomicLong clock = new AtomicLong(1000);
+
+    @BeforeClass
+    public static void initialSetup() {
+        h1 = HazelcastInstanceFactory.newHazelcastInstance(new Config());
+        h2 = HazelcastInstanceFactory.newHazelcastInstance(new Config());
+    }
+
+    @AfterClass
+    public static void finalTearDown() {
+        HazelcastInstanceFactory.terminateAll();
+    }
+
+    private HazelcastSeedLeaseStore store(HazelcastInstance instance) {
+        return new HazelcastSeedLeaseStore(instance) {
+            @Override
+            protected long currentTimeMillis() {
+                return clock.get();
+            }
+        };
+    }
+
+    @Test
+    public void testLeaseExpiryAndReassignment() {
+        HazelcastSeedLeaseStore node1 = store(h1);
+        HazelcastSeedLeaseStore node2 = store(h2);
+
+        // two zoom levels, 4x4 tiles each, one chunk per meta tile row
+        long[][] bounds = {{0, 0, 3, 3, 0}, {0, 0, 3, 3, 1}};
+        TileRange tr =
+                new TileRange(
+                        "layer",
+                        "EPSG:4326",
+                        0,
+                        1,
+                        bounds,
+                        ImageMime.png,
+                        Collections.<String, String>emptyMap());
+        DistributedSeedJob job =
+                DistributedSeedJob.create("job1", tr, TYPE.SEED, 1, new int[] {2, 2}, 8);
+        assertEquals(4, job.getChunkCount());
+        assertEquals(32, job.getTilesTotal());
+        node1.createJob(job);
+        assertNotNull(node2.getJob("job1"));
+
+        // node 1 takes everything
+        SeedLease[] leases = new SeedLease[4];
+        for (int i = 0; i < 4; i++) {
+            leases[i] = node1.acquire("job1", "node1", 100);
+            assertNotNull(leases[i]);
+        }
+        assertNull(node2.acquire("job1", "node2", 100));
+
+        // completes a chunk, then dies
+        assertTrue(node1.complete(leases[0], job.getChunkTiles(leases[0].getChunk())));
+        assertTrue(node1.renew(leases[1], 100));
+        clock.addAndGet(150);
+
+        // node 2 picks up the expired chunks
+        for (int i = 0; i < 3; i++) {
+            SeedLease lease = node2.acquire("job1", "node2", 100);
+            assertNotNull(lease);
+            assertTrue(node2.complete(lease, job.getChunkTiles(lease.getChunk())));
+        }
+        assertNull(node2.acquire("job1", "node2", 100));
+
+        // stale leases of node 1 can't be used anymore
+        assertFalse(node1.renew(leases[1], 100));
+        assertFalse(node1.complete(leases[2], 8));
+
+        DistributedSeedProgress progress = node1.getProgress("job1");
+        assertTrue(progress.isFinished());
+        assertEquals(32, progress.getTilesDone());
+        assertEquals(Long.valueOf(8), progress.getTilesDoneByNode().get("node1"));
+        assertEquals(Long.valueOf(24), progress.getTilesDoneByNode().get("node2"));
+
+        node2.removeJob("job1");
+        assertNull(node1.getJob("job1"));
+        assertNull(node1.getProgress("job1"));
+    }
+}
@@ -35,7 +35,7 @@ import org.geowebcache.seed.GWCTask;
 import org.geowebcache.seed.GWCTask.STATE;
 import org.geowebcache.seed.TileBreeder;
 import org.geowebcache.storage.DiscontinuousTileRange;
-import org.geowebcache.storage.RasterMask;
+import org.geowebcache.storage.SparseTileMask;
 import org.geowebcache.storage.StorageBroker;
 
 /**
@@ -251,12 +251,7 @@ class GeoRSSPollTask implements Runnable {
 
         GridSubset gridSub = layer.getGridSubset(gridSetId);
 
-        long[][] fullCoverage = gridSub.getCoverages();
-        long[][] coveredBounds = tileRangeMask.getCoveredBounds();
-
-        BufferedImage[] byLevelMasks = tileRangeMask.getByLevelMasks();
-
-        RasterMask rasterMask = new RasterMask(byLevelMasks, fullCoverage, coveredBounds);
+        SparseTileMask rasterMask = tileRangeMask.getTileMask();
 
         List<MimeType> mimeList = null;
 
@@ -21,6 +21,8 @@ import java.awt.RenderingHints;
 import java.awt.Shape;
 import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.geotools.coverage.grid.GridEnvelope2D;
@@ -30,6 +32,7 @@ import org.geotools.geometry.jts.LiteShape;
 import org.geotools.referencing.operation.builder.GridToEnvelopeMapper;
 import org.geowebcache.grid.BoundingBox;
 import org.geowebcache.grid.GridSubset;
+import org.geowebcache.storage.SparseTileMask;
 import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
 import org.opengis.geometry.MismatchedDimensionException;
@@ -40,6 +43,10 @@ import org.opengis.referencing.operation.TransformException;
 /**
  * An object that builds a mask of tiles affected by geometries
  *
+ * <p>Geometries are rasterized in small image chunks covering only their own bounds and the set
+ * pixels are accumulated in a {@link SparseTileMask}, so memory usage depends on the area covered
+ * by the geometries rather than on the number of tiles in the masked levels.
+ *
  * @author Gabriel Roldan (OpenGeo)
  * @see org.geowebcache.georss.GeoRSSTileRangeBuilder
  */
@@ -53,13 +60,19 @@ public class GeometryRasterMaskBuilder {
 
     private static final AffineTransform IDENTITY = new AffineTransform();
 
+    /** Size in pixels of the square image chunks geometries are rasterized into */
+    private static final int CHUNK_SIZE = 512;
+
     /**
-     * By zoom level bitmasked images where every pixel represents a tile in the level's {@link
+     * By zoom level bitmask where every bit represents a tile in the level's {@link
      * GridSubset#getCoverages() grid coverage}
      */
-    private final BufferedImage[] byLevelMasks;
+    private final SparseTileMask tileMask;
+
+    /** By zoom level size, in tiles, of the masked area */
+    private final int[] levelWidths;
 
-    private Graphics2D[] graphics;
+    private final int[] levelHeights;
 
     /**
      * Aggregated bounds of all the geometries sent to {@link #setMasksForGeometry}, in grid
@@ -86,38 +99,27 @@ public class GeometryRasterMaskBuilder {
         final int numLevels = gridSubset.getCoverages().length;
         final int endLevel = numLevels - 1;
 
-        byLevelMasks = new BufferedImage[numLevels];
+        tileMask = new SparseTileMask(gridSubset.getCoverages(), maxMaskLevel);
+        levelWidths = new int[numLevels];
+        levelHeights = new int[numLevels];
         transformCache = new MathTransform[numLevels];
 
-        for (int level = startLevel; level <= endLevel; level++) {
-            if (level > maxMaskLevel) {
-                byLevelMasks[level] = null;
-            } else {
-                final long[] levelBounds = getGridCoverage(level);
-                final long tilesX = (levelBounds[2] + 1) - levelBounds[0];
-                final long tilesY = (levelBounds[3] + 1) - levelBounds[1];
-                final long numTiles = tilesX * tilesY;
-
-                if (tilesX >= Integer.MAX_VALUE
-                        || tilesY >= Integer.MAX_VALUE
-                        || numTiles >= Integer.MAX_VALUE) {
-                    // this is so because the image's sample model can't cope up with more than
-                    // Integer.MAX_VALUE pixels
-                    throw new IllegalStateException(
-                            "Masking level "
-                                    + level
-                                    + " would produce a backing image of too many tiles!"
-                                    + " Consider setting a lower maxMaskLevel ");
-                }
-
-                // BufferedImage with 1-bit per pixel sample model
-                BufferedImage mask =
-                        new BufferedImage(
-                                (int) tilesX, (int) tilesY, BufferedImage.TYPE_BYTE_BINARY);
-                byLevelMasks[level] = mask;
+        for (int level = startLevel; level <= endLevel && level <= maxMaskLevel; level++) {
+            final long[] levelBounds = getGridCoverage(level);
+            final long tilesX = (levelBounds[2] + 1) - levelBounds[0];
+            final long tilesY = (levelBounds[3] + 1) - levelBounds[1];
+
+            if (tilesX >= Integer.MAX_VALUE || tilesY >= Integer.MAX_VALUE) {
+                // this is so because the rasterization works in integer pixel coordinates
+                throw new IllegalStateException(
+                        "Masking level "
+                                + level
+                                + " would produce a mask of too many tiles!"
+                                + " Consider setting a lower maxMaskLevel ");
             }
+            levelWidths[level] = (int) tilesX;
+            levelHeights[level] = (int) tilesY;
         }
-        createGraphics();
     }
 
     private long[] getGridCoverage(final int level) {
@@ -178,18 +180,75 @@ public class GeometryRasterMaskBuilder {
             // shape used identity transform, as the geometry is already projected
             Shape shape = new LiteShape(bufferedGeomInGridCrs, IDENTITY, generalize);
 
-            Graphics2D graphics = getGraphics(level);
-            /*
-             * Disable antialiasing explicitly, otherwise the rendering will pick the platform's
-             * default potentially producing missing pixels
-             */
-            graphics.setRenderingHint(
-                    RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
-            graphics.setColor(Color.WHITE);
-            graphics.fill(shape);
+            rasterize(shape, level);
+        }
+    }
+
+    /**
+     * Fills the shape on the level mask. The shape is in the coordinates of the level mask image,
+     * that is, with the origin at the top left corner.
+     */
+    private void rasterize(final Shape shape, final int level) {
+        final int width = levelWidths[level];
+        final int height = levelHeights[level];
+        final Rectangle bounds = shape.getBounds().intersection(new Rectangle(width, height));
+        if (bounds.isEmpty()) {
+            return;
+        }
+        final int maxX = bounds.x + bounds.width;
+        final int maxY = bounds.y + bounds.height;
+        for (int chunkY = bounds.y; chunkY < maxY; chunkY += CHUNK_SIZE) {
+            final int h = Math.min(CHUNK_SIZE, maxY - chunkY);
+            for (int chunkX = bounds.x; chunkX < maxX; chunkX += CHUNK_SIZE) {
+                final int w = Math.min(CHUNK_SIZE, maxX - chunkX);
+                if (!shape.intersects(chunkX, chunkY, w, h)) {
+                    continue;
+                }
+                if (shape.contains(chunkX, chunkY, w, h)) {
+                    // all pixel centers are inside the shape, no need to render
+                    setPixels(chunkX, chunkY, chunkX + w - 1, chunkY + h - 1, level);
+                    continue;
+                }
+                BufferedImage chunk = new BufferedImage(w, h, BufferedImage.TYPE_BYTE_BINARY);
+                Graphics2D graphics = chunk.createGraphics();
+                try {
+                    /*
+                     * Disable antialiasing explicitly, otherwise the rendering will pick the
+                     * platform's default potentially producing missing pixels
+                     */
+                    graphics.setRenderingHint(
+                            RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+                    graphics.setColor(Color.WHITE);
+                    graphics.translate(-chunkX, -chunkY);
+                    graphics.fill(shape);
+                } finally {
+                    graphics.dispose();
+                }
+                final Raster raster = chunk.getRaster();
+                for (int py = 0; py < h; py++) {
+                    // set runs of pixels at once
+                    int runStart = -1;
+                    for (int px = 0; px <= w; px++) {
+                        boolean set = px < w && raster.getSample(px, py, 0) != 0;
+                        if (set && runStart < 0) {
+                            runStart = px;
+                        } else if (!set && runStart >= 0) {
+                            int y = chunkY + py;
+                            setPixels(chunkX + runStart, y, chunkX + px - 1, y, level);
+                            runStart = -1;
+                        }
+                    }
+                }
+            }
         }
     }
 
+    /** Sets the tiles for the given inclusive pixel bounds, flipping the y axis */
+    private void setPixels(int minx, int miny, int maxx, int maxy, int level) {
+        final int height = levelHeights[level];
+        tileMask.setRange(minx, (height - 1) - maxy, maxx, (height - 1) - miny, level);
+    }
+
     private Geometry transformToGridCrs(final Geometry geometryInLayerCrs, final int zoomLevel) {
         final MathTransform worldToGrid;
         if (transformCache[zoomLevel] == null) {
@@ -264,32 +323,16 @@ public class GeometryRasterMaskBuilder {
         return worldToScreen;
     }
 
-    private Graphics2D getGraphics(int level) {
-        return graphics[level];
-    }
-
+    /** @deprecated masks are rasterized in chunks that are disposed right away, this is a no-op */
+    @Deprecated
     public void disposeGraphics() {
-        if (graphics == null) {
-            return;
-        }
-        final int numLevels = getNumLevels();
-        for (int level = 0; level < numLevels; level++) {
-            if (graphics[level] != null) {
-                graphics[level].dispose();
-            }
-        }
-        graphics = null;
+        // nothing to do
     }
 
+    /** @deprecated masks are rasterized in chunks that are disposed right away, this is a no-op */
+    @Deprecated
     public void createGraphics() {
-        final int numLevels = getNumLevels();
-        graphics = new Graphics2D[numLevels];
-        for (int level = 0; level < numLevels; level++) {
-            BufferedImage bufferedImage = byLevelMasks[level];
-            if (bufferedImage != null) {
-                graphics[level] = bufferedImage.createGraphics();
-            }
-        }
+        // nothing to do
     }
 
     public int getStartLevel() {
@@ -299,7 +342,7 @@ public class GeometryRasterMaskBuilder {
     }
 
     public int getNumLevels() {
-        return byLevelMasks.length;
+        return levelWidths.length;
     }
 
     public synchronized long[][] getCoveredBounds() {
@@ -353,7 +396,17 @@ public class GeometryRasterMaskBuilder {
     }
 
     /**
-     * Package visible method for testing purposes only!
+     * Returns the mask of the tiles set so far, with the grid coverages set to the {@link
+     * #getCoveredBounds() covered bounds}
+     */
+    public synchronized SparseTileMask getTileMask() {
+        tileMask.setGridCoverages(getCoveredBounds());
+        return tileMask;
+    }
+
+    /**
+     * Renders the masks as images, where each pixel represents a tile, for testing and debugging
+     * purposes only! These images can be huge on high zoom levels.
      *
      * @return
      */
@@ -361,7 +414,18 @@ public class GeometryRasterMaskBuilder {
         final int numMaskedLevels = Math.min(getNumLevels(), maxMaskLevel + 1);
         BufferedImage[] maskedLevels = new BufferedImage[numMaskedLevels];
         for (int level = 0; level < numMaskedLevels; level++) {
-            maskedLevels[level] = byLevelMasks[level];
+            final int width = levelWidths[level];
+            final int height = levelHeights[level];
+            BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_BINARY);
+            WritableRaster raster = image.getRaster();
+            for (int y = 0; y < height; y++) {
+                long x = tileMask.nextSetColumn(0, y, width - 1, y, level);
+                while (x >= 0) {
+                    raster.setSample((int) x, (height - 1) - y, 0, 1);
+                    x = tileMask.nextSetColumn(x + 1, y, width - 1, y, level);
+                }
+            }
+            maskedLevels[level] = image;
         }
         return maskedLevels;
     }
@@ -19,6 +19,7 @@ import org.geowebcache.grid.BoundingBox;
 import org.geowebcache.grid.GridSetBroker;
 import org.geowebcache.layer.TileLayer;
 import org.geowebcache.storage.RasterMask;
+import org.geowebcache.storage.SparseTileMask;
 import org.geowebcache.util.TestUtils;
 
 public class RasterMaskTest extends TestCase {
@@ -157,4 +158,26 @@ public class RasterMaskTest extends TestCase {
         assertEquals(true, tileRangeMask.lookup(31, 22, 5)); // point's bottom left
         assertEquals(true, tileRangeMask.lookup(33, 22, 5)); // point's bottom right
     }
+
+    /** The sparse mask must give the same answers as the image based one it replaces */
+    public void testSparseMaskMatchesRasterMask() throws Exception {
+        final int maxMaskLevel = 5;
+        GeometryRasterMaskBuilder mask =
+                RasterMaskTestUtils.buildSampleFilterMatrix(layer, gridsetId, maxMaskLevel);
+        RasterMask rasterMask =
+                new RasterMask(mask.getByLevelMasks(), fullCoverage, mask.getCoveredBounds());
+        SparseTileMask sparseMask = mask.getTileMask();
+
+        for (int z = 0; z < fullCoverage.length; z++) {
+            long[] coverage = fullCoverage[z];
+            for (long x = coverage[0]; x <= coverage[2]; x++) {
+                for (long y = coverage[1]; y <= coverage[3]; y++) {
+                    assertEquals(
+                            x + "," + y + "," + z,
+                            rasterMask.lookup(x, y, z),
+                            sparseMask.lookup(x, y, z));
+                }
+            }
+        }
+    }
 }
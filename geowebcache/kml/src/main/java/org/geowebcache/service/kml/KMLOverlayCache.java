@@ -0,0 +1,243 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.service.kml;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import javax.annotation.Nullable;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.geowebcache.GeoWebCacheExtensions;
+import org.geowebcache.config.TileLayerConfigurationListener;
+import org.geowebcache.filter.parameters.ParametersUtils;
+import org.geowebcache.io.ByteArrayResource;
+import org.geowebcache.io.Resource;
+import org.geowebcache.layer.TileLayer;
+import org.geowebcache.layer.TileLayerDispatcher;
+import org.geowebcache.mime.ImageMime;
+import org.geowebcache.mime.MimeType;
+import org.geowebcache.mime.XMLMime;
+import org.geowebcache.storage.StorageBroker;
+import org.geowebcache.storage.StorageException;
+import org.geowebcache.storage.TileObject;
+
+/**
+ * Stores the KML overlay documents of raster layers in the blob store, as {@link XMLMime#kml}
+ * tiles of the layer, so that they are built once instead of on each request.
+ *
+ * <p>The documents are kept as templates where the absolute URL of the service, the extension of
+ * the image format and the extension of the wrapper are replaced by {@link #URL_PREFIX}, {@link
+ * #FORMAT_EXTENSION} and {@link #WRAPPER_EXTENSION}, so a single document serves all the formats
+ * of the layer. The overlays of a raster pyramid only depend on the layer configuration and on its
+ * grid subsets, not on the images, so they are left alone when images are truncated and deleted
+ * when the layer is modified or renamed.
+ *
+ * <p>The documents are stored under their own parameters, {@link #OVERLAY_PARAMETERS}, apart from
+ * the tiles of the layer, so that they can be dropped with a single {@link
+ * StorageBroker#deleteByParametersId(String, String)} call, in the background, instead of walking
+ * the grid subsets of the layer.
+ *
+ * <p>Layers offering {@link XMLMime#kml} build their regionated KML overlays on each request.
+ *
+ * <p>Setting {@link #ENABLED_PROPERTY} to {@code false} builds the documents on each request.
+ */
+class KMLOverlayCache implements TileLayerConfigurationListener {
+
+    private static Log log = LogFactory.getLog(KMLOverlayCache.class);
+
+    /** Set to {@code false} to disable the overlay cache */
+    public static final String ENABLED_PROPERTY = "GEOWEBCACHE_KML_OVERLAY_CACHE";
+
+    /** Placeholder for the request dependent URL prefix in the cached documents */
+    static final String URL_PREFIX = "${gwc.kml.urlPrefix}";
+
+    /** Placeholder for the extension of the image format in the cached documents */
+    static final String FORMAT_EXTENSION = "${gwc.kml.format}";
+
+    /** Placeholder for the extension of the wrapper format in the cached documents */
+    static final String WRAPPER_EXTENSION = "${gwc.kml.wrapper}";
+
+    /** The parameters the overlay documents are stored under */
+    static final Map<String, String> OVERLAY_PARAMETERS =
+            Collections.singletonMap("GWC_KML_OVERLAY", "true");
+
+    static final String OVERLAY_PARAMETERS_ID = ParametersUtils.getId(OVERLAY_PARAMETERS);
+
+    private final StorageBroker sb;
+
+    private final boolean enabled;
+
+    private ExecutorService deleteExecutorService;
+
+    public KMLOverlayCache(StorageBroker sb, TileLayerDispatcher tld) {
+        this(
+                sb,
+                tld,
+                !"false".equalsIgnoreCase(GeoWebCacheExtensions.getProperty(ENABLED_PROPERTY)));
+    }
+
+    public KMLOverlayCache(StorageBroker sb, TileLayerDispatcher tld, boolean enabled) {
+        this.sb = sb;
+        this.enabled = enabled && sb != null;
+        if (this.enabled && tld != null) {
+            tld.addListener(this);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return whether the overlays of the layer in the given format can be stored, that is the
+     *     format is an image and the layer does not store regionated KML
+     */
+    public boolean isCacheable(TileLayer layer, MimeType mimeType) {
+        return enabled && mimeType instanceof ImageMime && !isRegionated(layer);
+    }
+
+    private static boolean isRegionated(TileLayer layer) {
+        List<MimeType> mimeTypes = layer.getMimeTypes();
+        return mimeTypes == null || mimeTypes.contains(XMLMime.kml);
+    }
+
+    /** @return the cached overlay of a tile with the placeholders filled in, or {@code null} */
+    @Nullable
+    public String getOverlay(
+            String layerName,
+            String gridSetId,
+            long[] index,
+            String urlPrefix,
+            String formatExtension,
+            String wrapperExtension) {
+        if (!enabled) {
+            return null;
+        }
+        TileObject obj = overlayTile(layerName, gridSetId, index, null);
+        try {
+            if (!sb.get(obj)) {
+                return null;
+            }
+            return fill(toString(obj.getBlob()), urlPrefix, formatExtension, wrapperExtension);
+        } catch (StorageException | IOException e) {
+            log.warn("Unable to read cached KML overlay " + obj + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /** Caches the overlay of a tile, built with the placeholders of this class */
+    public void putOverlay(String layerName, String gridSetId, long[] index, String template) {
+        if (!enabled) {
+            return;
+        }
+        Resource blob = new ByteArrayResource(template.getBytes(StandardCharsets.UTF_8));
+        TileObject obj = overlayTile(layerName, gridSetId, index, blob);
+        try {
+            sb.put(obj);
+        } catch (StorageException e) {
+            log.warn("Unable to cache KML overlay " + obj + ": " + e.getMessage());
+        }
+    }
+
+    /** @return the template with the placeholders replaced by the given values */
+    static String fill(
+            String template, String urlPrefix, String formatExtension, String wrapperExtension) {
+        return template.replace(URL_PREFIX, urlPrefix)
+                .replace(FORMAT_EXTENSION, formatExtension)
+                .replace(WRAPPER_EXTENSION, wrapperExtension);
+    }
+
+    private static TileObject overlayTile(
+            String layerName, String gridSetId, long[] index, @Nullable Resource blob) {
+        long[] xyz = index.clone();
+        String format = XMLMime.kml.getFormat();
+        Map<String, String> params = OVERLAY_PARAMETERS;
+        if (blob == null) {
+            return TileObject.createQueryTileObject(layerName, xyz, gridSetId, format, params);
+        }
+        return TileObject.createCompleteTileObject(layerName, xyz, gridSetId, format, params, blob);
+    }
+
+    private static String toString(Resource blob) throws IOException {
+        try (InputStream in = blob.getInputStream()) {
+            return IOUtils.toString(in, StandardCharsets.UTF_8);
+        }
+    }
+
+    private synchronized ExecutorService getDeleteExecutorService() {
+        if (deleteExecutorService == null) {
+            ThreadFactory tf =
+                    new ThreadFactoryBuilder()
+                            .setDaemon(true)
+                            .setNameFormat("GWC KML overlay delete thread-%d")
+                            .build();
+            deleteExecutorService = Executors.newSingleThreadExecutor(tf);
+        }
+        return deleteExecutorService;
+    }
+
+    /**
+     * Deletes the overlays of a layer in the background, so that configuration changes don't wait
+     * for the blob store
+     *
+     * @return the pending deletion
+     */
+    Future<?> deleteAll(String layerName) {
+        return getDeleteExecutorService()
+                .submit(
+                        () -> {
+                            try {
+                                sb.deleteByParametersId(layerName, OVERLAY_PARAMETERS_ID);
+                            } catch (StorageException e) {
+                                log.warn(
+                                        "Unable to delete cached KML overlays of "
+                                                + layerName
+                                                + ": "
+                                                + e.getMessage());
+                            }
+                        });
+    }
+
+    @Override
+    public void handleAddLayer(TileLayer layer) {
+        // nothing to do
+    }
+
+    @Override
+    public void handleRemoveLayer(String layerName) {
+        // the documents are deleted with the layer
+    }
+
+    @Override
+    public void handleModifyLayer(TileLayer layer) {
+        deleteAll(layer.getName());
+    }
+
+    @Override
+    public void handleRenameLayer(String oldName, String newName) {
+        // the documents contain the layer name
+        deleteAll(newName);
+    }
+}
@@ -16,6 +16,7 @@ package org.geowebcache.service.kml;
 
 import java.io.IOException;
 import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Objects;
 import javax.servlet.http.HttpServletRequest;
@@ -24,6 +25,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.geowebcache.GeoWebCacheException;
 import org.geowebcache.conveyor.Conveyor;
+import org.geowebcache.conveyor.Conveyor.CacheResult;
 import org.geowebcache.conveyor.ConveyorTile;
 import org.geowebcache.filter.security.SecurityDispatcher;
 import org.geowebcache.grid.BoundingBox;
@@ -60,6 +62,8 @@ public class KMLService extends Service {
 
     public static final String HINT_SITEMAP_GLOBAL = "sitemap_global";
 
+    public static final String HINT_SITEMAP_PAGE = "sitemap_page";
+
     private StorageBroker sb;
 
     private TileLayerDispatcher tld;
@@ -70,6 +74,8 @@ public class KMLService extends Service {
 
     private SecurityDispatcher secDispatcher;
 
+    private KMLOverlayCache overlayCache;
+
     /** Protected no-argument constructor to allow run-time instrumentation */
     protected KMLService() {
         super(SERVICE_KML);
@@ -83,6 +89,7 @@ public class KMLService extends Service {
         this.tld = tld;
         this.gsb = gsb;
         this.stats = stats;
+        this.overlayCache = new KMLOverlayCache(sb, tld);
     }
 
     /**
@@ -153,15 +160,25 @@ public class KMLService extends Service {
 
         long[] gridLoc = {-1, -1, -1};
 
+        // Sitemap index ? kml/sitemap.xml, it does not refer to any layer
+        final boolean globalSiteMap =
+                parsed[0].equalsIgnoreCase("sitemap") && parsed[2].equalsIgnoreCase("xml");
+        // Sitemap of a part of a layer ? kml/prefix:layername/sitemap_top.xml
+        final boolean siteMapPage = parsed[1].startsWith(KMLSiteMap.PAGE_PREFIX);
+
         // Do we have a key for the grid location?
-        if (parsed[1].length() > 0) {
+        if (siteMapPage) {
+            gridLoc =
+                    KMLSiteMap.parsePageName(
+                            parsed[1].substring(KMLSiteMap.PAGE_PREFIX.length()));
+        } else if (parsed[1].length() > 0) {
             gridLoc = KMLService.parseGridLocString(parsed[1]);
         }
 
         ConveyorKMLTile tile =
                 new ConveyorKMLTile(
                         sb,
-                        parsed[0],
+                        globalSiteMap ? null : parsed[0],
                         gsb.getWorldEpsg4326().getName(),
                         gridLoc,
                         MimeType.createFromExtension(parsed[2]),
@@ -169,8 +186,7 @@ public class KMLService extends Service {
                         request,
                         response);
 
-        // Sitemap index ? kml/sitemap.xml
-        if (parsed[0].equalsIgnoreCase("sitemap") && parsed[2].equalsIgnoreCase("xml")) {
+        if (globalSiteMap) {
             tile.setHint(HINT_SITEMAP_GLOBAL);
             String tmpUrl = urlPrefix(request.getRequestURL().toString(), parsed);
             tile.setUrlPrefix(tmpUrl.substring(0, tmpUrl.length() - "sitemap".length()));
@@ -179,8 +195,8 @@ public class KMLService extends Service {
         }
 
         // Sitemap ? kml/prefix:layername/sitemap.xml
-        if (parsed[1].equalsIgnoreCase(HINT_SITEMAP_LAYER)) {
-            tile.setHint(HINT_SITEMAP_LAYER);
+        if (parsed[1].equalsIgnoreCase(HINT_SITEMAP_LAYER) || siteMapPage) {
+            tile.setHint(siteMapPage ? HINT_SITEMAP_PAGE : HINT_SITEMAP_LAYER);
             tile.setUrlPrefix(urlPrefix(request.getRequestURL().toString(), parsed));
             tile.setRequestHandler(ConveyorTile.RequestHandler.SERVICE);
             return tile;
@@ -249,15 +265,17 @@ public class KMLService extends Service {
             }
         }
 
-        // if(tile.getHint() == HINT_SITEMAP_LAYER || tile.getHint() == HINT_SITEMAP_GLOBAL) {
-        // KMLSiteMap sm = new KMLSiteMap(tile,tld);
-        // try {
-        // sm.write();
-        // } catch (IOException ioe) {
-        // throw new GeoWebCacheException("Unable to write sitemap: " + ioe.getMessage());
-        // }
-        // return;
-        // }
+        if (tile.getHint() == HINT_SITEMAP_LAYER
+                || tile.getHint() == HINT_SITEMAP_GLOBAL
+                || tile.getHint() == HINT_SITEMAP_PAGE) {
+            KMLSiteMap sm = new KMLSiteMap(tile, tld, gsb, getSecurityDispatcher());
+            try {
+                sm.write();
+            } catch (IOException ioe) {
+                throw new GeoWebCacheException("Unable to write sitemap: " + ioe.getMessage());
+            }
+            return;
+        }
 
         if (tile.getTileIndex()[2] == -1) {
             // No tile index -> super overlay
@@ -450,13 +468,13 @@ public class KMLService extends Service {
 
         // Sigh....
         if (!packageData) {
-            String overlayXml = createOverlay(tile, false);
-            tile.setBlob(new ByteArrayResource(overlayXml.getBytes()));
+            String overlayXml = getOverlay(tile, false);
+            tile.setBlob(new ByteArrayResource(overlayXml.getBytes(StandardCharsets.UTF_8)));
             tile.setStatus(200);
             // tileLayer.putTile(tile);
         } else {
             // Get the overlay
-            String overlayXml = createOverlay(tile, true);
+            String overlayXml = getOverlay(tile, true);
 
             // Get the data (cheat)
             try {
@@ -480,7 +498,7 @@ public class KMLService extends Service {
                     KMZHelper.createZippedKML(
                             gridLocString(tile.getTileIndex()),
                             tile.getMimeType().getFileExtension(),
-                            overlayXml.getBytes(),
+                            overlayXml.getBytes(StandardCharsets.UTF_8),
                             tile.getBlob());
 
             tile.setBlob(new ByteArrayResource(zip));
@@ -494,6 +512,61 @@ public class KMLService extends Service {
         writeTileResponse(tile, true, stats, mimeStr);
     }
 
+    /**
+     * Returns the overlay of the tile from the overlay cache, creating and caching it if missing
+     *
+     * @param tile
+     * @param isPackaged
+     * @return The KML of the overlay
+     */
+    private String getOverlay(ConveyorKMLTile tile, boolean isPackaged)
+            throws GeoWebCacheException {
+        String formatExtension = tile.getMimeType().getFileExtension();
+        String wrapperExtension = tile.getWrapperMimeType().getFileExtension();
+        if (!isOverlayCacheable(tile)) {
+            tile.setCacheResult(CacheResult.MISS);
+            return createOverlay(
+                    tile, isPackaged, tile.getUrlPrefix(), formatExtension, wrapperExtension);
+        }
+        String layerName = tile.getLayer().getName();
+        String gridSetId = tile.getGridSubset().getName();
+
+        String xml =
+                overlayCache.getOverlay(
+                        layerName,
+                        gridSetId,
+                        tile.getTileIndex(),
+                        tile.getUrlPrefix(),
+                        formatExtension,
+                        wrapperExtension);
+        if (xml != null) {
+            tile.setCacheResult(CacheResult.HIT);
+            return xml;
+        }
+        String template =
+                createOverlay(
+                        tile,
+                        isPackaged,
+                        KMLOverlayCache.URL_PREFIX,
+                        KMLOverlayCache.FORMAT_EXTENSION,
+                        KMLOverlayCache.WRAPPER_EXTENSION);
+        overlayCache.putOverlay(layerName, gridSetId, tile.getTileIndex(), template);
+        tile.setCacheResult(CacheResult.MISS);
+        return KMLOverlayCache.fill(
+                template, tile.getUrlPrefix(), formatExtension, wrapperExtension);
+    }
+
+    /**
+     * The overlays link to the child tiles the user is allowed to see, so they can only be shared
+     * when security is disabled
+     */
+    private boolean isOverlayCacheable(ConveyorKMLTile tile) {
+        return overlayCache != null
+                && overlayCache.isCacheable(tile.getLayer(), tile.getMimeType())
+                && !(tile.getLayer() instanceof KMLDebugGridLayer)
+                && (secDispatcher == null || !secDispatcher.isSecurityEnabled());
+    }
+
     private String getMimeTypeOverride(ConveyorKMLTile tile) {
         String mimeStr = null;
         if (tile.getWrapperMimeType() != null) {
@@ -508,11 +581,19 @@ public class KMLService extends Service {
      *
      * @param tile
      * @param isPackaged
+     * @param urlPrefix the prefix of the links to the child overlays
+     * @param formatExtension the extension of the data format in the links
+     * @param wrapperExtension the extension of the wrapper format in the links
      * @return The html for the overlay element
      * @throws ServiceException
      * @throws GeoWebCacheException
      */
-    private String createOverlay(ConveyorKMLTile tile, boolean isPackaged)
+    private String createOverlay(
+            ConveyorKMLTile tile,
+            boolean isPackaged,
+            String urlPrefix,
+            String formatExtension,
+            String wrapperExtension)
             throws ServiceException, GeoWebCacheException {
         boolean isRaster = (tile.getMimeType() instanceof ImageMime);
 
@@ -568,12 +649,12 @@ public class KMLService extends Service {
 
                 // Always use absolute URLs for these
                 String gridLocUrl =
-                        tile.getUrlPrefix()
+                        urlPrefix
                                 + gridLocStr
                                 + "."
-                                + tile.getMimeType().getFileExtension()
+                                + formatExtension
                                 + "."
-                                + tile.getWrapperMimeType().getFileExtension();
+                                + wrapperExtension;
 
                 buf.append(
                         createNetworkLinkElement(
@@ -589,14 +670,14 @@ public class KMLService extends Service {
             buf.append(
                     createGroundOverLayElement(
                             gridLoc,
-                            tile.getUrlPrefix(),
+                            urlPrefix,
                             bbox,
-                            tile.getMimeType().getFileExtension(),
+                            formatExtension,
                             refreshTags));
         } else {
             // KML
             String gridLocStr = gridLocString(gridLoc);
-            String gridLocUrl = gridLocStr + "." + tile.getMimeType().getFileExtension();
+            String gridLocUrl = gridLocStr + "." + formatExtension;
 
             if (isPackaged) {
                 gridLocUrl = "data_" + gridLocUrl;
@@ -14,12 +14,24 @@
  */
 package org.geowebcache.service.kml;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.util.LinkedList;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
 import java.util.Set;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.geowebcache.GeoWebCacheException;
+import org.geowebcache.conveyor.ConveyorTile;
+import org.geowebcache.filter.request.GreenTileException;
+import org.geowebcache.filter.request.RequestFilterException;
 import org.geowebcache.filter.security.SecurityDispatcher;
 import org.geowebcache.grid.GridSetBroker;
 import org.geowebcache.grid.GridSubset;
@@ -28,13 +40,58 @@ import org.geowebcache.layer.TileLayerDispatcher;
 import org.geowebcache.mime.MimeType;
 import org.geowebcache.mime.XMLMime;
 import org.geowebcache.storage.StorageBroker;
+import org.geowebcache.storage.TileObject;
 
+/**
+ * Writes the sitemaps of the regionated KML layers, streaming them to the response as the cached
+ * tiles are found.
+ *
+ * <p>The sitemap of a layer is a sitemap index, pointing to a {@link #TOP_PAGE} sitemap with the
+ * tiles of the first {@link #TOP_LEVELS} levels of the pyramid, and to one sitemap per cached tile
+ * of every {@link #PAGE_LEVELS}th level below, each listing the tiles of the next {@link
+ * #PAGE_LEVELS} levels under its tile. A sitemap thus never holds more than {@link #MAX_URLS}
+ * tiles, however deep the pyramid. The pyramid is walked breadth first, descending only into
+ * cached tiles and looking them up in batches. Sitemaps only walk their own levels, the sitemap
+ * index walks the levels above the deepest sitemap.
+ */
 public class KMLSiteMap {
+
+    private static Log log = LogFactory.getLog(KMLSiteMap.class);
+
+    /** Maximum number of URLs in a sitemap, as allowed by the sitemaps protocol */
+    static final int MAX_URLS = 50000;
+
+    /** Number of levels listed in the top sitemap of a layer */
+    static final int TOP_LEVELS = 4;
+
+    /**
+     * Number of levels listed in the other sitemaps of a layer, their tile and up to 21845 tiles
+     * below it, within {@link #MAX_URLS}
+     */
+    static final int PAGE_LEVELS = 8;
+
+    /** Number of tiles looked up in the storage at once */
+    static final int BATCH_SIZE = 256;
+
+    /** Prefix of the name of the sitemaps listed in the sitemap index of a layer */
+    static final String PAGE_PREFIX = "sitemap_";
+
+    static final String TOP_PAGE = "top";
+
     private ConveyorKMLTile tile = null;
     private TileLayerDispatcher tLD = null;
     private StorageBroker storageBroker;
     private GridSetBroker gridSetBroker;
     private SecurityDispatcher secDispatcher;
+    private int topLevels = TOP_LEVELS;
+    private int pageLevels = PAGE_LEVELS;
+
+    /** Receives the cached tiles found while walking the pyramid */
+    @FunctionalInterface
+    interface TileVisitor {
+        /** @return false to stop the walk */
+        boolean visit(long[] gridLoc) throws IOException;
+    }
 
     public KMLSiteMap(
             ConveyorKMLTile tile,
@@ -48,39 +105,52 @@ public class KMLSiteMap {
         this.secDispatcher = secDispatcher;
     }
 
+    /** Changes the number of levels of the sitemaps, for testing */
+    void setLevels(int topLevels, int pageLevels) {
+        this.topLevels = topLevels;
+        this.pageLevels = pageLevels;
+    }
+
+    /**
+     * @param pageName the name of a sitemap listed in the sitemap index of a layer, without the
+     *     {@link #PAGE_PREFIX}
+     * @return the tile the sitemap starts from, or {-1, -1, -1} for the {@link #TOP_PAGE}
+     */
+    static long[] parsePageName(String pageName) throws GeoWebCacheException {
+        if (TOP_PAGE.equals(pageName)) {
+            return new long[] {-1, -1, -1};
+        }
+        long[] gridLoc = KMLService.parseGridLocString(pageName);
+        if (gridLoc[2] < 0) {
+            throw new GeoWebCacheException("Unknown sitemap " + pageName);
+        }
+        return gridLoc;
+    }
+
     public void write() throws GeoWebCacheException, IOException {
         tile.servletResp.setCharacterEncoding("utf-8");
         tile.servletResp.setContentType("application/xml");
         tile.servletResp.setStatus(200);
 
-        if (tile.getHint() == KMLService.HINT_SITEMAP_LAYER) {
-            writeSiteMap();
+        Writer out =
+                new BufferedWriter(
+                        new OutputStreamWriter(
+                                tile.servletResp.getOutputStream(), StandardCharsets.UTF_8));
+        if (tile.getHint() == KMLService.HINT_SITEMAP_GLOBAL) {
+            writeSiteMapIndex(out);
+        } else if (tile.getHint() == KMLService.HINT_SITEMAP_LAYER) {
+            writeLayerSiteMapIndex(out);
         } else {
-            writeSiteMapIndex();
+            writeSiteMap(out);
         }
+        out.flush();
     }
 
-    private void writeSiteMapIndex() throws IOException {
-        OutputStream os = tile.servletResp.getOutputStream();
-
-        String header =
-                "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
-                        + "<sitemapindex xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">\n";
-        os.write(header.getBytes());
+    private void writeSiteMapIndex(Writer out) throws IOException {
+        writeSiteMapIndexHeader(out);
 
-        writeSiteMapIndexLoop();
-
-        String footer = "</sitemapindex>";
-        os.write(footer.getBytes());
-    }
-
-    private void writeSiteMapIndexLoop() throws IOException {
-        OutputStream os = tile.servletResp.getOutputStream();
         String urlPrefix = tile.getUrlPrefix();
-
-        Iterable<TileLayer> iter = tLD.getLayerList();
-
-        for (TileLayer tl : iter) {
+        for (TileLayer tl : tLD.getLayerList()) {
             if (!tl.isEnabled()) {
                 continue;
             }
@@ -91,22 +161,115 @@ public class KMLSiteMap {
                     && grids.contains(gridSetBroker.getWorldEpsg4326().getName())
                     && mimeTypes != null
                     && mimeTypes.contains(XMLMime.kml)) {
-                String smStr =
-                        "<sitemap><loc>"
-                                + urlPrefix
-                                + tl.getName()
-                                + "/sitemap.xml</loc></sitemap>";
-                os.write(smStr.getBytes());
+                writeSiteMapEntry(out, urlPrefix + tl.getName() + "/sitemap.xml");
             }
         }
+
+        out.write("</sitemapindex>");
     }
 
-    private void writeSiteMap() throws GeoWebCacheException, IOException {
-        TileLayer layer = tile.getLayer();
+    /**
+     * Lists the top sitemap of the layer, and one sitemap per cached tile every {@link
+     * #PAGE_LEVELS} levels below it
+     */
+    void writeLayerSiteMapIndex(Writer out) throws GeoWebCacheException, IOException {
+        List<long[]> roots = getRoots();
+        final long pageZoom = roots.get(0)[2] + topLevels;
+        final long zoomStop = getGridSubset().getZoomStop();
+        // no need to look below the deepest sitemap tiles
+        final long lastPageZoom =
+                pageZoom + Math.max(0, zoomStop - pageZoom) / pageLevels * pageLevels;
+        final String urlPrefix = tile.getUrlPrefix();
+        final int[] count = {1};
+
+        writeSiteMapIndexHeader(out);
+        writeSiteMapEntry(out, urlPrefix + PAGE_PREFIX + TOP_PAGE + ".xml");
+        walk(
+                roots,
+                lastPageZoom,
+                gridLoc -> {
+                    if (gridLoc[2] >= pageZoom && (gridLoc[2] - pageZoom) % pageLevels == 0) {
+                        String name = KMLService.gridLocString(gridLoc);
+                        writeSiteMapEntry(out, urlPrefix + PAGE_PREFIX + name + ".xml");
+                        if (++count[0] >= MAX_URLS) {
+                            log.warn(
+                                    "The sitemap index of "
+                                            + tile.getLayerId()
+                                            + " reached "
+                                            + MAX_URLS
+                                            + " sitemaps, the deeper tiles are not listed");
+                            return false;
+                        }
+                    }
+                    return true;
+                });
+        out.write("</sitemapindex>");
+    }
+
+    /** Lists the cached tiles of the top levels, or of the levels of the sitemap below its tile */
+    void writeSiteMap(Writer out) throws GeoWebCacheException, IOException {
+        final String urlPrefix = tile.getUrlPrefix();
 
-        GridSubset gridSubset = layer.getGridSubset(gridSetBroker.getWorldEpsg4326().getName());
+        writeSiteMapHeader(out);
 
-        writeSiteMapHeader();
+        List<long[]> start;
+        long maxZoom;
+        long[] pageLoc = tile.getTileIndex();
+        if (pageLoc[2] < 0) {
+            // Add a link to the super overlay first
+            out.write("<url><loc>");
+            out.write(urlPrefix.substring(0, urlPrefix.length() - 1));
+            out.write(".kml.kml</loc><geo:geo><geo:format>kml</geo:format></geo:geo></url>\n");
+
+            start = getRoots();
+            maxZoom = start.get(0)[2] + topLevels - 1;
+        } else {
+            start = Collections.singletonList(pageLoc);
+            maxZoom = pageLoc[2] + pageLevels - 1;
+        }
+
+        walk(
+                start,
+                maxZoom,
+                gridLoc -> {
+                    // We need to link to the data tiles only, for now
+                    out.write("<url><loc>");
+                    out.write(urlPrefix);
+                    out.write(KMLService.gridLocString(gridLoc));
+                    out.write(".kml</loc><geo:geo><geo:format>kml</geo:format></geo:geo></url>\n");
+                    return true;
+                });
+
+        out.write("</urlset>");
+    }
+
+    private static void writeSiteMapIndexHeader(Writer out) throws IOException {
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        out.write("<sitemapindex xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">\n");
+    }
+
+    private static void writeSiteMapEntry(Writer out, String loc) throws IOException {
+        out.write("<sitemap><loc>");
+        out.write(loc);
+        out.write("</loc></sitemap>\n");
+    }
+
+    private static void writeSiteMapHeader(Writer out) throws IOException {
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        out.write(
+                "<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\" "
+                        + "xmlns:geo=\"http://www.google.com/geo/schemas/sitemap/1.0\">\n");
+    }
+
+    private GridSubset getGridSubset() {
+        return tile.getLayer().getGridSubset(gridSetBroker.getWorldEpsg4326().getName());
+    }
+
+    /** @return the tiles at the top of the pyramid of the layer */
+    private List<long[]> getRoots() throws GeoWebCacheException {
+        TileLayer layer = tile.getLayer();
+
+        GridSubset gridSubset = getGridSubset();
 
         long[] gridRect = gridSubset.getCoverageBestFit();
 
@@ -120,76 +283,97 @@ public class KMLSiteMap {
         } else if (gridRect[0] != gridRect[2]) {
             long[] gridLocWest = {0, 0, 0};
             long[] gridLocEast = {1, 0, 0};
-
-            writeSiteMapLoop(gridLocWest);
-            writeSiteMapLoop(gridLocEast);
-
+            return Arrays.asList(gridLocWest, gridLocEast);
         } else {
             long[] gridLoc = {gridRect[0], gridRect[1], gridRect[4]};
-            writeSiteMapLoop(gridLoc);
+            return Collections.singletonList(gridLoc);
         }
-
-        writeSiteMapFooter();
-    }
-
-    private void writeSiteMapHeader() throws IOException {
-        String header =
-                "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
-                        + "<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\" xmlns:geo=\"http://www.google.com/geo/schemas/sitemap/1.0\">\n";
-        tile.servletResp.getOutputStream().write(header.getBytes());
     }
 
-    private void writeSiteMapFooter() throws IOException {
-        String footer = "</urlset>";
-        tile.servletResp.getOutputStream().write(footer.getBytes());
-    }
-
-    public void writeSiteMapLoop(long[] gridLoc) throws GeoWebCacheException, IOException {
-        OutputStream os = tile.servletResp.getOutputStream();
-        TileLayer tileLayer = tile.getLayer();
-        String urlPrefix = tile.getUrlPrefix();
+    /**
+     * Walks the cached tiles of the pyramid breadth first, starting from the given tiles and
+     * descending only into the cached ones, down to maxZoom. The frontier of tiles to visit is
+     * looked up in the storage {@link #BATCH_SIZE} tiles at a time.
+     *
+     * @param start the tiles to start from, visited if cached
+     * @param maxZoom the last zoom level to visit
+     * @param visitor receives the cached tiles in breadth first order
+     */
+    void walk(List<long[]> start, long maxZoom, TileVisitor visitor)
+            throws GeoWebCacheException, IOException {
+        final TileLayer tileLayer = tile.getLayer();
+        final String gridSetId = gridSetBroker.getWorldEpsg4326().getName();
+        final GridSubset gridSubset = tileLayer.getGridSubset(gridSetId);
+        final long zoomStop = Math.min(maxZoom, gridSubset.getZoomStop());
 
-        // Add a link to the super overlay first
-        String superOverlayLoc =
-                "<url><loc>"
-                        + urlPrefix.substring(0, urlPrefix.length() - 1)
-                        + ".kml.kml</loc><geo:geo><geo:format>kml</geo:format></geo:geo></url>\n";
-        os.write(superOverlayLoc.getBytes());
-
-        LinkedList<long[]> subTileList = new LinkedList<long[]>();
-
-        subTileList.addFirst(gridLoc);
-
-        while (subTileList.peek() != null) {
-            String gridSetId = gridSetBroker.getWorldEpsg4326().getName();
-            long[] curLoc = subTileList.removeFirst();
-            long[][] linkGridLocs = tileLayer.getGridSubset(gridSetId).getSubGrid(curLoc);
-            linkGridLocs =
-                    KMZHelper.filterGridLocs(
-                            storageBroker,
-                            secDispatcher,
-                            tileLayer,
-                            gridSetId,
-                            XMLMime.kml,
-                            linkGridLocs);
-
-            // Save the links we still need to follow for later
-            for (long[] subTile : linkGridLocs) {
-                if (subTile[2] > 0) {
-                    subTileList.addLast(subTile);
+        Deque<long[]> frontier = new ArrayDeque<>(start);
+        List<long[]> batch = new ArrayList<>(BATCH_SIZE);
+        List<TileObject> lookups = new ArrayList<>(BATCH_SIZE);
+        while (!frontier.isEmpty()) {
+            batch.clear();
+            lookups.clear();
+            while (batch.size() < BATCH_SIZE && !frontier.isEmpty()) {
+                long[] gridLoc = frontier.removeFirst();
+                if (isAllowed(tileLayer, gridSetId, gridLoc)) {
+                    batch.add(gridLoc);
+                    lookups.add(
+                            TileObject.createQueryTileObject(
+                                    tileLayer.getName(),
+                                    gridLoc,
+                                    gridSetId,
+                                    XMLMime.kml.getFormat(),
+                                    null));
                 }
             }
+            if (batch.isEmpty()) {
+                continue;
+            }
 
-            // We need to link to the data tiles only, for now
-            String tmp =
-                    "<url><loc>"
-                            + urlPrefix
-                            + KMLService.gridLocString(curLoc)
-                            + ".kml"
-                            + "</loc><geo:geo><geo:format>kml</geo:format></geo:geo></url>\n";
-            os.write(tmp.getBytes());
+            boolean[] cached = storageBroker.existsAll(lookups);
+            for (int i = 0; i < cached.length; i++) {
+                if (!cached[i]) {
+                    continue;
+                }
+                long[] gridLoc = batch.get(i);
+                if (!visitor.visit(gridLoc)) {
+                    return;
+                }
+                // Save the links we still need to follow for later
+                if (gridLoc[2] < zoomStop) {
+                    for (long[] subTile : gridSubset.getSubGrid(gridLoc)) {
+                        if (subTile[2] > 0) {
+                            frontier.addLast(subTile);
+                        }
+                    }
+                }
+            }
+        }
+    }
 
-            // Could add priority as 1 / (zoomlevel + 1)
+    /** Applies the security and request filters to the tile, like the overlays linking to it */
+    private boolean isAllowed(TileLayer tileLayer, String gridSetId, long[] gridLoc)
+            throws GeoWebCacheException {
+        ConveyorTile conv =
+                new ConveyorTile(
+                        storageBroker,
+                        tileLayer.getName(),
+                        gridSetId,
+                        gridLoc,
+                        XMLMime.kml,
+                        null,
+                        null,
+                        null);
+        conv.setTileLayer(tileLayer);
+        try {
+            secDispatcher.checkSecurity(conv);
+            tileLayer.applyRequestFilters(conv);
+        } catch (SecurityException ex) {
+            return false;
+        } catch (GreenTileException e) {
+            // We will link to this one
+        } catch (RequestFilterException e) {
+            return false;
         }
+        return true;
     }
 }
@@ -19,6 +19,8 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.channels.Channels;
 import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 import org.apache.commons.logging.Log;
@@ -48,7 +50,8 @@ public class KMZHelper {
      * Filters the given gridlocation
      *
      * <p>Note that this does an actual request to the WMS backend and then throws the result way.
-     * Some may consider this a bit wasteful ;)
+     * Some may consider this a bit wasteful ;) The cached tiles are looked up in the storage at
+     * once before that.
      *
      * @param sb The storage broker
      * @param secDisp The security dispatcher
@@ -68,6 +71,11 @@ public class KMZHelper {
             long[][] linkGridLocs)
             throws GeoWebCacheException {
 
+        // Special treatment for regionated KML, the tiles are checked for content
+        final boolean regionated = mime.equals(XMLMime.kml);
+        ConveyorTile[] tiles = new ConveyorTile[linkGridLocs.length];
+        List<ConveyorTile> probed = new ArrayList<>(linkGridLocs.length);
+
         for (int i = 0; i < linkGridLocs.length; i++) {
             if (linkGridLocs[i][2] > 0) {
 
@@ -97,28 +105,45 @@ public class KMZHelper {
                     continue;
                 }
 
-                // Special treatment for regionated KML
-                if (mime.equals(XMLMime.kml)) {
-                    try {
-                        tileLayer.getTile(tile);
-                    } catch (IOException ioe) {
-                        log.error(ioe.getMessage());
-                        linkGridLocs[i][2] = -1;
-                    } catch (GeoWebCacheException gwce) {
-                        linkGridLocs[i][2] = -1;
-                    }
-
-                    // If it's a 204 it means no content -> don't link to it
-                    if (tile.getStatus() == 204) {
-                        linkGridLocs[i][2] = -1;
-                    } else if (tile.getStatus() != 200) {
-                        throw new GeoWebCacheException(
-                                "Unexpected response code from server " + tile.getStatus());
-                    }
+                if (regionated) {
+                    tiles[i] = tile;
+                    probed.add(tile);
                 }
             }
         }
 
+        // Look the child tiles up in the storage at once, rather than one by one
+        if (probed.size() > 1) {
+            try {
+                ConveyorTile.retrieveAll(sb, probed);
+            } catch (GeoWebCacheException e) {
+                log.warn("Unable to look up the child tiles at once: " + e.getMessage());
+            }
+        }
+
+        for (int i = 0; i < linkGridLocs.length; i++) {
+            ConveyorTile tile = tiles[i];
+            if (tile == null) {
+                continue;
+            }
+            try {
+                tileLayer.getTile(tile);
+            } catch (IOException ioe) {
+                log.error(ioe.getMessage());
+                linkGridLocs[i][2] = -1;
+            } catch (GeoWebCacheException gwce) {
+                linkGridLocs[i][2] = -1;
+            }
+
+            // If it's a 204 it means no content -> don't link to it
+            if (tile.getStatus() == 204) {
+                linkGridLocs[i][2] = -1;
+            } else if (tile.getStatus() != 200) {
+                throw new GeoWebCacheException(
+                        "Unexpected response code from server " + tile.getStatus());
+            }
+        }
+
         return linkGridLocs;
     }
 
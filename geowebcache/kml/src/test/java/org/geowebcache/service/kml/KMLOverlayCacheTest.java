@@ -0,0 +1,120 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.service.kml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import org.geowebcache.io.ByteArrayResource;
+import org.geowebcache.mime.ImageMime;
+import org.geowebcache.storage.DefaultStorageBroker;
+import org.geowebcache.storage.StorageBroker;
+import org.geowebcache.storage.TileObject;
+import org.geowebcache.storage.blobstore.file.FileBlobStore;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class KMLOverlayCacheTest {
+
+    @Rule public TemporaryFolder temp = new TemporaryFolder();
+
+    private StorageBroker sb;
+
+    private KMLOverlayCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        sb = new DefaultStorageBroker(new FileBlobStore(temp.getRoot().getAbsolutePath()));
+        cache = new KMLOverlayCache(sb, null, true);
+    }
+
+    private TileObject dataTile(long x, long y, int z, String format) {
+        return TileObject.createCompleteTileObject(
+                "layer",
+                new long[] {x, y, z},
+                "EPSG:4326",
+                format,
+                null,
+                new ByteArrayResource("data".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private String template(String name) {
+        return "<kml><href>"
+                + KMLOverlayCache.URL_PREFIX
+                + name
+                + "."
+                + KMLOverlayCache.FORMAT_EXTENSION
+                + "."
+                + KMLOverlayCache.WRAPPER_EXTENSION
+                + "</href></kml>";
+    }
+
+    @Test
+    public void testPlaceholders() throws Exception {
+        long[] index = {1, 2, 3};
+        assertNull(cache.getOverlay("layer", "EPSG:4326", index, "http://host/", "png", "kmz"));
+
+        cache.putOverlay("layer", "EPSG:4326", index, template("x1y2z3"));
+        assertEquals(
+                "<kml><href>http://host/x1y2z3.png.kmz</href></kml>",
+                cache.getOverlay("layer", "EPSG:4326", index, "http://host/", "png", "kmz"));
+        // the same document serves the other hosts, formats and wrappers
+        assertEquals(
+                "<kml><href>https://other/x1y2z3.jpeg.kml</href></kml>",
+                cache.getOverlay("layer", "EPSG:4326", index, "https://other/", "jpeg", "kml"));
+        assertNull(cache.getOverlay("layer", "EPSG:4326", new long[] {1, 1, 3}, "", "png", "kml"));
+    }
+
+    @Test
+    public void testKeptWithImages() throws Exception {
+        String png = ImageMime.png.getFormat();
+        long[] child = {2, 2, 3};
+        long[] parent = {1, 1, 2};
+        for (long[] index : new long[][] {child, parent}) {
+            cache.putOverlay("layer", "EPSG:4326", index, template("tile"));
+        }
+
+        // the overlays of raster pyramids do not depend on the images
+        sb.put(dataTile(2, 2, 3, png));
+        assertTrue(sb.delete(dataTile(2, 2, 3, png)));
+        assertNotNull(cache.getOverlay("layer", "EPSG:4326", child, "", "png", "kml"));
+        assertNotNull(cache.getOverlay("layer", "EPSG:4326", parent, "", "png", "kml"));
+    }
+
+    @Test
+    public void testDeletedApartFromImages() throws Exception {
+        String png = ImageMime.png.getFormat();
+        long[] index = {2, 2, 3};
+        cache.putOverlay("layer", "EPSG:4326", index, template("tile"));
+        sb.put(dataTile(2, 2, 3, png));
+
+        // a rename drops the overlays, which contain the layer name, in the background
+        cache.deleteAll("layer").get();
+        assertNull(cache.getOverlay("layer", "EPSG:4326", index, "", "png", "kml"));
+        assertTrue(sb.get(dataTile(2, 2, 3, png)));
+    }
+
+    @Test
+    public void testCacheable() throws Exception {
+        // regionated layers build their overlays on each request
+        assertFalse(cache.isCacheable(KMLDebugGridLayer.getInstance(), ImageMime.png));
+    }
+}
@@ -0,0 +1,173 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.service.kml;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.geowebcache.filter.security.SecurityDispatcher;
+import org.geowebcache.grid.GridSetBroker;
+import org.geowebcache.io.ByteArrayResource;
+import org.geowebcache.layer.TileLayer;
+import org.geowebcache.mime.XMLMime;
+import org.geowebcache.storage.DefaultStorageBroker;
+import org.geowebcache.storage.StorageBroker;
+import org.geowebcache.storage.TileObject;
+import org.geowebcache.storage.blobstore.file.FileBlobStore;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class KMLSiteMapTest {
+
+    @Rule public TemporaryFolder temp = new TemporaryFolder();
+
+    private StorageBroker sb;
+
+    private TileLayer layer;
+
+    private GridSetBroker gridSetBroker;
+
+    private KMLSiteMap siteMap;
+
+    @Before
+    public void setUp() throws Exception {
+        sb = new DefaultStorageBroker(new FileBlobStore(temp.getRoot().getAbsolutePath()));
+        layer = KMLDebugGridLayer.getInstance();
+        gridSetBroker = new GridSetBroker(false, false);
+        siteMap = siteMap(new long[] {-1, -1, -1});
+
+        // the east half of the world has no data, its children are not linked to
+        for (long[] gridLoc :
+                new long[][] {{0, 0, 0}, {0, 0, 1}, {1, 1, 1}, {0, 1, 2}, {1, 0, 2}, {2, 0, 1}}) {
+            put(gridLoc);
+        }
+    }
+
+    private KMLSiteMap siteMap(long[] pageLoc) {
+        ConveyorKMLTile tile =
+                new ConveyorKMLTile(
+                        sb,
+                        layer.getName(),
+                        gridSetBroker.getWorldEpsg4326().getName(),
+                        pageLoc,
+                        XMLMime.kml,
+                        null,
+                        null,
+                        null);
+        tile.setTileLayer(layer);
+        tile.setUrlPrefix("http://host/kml/layer/");
+        return new KMLSiteMap(tile, null, gridSetBroker, new SecurityDispatcher());
+    }
+
+    private void put(long[] gridLoc) throws Exception {
+        sb.put(
+                TileObject.createCompleteTileObject(
+                        layer.getName(),
+                        gridLoc,
+                        "EPSG:4326",
+                        XMLMime.kml.getFormat(),
+                        null,
+                        new ByteArrayResource("<kml/>".getBytes(StandardCharsets.UTF_8))));
+    }
+
+    /** @return the locations listed in the sitemap or sitemap index */
+    private static List<String> locations(String xml) {
+        List<String> locations = new ArrayList<>();
+        Matcher matcher = Pattern.compile("<loc>http://host/kml/layer/([^<]*)</loc>").matcher(xml);
+        while (matcher.find()) {
+            locations.add(matcher.group(1));
+        }
+        return locations;
+    }
+
+    private List<long[]> walk(int maxZoom, int maxTiles) throws Exception {
+        List<long[]> visited = new ArrayList<>();
+        List<long[]> roots = new ArrayList<>();
+        roots.add(new long[] {0, 0, 0});
+        roots.add(new long[] {1, 0, 0});
+        siteMap.walk(
+                roots,
+                maxZoom,
+                gridLoc -> {
+                    visited.add(gridLoc);
+                    return visited.size() < maxTiles;
+                });
+        return visited;
+    }
+
+    @Test
+    public void testWalkCachedTiles() throws Exception {
+        List<long[]> visited = walk(3, Integer.MAX_VALUE);
+        assertEquals(5, visited.size());
+        // breadth first, only below the cached tiles
+        assertArrayEquals(new long[] {0, 0, 0}, visited.get(0));
+        assertArrayEquals(new long[] {0, 0, 1}, visited.get(1));
+        assertArrayEquals(new long[] {1, 1, 1}, visited.get(2));
+        assertArrayEquals(new long[] {1, 0, 2}, visited.get(3));
+        assertArrayEquals(new long[] {0, 1, 2}, visited.get(4));
+    }
+
+    @Test
+    public void testWalkLimits() throws Exception {
+        assertEquals(3, walk(1, Integer.MAX_VALUE).size());
+        assertEquals(2, walk(3, 2).size());
+    }
+
+    @Test
+    public void testParsePageName() throws Exception {
+        assertArrayEquals(new long[] {-1, -1, -1}, KMLSiteMap.parsePageName(KMLSiteMap.TOP_PAGE));
+        assertArrayEquals(new long[] {3, 4, 5}, KMLSiteMap.parsePageName("x3y4z5"));
+    }
+
+    @Test
+    public void testPages() throws Exception {
+        put(new long[] {2, 0, 3});
+
+        // one level in the top sitemap, then a sitemap every two levels
+        StringWriter index = new StringWriter();
+        siteMap.setLevels(1, 2);
+        siteMap.writeLayerSiteMapIndex(index);
+        assertEquals(
+                Arrays.asList(
+                        "sitemap_top.xml",
+                        "sitemap_x0y0z1.xml",
+                        "sitemap_x1y1z1.xml",
+                        "sitemap_x2y0z3.xml"),
+                locations(index.toString()));
+
+        // each sitemap lists its levels only
+        KMLSiteMap page = siteMap(new long[] {0, 0, 1});
+        page.setLevels(1, 2);
+        StringWriter out = new StringWriter();
+        page.writeSiteMap(out);
+        assertEquals(
+                Arrays.asList("x0y0z1.kml", "x1y0z2.kml", "x0y1z2.kml"), locations(out.toString()));
+
+        page = siteMap(new long[] {2, 0, 3});
+        page.setLevels(1, 2);
+        out = new StringWriter();
+        page.writeSiteMap(out);
+        assertEquals(Arrays.asList("x2y0z3.kml"), locations(out.toString()));
+    }
+}
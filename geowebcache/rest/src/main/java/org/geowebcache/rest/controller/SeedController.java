@@ -68,6 +68,52 @@ public class SeedController {
         return seedService.getRunningTasks(req);
     }
 
+    /**
+     * GET method for querying the progress of distributed seed jobs over all the nodes. The
+     * distributed endpoints live outside of /seed so that they can't shadow a layer's endpoints.
+     *
+     * @param req
+     * @return
+     */
+    @RequestMapping(value = "/distributedseed.json", method = RequestMethod.GET)
+    public ResponseEntity<?> doDistributedGet(HttpServletRequest req) {
+        return seedService.getDistributedJobs();
+    }
+
+    /**
+     * POST method starting a seed job shared among all the nodes
+     *
+     * @param inputStream
+     * @param layer the layer name followed by the request format extension
+     * @return the job identifier
+     */
+    @RequestMapping(value = "/distributedseed/{layer:.+}", method = RequestMethod.POST)
+    public ResponseEntity<?> doDistributedPost(
+            InputStream inputStream, @PathVariable String layer) {
+        String body =
+                new BufferedReader(new InputStreamReader(inputStream))
+                        .lines()
+                        .collect(Collectors.joining("\n"));
+        if (layer.indexOf(".") == -1) {
+            return new ResponseEntity<Object>(
+                    "Format extension unknown or not specified", HttpStatus.BAD_REQUEST);
+        }
+        String extension = layer.substring(layer.lastIndexOf(".") + 1);
+        String layerName = layer.substring(0, layer.lastIndexOf("."));
+        return seedService.doDistributedSeeding(layerName, extension, body);
+    }
+
+    /**
+     * DELETE method cancelling a distributed seed job on all the nodes
+     *
+     * @param jobId
+     * @return
+     */
+    @RequestMapping(value = "/distributedseed/{jobId}", method = RequestMethod.DELETE)
+    public ResponseEntity<?> doDistributedDelete(@PathVariable String jobId) {
+        return seedService.cancelDistributedJob(jobId);
+    }
+
     /**
      * GET method for querying running tasks for the provided layer
      *
@@ -18,12 +18,17 @@
 package org.geowebcache.rest.controller;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import javax.servlet.http.HttpServletRequest;
 import org.geowebcache.GeoWebCacheException;
 import org.geowebcache.filter.parameters.ParameterFilter;
 import org.geowebcache.layer.TileLayer;
 import org.geowebcache.layer.TileLayerDispatcher;
+import org.geowebcache.rest.converter.TileLayerListPOJO;
 import org.geowebcache.rest.converter.XStreamListAliasWrapper;
 import org.geowebcache.rest.exception.RestException;
 import org.geowebcache.storage.StorageBroker;
@@ -132,6 +137,52 @@ public class TileLayerController extends GWCController {
         return new ResponseEntity<Object>("layer saved", HttpStatus.OK);
     }
 
+    /**
+     * Adds or modifies several layers in one request. The layers that don't exist yet are added in
+     * a single batch, and the existing ones are replaced in a second one, so that configurations
+     * that persist them, such as the XML configuration, save once per batch rather than once per
+     * layer.
+     *
+     * <p>Every layer is validated before either batch is applied, so an invalid layer leaves the
+     * configuration untouched. The two batches are not atomic with respect to each other though:
+     * if the configuration can't be saved while replacing the existing layers, the new layers
+     * stay added.
+     */
+    @RequestMapping(value = "/layers", method = RequestMethod.PUT)
+    public ResponseEntity<?> layersPut(@RequestBody TileLayerListPOJO layers)
+            throws GeoWebCacheException, RestException, IOException {
+        List<TileLayer> added = new ArrayList<>();
+        List<TileLayer> modified = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        for (TileLayer tl : layers.getLayers()) {
+            checkParameterFilters(tl);
+            if (!names.add(tl.getName())) {
+                throw new RestException(
+                        "Layer " + tl.getName() + " is specified more than once",
+                        HttpStatus.BAD_REQUEST);
+            }
+            if (!layerDispatcher.layerExists(tl.getName())) {
+                added.add(tl);
+            } else if (layerDispatcher.getConfiguration(tl).canSave(tl)) {
+                modified.add(tl);
+            } else {
+                throw new RestException(
+                        "Layer " + tl.getName() + " can't be modified", HttpStatus.BAD_REQUEST);
+            }
+        }
+
+        try {
+            // checks all the new layers before adding any of them
+            layerDispatcher.addLayers(added);
+            layerDispatcher.modifyLayers(modified);
+        } catch (IllegalArgumentException | NoSuchElementException e) {
+            throw new RestException(e.getMessage(), HttpStatus.BAD_REQUEST, e);
+        }
+        return new ResponseEntity<Object>(
+                added.size() + " layers added, " + modified.size() + " layers modified",
+                HttpStatus.OK);
+    }
+
     /*
     DO DELETE
      */
@@ -182,8 +233,12 @@ public class TileLayerController extends GWCController {
                             + " layer in the submission and the URL you specified.",
                     HttpStatus.BAD_REQUEST);
         }
+        checkParameterFilters(newLayer);
+        return newLayer;
+    }
 
-        // Check that the parameter filters deserialized correctly
+    /** Checks that the parameter filters deserialized correctly */
+    private void checkParameterFilters(TileLayer newLayer) throws RestException {
         if (newLayer.getParameterFilters() != null) {
             try {
                 for (@SuppressWarnings("unused")
@@ -200,7 +255,6 @@ public class TileLayerController extends GWCController {
                         HttpStatus.BAD_REQUEST);
             }
         }
-        return newLayer;
     }
 
     public void setTileLayerDispatcher(TileLayerDispatcher tileLayerDispatcher) {
@@ -68,6 +68,7 @@ public class GWCConverter<T> extends AbstractHttpMessageConverter<T>
                             BlobStoreInfo.class,
                             GridSet.class,
                             TileLayer.class,
+                            TileLayerListPOJO.class,
                             ServerConfigurationPOJO.class));
 
     public GWCConverter(ApplicationContextProvider appCtx) {
@@ -83,6 +84,8 @@ public class GWCConverter<T> extends AbstractHttpMessageConverter<T>
      */
     private XStream configureXStream(XStream xs) {
         xs.alias("global", ServerConfigurationPOJO.class);
+        xs.alias("layers", TileLayerListPOJO.class);
+        xs.addImplicitCollection(TileLayerListPOJO.class, "layers");
         return xs;
     }
 
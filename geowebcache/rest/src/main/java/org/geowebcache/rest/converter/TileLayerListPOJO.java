@@ -0,0 +1,38 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.rest.converter;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.geowebcache.layer.TileLayer;
+
+/**
+ * A list of layers, as accepted by the bulk import operation of the layers REST endpoint, for
+ * serialization via XStream. The layers are represented as in the {@code layers} element of the
+ * XML configuration.
+ */
+public class TileLayerListPOJO {
+
+    private List<TileLayer> layers;
+
+    public TileLayerListPOJO(List<TileLayer> layers) {
+        this.layers = layers;
+    }
+
+    /** @return the layers, may be empty, but not null */
+    public List<TileLayer> getLayers() {
+        return layers == null ? new ArrayList<>() : layers;
+    }
+}
@@ -20,6 +20,7 @@ package org.geowebcache.rest.service;
 
 import com.google.common.base.Splitter;
 import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.XStreamException;
 import com.thoughtworks.xstream.io.HierarchicalStreamDriver;
 import com.thoughtworks.xstream.io.HierarchicalStreamReader;
 import com.thoughtworks.xstream.io.copy.HierarchicalStreamCopier;
@@ -44,10 +45,14 @@ import org.geowebcache.config.XMLConfiguration;
 import org.geowebcache.io.GeoWebCacheXStream;
 import org.geowebcache.layer.TileLayer;
 import org.geowebcache.rest.exception.RestException;
+import org.geowebcache.seed.DistributedSeedCoordinator;
+import org.geowebcache.seed.DistributedSeedJob;
+import org.geowebcache.seed.DistributedSeedProgress;
 import org.geowebcache.seed.GWCTask;
 import org.geowebcache.seed.SeedRequest;
 import org.geowebcache.seed.TileBreeder;
 import org.geowebcache.util.ApplicationContextProvider;
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -63,6 +68,9 @@ public class SeedService {
 
     @Autowired TileBreeder seeder;
 
+    @Autowired(required = false)
+    DistributedSeedCoordinator distributedSeeder;
+
     private final WebApplicationContext context;
 
     @Autowired
@@ -119,6 +127,93 @@ public class SeedService {
         }
     }
 
+    /**
+     * GET method for querying the progress of the distributed seed jobs, aggregated over all the
+     * nodes
+     *
+     * @return
+     */
+    public ResponseEntity<?> getDistributedJobs() {
+        if (distributedSeeder == null) {
+            return new ResponseEntity<Object>(
+                    "Distributed seeding is not enabled", HttpStatus.NOT_FOUND);
+        }
+        try {
+            JSONArray jobs = new JSONArray();
+            for (DistributedSeedProgress progress : distributedSeeder.getProgress()) {
+                JSONObject job = new JSONObject();
+                job.put("id", progress.getJobId());
+                job.put("layer", progress.getLayerName());
+                job.put("chunksTotal", progress.getChunksTotal());
+                job.put("chunksDone", progress.getChunksDone());
+                job.put("chunksLeased", progress.getChunksLeased());
+                job.put("tilesTotal", progress.getTilesTotal());
+                job.put("tilesDone", progress.getTilesDone());
+                job.put("tilesDoneByNode", new JSONObject(progress.getTilesDoneByNode()));
+                job.put("finished", progress.isFinished());
+                jobs.put(job);
+            }
+            JSONObject obj = new JSONObject();
+            obj.put("distributed-jobs", jobs);
+            return new ResponseEntity<>(obj.toString(), HttpStatus.OK);
+        } catch (JSONException jse) {
+            log.error(jse);
+            return new ResponseEntity<Object>("error", HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Method to start a seed job shared among all the nodes of the cluster.
+     *
+     * @param layer
+     * @param extension
+     * @param body
+     * @return the job identifier
+     */
+    public ResponseEntity<?> doDistributedSeeding(String layer, String extension, String body) {
+        if (distributedSeeder == null) {
+            return new ResponseEntity<Object>(
+                    "Distributed seeding is not enabled", HttpStatus.NOT_FOUND);
+        }
+        try {
+            Object obj = parseRequest(extension, body);
+            if (!(obj instanceof SeedRequest)) {
+                throw new RestException(
+                        "Expected a seed request, got "
+                                + (obj == null ? "nothing" : obj.getClass().getSimpleName()),
+                        HttpStatus.BAD_REQUEST);
+            }
+            DistributedSeedJob job = distributedSeeder.seed(layer, (SeedRequest) obj);
+            return new ResponseEntity<Object>(job.getId(), HttpStatus.OK);
+        } catch (XStreamException e) {
+            throw new RestException(
+                    "Invalid seed request: " + e.getMessage(), HttpStatus.BAD_REQUEST);
+        } catch (IllegalArgumentException e) {
+            throw new RestException(e.getMessage(), HttpStatus.BAD_REQUEST);
+        } catch (GeoWebCacheException e) {
+            throw new RestException(e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
+        } catch (IOException e) {
+            return new ResponseEntity<Object>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Method to cancel a distributed seed job on all the nodes
+     *
+     * @param jobId
+     * @return
+     */
+    public ResponseEntity<?> cancelDistributedJob(String jobId) {
+        if (distributedSeeder == null) {
+            return new ResponseEntity<Object>(
+                    "Distributed seeding is not enabled", HttpStatus.NOT_FOUND);
+        }
+        if (!distributedSeeder.cancel(jobId)) {
+            return new ResponseEntity<Object>("Unknown job: " + jobId, HttpStatus.NOT_FOUND);
+        }
+        return new ResponseEntity<Object>(HttpStatus.OK);
+    }
+
     /**
      * Method to kill running tasks for all of GWC or just the provided layer.
      *
@@ -209,20 +304,8 @@ public class SeedService {
      */
     public ResponseEntity<?> doSeeding(
             HttpServletRequest request, String layer, String extension, String body) {
-        XStream xs = configXStream(new GeoWebCacheXStream(new DomDriver()));
-
-        Object obj = null;
-
         try {
-            if (extension == null || extension.equalsIgnoreCase("xml")) {
-                obj = xs.fromXML(body);
-            } else if (extension.equalsIgnoreCase("json")) {
-                obj = xs.fromXML(convertJson(body));
-            } else {
-                throw new RestException(
-                        "Format extension unknown or not specified: " + extension,
-                        HttpStatus.BAD_REQUEST);
-            }
+            Object obj = parseRequest(extension, body);
             handleRequest(layer, obj);
             return new ResponseEntity<Object>(HttpStatus.OK);
         } catch (IOException e) {
@@ -230,6 +313,19 @@ public class SeedService {
         }
     }
 
+    private Object parseRequest(String extension, String body) throws IOException {
+        XStream xs = configXStream(new GeoWebCacheXStream(new DomDriver()));
+        if (extension == null || extension.equalsIgnoreCase("xml")) {
+            return xs.fromXML(body);
+        } else if (extension.equalsIgnoreCase("json")) {
+            return xs.fromXML(convertJson(body));
+        } else {
+            throw new RestException(
+                    "Format extension unknown or not specified: " + extension,
+                    HttpStatus.BAD_REQUEST);
+        }
+    }
+
     /**
      * METHOD that handles the seeding/truncating task from the POST method.
      *
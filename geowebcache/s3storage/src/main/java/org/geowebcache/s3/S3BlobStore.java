@@ -19,6 +19,7 @@ import static java.util.Objects.isNull;
 
 import com.amazonaws.AmazonClientException;
 import com.amazonaws.AmazonServiceException;
+import com.amazonaws.ClientConfiguration;
 import com.amazonaws.services.s3.AmazonS3Client;
 import com.amazonaws.services.s3.model.BucketPolicy;
 import com.amazonaws.services.s3.model.CannedAccessControlList;
@@ -35,11 +36,13 @@ import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.channels.Channels;
 import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -47,6 +50,11 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 import org.apache.commons.logging.Log;
@@ -64,6 +72,7 @@ import org.geowebcache.storage.BlobStoreListener;
 import org.geowebcache.storage.BlobStoreListenerList;
 import org.geowebcache.storage.CompositeBlobStore;
 import org.geowebcache.storage.StorageException;
+import org.geowebcache.storage.TileDeletionProgress;
 import org.geowebcache.storage.TileObject;
 import org.geowebcache.storage.TileRange;
 import org.geowebcache.storage.TileRangeIterator;
@@ -86,6 +95,9 @@ public class S3BlobStore implements BlobStore {
 
     private CannedAccessControlList acl;
 
+    /** Issues the requests of {@link #getAll(List)}, as many as the client connections */
+    private final ExecutorService getExecutorService;
+
     public S3BlobStore(
             S3BlobStoreInfo config, TileLayerDispatcher layers, LockProvider lockProvider)
             throws StorageException {
@@ -111,6 +123,7 @@ public class S3BlobStore implements BlobStore {
         }
 
         this.s3Ops = new S3Ops(conn, bucketName, keyBuilder, lockProvider);
+        this.getExecutorService = createGetExecutorService(config.getMaxConnections());
 
         boolean empty = !s3Ops.prefixExists(prefix);
         boolean existing = Objects.nonNull(s3Ops.getObjectMetadata(keyBuilder.storeMetadata()));
@@ -122,12 +135,26 @@ public class S3BlobStore implements BlobStore {
         s3Ops.putProperties(keyBuilder.storeMetadata(), new Properties());
     }
 
+    private ExecutorService createGetExecutorService(Integer maxConnections) {
+        ThreadFactory tf =
+                new ThreadFactoryBuilder()
+                        .setDaemon(true)
+                        .setNameFormat("GWC S3BlobStore get thread-%d. Bucket: " + bucketName)
+                        .build();
+        int threads =
+                maxConnections != null && maxConnections > 0
+                        ? maxConnections
+                        : ClientConfiguration.DEFAULT_MAX_CONNECTIONS;
+        return Executors.newFixedThreadPool(threads, tf);
+    }
+
     @Override
     public void destroy() {
         this.shutDown = true;
         AmazonS3Client conn = this.conn;
         this.conn = null;
         if (conn != null) {
+            getExecutorService.shutdownNow();
             s3Ops.shutDown();
             conn.shutdown();
         }
@@ -231,6 +258,38 @@ public class S3BlobStore implements BlobStore {
         return true;
     }
 
+    /** Issues the GET requests concurrently, so that many tiles cost about the latency of one. */
+    @Override
+    public boolean[] getAll(List<TileObject> objs) throws StorageException {
+        boolean[] found = new boolean[objs.size()];
+        if (found.length == 1) {
+            found[0] = get(objs.get(0));
+            return found;
+        }
+        List<Future<Boolean>> gets = new ArrayList<>(objs.size());
+        try {
+            for (TileObject obj : objs) {
+                gets.add(getExecutorService.submit(() -> get(obj)));
+            }
+            for (int i = 0; i < found.length; i++) {
+                found[i] = gets.get(i).get();
+            }
+            return found;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StorageException("Interrupted while getting " + objs.size() + " tiles");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof StorageException) {
+                throw (StorageException) e.getCause();
+            }
+            throw new StorageException("Error getting " + objs.size() + " tiles", e.getCause());
+        } finally {
+            for (Future<Boolean> pending : gets) {
+                pending.cancel(true);
+            }
+        }
+    }
+
     private class TileToKey implements Function<long[], KeyVersion> {
 
         private final String coordsPrefix;
@@ -255,6 +314,12 @@ public class S3BlobStore implements BlobStore {
 
     @Override
     public boolean delete(final TileRange tileRange) throws StorageException {
+        return delete(tileRange, TileDeletionProgress.NONE);
+    }
+
+    @Override
+    public boolean delete(final TileRange tileRange, final TileDeletionProgress progress)
+            throws StorageException {
 
         final String coordsPrefix = keyBuilder.coordinatesPrefix(tileRange);
         if (!s3Ops.prefixExists(coordsPrefix)) {
@@ -281,7 +346,8 @@ public class S3BlobStore implements BlobStore {
             Iterator<List<long[]>> partition = Iterators.partition(tileLocations, 1000);
             final TileToKey tileToKey = new TileToKey(coordsPrefix, tileRange.getMimeType());
 
-            while (partition.hasNext() && !shutDown) {
+            boolean stopped = false;
+            while (partition.hasNext() && !shutDown && !stopped) {
                 List<long[]> locations = partition.next();
                 List<KeyVersion> keys = Lists.transform(locations, tileToKey);
 
@@ -289,6 +355,8 @@ public class S3BlobStore implements BlobStore {
                 req.setQuiet(true);
                 req.setKeys(keys);
                 conn.deleteObjects(req);
+                // quiet mode does not tell which keys were there, count them all
+                stopped = !progress.tilesDeleted(keys.size());
             }
 
         } else {
@@ -298,13 +366,14 @@ public class S3BlobStore implements BlobStore {
             String format = tileRange.getMimeType().getFormat();
             Map<String, String> parameters = tileRange.getParameters();
 
-            while (tileLocations.hasNext()) {
+            boolean stopped = false;
+            while (tileLocations.hasNext() && !stopped) {
                 xyz = tileLocations.next();
                 TileObject tile =
                         TileObject.createQueryTileObject(
                                 layerName, xyz, gridSetId, format, parameters);
                 tile.setParametersId(tileRange.getParametersId());
-                delete(tile);
+                stopped = !progress.tilesDeleted(delete(tile) ? 1 : 0);
             }
         }
 
@@ -24,8 +24,11 @@ import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -308,6 +311,119 @@ public final class MbtilesBlobStore extends SqliteBlobStore {
         return exists;
     }
 
+    /**
+     * Tiles stored in the same file at the same zoom level are read with a single range query,
+     * instead of a query per tile.
+     */
+    @Override
+    public boolean[] getAll(List<TileObject> tiles) throws StorageException {
+        boolean[] found = new boolean[tiles.size()];
+        // group the tiles indexes by file and zoom level
+        Map<File, Map<Long, List<Integer>>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < tiles.size(); i++) {
+            TileObject tile = tiles.get(i);
+            groups.computeIfAbsent(fileManager.getFile(tile), file -> new LinkedHashMap<>())
+                    .computeIfAbsent(tile.getXYZ()[2], z -> new ArrayList<>())
+                    .add(i);
+        }
+        for (Map.Entry<File, Map<Long, List<Integer>>> group : groups.entrySet()) {
+            File file = group.getKey();
+            if (!file.exists()) {
+                // nothing stored in this file yet
+                continue;
+            }
+            for (Map.Entry<Long, List<Integer>> zoomGroup : group.getValue().entrySet()) {
+                getAll(file, zoomGroup.getKey(), tiles, zoomGroup.getValue(), found);
+            }
+        }
+        return found;
+    }
+
+    /** Loads the tiles at the given indexes, all stored in the same file at the same zoom level. */
+    private void getAll(
+            File file, long z, List<TileObject> tiles, List<Integer> indexes, boolean[] found)
+            throws StorageException {
+        long minX = Long.MAX_VALUE, minY = Long.MAX_VALUE;
+        long maxX = Long.MIN_VALUE, maxY = Long.MIN_VALUE;
+        Map<List<Long>, Integer> positions = new HashMap<>();
+        for (int i : indexes) {
+            long[] xyz = tiles.get(i).getXYZ();
+            minX = Math.min(minX, xyz[0]);
+            minY = Math.min(minY, xyz[1]);
+            maxX = Math.max(maxX, xyz[0]);
+            maxY = Math.max(maxY, xyz[1]);
+            positions.put(Arrays.asList(xyz[0], xyz[1]), i);
+        }
+        if ((maxX - minX + 1) * (maxY - minY + 1) > 4L * indexes.size()) {
+            // the tiles are too sparse, a range query would read many others
+            for (int i : indexes) {
+                found[i] = get(tiles.get(i));
+            }
+            return;
+        }
+        Map<Integer, byte[]> rows =
+                connectionManager.executeQuery(
+                        file,
+                        resultSet -> {
+                            Map<Integer, byte[]> result = new HashMap<>();
+                            while (resultSet.next()) {
+                                Integer i =
+                                        positions.get(
+                                                Arrays.asList(
+                                                        resultSet.getLong(1),
+                                                        resultSet.getLong(2)));
+                                if (i != null) {
+                                    result.put(i, resultSet.getBytes(3));
+                                }
+                            }
+                            return result;
+                        },
+                        "SELECT tile_column, tile_row, tile_data FROM tiles WHERE zoom_level = ? "
+                                + "AND tile_column BETWEEN ? AND ? AND tile_row BETWEEN ? AND ?",
+                        z,
+                        minX,
+                        maxX,
+                        minY,
+                        maxY);
+        Map<List<Long>, Long> createTimes =
+                useCreateTime && !rows.isEmpty()
+                        ? getTileCreateTimes(file, z, minX, minY, maxX, maxY)
+                        : Collections.emptyMap();
+        for (Map.Entry<Integer, byte[]> row : rows.entrySet()) {
+            TileObject tile = tiles.get(row.getKey());
+            byte[] bytes = row.getValue();
+            if (bytes == null) {
+                continue;
+            }
+            try {
+                if (tileIsGzipped(tile)) {
+                    try (GZIPInputStream gzIn =
+                            new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+                        bytes = IOUtils.toByteArray(gzIn);
+                    }
+                }
+            } catch (Exception exception) {
+                throw Utils.exception(
+                        exception, "Error loading tile '%s' from MBTiles file '%s'.", tile, file);
+            }
+            tile.setBlob(Utils.byteArrayToResource(bytes));
+            long[] xyz = tile.getXYZ();
+            if (useCreateTime) {
+                Long createdTime = createTimes.get(Arrays.asList(xyz[0], xyz[1]));
+                if (createdTime == null) {
+                    // no create time associated with this tile let's assume the last modified time
+                    createdTime = file.lastModified();
+                    putTileCreateTime(file, z, xyz[0], xyz[1], createdTime);
+                }
+                tile.setCreated(createdTime);
+            } else {
+                // we don't care about the create time, tile will never expire
+                tile.setCreated(System.currentTimeMillis());
+            }
+            found[row.getKey()] = true;
+        }
+    }
+
     @Override
     public boolean delete(TileObject tile) throws StorageException {
         File file = fileManager.getFile(tile);
@@ -657,6 +773,44 @@ public final class MbtilesBlobStore extends SqliteBlobStore {
         return null;
     }
 
+    /** Helper method that retrieves the create times of a range of tiles, keyed by x and y. */
+    private Map<List<Long>, Long> getTileCreateTimes(
+            File file, long z, long minX, long minY, long maxX, long maxY) {
+        String query =
+                "SELECT tile_column, tile_row, create_time FROM tiles_metadata "
+                        + "WHERE zoom_level = ? AND tile_column BETWEEN ? AND ? "
+                        + "AND tile_row BETWEEN ? AND ?";
+        try {
+            return connectionManager.executeQuery(
+                    file,
+                    resultSet -> {
+                        Map<List<Long>, Long> createTimes = new HashMap<>();
+                        while (resultSet.next()) {
+                            createTimes.put(
+                                    Arrays.asList(resultSet.getLong(1), resultSet.getLong(2)),
+                                    resultSet.getLong(3));
+                        }
+                        return createTimes;
+                    },
+                    query,
+                    z,
+                    minX,
+                    maxX,
+                    minY,
+                    maxY);
+        } catch (Exception exception) {
+            // probably the table doesn't exists
+            if (LOGGER.isErrorEnabled()) {
+                LOGGER.error(
+                        String.format(
+                                "Something bad happen when querying create times at zoom '%d'.",
+                                z),
+                        exception);
+            }
+        }
+        return Collections.emptyMap();
+    }
+
     /** Helper method that puts the create time of a tile opening a connection for it. */
     private void putTileCreateTime(File file, long z, long x, long y, long createTime) {
         connectionManager.doWork(
@@ -27,6 +27,8 @@ import org.geowebcache.layer.TileLayer;
 import org.geowebcache.layer.TileLayerDispatcher;
 import org.geowebcache.layer.meta.LayerMetaInformation;
 import org.geowebcache.mime.MimeType;
+import org.geowebcache.service.CapabilitiesCache;
+import org.geowebcache.service.CapabilitiesCache.Fragments;
 import org.geowebcache.util.URLMangler;
 
 /**
@@ -99,6 +101,15 @@ public class TMSDocumentFactory {
     }
 
     protected String getTileMapServiceDoc(String baseUrl, String contextPath) {
+        return getTileMapServiceDoc(baseUrl, contextPath, CapabilitiesCache.uncached());
+    }
+
+    /**
+     * Builds the TileMapService document, writing the tile maps of each layer as a fragment that
+     * can be reused from the last time the document was built
+     */
+    protected String getTileMapServiceDoc(
+            String baseUrl, String contextPath, Fragments fragments) {
         StringBuilder str = new StringBuilder();
         XMLBuilder xml = new XMLBuilder(str);
         try {
@@ -133,12 +144,13 @@ public class TMSDocumentFactory {
             // <ContactElectronicMailAddress>pramsey@refractions.net</ContactElectronicMailAddress>
             // </ContactInformation>
             xml.indentElement("TileMaps");
-            Iterable<TileLayer> iter = tld.getLayerList();
+            Iterable<TileLayer> iter = tld.getLayerSnapshot();
             for (TileLayer layer : iter) {
                 if (!layer.isEnabled() || !layer.isAdvertised()) {
                     continue;
                 }
-                tileMapsForLayer(xml, layer, baseUrl, contextPath);
+                fragments.appendLayer(
+                        xml, layer, lxml -> tileMapsForLayer(lxml, layer, baseUrl, contextPath));
             }
             xml.endElement();
             xml.endElement();
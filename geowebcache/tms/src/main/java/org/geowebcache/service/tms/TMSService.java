@@ -35,9 +35,12 @@ import org.geowebcache.layer.TileLayer;
 import org.geowebcache.layer.TileLayerDispatcher;
 import org.geowebcache.mime.MimeException;
 import org.geowebcache.mime.MimeType;
+import org.geowebcache.service.CapabilitiesCache;
 import org.geowebcache.service.HttpErrorCodeException;
+import org.geowebcache.service.RouteTable;
 import org.geowebcache.service.Service;
 import org.geowebcache.service.ServiceException;
+import org.geowebcache.service.TileRequest;
 import org.geowebcache.stats.RuntimeStats;
 import org.geowebcache.storage.StorageBroker;
 import org.geowebcache.util.NullURLMangler;
@@ -48,6 +51,18 @@ public class TMSService extends Service {
 
     public static final String SERVICE_TMS = "tms";
 
+    // the tile paths, starting with the leading "tms/1.0.0" part
+    private static final RouteTable<Boolean> TILE_ROUTES =
+            new RouteTable<Boolean>()
+                    .add(
+                            TMSDocumentFactory.TILEMAPSERVICE_LEADINGPATH
+                                    + "/{layerId}/{z}/{x}/{y}",
+                            true);
+
+    // the values of the tile request being parsed, they are copied out into the conveyor
+    private static final ThreadLocal<TileRequest> TILE_REQUEST =
+            ThreadLocal.withInitial(TileRequest::new);
+
     private StorageBroker sb;
 
     private TileLayerDispatcher tld;
@@ -58,6 +73,8 @@ public class TMSService extends Service {
 
     private TMSDocumentFactory tmsFactory;
 
+    private CapabilitiesCache capabilitiesCache;
+
     /** Protected no-argument constructor to allow run-time instrumentation */
     protected TMSService() {
         super(SERVICE_TMS);
@@ -87,6 +104,11 @@ public class TMSService extends Service {
             throw new IllegalArgumentException("Specified TMSFactory should not be null ");
         }
         this.tld = tmsFactory.tld;
+        // subclasses of the factory can make the documents depend on the request
+        this.capabilitiesCache =
+                tmsFactory.getClass() == TMSDocumentFactory.class
+                        ? new CapabilitiesCache(tld)
+                        : new CapabilitiesCache(null, false);
     }
 
     public TMSService(
@@ -98,9 +120,9 @@ public class TMSService extends Service {
     public ConveyorTile getConveyor(HttpServletRequest request, HttpServletResponse response)
             throws GeoWebCacheException {
         final String pathInfo = request.getPathInfo();
-        Optional<Map<String, String>> possibleSplit = splitParams(request);
-        if (possibleSplit.isPresent()) {
-            Map<String, String> split = possibleSplit.get();
+        final TileRequest split = TILE_REQUEST.get();
+        split.clear();
+        if (splitParams(request, split)) {
             long[] gridLoc = new long[3];
             try {
                 gridLoc[0] = Integer.parseInt(split.get("x"));
@@ -161,40 +183,49 @@ public class TMSService extends Service {
      *     if it can not fill the mandatory entries
      */
     public static Optional<Map<String, String>> splitParams(HttpServletRequest request) {
-
-        // get all elements of the pathInfo after the leading "/tms/1.0.0/" part.
-        String pathInfo = request.getPathInfo();
-        pathInfo =
-                pathInfo.substring(pathInfo.indexOf(TMSDocumentFactory.TILEMAPSERVICE_LEADINGPATH));
-        String[] params = pathInfo.split("/");
-        // {"tms", "1.0.0", "img states@EPSG:4326", ... }
-
-        int paramsLength = params.length;
-
-        Map<String, String> parsed = new HashMap<>();
-
-        if (params.length < 4) {
+        TileRequest split = new TileRequest();
+        if (!splitParams(request, split)) {
             return Optional.empty();
         }
+        Map<String, String> parsed = new HashMap<>();
+        split.forEach(parsed::put);
+        return Optional.of(parsed);
+    }
 
-        String[] yExt = params[paramsLength - 1].split("\\.");
-
-        parsed.put("x", params[paramsLength - 2]);
-        parsed.put("y", yExt[0]);
-        parsed.put("z", params[paramsLength - 3]);
+    /**
+     * Split the TMS parameters out of the given request, as {@link
+     * #splitParams(HttpServletRequest)} does, into the given empty tile request
+     *
+     * @return {@code false} if the path is not the one of a tile, {@code split} may then hold some
+     *     of the path elements
+     */
+    static boolean splitParams(HttpServletRequest request, TileRequest split) {
+        // match the elements of the pathInfo from the leading "tms/1.0.0/" part.
+        String pathInfo = request.getPathInfo();
+        int start = pathInfo.indexOf(TMSDocumentFactory.TILEMAPSERVICE_LEADINGPATH);
+        if (start < 0 || TILE_ROUTES.match(pathInfo, start, split) == null) {
+            return false;
+        }
+        // {"img states@EPSG:4326@png", "z", "x", "y.png"}
+        String yExt = split.get("y");
+        int dot = yExt.indexOf('.');
+        if (dot < 0) {
+            return false;
+        }
+        split.put("y", yExt.substring(0, dot));
 
-        String layerNameAndSRS = params[2];
         String[] lsf =
-                ServletUtils.URLDecode(layerNameAndSRS, request.getCharacterEncoding()).split("@");
-        parsed.put("layerId", lsf[0]);
+                ServletUtils.URLDecode(split.get("layerId"), request.getCharacterEncoding())
+                        .split("@");
+        split.put("layerId", lsf[0]);
         if (lsf.length >= 3) {
-            parsed.put("gridSetId", lsf[1]);
-            parsed.put("format", lsf[2]);
+            split.put("gridSetId", lsf[1]);
+            split.put("format", lsf[2]);
         }
 
-        parsed.put("fileExtension", yExt[1]);
-
-        return Optional.of(parsed);
+        int extEnd = yExt.indexOf('.', dot + 1);
+        split.put("fileExtension", yExt.substring(dot + 1, extEnd < 0 ? yExt.length() : extEnd));
+        return true;
     }
 
     public void handleRequest(Conveyor conv) throws GeoWebCacheException {
@@ -216,7 +247,7 @@ public class TMSService extends Service {
                         conv.servletReq, TMSDocumentFactory.SERVICE_PATH, servletPrefix);
 
         final Charset encoding = StandardCharsets.UTF_8;
-        String ret = null;
+        CapabilitiesCache.Document document;
 
         if (paramsLength < 2) {
             throw new GeoWebCacheException("Path is too short to be a valid TMS path");
@@ -226,7 +257,17 @@ public class TMSService extends Service {
                 throw new GeoWebCacheException(
                         "Unknown version " + version + ", only 1.0.0 is supported.");
             } else {
-                ret = tmsFactory.getTileMapServiceDoc(servletBase, context);
+                try {
+                    document =
+                            capabilitiesCache.getDocument(
+                                    tmsFactory.urlMangler.buildURL(servletBase, context, ""),
+                                    encoding,
+                                    fragments ->
+                                            tmsFactory.getTileMapServiceDoc(
+                                                    servletBase, context, fragments));
+                } catch (IOException e) {
+                    throw new GeoWebCacheException(e);
+                }
             }
         } else {
             String layerNameAndSRS = params[2];
@@ -237,18 +278,16 @@ public class TMSService extends Service {
             TileLayer tl = tld.getTileLayer(layerSRSFormatExtension[0]);
             GridSubset gridSub = tl.getGridSubset(layerSRSFormatExtension[1]);
             MimeType mimeType = MimeType.createFromExtension(layerSRSFormatExtension[2]);
-            ret = tmsFactory.getTileMapDoc(tl, gridSub, mimeType, servletBase, context);
+            String ret = tmsFactory.getTileMapDoc(tl, gridSub, mimeType, servletBase, context);
+            document = new CapabilitiesCache.Document(ret.getBytes(encoding));
         }
 
-        byte[] data = ret.getBytes(encoding);
-        stats.log(data.length, CacheResult.OTHER);
-
-        conv.servletResp.setStatus(200);
         conv.servletResp.setContentType("text/xml");
         conv.servletResp.setHeader(
                 "content-disposition", "inline;filename=tms-getcapabilities.xml");
         try {
-            conv.servletResp.getOutputStream().write(data);
+            int length = document.write(conv.servletReq, conv.servletResp);
+            stats.log(length, CacheResult.OTHER);
         } catch (IOException e) {
             // TODO log error
         }
@@ -148,6 +148,7 @@ public class TMSServiceTest extends TestCase {
                             gridSetNames,
                             Collections.<ParameterFilter>emptyList());
             when(tld.getLayerList()).thenReturn(Arrays.asList(tileLayer));
+            when(tld.getLayerSnapshot()).thenReturn(Arrays.asList(tileLayer));
             this.customCatalogLayers = customCatalogLayers;
         }
 
@@ -286,6 +287,7 @@ public class TMSServiceTest extends TestCase {
                         gridSetNames,
                         Collections.<ParameterFilter>emptyList());
         when(tld.getLayerList()).thenReturn(Arrays.asList(tileLayer));
+        when(tld.getLayerSnapshot()).thenReturn(Arrays.asList(tileLayer));
 
         Conveyor conv = service.getConveyor(req, resp);
         assertNotNull(conv);
@@ -397,6 +399,49 @@ public class TMSServiceTest extends TestCase {
         assertEquals("22", xpath.evaluate("count(//TileSet[contains(@href,'customLayer2')])", doc));
     }
 
+    public void testSplitParams() throws Exception {
+        HttpServletRequest req = mock(HttpServletRequest.class);
+        when(req.getCharacterEncoding()).thenReturn("UTF-8");
+        when(req.getPathInfo())
+                .thenReturn("/service/tms/1.0.0/topp%3Astates@EPSG%3A4326@png/2/1/3.png");
+
+        Map<String, String> split = TMSService.splitParams(req).get();
+        assertEquals("topp:states", split.get("layerId"));
+        assertEquals("EPSG:4326", split.get("gridSetId"));
+        assertEquals("png", split.get("format"));
+        assertEquals("2", split.get("z"));
+        assertEquals("1", split.get("x"));
+        assertEquals("3", split.get("y"));
+        assertEquals("png", split.get("fileExtension"));
+        assertEquals(7, split.size());
+    }
+
+    public void testNonTilePaths() throws Exception {
+        service = new TMSService(sb, tld, gridsetBroker, mock(RuntimeStats.class));
+        MockHttpServletResponse resp = new MockHttpServletResponse();
+        String[] paths = {
+            "/service/tms/1.0.0",
+            "/service/tms/1.0.0/states@EPSG%3A4326@png",
+            "/service/tms/1.0.0/states@EPSG%3A4326@png/2/1",
+            // no extension
+            "/service/tms/1.0.0/states@EPSG%3A4326@png/2/1/3",
+            // empty or extra elements
+            "/service/tms/1.0.0/states@EPSG%3A4326@png/2//3.png",
+            "/service/tms/1.0.0/states@EPSG%3A4326@png/2/1/3.png/",
+            "/service/tms/1.0.0/states@EPSG%3A4326@png/2/1/3.png/more"
+        };
+        for (String path : paths) {
+            HttpServletRequest req = mock(HttpServletRequest.class);
+            when(req.getCharacterEncoding()).thenReturn("UTF-8");
+            when(req.getPathInfo()).thenReturn(path);
+
+            assertFalse(path, TMSService.splitParams(req).isPresent());
+            Conveyor conv = service.getConveyor(req, resp);
+            assertEquals(path, Conveyor.RequestHandler.SERVICE, conv.reqHandler);
+            assertNull(path, conv.getLayerId());
+        }
+    }
+
     public void testGetTile() throws Exception {
 
         GeoWebCacheDispatcher gwcd = mock(GeoWebCacheDispatcher.class);
@@ -415,6 +460,7 @@ public class TMSServiceTest extends TestCase {
                             gridSetNames,
                             null);
             when(customFactory.tld.getLayerList()).thenReturn(Arrays.asList(tileLayer));
+            when(customFactory.tld.getLayerSnapshot()).thenReturn(Arrays.asList(tileLayer));
         }
 
         // Sending a Tile request
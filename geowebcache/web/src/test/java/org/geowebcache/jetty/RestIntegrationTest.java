@@ -549,6 +549,114 @@ public class RestIntegrationTest {
         }
     }
 
+    @Test
+    public void testPutLayers() throws Exception {
+        final String url1 = "http://example.com/wms1?";
+        final String url2 = "http://example.com/wms2?";
+
+        // Add two layers with an XML body
+        {
+            final HttpPut request = new HttpPut(jetty.getUri().resolve("rest/layers.xml"));
+            request.setEntity(
+                    new StringEntity(
+                            "<layers>"
+                                    + "<wmsLayer><name>bulkLayer1</name><wmsUrl><string>"
+                                    + url1
+                                    + "</string></wmsUrl><wmsLayers>remote1</wmsLayers></wmsLayer>"
+                                    + "<wmsLayer><name>bulkLayer2</name><wmsUrl><string>"
+                                    + url1
+                                    + "</string></wmsUrl><wmsLayers>remote2</wmsLayers></wmsLayer>"
+                                    + "</layers>",
+                            ContentType.APPLICATION_XML));
+            try (CloseableHttpResponse response = admin.getClient().execute(request)) {
+                assertThat(response.getStatusLine(), hasProperty("statusCode", equalTo(200)));
+            }
+            for (String layerName : Arrays.asList("bulkLayer1", "bulkLayer2")) {
+                doGetXML(
+                        "rest/layers/" + layerName + ".xml",
+                        admin.getClient(),
+                        equalTo(200),
+                        doc -> assertThat(doc, hasXPath("/wmsLayer/wmsUrl/string", equalTo(url1))));
+            }
+        }
+        // Modify one of them and add another with a JSON body
+        {
+            final HttpPut request = new HttpPut(jetty.getUri().resolve("rest/layers.json"));
+            request.setEntity(
+                    new StringEntity(
+                            "{\"layers\":{\"wmsLayer\":["
+                                    + "{\"name\":\"bulkLayer1\",\"wmsUrl\":{\"string\":[\""
+                                    + url2
+                                    + "\"]},\"wmsLayers\":\"remote1\"},"
+                                    + "{\"name\":\"bulkLayer3\",\"wmsUrl\":{\"string\":[\""
+                                    + url2
+                                    + "\"]},\"wmsLayers\":\"remote3\"}"
+                                    + "]}}",
+                            ContentType.APPLICATION_JSON));
+            try (CloseableHttpResponse response = admin.getClient().execute(request)) {
+                assertThat(response.getStatusLine(), hasProperty("statusCode", equalTo(200)));
+            }
+            doGetXML(
+                    "rest/layers/bulkLayer1.xml",
+                    admin.getClient(),
+                    equalTo(200),
+                    doc -> assertThat(doc, hasXPath("/wmsLayer/wmsUrl/string", equalTo(url2))));
+            doGetXML(
+                    "rest/layers/bulkLayer2.xml",
+                    admin.getClient(),
+                    equalTo(200),
+                    doc -> assertThat(doc, hasXPath("/wmsLayer/wmsUrl/string", equalTo(url1))));
+            doGetXML(
+                    "rest/layers/bulkLayer3.xml",
+                    admin.getClient(),
+                    equalTo(200),
+                    doc -> {
+                        assertThat(doc, hasXPath("/wmsLayer/wmsUrl/string", equalTo(url2)));
+                        assertThat(doc, hasXPath("/wmsLayer/wmsLayers", equalTo("remote3")));
+                    });
+        }
+        // An invalid layer rejects the whole request
+        {
+            final HttpPut request = new HttpPut(jetty.getUri().resolve("rest/layers.xml"));
+            request.setEntity(
+                    new StringEntity(
+                            "<layers>"
+                                    + "<wmsLayer><name>bulkLayer4</name><wmsUrl><string>"
+                                    + url1
+                                    + "</string></wmsUrl><wmsLayers>remote4</wmsLayers></wmsLayer>"
+                                    + "<wmsLayer><name>bulkLayer2</name><wmsUrl><string>"
+                                    + url2
+                                    + "</string></wmsUrl><wmsLayers>remote2</wmsLayers></wmsLayer>"
+                                    + "<wmsLayer><name>bulkLayer2</name><wmsUrl><string>"
+                                    + url2
+                                    + "</string></wmsUrl><wmsLayers>remote2</wmsLayers></wmsLayer>"
+                                    + "</layers>",
+                            ContentType.APPLICATION_XML));
+            try (CloseableHttpResponse response = admin.getClient().execute(request)) {
+                assertThat(response.getStatusLine(), hasProperty("statusCode", equalTo(400)));
+            }
+            doGetXML(
+                    "rest/layers/bulkLayer2.xml",
+                    admin.getClient(),
+                    equalTo(200),
+                    doc -> assertThat(doc, hasXPath("/wmsLayer/wmsUrl/string", equalTo(url1))));
+            final HttpGet request2 =
+                    new HttpGet(jetty.getUri().resolve("rest/layers/bulkLayer4.xml"));
+            try (CloseableHttpResponse response = admin.getClient().execute(request2)) {
+                assertThat(response.getStatusLine(), hasProperty("statusCode", equalTo(404)));
+            }
+        }
+        // Clean up
+        for (String layerName : Arrays.asList("bulkLayer1", "bulkLayer2", "bulkLayer3")) {
+            final HttpDelete request =
+                    new HttpDelete(
+                            jetty.getUri().resolve("rest/layers/").resolve(layerName + ".xml"));
+            try (CloseableHttpResponse response = admin.getClient().execute(request)) {
+                assertThat(response.getStatusLine(), hasProperty("statusCode", equalTo(200)));
+            }
+        }
+    }
+
     @Test
     public void testInvalidMethods() throws Exception {
         // Check that all permutations of method and user produce the expected status code.
@@ -556,7 +664,6 @@ public class RestIntegrationTest {
                 Arrays.asList(
                         new HttpDelete(jetty.getUri().resolve("rest/layers.xml")),
                         new HttpPost(jetty.getUri().resolve("rest/layers.xml")),
-                        new HttpPut(jetty.getUri().resolve("rest/layers.xml")),
                         new HttpPut(jetty.getUri().resolve("rest/seed/img%20states.xml")),
                         new HttpDelete(jetty.getUri().resolve("rest/seed/img%20states.xml")),
                         new HttpDelete(jetty.getUri().resolve("rest/seed/ui_form")),
@@ -581,6 +688,7 @@ public class RestIntegrationTest {
         for (HttpUriRequest request :
                 Arrays.asList(
                         new HttpGet(jetty.getUri().resolve("rest/layers.xml")),
+                        new HttpPut(jetty.getUri().resolve("rest/layers.xml")),
                         new HttpGet(jetty.getUri().resolve("rest/seed/img%20states")),
                         new HttpPost(jetty.getUri().resolve("rest/reload")),
                         new HttpPost(jetty.getUri().resolve("rest/seed/img%20states.xml")),
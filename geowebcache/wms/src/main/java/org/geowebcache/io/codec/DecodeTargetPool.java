@@ -0,0 +1,111 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.io.codec;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.IndexColorModel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.imageio.ImageTypeSpecifier;
+
+/**
+ * Keeps the images tiles were decoded into once they are no longer used, so that the next tiles
+ * of the same size and type can be decoded into them instead of allocating new images.
+ *
+ * <p>Pass it to {@link ImageDecoder#decode} in the map under {@link #DECODE_TARGET_POOL} and {@link
+ * #release(BufferedImage) release} the returned image when done with it.
+ */
+public class DecodeTargetPool {
+
+    /** Key of the pool in the map passed to {@link ImageDecoder#decode} */
+    public static final String DECODE_TARGET_POOL = "decodeTargetPool";
+
+    private final ConcurrentLinkedQueue<BufferedImage> images = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final int maxSize;
+
+    /** @param maxSize maximum number of images kept */
+    public DecodeTargetPool(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns a pooled image compatible with the given type and size, or a new one if none is
+     * available
+     */
+    public BufferedImage borrow(ImageTypeSpecifier type, int width, int height) {
+        for (Iterator<BufferedImage> it = images.iterator(); it.hasNext(); ) {
+            BufferedImage image = it.next();
+            if (isCompatible(image, type, width, height) && images.remove(image)) {
+                size.decrementAndGet();
+                return image;
+            }
+        }
+        return type.createBufferedImage(width, height);
+    }
+
+    /** Returns an image to the pool, it must not be used anymore by the caller */
+    public void release(BufferedImage image) {
+        if (image != null && size.incrementAndGet() <= maxSize) {
+            images.add(image);
+        } else if (image != null) {
+            size.decrementAndGet();
+        }
+    }
+
+    /** @return the number of pooled images */
+    public int size() {
+        return size.get();
+    }
+
+    private static boolean isCompatible(
+            BufferedImage image, ImageTypeSpecifier type, int width, int height) {
+        return image.getWidth() == width
+                && image.getHeight() == height
+                && image.getSampleModel().equals(type.getSampleModel(width, height))
+                && isSameColorModel(image.getColorModel(), type.getColorModel());
+    }
+
+    /**
+     * Compares two color models, including the palette of indexed ones that {@link
+     * ColorModel#equals(Object)} might not take into account
+     */
+    public static boolean isSameColorModel(ColorModel cm1, ColorModel cm2) {
+        if (cm1 == cm2) {
+            return true;
+        }
+        if (cm1 instanceof IndexColorModel && cm2 instanceof IndexColorModel) {
+            IndexColorModel icm1 = (IndexColorModel) cm1;
+            IndexColorModel icm2 = (IndexColorModel) cm2;
+            int mapSize = icm1.getMapSize();
+            if (mapSize != icm2.getMapSize()
+                    || icm1.getTransparentPixel() != icm2.getTransparentPixel()
+                    || icm1.getPixelSize() != icm2.getPixelSize()) {
+                return false;
+            }
+            int[] rgbs1 = new int[mapSize];
+            int[] rgbs2 = new int[mapSize];
+            icm1.getRGBs(rgbs1);
+            icm2.getRGBs(rgbs2);
+            return Arrays.equals(rgbs1, rgbs2);
+        }
+        return cm1 != null && cm2 != null && cm1.getClass() == cm2.getClass() && cm1.equals(cm2);
+    }
+}
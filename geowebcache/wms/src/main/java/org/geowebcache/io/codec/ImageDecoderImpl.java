@@ -20,9 +20,12 @@ import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import javax.imageio.ImageReadParam;
 import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
 import javax.imageio.spi.IIORegistry;
 import javax.imageio.spi.ImageReaderSpi;
 import javax.imageio.stream.ImageInputStream;
@@ -116,7 +119,7 @@ public class ImageDecoderImpl implements ImageDecoder {
                     stream = new FileImageInputStreamExtImpl(((FileResource) source).getFile());
                     // Image reading
                     reader.setInput(stream);
-                    return reader.read(0);
+                    return read(reader, map);
                 } else {
                     // create a stream and move on
                     source = ((Resource) source).getInputStream();
@@ -133,7 +136,7 @@ public class ImageDecoderImpl implements ImageDecoder {
 
                     // Image reading
                     reader.setInput(stream);
-                    return reader.read(0);
+                    return read(reader, map);
                 } else {
                     throw new IllegalArgumentException("Wrong input object");
                 }
@@ -160,6 +163,25 @@ public class ImageDecoderImpl implements ImageDecoder {
         return null;
     }
 
+    /**
+     * Reads the first image, into an image taken from the {@link DecodeTargetPool} in the map if
+     * any
+     */
+    private BufferedImage read(ImageReader reader, Map<String, Object> map) throws IOException {
+        Object pool = map == null ? null : map.get(DecodeTargetPool.DECODE_TARGET_POOL);
+        if (pool instanceof DecodeTargetPool) {
+            Iterator<ImageTypeSpecifier> types = reader.getImageTypes(0);
+            if (types != null && types.hasNext()) {
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setDestination(
+                        ((DecodeTargetPool) pool)
+                                .borrow(types.next(), reader.getWidth(0), reader.getHeight(0)));
+                return reader.read(0, param);
+            }
+        }
+        return reader.read(0);
+    }
+
     /**
      * Returns the ImageSpiReader associated to
      *
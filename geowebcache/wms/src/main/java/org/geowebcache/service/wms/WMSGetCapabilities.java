@@ -18,7 +18,6 @@ package org.geowebcache.service.wms;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.io.IOException;
-import java.io.OutputStream;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
@@ -51,6 +50,8 @@ import org.geowebcache.layer.meta.LayerMetaInformation;
 import org.geowebcache.layer.meta.MetadataURL;
 import org.geowebcache.mime.ImageMime;
 import org.geowebcache.mime.MimeType;
+import org.geowebcache.service.CapabilitiesCache;
+import org.geowebcache.service.CapabilitiesCache.Fragments;
 import org.geowebcache.util.ServletUtils;
 import org.geowebcache.util.URLMangler;
 
@@ -64,13 +65,37 @@ public class WMSGetCapabilities {
 
     private boolean includeVendorSpecific = false;
 
+    private final HttpServletRequest servReq;
+
+    private final CapabilitiesCache capabilitiesCache;
+
+    /** The layers listed by the document being generated, the same in all its sections */
+    private List<TileLayer> layers;
+
     protected WMSGetCapabilities(
             TileLayerDispatcher tld,
             HttpServletRequest servReq,
             String baseUrl,
             String contextPath,
             URLMangler urlMangler) {
+        this(tld, servReq, baseUrl, contextPath, urlMangler, null);
+    }
+
+    /**
+     * @param capabilitiesCache the cache the document is taken from, or {@code null} to build it
+     *     for this request only
+     */
+    protected WMSGetCapabilities(
+            TileLayerDispatcher tld,
+            HttpServletRequest servReq,
+            String baseUrl,
+            String contextPath,
+            URLMangler urlMangler,
+            CapabilitiesCache capabilitiesCache) {
         this.tld = tld;
+        this.servReq = servReq;
+        this.capabilitiesCache =
+                capabilitiesCache == null ? new CapabilitiesCache(null, false) : capabilitiesCache;
 
         urlStr =
                 urlMangler.buildURL(baseUrl, contextPath, WMSService.SERVICE_PATH)
@@ -89,23 +114,29 @@ public class WMSGetCapabilities {
     protected void writeResponse(HttpServletResponse response) {
 
         final Charset encoding = StandardCharsets.UTF_8;
-        byte[] data = generateGetCapabilities(encoding).getBytes(encoding);
 
-        response.setStatus(HttpServletResponse.SC_OK);
         response.setContentType("application/vnd.ogc.wms_xml");
         response.setCharacterEncoding(encoding.name());
-        response.setContentLength(data.length);
         response.setHeader("content-disposition", "inline;filename=wms-getcapabilities.xml");
 
-        try (OutputStream os = response.getOutputStream(); ) {
-            os.write(data);
-            os.flush();
+        try {
+            capabilitiesCache
+                    .getDocument(
+                            urlStr + includeVendorSpecific,
+                            encoding,
+                            fragments -> generateGetCapabilities(encoding, fragments))
+                    .write(servReq, response);
         } catch (IOException ioe) {
             log.debug("Caught IOException" + ioe.getMessage());
         }
     }
 
     String generateGetCapabilities(Charset encoding) {
+        return generateGetCapabilities(encoding, CapabilitiesCache.uncached());
+    }
+
+    private String generateGetCapabilities(Charset encoding, Fragments fragments) {
+        layers = tld.getLayerSnapshot();
         StringBuilder str = new StringBuilder();
         XMLBuilder xml = new XMLBuilder(str);
 
@@ -130,7 +161,7 @@ public class WMSGetCapabilities {
 
             // The actual meat
             service(xml);
-            capability(xml);
+            capability(xml, fragments);
             xml.endElement();
         } catch (IOException e) {
             // Should not happen as StringBuilder doesn't throw IOException
@@ -217,7 +248,7 @@ public class WMSGetCapabilities {
         xml.endElement();
     }
 
-    private void capability(XMLBuilder xml) throws IOException {
+    private void capability(XMLBuilder xml, Fragments fragments) throws IOException {
         xml.indentElement("Capability");
         xml.indentElement("Request");
         capabilityRequestGetCapabilities(xml);
@@ -228,9 +259,9 @@ public class WMSGetCapabilities {
         xml.endElement();
         capabilityException(xml);
         if (this.includeVendorSpecific) {
-            capabilityVendorSpecific(xml);
+            capabilityVendorSpecific(xml, fragments);
         }
-        capabilityLayerOuter(xml);
+        capabilityLayerOuter(xml, fragments);
         xml.endElement();
     }
 
@@ -279,7 +310,7 @@ public class WMSGetCapabilities {
 
     private void capabilityRequestGetMap(XMLBuilder xml) throws IOException {
         // Find all the formats we support
-        Iterable<TileLayer> layerIter = tld.getLayerList();
+        Iterable<TileLayer> layerIter = layers;
 
         HashSet<String> formats = new HashSet<String>();
 
@@ -305,7 +336,7 @@ public class WMSGetCapabilities {
     private void capabilityRequestGetFeatureInfo(XMLBuilder xml) throws IOException {
 
         // Find all the info formats we support
-        Iterable<TileLayer> layerIter = tld.getLayerList();
+        Iterable<TileLayer> layerIter = layers;
 
         HashSet<String> formats = new HashSet<String>();
 
@@ -348,43 +379,49 @@ public class WMSGetCapabilities {
         xml.endElement();
     }
 
-    private void capabilityVendorSpecific(XMLBuilder xml) throws IOException {
+    private void capabilityVendorSpecific(XMLBuilder xml, Fragments fragments)
+            throws IOException {
         xml.indentElement("VendorSpecificCapabilities");
-        Iterable<TileLayer> layerIter = tld.getLayerList();
+        Iterable<TileLayer> layerIter = layers;
         for (TileLayer layer : layerIter) {
             if (!layer.isEnabled() || !layer.isAdvertised()) {
                 continue;
             }
+            fragments.appendLayer(
+                    xml, layer, "tilesets", lxml -> capabilityVendorSpecificLayer(lxml, layer));
+        }
+        xml.endElement();
+    }
 
-            for (String gridSetId : layer.getGridSubsets()) {
-                GridSubset grid = layer.getGridSubset(gridSetId);
+    private void capabilityVendorSpecificLayer(XMLBuilder xml, TileLayer layer)
+            throws IOException {
+        for (String gridSetId : layer.getGridSubsets()) {
+            GridSubset grid = layer.getGridSubset(gridSetId);
 
-                List<String> formats = new ArrayList<String>(2);
+            List<String> formats = new ArrayList<String>(2);
 
-                if (layer.getMimeTypes() != null) {
-                    for (MimeType mime : layer.getMimeTypes()) {
-                        formats.add(mime.getFormat());
-                    }
-                } else {
-                    formats.add(ImageMime.png.getFormat());
-                    formats.add(ImageMime.jpeg.getFormat());
+            if (layer.getMimeTypes() != null) {
+                for (MimeType mime : layer.getMimeTypes()) {
+                    formats.add(mime.getFormat());
                 }
+            } else {
+                formats.add(ImageMime.png.getFormat());
+                formats.add(ImageMime.jpeg.getFormat());
+            }
 
-                List<String> styles = getStyles(layer.getParameterFilters());
-                Map<String, LegendInfo> legendsInfo = layer.getLayerLegendsInfo();
-                for (String format : formats) {
-                    for (String style : styles) {
-                        try {
-                            capabilityVendorSpecificTileset(
-                                    xml, layer, grid, format, style, legendsInfo.get(style));
-                        } catch (GeoWebCacheException e) {
-                            log.error(e.getMessage());
-                        }
+            List<String> styles = getStyles(layer.getParameterFilters());
+            Map<String, LegendInfo> legendsInfo = layer.getLayerLegendsInfo();
+            for (String format : formats) {
+                for (String style : styles) {
+                    try {
+                        capabilityVendorSpecificTileset(
+                                xml, layer, grid, format, style, legendsInfo.get(style));
+                    } catch (GeoWebCacheException e) {
+                        log.error(e.getMessage());
                     }
                 }
             }
         }
-        xml.endElement();
     }
 
     /**
@@ -492,7 +529,7 @@ public class WMSGetCapabilities {
         xml.endElement("LegendURL");
     }
 
-    private void capabilityLayerOuter(XMLBuilder xml) throws IOException {
+    private void capabilityLayerOuter(XMLBuilder xml, Fragments fragments) throws IOException {
         xml.indentElement("Layer");
         xml.simpleElement("Title", "GeoWebCache WMS", true);
         xml.simpleElement(
@@ -501,16 +538,21 @@ public class WMSGetCapabilities {
                 true);
         xml.latLonBoundingBox(-180.0, -90.0, 180.0, 90.0);
 
-        Iterable<TileLayer> layerIter = tld.getLayerList();
+        Iterable<TileLayer> layerIter = layers;
         for (TileLayer layer : layerIter) {
             if (!layer.isEnabled() || !layer.isAdvertised()) {
                 continue;
             }
-            try {
-                capabilityLayerInner(xml, layer);
-            } catch (GeoWebCacheException e) {
-                log.error(e.getMessage());
-            }
+            fragments.appendLayer(
+                    xml,
+                    layer,
+                    lxml -> {
+                        try {
+                            capabilityLayerInner(lxml, layer);
+                        } catch (GeoWebCacheException e) {
+                            log.error(e.getMessage());
+                        }
+                    });
         }
 
         xml.endElement();
@@ -16,6 +16,7 @@ package org.geowebcache.service.wms;
 
 import static org.geowebcache.grid.GridUtil.findBestMatchingGrid;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.io.IOException;
 import java.nio.channels.Channels;
 import java.util.ArrayList;
@@ -24,6 +25,8 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
@@ -45,6 +48,7 @@ import org.geowebcache.grid.GridMismatchException;
 import org.geowebcache.grid.GridSubset;
 import org.geowebcache.grid.SRS;
 import org.geowebcache.io.Resource;
+import org.geowebcache.io.codec.DecodeTargetPool;
 import org.geowebcache.layer.ProxyLayer;
 import org.geowebcache.layer.TileLayer;
 import org.geowebcache.layer.TileLayerDispatcher;
@@ -52,6 +56,7 @@ import org.geowebcache.mime.ImageMime;
 import org.geowebcache.mime.MimeException;
 import org.geowebcache.mime.MimeType;
 import org.geowebcache.mime.TextMime;
+import org.geowebcache.service.CapabilitiesCache;
 import org.geowebcache.service.Service;
 import org.geowebcache.service.ServiceException;
 import org.geowebcache.stats.RuntimeStats;
@@ -59,8 +64,9 @@ import org.geowebcache.storage.StorageBroker;
 import org.geowebcache.util.NullURLMangler;
 import org.geowebcache.util.ServletUtils;
 import org.geowebcache.util.URLMangler;
+import org.springframework.beans.factory.DisposableBean;
 
-public class WMSService extends Service {
+public class WMSService extends Service implements DisposableBean {
     public static final String GEOWEBCACHE_WMS_PROXY_REQUEST_WHITELIST =
             "GEOWEBCACHE_WMS_PROXY_REQUEST_WHITELIST";
 
@@ -95,6 +101,16 @@ public class WMSService extends Service {
 
     private SecurityDispatcher securityDispatcher;
 
+    private CapabilitiesCache capabilitiesCache;
+
+    /** Threads fetching and decoding the tiles of full WMS requests, 0 to use the request thread */
+    private int fuserThreads = Runtime.getRuntime().availableProcessors();
+
+    private ExecutorService fuserExecutor;
+
+    /** Images the fused tiles are decoded into, shared by all the full WMS requests */
+    private final DecodeTargetPool fuserDecodeTargets = new DecodeTargetPool(64);
+
     /** Protected no-argument constructor to allow run-time instrumentation */
     protected WMSService() {
         super(SERVICE_WMS);
@@ -106,6 +122,7 @@ public class WMSService extends Service {
         this.sb = sb;
         this.tld = tld;
         this.stats = stats;
+        this.capabilitiesCache = new CapabilitiesCache(tld);
     }
 
     public WMSService(
@@ -121,6 +138,7 @@ public class WMSService extends Service {
         this.stats = stats;
         this.urlMangler = urlMangler;
         this.controller = controller;
+        this.capabilitiesCache = new CapabilitiesCache(tld);
     }
 
     @Override
@@ -272,7 +290,7 @@ public class WMSService extends Service {
             if (tileIndex == null
                     || gridSubset.getTileWidth() != tileWidth
                     || gridSubset.getTileHeight() != tileHeight
-                    || !bbox.equals(gridSubset.boundsFromIndex(tileIndex), 0.02)) {
+                    || !bbox.equals(gridSubset.boundsFromIndex(tileIndex, new double[4]), 0.02)) {
                 log.debug("Recombinining tiles to respond to WMS request");
                 ConveyorTile tile = new ConveyorTile(sb, layers, request, response);
                 tile.setHint("getmap");
@@ -312,7 +330,12 @@ public class WMSService extends Service {
             if (tile.getHint().equalsIgnoreCase("getcapabilities")) {
                 WMSGetCapabilities wmsCap =
                         new WMSGetCapabilities(
-                                tld, tile.servletReq, servletBase, context, urlMangler);
+                                tld,
+                                tile.servletReq,
+                                servletBase,
+                                context,
+                                urlMangler,
+                                capabilitiesCache);
                 wmsCap.writeResponse(tile.servletResp);
             } else if (tile.getHint().equalsIgnoreCase("getmap")) {
                 getSecurityDispatcher().checkSecurity(tile);
@@ -359,9 +382,25 @@ public class WMSService extends Service {
         wmsFuser.setApplicationContext(utility.getApplicationContext());
         // Setting of the hintConfiguration if present
         wmsFuser.setHintsConfiguration(hintsConfig);
+        wmsFuser.setFetchExecutor(getFuserExecutor());
+        wmsFuser.setDecodeTargetPool(fuserDecodeTargets);
         return wmsFuser;
     }
 
+    /** @return the pool fetching the tiles of full WMS requests, or {@code null} if disabled */
+    protected synchronized ExecutorService getFuserExecutor() {
+        if (fuserExecutor == null && fuserThreads > 0) {
+            fuserExecutor =
+                    Executors.newFixedThreadPool(
+                            fuserThreads,
+                            new ThreadFactoryBuilder()
+                                    .setDaemon(true)
+                                    .setNameFormat("GWC WMS Tile Fuser-%d")
+                                    .build());
+        }
+        return fuserExecutor;
+    }
+
     /**
      * Handles a getfeatureinfo request
      *
@@ -523,6 +562,27 @@ public class WMSService extends Service {
         this.hintsConfig = hintsConfig;
     }
 
+    /**
+     * Sets how many tiles of a full WMS request are fetched and decoded in parallel, across all the
+     * requests. Zero or less fetches them one after the other in the request thread.
+     */
+    public synchronized void setFuserThreads(int fuserThreads) {
+        this.fuserThreads = fuserThreads;
+        if (fuserExecutor != null) {
+            fuserExecutor.shutdown();
+            fuserExecutor = null;
+        }
+        log.info("Will fetch the tiles of full WMS requests using " + fuserThreads + " threads.");
+    }
+
+    @Override
+    public synchronized void destroy() {
+        if (fuserExecutor != null) {
+            fuserExecutor.shutdownNow();
+            fuserExecutor = null;
+        }
+    }
+
     public void setUtility(WMSUtilities utility) {
         this.utility = utility;
     }
@@ -17,15 +17,22 @@ package org.geowebcache.service.wms;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
-import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
 import java.awt.image.RenderedImage;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
 import javax.media.jai.PlanarImage;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
@@ -44,6 +51,7 @@ import org.geowebcache.grid.GridSubset;
 import org.geowebcache.grid.OutsideCoverageException;
 import org.geowebcache.grid.SRS;
 import org.geowebcache.io.Resource;
+import org.geowebcache.io.codec.DecodeTargetPool;
 import org.geowebcache.io.codec.ImageDecoderContainer;
 import org.geowebcache.io.codec.ImageEncoderContainer;
 import org.geowebcache.layer.TileLayer;
@@ -61,8 +69,8 @@ import org.springframework.context.ApplicationContext;
 /*
  * It will work as follows
  * 2) Based on the dimensions and bounding box of the request, GWC will determine the smallest available resolution that equals or exceeds the requested resolution.
- * 3) GWC will create a new in-memory raster, based on the best resolution and requested bounding box, and write the appropriate PNG tiles to it. Missing tiles will be requested from WMS.
- * 4) GWC will scale the raster down to the requested dimensions.
+ * 3) GWC will lay out the appropriate PNG tiles, based on the best resolution and requested bounding box. Missing tiles will be requested from WMS.
+ * 4) GWC will draw the tiles on a new in-memory raster of the requested dimensions, scaling them down as they are drawn.
  * 5) GWC will then compress the raster to the desired output format and return the image. The image is not cached.
  */
 public class WMSTileFuser {
@@ -106,11 +114,11 @@ public class WMSTileFuser {
     // Area of tiles being used in tile coordinates
     long[] srcRectangle;
 
-    // The spatial extent of the tiles used to fulfil the request
-    BoundingBox srcBounds;
+    // The spatial extent of the tiles used to fulfil the request, as minx, miny, maxx, maxy
+    final double[] srcBounds = new double[4];
     //
     BoundingBox canvasBounds;
-    /** Canvas dimensions */
+    /** Dimensions of the tiles layout at the source resolution, scaled to the requested size */
     int[] canvasSize = new int[2];
 
     static class SpatialOffsets {
@@ -127,15 +135,33 @@ public class WMSTileFuser {
         int right;
     };
 
+    /** A tile to draw, and the part of it that goes on the canvas */
+    static class TilePlacement {
+        ConveyorTile tile;
+        int tilex;
+        int tiley;
+        int tileWidth;
+        int tileHeight;
+        int canvasx;
+        int canvasy;
+    };
+
     /** These are values before scaling */
     PixelOffsets canvOfs = new PixelOffsets();
 
     SpatialOffsets boundOfs = new SpatialOffsets();
     /** Mosaic image */
     BufferedImage canvas;
-    /** Graphics object used for drawing the tiles into a mosaic */
+    /**
+     * Graphics object used for drawing the tiles into a mosaic, {@code null} while the tiles are
+     * copied into an indexed canvas
+     */
     Graphics2D gfx;
 
+    int canvasType;
+
+    Color bgColor;
+
     /** Layer parameters */
     private Map<String, String> fullParameters;
 
@@ -150,6 +176,12 @@ public class WMSTileFuser {
 
     private SecurityDispatcher securityDispatcher;
 
+    /** Fetches and decodes the tiles, or {@code null} to do it in the calling thread */
+    private ExecutorService fetchExecutor;
+
+    /** Images the tiles are decoded into, or {@code null} to allocate new ones */
+    private DecodeTargetPool decodeTargets;
+
     /** Enum storing the Hints associated to one of the 3 configurations(SPEED, QUALITY, DEFAULT) */
     public enum HintsLevel {
         QUALITY(0, "quality"),
@@ -438,15 +470,15 @@ public class WMSTileFuser {
     protected void determineCanvasLayout() {
         // Find the spatial extent of the tiles needed to cover the desired extent
         srcRectangle = gridSubset.getCoverageIntersection(srcIdx, reqBounds);
-        srcBounds = gridSubset.boundsFromRectangle(srcRectangle);
+        gridSubset.boundsFromRectangle(srcRectangle, srcBounds);
 
         // We now have the complete area, lets figure out our offsets
         // Positive means that there is blank space to the first tile,
         // negative means we will not use the entire tile
-        boundOfs.left = srcBounds.getMinX() - reqBounds.getMinX();
-        boundOfs.bottom = srcBounds.getMinY() - reqBounds.getMinY();
-        boundOfs.right = reqBounds.getMaxX() - srcBounds.getMaxX();
-        boundOfs.top = reqBounds.getMaxY() - srcBounds.getMaxY();
+        boundOfs.left = srcBounds[0] - reqBounds.getMinX();
+        boundOfs.bottom = srcBounds[1] - reqBounds.getMinY();
+        boundOfs.right = reqBounds.getMaxX() - srcBounds[2];
+        boundOfs.top = reqBounds.getMaxY() - srcBounds[3];
 
         canvasSize[0] = (int) Math.round(reqBounds.getWidth() / this.srcResolution);
         canvasSize[1] = (int) Math.round(reqBounds.getHeight() / this.srcResolution);
@@ -497,7 +529,12 @@ public class WMSTileFuser {
 
         if (log.isDebugEnabled()) {
             log.debug("intersection rectangle: " + Arrays.toString(srcRectangle));
-            log.debug("intersection bounds: " + srcBounds + " (" + reqBounds + ")");
+            log.debug(
+                    "intersection bounds: "
+                            + BoundingBox.toString(srcBounds)
+                            + " ("
+                            + reqBounds
+                            + ")");
             log.debug(
                     "Bound offsets: "
                             + Arrays.toString(
@@ -525,7 +562,7 @@ public class WMSTileFuser {
         // TODO take bgcolor and transparency from request into account
         // should move this into a separate function
 
-        Color bgColor = null;
+        bgColor = null;
         boolean transparent = true;
 
         if (layer instanceof WMSLayer) {
@@ -538,7 +575,6 @@ public class WMSTileFuser {
             transparent = wmsLayer.getTransparent();
         }
 
-        int canvasType;
         if (bgColor == null
                 && transparent
                 && (outputFormat.supportsAlphaBit() || outputFormat.supportsAlphaChannel())) {
@@ -550,13 +586,34 @@ public class WMSTileFuser {
             }
         }
 
+        boolean scaling = canvasSize[0] != reqWidth || canvasSize[1] != reqHeight;
+        if (!scaling
+                && outputFormat == ImageMime.png8
+                && layer.getMimeTypes().contains(ImageMime.png8)) {
+            // paletted tiles can be composited keeping their palette, but not scaled
+            srcFormat = ImageMime.png8;
+        }
+
+        boolean palettedOutput = outputFormat == ImageMime.png8 || outputFormat == ImageMime.gif;
+        if (canvasType == BufferedImage.TYPE_INT_ARGB && palettedOutput && !scaling) {
+            // wait for the first tile, if all the tiles share its palette the canvas can use it
+            return;
+        }
+        createDirectCanvas();
+    }
+
+    /**
+     * Creates a direct color canvas of the requested size, filled with the background color if any,
+     * whose graphics scale the tiles laid out at their own resolution as they are drawn
+     */
+    private void createDirectCanvas() {
         // Create the actual canvas and graphics object
-        canvas = new BufferedImage(canvasSize[0], canvasSize[1], canvasType);
+        canvas = new BufferedImage(reqWidth, reqHeight, canvasType);
         gfx = (Graphics2D) canvas.getGraphics();
 
         if (bgColor != null) {
             gfx.setColor(bgColor);
-            gfx.fillRect(0, 0, canvasSize[0], canvasSize[1]);
+            gfx.fillRect(0, 0, reqWidth, reqHeight);
         }
 
         // Hints settings
@@ -566,13 +623,81 @@ public class WMSTileFuser {
             hintsTemp = hints;
         }
         gfx.addRenderingHints(hintsTemp);
+
+        if (canvasSize[0] != reqWidth || canvasSize[1] != reqHeight) {
+            double scaleX = ((double) reqWidth) / canvasSize[0];
+            double scaleY = ((double) reqHeight) / canvasSize[1];
+            log.debug("Tile scale: " + scaleX + "," + scaleY);
+            gfx.scale(scaleX, scaleY);
+        }
+    }
+
+    /**
+     * Creates a canvas using the palette of the tiles, filled with its transparent color. Only used
+     * when no scaling is needed, the canvas has the requested size
+     */
+    private void createIndexedCanvas(IndexColorModel palette) {
+        canvas =
+                new BufferedImage(
+                        canvasSize[0], canvasSize[1], BufferedImage.TYPE_BYTE_INDEXED, palette);
+        byte[] pixels = ((DataBufferByte) canvas.getRaster().getDataBuffer()).getData();
+        Arrays.fill(pixels, (byte) palette.getTransparentPixel());
+    }
+
+    /** Draws the given part of a tile on the canvas */
+    private void drawTile(BufferedImage tileImg, TilePlacement placement) {
+        ColorModel colorModel = tileImg.getColorModel();
+        if (canvas == null) {
+            if (colorModel instanceof IndexColorModel
+                    && ((IndexColorModel) colorModel).getTransparentPixel() >= 0) {
+                createIndexedCanvas((IndexColorModel) colorModel);
+            } else {
+                createDirectCanvas();
+            }
+        } else if (gfx == null
+                && !DecodeTargetPool.isSameColorModel(canvas.getColorModel(), colorModel)) {
+            // the tiles don't share a palette, go on with a direct color canvas
+            BufferedImage indexed = canvas;
+            createDirectCanvas();
+            gfx.drawImage(indexed, 0, 0, null);
+        }
+
+        if (gfx == null) {
+            // same palette, copy the pixels as they are
+            Raster part =
+                    tileImg.getRaster()
+                            .createChild(
+                                    placement.tilex,
+                                    placement.tiley,
+                                    placement.tileWidth,
+                                    placement.tileHeight,
+                                    0,
+                                    0,
+                                    null);
+            canvas.getRaster().setDataElements(placement.canvasx, placement.canvasy, part);
+            return;
+        }
+
+        // drawing only the part of the tile we want, instead of cutting it with getSubimage
+        gfx.drawImage(
+                tileImg,
+                placement.canvasx,
+                placement.canvasy,
+                placement.canvasx + placement.tileWidth,
+                placement.canvasy + placement.tileHeight,
+                placement.tilex,
+                placement.tiley,
+                placement.tilex + placement.tileWidth,
+                placement.tiley + placement.tileHeight,
+                null); // imageObserver
     }
 
     protected void renderCanvas()
             throws OutsideCoverageException, GeoWebCacheException, IOException, Exception {
 
-        // Now we loop over all the relevant tiles and write them to the canvas,
+        // Now we loop over all the relevant tiles and work out where they go on the canvas,
         // Starting at the bottom, moving to the right and up
+        List<TilePlacement> placements = new ArrayList<>();
 
         // Bottom row of tiles, in tile coordinates
         long starty = srcRectangle[1];
@@ -634,18 +759,6 @@ public class WMSTileFuser {
                     continue;
                 }
 
-                layer.getTile(tile);
-                // Selection of the resource input stream
-                Resource blob = tile.getBlob();
-                // Extraction of the image associated with the defined MimeType
-                String formatName = srcFormat.getMimeType();
-                BufferedImage tileImg =
-                        decoderMap.decode(
-                                formatName,
-                                blob,
-                                decoderMap.isAggressiveInputStreamSupported(formatName),
-                                null);
-
                 int tilex = 0;
                 int canvasx = (int) (gridx - startx) * gridSubset.getTileWidth();
                 int tileWidth = gridSubset.getTileWidth();
@@ -678,65 +791,139 @@ public class WMSTileFuser {
                     continue;
                 }
 
-                // Cut down the tile to the part we want
-                if (tileWidth != gridSubset.getTileWidth()
-                        || tileHeight != gridSubset.getTileHeight()) {
+                TilePlacement placement = new TilePlacement();
+                placement.tile = tile;
+                placement.tilex = tilex;
+                placement.tiley = tiley;
+                placement.tileWidth = tileWidth;
+                placement.tileHeight = tileHeight;
+                placement.canvasx = canvasx;
+                placement.canvasy = canvasy;
+                placements.add(placement);
+            }
+        }
+
+        // Look up all the cached tiles at once rather than one by one
+        if (sb != null && placements.size() > 1) {
+            List<ConveyorTile> tiles = new ArrayList<>(placements.size());
+            for (TilePlacement placement : placements) {
+                tiles.add(placement.tile);
+            }
+            try {
+                ConveyorTile.retrieveAll(sb, tiles);
+            } catch (GeoWebCacheException e) {
+                // each tile will be looked up on its own
+                log.warn("Failed to look up the tiles of " + layer.getName() + " at once", e);
+            }
+        }
+
+        // Fetch and decode the tiles concurrently, cache misses on different meta tiles are
+        // requested to the backend in parallel too
+        List<FutureTask<BufferedImage>> images = new ArrayList<>(placements.size());
+        for (TilePlacement placement : placements) {
+            FutureTask<BufferedImage> fetch = new FutureTask<>(() -> fetchTile(placement.tile));
+            if (fetchExecutor == null || placements.size() == 1) {
+                fetch.run();
+            } else {
+                fetchExecutor.execute(fetch);
+            }
+            images.add(fetch);
+        }
+
+        // index of the next tile to draw, the ones after it are not drawn if the request fails
+        int next = 0;
+        try {
+            // Draw them in order as they become available
+            while (next < placements.size()) {
+                final int i = next++;
+                TilePlacement placement = placements.get(i);
+                BufferedImage tileImg = getTileImage(images.get(i));
+
+                // Render the part of the tile we want on the big canvas
+                if (log.isDebugEnabled()) {
                     log.debug(
-                            "tileImg.getSubimage("
-                                    + tilex
+                            "drawTile("
+                                    + placement.tilex
                                     + ","
-                                    + tiley
+                                    + placement.tiley
                                     + ","
-                                    + tileWidth
+                                    + placement.tileWidth
                                     + ","
-                                    + tileHeight
-                                    + ")");
-                    tileImg = tileImg.getSubimage(tilex, tiley, tileWidth, tileHeight);
+                                    + placement.tileHeight
+                                    + " at "
+                                    + placement.canvasx
+                                    + ","
+                                    + placement.canvasy
+                                    + ") "
+                                    + Arrays.toString(placement.tile.getTileIndex()));
                 }
-
-                // Render the tile on the big canvas
-                log.debug(
-                        "drawImage(subtile,"
-                                + canvasx
-                                + ","
-                                + canvasy
-                                + ",null) "
-                                + Arrays.toString(gridLoc));
-
-                gfx.drawImage(tileImg, canvasx, canvasy, null); // imageObserver
+                try {
+                    drawTile(tileImg, placement);
+                } finally {
+                    if (decodeTargets != null) {
+                        decodeTargets.release(tileImg);
+                    }
+                }
+            }
+            if (canvas == null) {
+                // no tiles at all
+                createDirectCanvas();
+            }
+        } finally {
+            // don't keep fetching tiles if the request failed, and hand back the fetched ones
+            for (int i = next; i < images.size(); i++) {
+                FutureTask<BufferedImage> fetch = images.get(i);
+                if (!fetch.cancel(false) && decodeTargets != null) {
+                    releaseFetched(fetch);
+                }
+            }
+            if (gfx != null) {
+                gfx.dispose();
             }
         }
-
-        gfx.dispose();
     }
 
-    protected void scaleRaster() {
-        if (canvasSize[0] != reqWidth || canvasSize[1] != reqHeight) {
-            BufferedImage preTransform = canvas;
-
-            canvas = new BufferedImage(reqWidth, reqHeight, preTransform.getType());
-
-            Graphics2D gfx = canvas.createGraphics();
-
-            AffineTransform affineTrans =
-                    AffineTransform.getScaleInstance(
-                            ((double) reqWidth) / preTransform.getWidth(),
-                            ((double) reqHeight) / preTransform.getHeight());
+    /** Returns the image of a completed fetch to the decode target pool, if it was successful */
+    private void releaseFetched(FutureTask<BufferedImage> fetch) {
+        try {
+            decodeTargets.release(fetch.get());
+        } catch (ExecutionException | InterruptedException e) {
+            // the fetch failed, there is no image
+            log.debug("Tile not drawn could not be fetched", e);
+        }
+    }
 
-            log.debug(
-                    "AffineTransform: "
-                            + (((double) reqWidth) / preTransform.getWidth())
-                            + ","
-                            + +(((double) reqHeight) / preTransform.getHeight()));
-            // Hints settings
-            RenderingHints hintsTemp = HintsLevel.DEFAULT.getRenderingHints();
+    /** Gets the tile from the layer, fetching it from the backend if missing, and decodes it */
+    private BufferedImage fetchTile(ConveyorTile tile) throws Exception {
+        layer.getTile(tile);
+        // Selection of the resource input stream
+        Resource blob = tile.getBlob();
+        // Extraction of the image associated with the defined MimeType
+        String formatName = srcFormat.getMimeType();
+        Map<String, Object> decodeHints =
+                decodeTargets == null
+                        ? null
+                        : Collections.singletonMap(
+                                DecodeTargetPool.DECODE_TARGET_POOL, decodeTargets);
+        return decoderMap.decode(
+                formatName,
+                blob,
+                decoderMap.isAggressiveInputStreamSupported(formatName),
+                decodeHints);
+    }
 
-            if (hints != null) {
-                hintsTemp = hints;
+    private BufferedImage getTileImage(FutureTask<BufferedImage> fetch) throws Exception {
+        try {
+            return fetch.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
             }
-            gfx.addRenderingHints(hintsTemp);
-            gfx.drawRenderedImage(preTransform, affineTrans);
-            gfx.dispose();
+            throw e;
         }
     }
 
@@ -746,7 +933,6 @@ public class WMSTileFuser {
         determineCanvasLayout();
         createCanvas();
         renderCanvas();
-        scaleRaster();
 
         AccountingOutputStream aos = null;
         RenderedImage finalImage = null;
@@ -811,4 +997,17 @@ public class WMSTileFuser {
     public void setSecurityDispatcher(SecurityDispatcher securityDispatcher) {
         this.securityDispatcher = securityDispatcher;
     }
+
+    /**
+     * Sets the executor fetching and decoding the tiles in parallel, the tiles are fetched one
+     * after the other in the calling thread if {@code null}
+     */
+    public void setFetchExecutor(ExecutorService fetchExecutor) {
+        this.fetchExecutor = fetchExecutor;
+    }
+
+    /** Sets the pool of images the tiles are decoded into, {@code null} to allocate new ones */
+    public void setDecodeTargetPool(DecodeTargetPool decodeTargets) {
+        this.decodeTargets = decodeTargets;
+    }
 }
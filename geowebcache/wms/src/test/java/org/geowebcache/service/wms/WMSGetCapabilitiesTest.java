@@ -124,6 +124,8 @@ public class WMSGetCapabilitiesTest {
         unAdvertisedLayer.setAdvertised(false);
 
         expect(tld.getLayerList()).andStubReturn(Arrays.asList(advertisedLayer, unAdvertisedLayer));
+        expect(tld.getLayerSnapshot())
+                .andStubReturn(Arrays.asList(advertisedLayer, unAdvertisedLayer));
 
         replay(tld, servReq, response, servInfo);
 
@@ -222,6 +222,7 @@ public class WMSServiceTest {
                 Arrays.asList("GlobalCRS84Pixel", "GlobalCRS84Scale", "EPSG:4326");
         TileLayer tileLayer = mockTileLayer("mockLayer", gridSetNames);
         when(tld.getLayerList()).thenReturn(Arrays.asList(tileLayer));
+        when(tld.getLayerSnapshot()).thenReturn(Arrays.asList(tileLayer));
 
         ConveyorTile conv = service.getConveyor(req, resp);
         assertNotNull(conv);
@@ -266,6 +267,7 @@ public class WMSServiceTest {
                 Arrays.asList("GlobalCRS84Pixel", "GlobalCRS84Scale", "EPSG:4326");
         TileLayer tileLayer = mockTileLayer("möcklāyer😎", gridSetNames);
         when(tld.getLayerList()).thenReturn(Arrays.asList(tileLayer));
+        when(tld.getLayerSnapshot()).thenReturn(Arrays.asList(tileLayer));
 
         ConveyorTile conv = service.getConveyor(req, resp);
         assertNotNull(conv);
@@ -491,6 +493,7 @@ public class WMSServiceTest {
         TestLayer tileLayer = mock(TestLayer.class);
         when(tld.getTileLayer(layerName)).thenReturn(tileLayer);
         when(tld.getLayerList()).thenReturn(Collections.singleton(tileLayer));
+        when(tld.getLayerSnapshot()).thenReturn(Collections.singletonList(tileLayer));
 
         doThrow(new SecurityException()).when(secDisp).checkSecurity(Mockito.any());
 
@@ -526,6 +529,7 @@ public class WMSServiceTest {
         TestLayer tileLayer = mock(TestLayer.class);
         when(tld.getTileLayer(layerName)).thenReturn(tileLayer);
         when(tld.getLayerList()).thenReturn(Collections.singleton(tileLayer));
+        when(tld.getLayerSnapshot()).thenReturn(Collections.singletonList(tileLayer));
 
         MockHttpServletRequest req = new MockHttpServletRequest();
         MockHttpServletResponse resp = new MockHttpServletResponse();
@@ -572,6 +576,7 @@ public class WMSServiceTest {
         TestLayer tileLayer = mock(TestLayer.class);
         when(tld.getTileLayer(layerName)).thenReturn(tileLayer);
         when(tld.getLayerList()).thenReturn(Collections.singleton(tileLayer));
+        when(tld.getLayerSnapshot()).thenReturn(Collections.singletonList(tileLayer));
         when(tileLayer.getGridSubsetsForSRS(SRS.getEPSG4326()))
                 .thenReturn(Collections.singletonList(subset));
 
@@ -633,6 +638,7 @@ public class WMSServiceTest {
         TestLayer tileLayer = mock(TestLayer.class);
         when(tld.getTileLayer(layerName)).thenReturn(tileLayer);
         when(tld.getLayerList()).thenReturn(Collections.singleton(tileLayer));
+        when(tld.getLayerSnapshot()).thenReturn(Collections.singletonList(tileLayer));
         when(tileLayer.getGridSubsetsForSRS(SRS.getEPSG4326()))
                 .thenReturn(Collections.singletonList(subset));
 
@@ -687,6 +693,7 @@ public class WMSServiceTest {
         TestLayer tileLayer = mock(TestLayer.class);
         when(tld.getTileLayer(layerName)).thenReturn(tileLayer);
         when(tld.getLayerList()).thenReturn(Collections.singleton(tileLayer));
+        when(tld.getLayerSnapshot()).thenReturn(Collections.singletonList(tileLayer));
         when(tileLayer.getGridSubsetsForSRS(SRS.getEPSG4326()))
                 .thenReturn(Collections.singletonList(subset));
         when(tileLayer.getInfoMimeTypes()).thenReturn(Collections.singletonList(XMLMime.gml));
@@ -751,6 +758,7 @@ public class WMSServiceTest {
         TestLayer tileLayer = mock(TestLayer.class);
         when(tld.getTileLayer(layerName)).thenReturn(tileLayer);
         when(tld.getLayerList()).thenReturn(Collections.singleton(tileLayer));
+        when(tld.getLayerSnapshot()).thenReturn(Collections.singletonList(tileLayer));
         when(tileLayer.getGridSubsetsForSRS(SRS.getEPSG4326()))
                 .thenReturn(Collections.singletonList(subset));
         when(tileLayer.getInfoMimeTypes()).thenReturn(Collections.singletonList(XMLMime.gml));
@@ -0,0 +1,115 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.service.wms;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.Collections;
+import java.util.Map;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.geowebcache.io.FileResource;
+import org.geowebcache.io.Resource;
+import org.geowebcache.io.codec.DecodeTargetPool;
+import org.geowebcache.io.codec.ImageDecoderContainer;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+/**
+ * Measures the cost of decoding tiles and compositing them into a scaled mosaic the way the {@link
+ * WMSTileFuser} does, allocating a new image per tile or decoding into a {@link DecodeTargetPool}.
+ */
+final class WMSTileFuserPerf {
+
+    private static Log LOGGER = LogFactory.getLog(WMSTileFuserPerf.class);
+
+    // number of mosaics to compose for each run
+    static final int MOSAICS = 500;
+    // tiles per side of each mosaic
+    static final int TILES = 4;
+    // scale from the tiles resolution to the output one
+    static final double SCALE = 0.7;
+
+    public static void main(String[] args) throws Exception {
+        try (ClassPathXmlApplicationContext context =
+                new ClassPathXmlApplicationContext("appContextTest.xml")) {
+            ImageDecoderContainer decoders = context.getBean(ImageDecoderContainer.class);
+            Resource tile =
+                    new FileResource(
+                            new File(WMSTileFuserPerf.class.getResource("/image.png").toURI()));
+            // warm up
+            compose(decoders, tile, null, MOSAICS / 10);
+            compose(decoders, tile, new DecodeTargetPool(1), MOSAICS / 10);
+
+            long start = System.nanoTime();
+            compose(decoders, tile, null, MOSAICS);
+            long allocating = System.nanoTime() - start;
+            start = System.nanoTime();
+            compose(decoders, tile, new DecodeTargetPool(1), MOSAICS);
+            long pooled = System.nanoTime() - start;
+            if (LOGGER.isInfoEnabled()) {
+                LOGGER.info(
+                        String.format(
+                                "Composed %d mosaics of %d tiles, new: %d ms, pooled: %d ms.",
+                                MOSAICS, TILES * TILES, allocating / 1000000, pooled / 1000000));
+            }
+        }
+    }
+
+    /** Decodes the tile repeatedly, drawing it scaled on a mosaic in a single pass. */
+    private static void compose(
+            ImageDecoderContainer decoders, Resource tile, DecodeTargetPool pool, int mosaics)
+            throws Exception {
+        Map<String, Object> hints =
+                pool == null
+                        ? null
+                        : Collections.singletonMap(
+                                DecodeTargetPool.DECODE_TARGET_POOL, pool);
+        for (int m = 0; m < mosaics; m++) {
+            BufferedImage canvas = null;
+            Graphics2D gfx = null;
+            for (int i = 0; i < TILES * TILES; i++) {
+                BufferedImage image = decoders.decode("image/png", tile, false, hints);
+                int width = image.getWidth();
+                int height = image.getHeight();
+                if (canvas == null) {
+                    canvas =
+                            new BufferedImage(
+                                    (int) Math.round(TILES * width * SCALE),
+                                    (int) Math.round(TILES * height * SCALE),
+                                    BufferedImage.TYPE_INT_ARGB);
+                    gfx = canvas.createGraphics();
+                }
+                int x = (i % TILES) * width;
+                int y = (i / TILES) * height;
+                gfx.drawImage(
+                        image,
+                        (int) Math.round(x * SCALE),
+                        (int) Math.round(y * SCALE),
+                        (int) Math.round((x + width) * SCALE),
+                        (int) Math.round((y + height) * SCALE),
+                        0,
+                        0,
+                        width,
+                        height,
+                        null);
+                if (pool != null) {
+                    pool.release(image);
+                }
+            }
+            gfx.dispose();
+        }
+    }
+}
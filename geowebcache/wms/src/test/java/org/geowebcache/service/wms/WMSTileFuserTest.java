@@ -16,12 +16,15 @@ package org.geowebcache.service.wms;
 
 import static org.hamcrest.Matchers.hasProperty;
 import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.argThat;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.util.Arrays;
 import java.util.Date;
@@ -30,6 +33,9 @@ import java.util.Hashtable;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.imageio.ImageIO;
 import javax.servlet.http.HttpServletRequest;
 import org.geowebcache.GeoWebCacheException;
 import org.geowebcache.filter.security.SecurityDispatcher;
@@ -38,6 +44,7 @@ import org.geowebcache.grid.GridSetBroker;
 import org.geowebcache.grid.GridSubset;
 import org.geowebcache.grid.GridSubsetFactory;
 import org.geowebcache.io.FileResource;
+import org.geowebcache.io.codec.DecodeTargetPool;
 import org.geowebcache.layer.TileLayer;
 import org.geowebcache.layer.TileLayerDispatcher;
 import org.geowebcache.layer.wms.WMSLayer;
@@ -173,6 +180,7 @@ public class WMSTileFuserTest {
                             stObj.setBlobSize(1000);
                             return true;
                         });
+        answerGetAllWithGet(sb);
         WMSTileFuser tileFuser =
                 new WMSTileFuser(tld, sb, fuserRequest(layer, gridSubset, bounds, width, height));
         ClassPathXmlApplicationContext context =
@@ -190,6 +198,114 @@ public class WMSTileFuserTest {
                         Mockito.argThat(hasProperty("tileLayer", notNullValue(TileLayer.class))));
     }
 
+    @Test
+    public void testTileFuserParallelFetch() throws Exception {
+        TileLayer layer = createWMSLayer();
+
+        // request fits inside -30.0,15.0,45.0,30
+        BoundingBox bounds = new BoundingBox(-25.0, 17.0, 40.0, 22);
+
+        int width = (int) bounds.getWidth() * 10;
+        int height = (int) bounds.getHeight() * 10;
+        GridSubset gridSubset = layer.getGridSubset(layer.getGridSubsets().iterator().next());
+        TileLayerDispatcher tld = mock(TileLayerDispatcher.class);
+        Mockito.when(tld.getTileLayer("test:layer")).thenReturn(layer);
+        StorageBroker sb = mock(StorageBroker.class);
+        Mockito.when(sb.get(argThat(Matchers.instanceOf(TileObject.class))))
+                .thenAnswer(
+                        invoc -> {
+                            TileObject stObj = (TileObject) invoc.getArguments()[0];
+                            final File imageTile =
+                                    new File(getClass().getResource("/image.png").toURI());
+                            stObj.setBlob(new FileResource(imageTile));
+                            stObj.setCreated((new Date()).getTime());
+                            stObj.setBlobSize(1000);
+                            return true;
+                        });
+        answerGetAllWithGet(sb);
+        ClassPathXmlApplicationContext context =
+                new ClassPathXmlApplicationContext("appContextTest.xml");
+        RuntimeStats stats = mock(RuntimeStats.class);
+
+        WMSTileFuser serialFuser =
+                new WMSTileFuser(tld, sb, fuserRequest(layer, gridSubset, bounds, width, height));
+        serialFuser.setApplicationContext(context);
+        serialFuser.setSecurityDispatcher(secDisp);
+        MockHttpServletResponse serial = new MockHttpServletResponse();
+        serialFuser.writeResponse(serial, stats);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            WMSTileFuser parallelFuser =
+                    new WMSTileFuser(
+                            tld, sb, fuserRequest(layer, gridSubset, bounds, width, height));
+            parallelFuser.setApplicationContext(context);
+            parallelFuser.setSecurityDispatcher(secDisp);
+            parallelFuser.setFetchExecutor(executor);
+            MockHttpServletResponse parallel = new MockHttpServletResponse();
+            parallelFuser.writeResponse(parallel, stats);
+
+            // same tiles fetched, composited in the same way
+            Mockito.verify(sb, times(8)).get(Mockito.any(TileObject.class));
+            assertArrayEquals(serial.getContentAsByteArray(), parallel.getContentAsByteArray());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testTileFuserDecodeTargetPool() throws Exception {
+        TileLayer layer = createWMSLayer();
+
+        // request fits inside -30.0,15.0,45.0,30
+        BoundingBox bounds = new BoundingBox(-25.0, 17.0, 40.0, 22);
+
+        int width = (int) bounds.getWidth() * 10;
+        int height = (int) bounds.getHeight() * 10;
+        GridSubset gridSubset = layer.getGridSubset(layer.getGridSubsets().iterator().next());
+        TileLayerDispatcher tld = mock(TileLayerDispatcher.class);
+        Mockito.when(tld.getTileLayer("test:layer")).thenReturn(layer);
+        StorageBroker sb = mock(StorageBroker.class);
+        Mockito.when(sb.get(argThat(Matchers.instanceOf(TileObject.class))))
+                .thenAnswer(
+                        invoc -> {
+                            TileObject stObj = (TileObject) invoc.getArguments()[0];
+                            final File imageTile =
+                                    new File(getClass().getResource("/image.png").toURI());
+                            stObj.setBlob(new FileResource(imageTile));
+                            stObj.setCreated((new Date()).getTime());
+                            stObj.setBlobSize(1000);
+                            return true;
+                        });
+        answerGetAllWithGet(sb);
+        ClassPathXmlApplicationContext context =
+                new ClassPathXmlApplicationContext("appContextTest.xml");
+        RuntimeStats stats = mock(RuntimeStats.class);
+
+        WMSTileFuser plainFuser =
+                new WMSTileFuser(tld, sb, fuserRequest(layer, gridSubset, bounds, width, height));
+        plainFuser.setApplicationContext(context);
+        plainFuser.setSecurityDispatcher(secDisp);
+        MockHttpServletResponse plain = new MockHttpServletResponse();
+        plainFuser.writeResponse(plain, stats);
+
+        DecodeTargetPool pool = new DecodeTargetPool(16);
+        for (int i = 0; i < 2; i++) {
+            WMSTileFuser pooledFuser =
+                    new WMSTileFuser(
+                            tld, sb, fuserRequest(layer, gridSubset, bounds, width, height));
+            pooledFuser.setApplicationContext(context);
+            pooledFuser.setSecurityDispatcher(secDisp);
+            pooledFuser.setDecodeTargetPool(pool);
+            MockHttpServletResponse pooled = new MockHttpServletResponse();
+            pooledFuser.writeResponse(pooled, stats);
+
+            // the tiles are decoded one after the other, the same image is reused for all of them
+            assertEquals(1, pool.size());
+            assertArrayEquals(plain.getContentAsByteArray(), pooled.getContentAsByteArray());
+        }
+    }
+
     @Test
     public void testTileFuserSubset() throws Exception {
         TileLayer layer = createWMSLayer();
@@ -211,7 +327,10 @@ public class WMSTileFuserTest {
         tileFuser.determineSourceResolution();
         tileFuser.determineCanvasLayout();
 
-        assertTrue(tileFuser.srcBounds.contains(bounds));
+        double[] srcBounds = tileFuser.srcBounds;
+        assertTrue(
+                new BoundingBox(srcBounds[0], srcBounds[1], srcBounds[2], srcBounds[3])
+                        .contains(bounds));
         WMSTileFuser.PixelOffsets comparison = new WMSTileFuser.PixelOffsets();
         // -228, -193, -56, -6
         comparison.left = -228;
@@ -290,6 +409,16 @@ public class WMSTileFuserTest {
                                     stObj.setBlobSize(1000);
                                     return true;
                                 }
+
+                                @Override
+                                public boolean[] getAll(List<TileObject> objs)
+                                        throws StorageException {
+                                    boolean[] found = new boolean[objs.size()];
+                                    for (int i = 0; i < found.length; i++) {
+                                        found[i] = get(objs.get(i));
+                                    }
+                                    return found;
+                                }
                             });
 
             WMSTileFuser tileFuser = new WMSTileFuser(dispatcher, broker, request);
@@ -305,11 +434,31 @@ public class WMSTileFuserTest {
                     response, new RuntimeStats(1, Arrays.asList(1), Arrays.asList("desc")));
 
             assertTrue(response.getContentAsString().length() > 0);
+            // the mosaic is scaled to the requested size
+            BufferedImage image =
+                    ImageIO.read(new ByteArrayInputStream(response.getContentAsByteArray()));
+            assertEquals(width, image.getWidth());
+            assertEquals(height, image.getHeight());
         } finally {
             temp.delete();
         }
     }
 
+    /** The fuser looks up all the tiles at once, answer that with the stubbed single gets */
+    @SuppressWarnings("unchecked")
+    private static void answerGetAllWithGet(StorageBroker sb) throws StorageException {
+        Mockito.when(sb.getAll(Mockito.anyList()))
+                .thenAnswer(
+                        invoc -> {
+                            List<TileObject> objs = (List<TileObject>) invoc.getArguments()[0];
+                            boolean[] found = new boolean[objs.size()];
+                            for (int i = 0; i < found.length; i++) {
+                                found[i] = sb.get(objs.get(i));
+                            }
+                            return found;
+                        });
+    }
+
     private WMSLayer createWMSLayer() {
         String[] urls = {"http://localhost:38080/wms"};
         List<String> formatList = new LinkedList<String>();
@@ -18,7 +18,6 @@ package org.geowebcache.service.wmts;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.io.IOException;
-import java.io.OutputStream;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.Collection;
@@ -49,6 +48,8 @@ import org.geowebcache.layer.TileLayer;
 import org.geowebcache.layer.TileLayerDispatcher;
 import org.geowebcache.layer.meta.LayerMetaInformation;
 import org.geowebcache.layer.meta.MetadataURL;
+import org.geowebcache.service.CapabilitiesCache;
+import org.geowebcache.service.CapabilitiesCache.Fragments;
 import org.geowebcache.stats.RuntimeStats;
 import org.geowebcache.util.ServletUtils;
 import org.geowebcache.util.URLMangler;
@@ -67,6 +68,10 @@ public class WMTSGetCapabilities {
 
     private final Collection<WMTSExtension> extensions;
 
+    private final HttpServletRequest servReq;
+
+    private final CapabilitiesCache capabilitiesCache;
+
     protected WMTSGetCapabilities(
             TileLayerDispatcher tld,
             GridSetBroker gsb,
@@ -85,6 +90,22 @@ public class WMTSGetCapabilities {
             String contextPath,
             URLMangler urlMangler,
             Collection<WMTSExtension> extensions) {
+        this(tld, gsb, servReq, baseUrl, contextPath, urlMangler, extensions, null);
+    }
+
+    /**
+     * @param capabilitiesCache the cache the document is taken from, or {@code null} to build it
+     *     for this request only
+     */
+    protected WMTSGetCapabilities(
+            TileLayerDispatcher tld,
+            GridSetBroker gsb,
+            HttpServletRequest servReq,
+            String baseUrl,
+            String contextPath,
+            URLMangler urlMangler,
+            Collection<WMTSExtension> extensions,
+            CapabilitiesCache capabilitiesCache) {
         this.tld = tld;
         this.gsb = gsb;
 
@@ -101,30 +122,32 @@ public class WMTSGetCapabilities {
         this.restBaseUrl = urlMangler.buildURL(baseUrl, contextPath, WMTSService.REST_PATH);
 
         this.extensions = extensions;
+        this.servReq = servReq;
+        this.capabilitiesCache =
+                capabilitiesCache == null ? new CapabilitiesCache(null, false) : capabilitiesCache;
     }
 
     protected void writeResponse(HttpServletResponse response, RuntimeStats stats) {
         final Charset encoding = StandardCharsets.UTF_8;
-        byte[] data = generateGetCapabilities(encoding).getBytes(encoding);
 
-        response.setStatus(HttpServletResponse.SC_OK);
         response.setContentType("text/xml");
         response.setCharacterEncoding(encoding.name());
-        response.setContentLength(data.length);
         response.setHeader("content-disposition", "inline;filename=wmts-getcapabilities.xml");
 
-        stats.log(data.length, CacheResult.OTHER);
-
         try {
-            OutputStream os = response.getOutputStream();
-            os.write(data);
-            os.flush();
+            CapabilitiesCache.Document document =
+                    capabilitiesCache.getDocument(
+                            baseUrl + " " + restBaseUrl,
+                            encoding,
+                            fragments -> generateGetCapabilities(encoding, fragments));
+            int length = document.write(servReq, response);
+            stats.log(length, CacheResult.OTHER);
         } catch (IOException ioe) {
             log.debug("Caught IOException" + ioe.getMessage());
         }
     }
 
-    private String generateGetCapabilities(Charset encoding) {
+    private String generateGetCapabilities(Charset encoding, Fragments fragments) {
         StringBuilder str = new StringBuilder();
         XMLBuilder xml = new XMLBuilder(str);
 
@@ -164,7 +187,7 @@ public class WMTSGetCapabilities {
             serviceProvider(xml, serviceInformation);
             operationsMetadata(xml);
 
-            contents(xml);
+            contents(xml, fragments);
             xml.indentElement("ServiceMetadataURL")
                     .attribute(
                             "xlink:href",
@@ -423,18 +446,19 @@ public class WMTSGetCapabilities {
         xml.endElement("ows:Operation");
     }
 
-    private void contents(XMLBuilder xml) throws IOException {
+    private void contents(XMLBuilder xml, Fragments fragments) throws IOException {
         xml.indentElement("Contents");
-        Iterable<TileLayer> iter = tld.getLayerList();
+        Iterable<TileLayer> iter = tld.getLayerSnapshot();
         for (TileLayer layer : iter) {
             if (!layer.isEnabled() || !layer.isAdvertised()) {
                 continue;
             }
-            layer(xml, layer, baseUrl);
+            fragments.appendLayer(xml, layer, lxml -> layer(lxml, layer, baseUrl));
         }
 
         for (GridSet gset : gsb.getGridSets()) {
-            tileMatrixSet(xml, gset);
+            fragments.append(
+                    xml, "gridset/" + gset.getName(), gset, gxml -> tileMatrixSet(gxml, gset));
         }
 
         xml.endElement("Contents");
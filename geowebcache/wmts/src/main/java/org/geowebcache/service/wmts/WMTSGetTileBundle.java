@@ -0,0 +1,259 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.service.wmts;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import javax.servlet.http.HttpServletResponse;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.geowebcache.GeoWebCacheException;
+import org.geowebcache.conveyor.ConveyorTile;
+import org.geowebcache.filter.request.RequestFilterException;
+import org.geowebcache.filter.security.SecurityDispatcher;
+import org.geowebcache.grid.GridSubset;
+import org.geowebcache.grid.OutsideCoverageException;
+import org.geowebcache.io.Resource;
+import org.geowebcache.layer.TileLayer;
+import org.geowebcache.service.OWSException;
+import org.geowebcache.stats.RuntimeStats;
+import org.geowebcache.util.ServletUtils;
+
+/**
+ * Writes several tiles of the same tile matrix in a single multipart/mixed response. The tiles are
+ * either listed with {@code TILES=row,col;row,col...} or given as the rectangle {@code
+ * MINTILEROW,MAXTILEROW,MINTILECOL,MAXTILECOL}, and are looked up in the storage in one batch.
+ * The tiles missing from the cache are rendered concurrently, and written in order as they become
+ * available.
+ */
+public class WMTSGetTileBundle {
+
+    private static Log log = LogFactory.getLog(org.geowebcache.service.wmts.WMTSService.class);
+
+    /** Maximum number of tiles a single bundle request can ask for */
+    static final int MAX_TILES = 256;
+
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    private ConveyorTile convTile;
+
+    String tileMatrix;
+
+    /** Requested tiles, as WMTS row and column pairs */
+    List<long[]> rowCols = new ArrayList<>();
+
+    protected WMTSGetTileBundle(ConveyorTile convTile) throws OWSException {
+        String[] keys = {
+            "tilematrix", "tiles", "mintilerow", "maxtilerow", "mintilecol", "maxtilecol"
+        };
+
+        Map<String, String> values =
+                ServletUtils.selectedStringsFromMap(
+                        convTile.getRequestParameters(),
+                        convTile.servletReq.getCharacterEncoding(),
+                        keys);
+
+        tileMatrix = values.get("tilematrix");
+        String tiles = values.get("tiles");
+        if (tiles != null) {
+            for (String tile : tiles.split(";")) {
+                String[] rowCol = tile.split(",");
+                if (rowCol.length != 2) {
+                    throw new OWSException(
+                            400, "InvalidParameterValue", "TILES", "Invalid tile " + tile);
+                }
+                rowCols.add(new long[] {parse(rowCol[0], "TILES"), parse(rowCol[1], "TILES")});
+                checkSize();
+            }
+        } else {
+            long minRow = parse(values.get("mintilerow"), "MINTILEROW");
+            long maxRow = parse(values.get("maxtilerow"), "MAXTILEROW");
+            long minCol = parse(values.get("mintilecol"), "MINTILECOL");
+            long maxCol = parse(values.get("maxtilecol"), "MAXTILECOL");
+            for (long row = minRow; row <= maxRow; row++) {
+                for (long col = minCol; col <= maxCol; col++) {
+                    rowCols.add(new long[] {row, col});
+                    checkSize();
+                }
+            }
+        }
+
+        this.convTile = convTile;
+    }
+
+    private static long parse(String value, String locator) throws OWSException {
+        if (value == null) {
+            throw new OWSException(
+                    400, "MissingParameterValue", locator, locator + " was not specified");
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException nfe) {
+            throw new OWSException(
+                    400, "InvalidParameterValue", locator, locator + " is not a number: " + value);
+        }
+    }
+
+    private void checkSize() throws OWSException {
+        if (rowCols.size() > MAX_TILES) {
+            throw new OWSException(
+                    400,
+                    "InvalidParameterValue",
+                    "TILES",
+                    "At most " + MAX_TILES + " tiles can be requested at once");
+        }
+    }
+
+    /**
+     * Writes the tiles, getting them from the layer in the threads of the given executor, or one
+     * after the other in the calling thread if {@code null}
+     */
+    protected void writeResponse(
+            SecurityDispatcher secDispatcher, RuntimeStats stats, ExecutorService executor)
+            throws OWSException, GeoWebCacheException {
+        TileLayer layer = convTile.getLayer();
+        GridSubset gridSubset = convTile.getGridSubset();
+        long z = convTile.getTileIndex()[2];
+
+        // validate and authorize everything before the response gets committed
+        List<ConveyorTile> tiles = new ArrayList<>(rowCols.size());
+        List<long[]> accepted = new ArrayList<>(rowCols.size());
+        for (long[] rowCol : rowCols) {
+            long[] tileIndex =
+                    WMTSService.getTileIndex(
+                            gridSubset, z, String.valueOf(rowCol[0]), String.valueOf(rowCol[1]));
+            ConveyorTile tile =
+                    new ConveyorTile(
+                            convTile.getStorageBroker(),
+                            convTile.getLayerId(),
+                            convTile.getGridSetId(),
+                            tileIndex,
+                            convTile.getMimeType(),
+                            convTile.getRequestParameters(),
+                            convTile.getParameters(),
+                            convTile.servletReq,
+                            null);
+            tile.setTileLayer(layer);
+            try {
+                layer.applyRequestFilters(tile);
+            } catch (RequestFilterException e) {
+                log.debug("Skipping tile " + e.getMessage());
+                continue;
+            }
+            secDispatcher.checkSecurity(tile);
+            tiles.add(tile);
+            accepted.add(rowCol);
+        }
+
+        if (tiles.size() > 1) {
+            ConveyorTile.retrieveAll(convTile.getStorageBroker(), tiles);
+        }
+
+        // the cache misses on different meta tiles are rendered in parallel
+        List<FutureTask<Resource>> blobs = new ArrayList<>(tiles.size());
+        for (ConveyorTile tile : tiles) {
+            FutureTask<Resource> fetch = new FutureTask<>(() -> layer.getTile(tile).getBlob());
+            if (executor == null || tiles.size() == 1) {
+                fetch.run();
+            } else {
+                executor.execute(fetch);
+            }
+            blobs.add(fetch);
+        }
+
+        String boundary = UUID.randomUUID().toString();
+        HttpServletResponse response = convTile.servletResp;
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType("multipart/mixed; boundary=" + boundary);
+        layer.setExpirationHeader(response, (int) z);
+
+        try {
+            OutputStream os = response.getOutputStream();
+            for (int i = 0; i < tiles.size(); i++) {
+                ConveyorTile tile = tiles.get(i);
+                Resource data;
+                try {
+                    data = getBlob(blobs.get(i));
+                } catch (OutsideCoverageException e) {
+                    continue;
+                } catch (GeoWebCacheException e) {
+                    log.warn("Failed to get tile " + tile + " for a bundle: " + e.getMessage());
+                    continue;
+                }
+                if (data == null) {
+                    continue;
+                }
+                int size = (int) data.getSize();
+                long[] rowCol = accepted.get(i);
+
+                StringBuilder headers = new StringBuilder();
+                headers.append("--").append(boundary).append("\r\n");
+                headers.append("Content-Type: ")
+                        .append(tile.getMimeType().getMimeType(data))
+                        .append("\r\n");
+                headers.append("Content-Length: ").append(size).append("\r\n");
+                headers.append("TileMatrix: ").append(tileMatrix).append("\r\n");
+                headers.append("TileRow: ").append(rowCol[0]).append("\r\n");
+                headers.append("TileCol: ").append(rowCol[1]).append("\r\n\r\n");
+                os.write(headers.toString().getBytes(StandardCharsets.US_ASCII));
+                data.transferTo(Channels.newChannel(os));
+                os.write(CRLF);
+                // let the client start decoding while the next tiles are fetched
+                os.flush();
+
+                stats.log(size, tile.getCacheResult());
+            }
+            os.write(("--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+            os.flush();
+        } catch (IOException ioe) {
+            log.debug("Caught IOException" + ioe.getMessage());
+        } finally {
+            // don't keep rendering tiles if the client went away
+            for (FutureTask<Resource> fetch : blobs) {
+                fetch.cancel(false);
+            }
+        }
+    }
+
+    private Resource getBlob(FutureTask<Resource> fetch) throws GeoWebCacheException {
+        try {
+            return fetch.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GeoWebCacheException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof GeoWebCacheException) {
+                throw (GeoWebCacheException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new GeoWebCacheException(cause);
+        }
+    }
+}
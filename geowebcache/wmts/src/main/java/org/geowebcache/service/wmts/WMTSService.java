@@ -14,7 +14,7 @@
  */
 package org.geowebcache.service.wmts;
 
-import com.google.common.base.Strings;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -23,8 +23,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.geowebcache.GeoWebCacheDispatcher;
@@ -42,16 +42,20 @@ import org.geowebcache.layer.TileLayer;
 import org.geowebcache.layer.TileLayerDispatcher;
 import org.geowebcache.mime.MimeException;
 import org.geowebcache.mime.MimeType;
+import org.geowebcache.service.CapabilitiesCache;
 import org.geowebcache.service.HttpErrorCodeException;
 import org.geowebcache.service.OWSException;
+import org.geowebcache.service.RouteTable;
 import org.geowebcache.service.Service;
+import org.geowebcache.service.TileRequest;
 import org.geowebcache.stats.RuntimeStats;
 import org.geowebcache.storage.StorageBroker;
 import org.geowebcache.util.NullURLMangler;
 import org.geowebcache.util.ServletUtils;
 import org.geowebcache.util.URLMangler;
+import org.springframework.beans.factory.DisposableBean;
 
-public class WMTSService extends Service {
+public class WMTSService extends Service implements DisposableBean {
 
     public static final String SERVICE_WMTS = "wmts";
     public static final String SERVICE_PATH =
@@ -60,72 +64,49 @@ public class WMTSService extends Service {
     public static final String GET_CAPABILITIES = "getcapabilities";
     public static final String GET_FEATUREINFO = "getfeatureinfo";
     public static final String GET_TILE = "gettile";
+    public static final String GET_TILE_BUNDLE = "gettilebundle";
 
     enum RequestType {
         TILE,
+        TILE_BUNDLE,
         CAPABILITIES,
         FEATUREINFO
     }
 
-    static final String buildRestPattern(int numPathElements, boolean hasStyle) {
-        if (!hasStyle) {
-            return ".*/service/wmts/rest" + Strings.repeat("/([^/]+)", numPathElements);
-        } else {
-            return ".*/service/wmts/rest/([^/]+)/([^/]*)"
-                    + Strings.repeat("/([^/]+)", numPathElements - 2);
-        }
-    }
+    // the REST requests are matched against the path following each occurrence of this prefix
+    private static final String REST_PREFIX = "/service/wmts/rest/";
 
     enum RestRequest {
-        // "/{layer}/{tileMatrixSet}/{tileMatrix}/{tileRow}/{tileCol}"
-        TILE(buildRestPattern(5, false), RequestType.TILE, false),
-        // "/{layer}/{style}/{tileMatrixSet}/{tileMatrix}/{tileRow}/{tileCol}",
-        TILE_STYLE(buildRestPattern(6, true), RequestType.TILE, true),
-        // "/{layer}/{tileMatrixSet}/{tileMatrix}/{tileRow}/{tileCol}/{j}/{i}"
-        FEATUREINFO(buildRestPattern(7, false), RequestType.FEATUREINFO, false),
-        // "/{layer}/{style}/{tileMatrixSet}/{tileMatrix}/{tileRow}/{tileCol}/{j}/{i}",
-        FEATUREINFO_STYLE(buildRestPattern(8, true), RequestType.FEATUREINFO, true);
-
-        Pattern pattern;
+        TILE("{layer}/{tilematrixset}/{tilematrix}/{tilerow}/{tilecol}", RequestType.TILE),
+        // the style may be empty, all the other elements are mandatory
+        TILE_STYLE(
+                "{layer}/{style?}/{tilematrixset}/{tilematrix}/{tilerow}/{tilecol}",
+                RequestType.TILE),
+        FEATUREINFO(
+                "{layer}/{tilematrixset}/{tilematrix}/{tilerow}/{tilecol}/{j}/{i}",
+                RequestType.FEATUREINFO),
+        FEATUREINFO_STYLE(
+                "{layer}/{style?}/{tilematrixset}/{tilematrix}/{tilerow}/{tilecol}/{j}/{i}",
+                RequestType.FEATUREINFO);
+
+        String template;
         RequestType type;
-        boolean hasStyle;
 
-        RestRequest(String pattern, RequestType type, boolean hasStyle) {
-            this.pattern = Pattern.compile(pattern);
+        RestRequest(String template, RequestType type) {
+            this.template = template;
             this.type = type;
-            this.hasStyle = hasStyle;
         }
 
         /**
-         * Returns the parsed KVP, or null if the path does not match the request pattern
+         * Completes the values extracted from the path of a request matching this one with the
+         * request name and its format
          *
          * @param request
-         * @return
+         * @param values
          */
-        public Map<String, String> toKVP(HttpServletRequest request) {
-            final Matcher matcher = pattern.matcher(request.getPathInfo());
-            if (!matcher.matches()) {
-                return null;
-            }
-            Map<String, String> values = new HashMap<>();
-            // go through the pattern and extract the actual request
-            // leverage the predictable path structure to use a single parsing sequence for all
-            // requests
-            int i = 1;
+        void complete(HttpServletRequest request, TileRequest values) {
             final boolean isFeatureInfo = type == RequestType.FEATUREINFO;
             values.put("request", isFeatureInfo ? GET_FEATUREINFO : GET_TILE);
-            values.put("layer", matcher.group(i++));
-            if (hasStyle) {
-                values.put("style", matcher.group(i++));
-            }
-            values.put("tilematrixset", matcher.group(i++));
-            values.put("tilematrix", matcher.group(i++));
-            values.put("tilerow", matcher.group(i++));
-            values.put("tilecol", matcher.group(i++));
-            if (isFeatureInfo) {
-                values.put("j", matcher.group(i++));
-                values.put("i", matcher.group(i++));
-            }
             if (request.getParameter("format") instanceof String) {
                 if (isFeatureInfo) {
                     values.put("infoformat", request.getParameter("format"));
@@ -133,10 +114,32 @@ public class WMTSService extends Service {
                     values.put("format", request.getParameter("format"));
                 }
             }
-            return values;
         }
     }
 
+    static final RouteTable<RestRequest> REST_ROUTES = new RouteTable<>();
+
+    static {
+        for (RestRequest restRequest : RestRequest.values()) {
+            REST_ROUTES.add(restRequest.template, restRequest);
+        }
+    }
+
+    /** The names of the KVP parameters of the requests handled by {@link #getKvpConveyor} */
+    private static final String[] KVP_KEYS = {
+        "layer",
+        "request",
+        "style",
+        "format",
+        "infoformat",
+        "tilematrixset",
+        "tilematrix",
+        "tilerow",
+        "tilecol",
+        "i",
+        "j"
+    };
+
     // private static Log log = LogFactory.getLog(org.geowebcache.service.wmts.WMTSService.class);
 
     private StorageBroker sb;
@@ -158,6 +161,13 @@ public class WMTSService extends Service {
 
     private SecurityDispatcher securityDispatcher;
 
+    private CapabilitiesCache capabilitiesCache;
+
+    /** Threads getting the tiles of tile bundle requests, 0 to use the request thread */
+    private int bundleThreads = Runtime.getRuntime().availableProcessors();
+
+    private ExecutorService bundleExecutor;
+
     /** Protected no-argument constructor to allow run-time instrumentation */
     protected WMTSService() {
         super(SERVICE_WMTS);
@@ -172,6 +182,7 @@ public class WMTSService extends Service {
         this.tld = tld;
         this.gsb = gsb;
         this.stats = stats;
+        this.capabilitiesCache = new CapabilitiesCache(tld);
         extensions.addAll(GeoWebCacheExtensions.extensions(WMTSExtension.class));
     }
 
@@ -190,6 +201,7 @@ public class WMTSService extends Service {
         this.stats = stats;
         this.urlMangler = urlMangler;
         this.controller = controller;
+        this.capabilitiesCache = new CapabilitiesCache(tld);
         extensions.addAll(GeoWebCacheExtensions.extensions(WMTSExtension.class));
     }
 
@@ -198,39 +210,29 @@ public class WMTSService extends Service {
             throws GeoWebCacheException, OWSException {
 
         // let's see if we have any extension that wants to provide a conveyor for this request
-        for (WMTSExtension extension : extensions) {
-            Conveyor conveyor = extension.getConveyor(request, response, sb);
-            if (conveyor != null) {
-                // this extension provides a conveyor for this request, we are done
-                return conveyor;
-            }
+        Conveyor conveyor = getExtensionConveyor(request, response);
+        if (conveyor != null) {
+            return conveyor;
         }
 
         if (request.getPathInfo() != null && request.getPathInfo().contains("service/wmts/rest")) {
-            return getRestConveyor(request, response);
-        }
-
-        String[] keys = {
-            "layer",
-            "request",
-            "style",
-            "format",
-            "infoformat",
-            "tilematrixset",
-            "tilematrix",
-            "tilerow",
-            "tilecol",
-            "i",
-            "j"
-        };
+            return restConveyor(request, response);
+        }
+
         String encoding = request.getCharacterEncoding();
-        Map<String, String> values =
-                ServletUtils.selectedStringsFromMap(request.getParameterMap(), encoding, keys);
-        return getKvpConveyor(request, response, values);
+        TileRequest values =
+                TileRequest.fromParameters(request.getParameterMap(), encoding, KVP_KEYS);
+        return kvpConveyor(request, response, values);
     }
 
     public Conveyor getRestConveyor(HttpServletRequest request, HttpServletResponse response)
             throws GeoWebCacheException, OWSException {
+        Conveyor conveyor = getExtensionConveyor(request, response);
+        return conveyor != null ? conveyor : restConveyor(request, response);
+    }
+
+    private Conveyor restConveyor(HttpServletRequest request, HttpServletResponse response)
+            throws GeoWebCacheException, OWSException {
         final String path = request.getPathInfo();
 
         // special simpler case for GetCapabilities
@@ -241,13 +243,18 @@ public class WMTSService extends Service {
             return tile;
         }
 
-        // all other paths are handled via the RestRequest enumeration, matching patterns and
-        // extracting variables
-        for (RestRequest restRequest : RestRequest.values()) {
-            Map<String, String> values = restRequest.toKVP(request);
-            if (values != null) {
-                return getKvpConveyor(request, response, values);
+        // all other paths are handled via the RestRequest route table, starting from the last
+        // occurrence of the REST prefix
+        TileRequest values = new TileRequest();
+        int prefix = path.lastIndexOf(REST_PREFIX);
+        while (prefix >= 0) {
+            RestRequest restRequest =
+                    REST_ROUTES.match(path, prefix + REST_PREFIX.length(), values);
+            if (restRequest != null) {
+                restRequest.complete(request, values);
+                return kvpConveyor(request, response, values);
             }
+            prefix = prefix == 0 ? -1 : path.lastIndexOf(REST_PREFIX, prefix - 1);
         }
 
         // we implement all WMTS supported request, this means that the provided request name is
@@ -258,7 +265,17 @@ public class WMTSService extends Service {
     public Conveyor getKvpConveyor(
             HttpServletRequest request, HttpServletResponse response, Map<String, String> values)
             throws GeoWebCacheException, OWSException {
-        // let's see if we have any extension that wants to provide a conveyor for this request
+        Conveyor conveyor = getExtensionConveyor(request, response);
+        if (conveyor != null) {
+            return conveyor;
+        }
+        return kvpConveyor(request, response, TileRequest.fromMap(values));
+    }
+
+    /** Returns the conveyor of the first extension willing to handle the request, if any */
+    private Conveyor getExtensionConveyor(
+            HttpServletRequest request, HttpServletResponse response)
+            throws GeoWebCacheException, OWSException {
         for (WMTSExtension extension : extensions) {
             Conveyor conveyor = extension.getConveyor(request, response, sb);
             if (conveyor != null) {
@@ -266,7 +283,13 @@ public class WMTSService extends Service {
                 return conveyor;
             }
         }
+        return null;
+    }
 
+    // the extensions have already been given a chance to handle the request
+    private Conveyor kvpConveyor(
+            HttpServletRequest request, HttpServletResponse response, TileRequest values)
+            throws GeoWebCacheException, OWSException {
         // check if we need to be CITE strictly compliant
         boolean isCitecompliant = isCiteCompliant();
         if (isCitecompliant) {
@@ -327,6 +350,12 @@ public class WMTSService extends Service {
             tile.setHint(req);
             tile.setRequestHandler(Conveyor.RequestHandler.SERVICE);
             return tile;
+        } else if (req.equals(GET_TILE_BUNDLE)) {
+            // not part of the WMTS standard, returns a set of tiles of the same matrix at once
+            ConveyorTile tile = getTile(values, request, response, RequestType.TILE_BUNDLE);
+            tile.setHint(req);
+            tile.setRequestHandler(Conveyor.RequestHandler.SERVICE);
+            return tile;
         } else {
             // we implement all WMTS supported request, this means that the provided request name is
             // invalid
@@ -339,7 +368,7 @@ public class WMTSService extends Service {
     }
 
     private ConveyorTile getTile(
-            Map<String, String> values,
+            TileRequest values,
             HttpServletRequest request,
             HttpServletResponse response,
             RequestType reqType)
@@ -368,9 +397,7 @@ public class WMTSService extends Service {
             /*
              * Merge values with request parameter
              */
-            for (Entry<String, String> e : values.entrySet()) {
-                rawParameters.put(e.getKey(), new String[] {e.getValue()});
-            }
+            values.forEach((key, value) -> rawParameters.put(key, new String[] {value}));
 
             // WMTS uses the "STYLE" instead of "STYLES"
             for (Entry<String, String[]> e : rawParameters.entrySet()) {
@@ -393,7 +420,7 @@ public class WMTSService extends Service {
         }
 
         MimeType mimeType = null;
-        if (reqType == RequestType.TILE) {
+        if (reqType != RequestType.FEATUREINFO) {
             String format = values.get("format");
             if (format == null) {
                 throw new OWSException(
@@ -461,8 +488,45 @@ public class WMTSService extends Service {
                     400, "InvalidParameterValue", "TILEMATRIX", "Unknown TILEMATRIX " + tileMatrix);
         }
 
+        long[] tileIndex;
+        if (reqType == RequestType.TILE_BUNDLE) {
+            // the tiles are picked later by WMTSGetTileBundle, only the matrix is known here
+            tileIndex = new long[] {0, 0, z};
+        } else {
+            tileIndex = getTileIndex(gridSubset, z, values.get("tilerow"), values.get("tilecol"));
+        }
+
+        try {
+            gridSubset.checkCoverage(tileIndex);
+        } catch (OutsideCoverageException e) {
+
+        }
+
+        ConveyorTile convTile =
+                new ConveyorTile(
+                        sb,
+                        layer,
+                        gridSubset.getName(),
+                        tileIndex,
+                        mimeType,
+                        rawParameters,
+                        filteringParameters,
+                        request,
+                        response);
+
+        convTile.setTileLayer(tileLayer);
+
+        return convTile;
+    }
+
+    /**
+     * Parses and validates a WMTS tile row and column against the coverage of the given matrix
+     *
+     * @return the GWC tile index, with the y axis flipped
+     */
+    static long[] getTileIndex(GridSubset gridSubset, long z, String tileRow, String tileCol)
+            throws OWSException {
         // WMTS has 0 in the top left corner -> flip y value
-        final String tileRow = values.get("tilerow");
         if (tileRow == null) {
             throw new OWSException(400, "MissingParameterValue", "TILEROW", "No TILEROW specified");
         }
@@ -471,7 +535,6 @@ public class WMTSService extends Service {
 
         long y = tilesHigh - Long.parseLong(tileRow) - 1;
 
-        String tileCol = values.get("tilecol");
         if (tileCol == null) {
             throw new OWSException(400, "MissingParameterValue", "TILECOL", "No TILECOL specified");
         }
@@ -498,29 +561,7 @@ public class WMTSService extends Service {
                     "Row " + tileRow + " is out of range, min: " + minRow + " max:" + maxRow);
         }
 
-        long[] tileIndex = {x, y, z};
-
-        try {
-            gridSubset.checkCoverage(tileIndex);
-        } catch (OutsideCoverageException e) {
-
-        }
-
-        ConveyorTile convTile =
-                new ConveyorTile(
-                        sb,
-                        layer,
-                        gridSubset.getName(),
-                        tileIndex,
-                        mimeType,
-                        rawParameters,
-                        filteringParameters,
-                        request,
-                        response);
-
-        convTile.setTileLayer(tileLayer);
-
-        return convTile;
+        return new long[] {x, y, z};
     }
 
     public void handleRequest(Conveyor conv) throws OWSException, GeoWebCacheException {
@@ -554,7 +595,9 @@ public class WMTSService extends Service {
                                 servletBase,
                                 context,
                                 urlMangler,
-                                extensions);
+                                extensions,
+                                // extensions can make the document depend on the request
+                                extensions.isEmpty() ? capabilitiesCache : null);
                 wmsGC.writeResponse(tile.servletResp, stats);
 
             } else if (tile.getHint().equals(GET_FEATUREINFO)) {
@@ -562,10 +605,48 @@ public class WMTSService extends Service {
                 ConveyorTile convTile = (ConveyorTile) conv;
                 WMTSGetFeatureInfo wmsGFI = new WMTSGetFeatureInfo(convTile);
                 wmsGFI.writeResponse(stats);
+            } else if (tile.getHint().equals(GET_TILE_BUNDLE)) {
+                WMTSGetTileBundle bundle = new WMTSGetTileBundle(tile);
+                bundle.writeResponse(getSecurityDispatcher(), stats, getBundleExecutor());
             }
         }
     }
 
+    /** @return the pool getting the tiles of tile bundle requests, or {@code null} if disabled */
+    protected synchronized ExecutorService getBundleExecutor() {
+        if (bundleExecutor == null && bundleThreads > 0) {
+            bundleExecutor =
+                    Executors.newFixedThreadPool(
+                            bundleThreads,
+                            new ThreadFactoryBuilder()
+                                    .setDaemon(true)
+                                    .setNameFormat("GWC WMTS Tile Bundle-%d")
+                                    .build());
+        }
+        return bundleExecutor;
+    }
+
+    /**
+     * Sets how many tiles of tile bundle requests are fetched, and rendered if missing, in
+     * parallel across all the requests. Zero or less gets them one after the other in the request
+     * thread.
+     */
+    public synchronized void setBundleThreads(int bundleThreads) {
+        this.bundleThreads = bundleThreads;
+        if (bundleExecutor != null) {
+            bundleExecutor.shutdown();
+            bundleExecutor = null;
+        }
+    }
+
+    @Override
+    public synchronized void destroy() {
+        if (bundleExecutor != null) {
+            bundleExecutor.shutdownNow();
+            bundleExecutor = null;
+        }
+    }
+
     void addExtension(WMTSExtension extension) {
         extensions.add(extension);
     }
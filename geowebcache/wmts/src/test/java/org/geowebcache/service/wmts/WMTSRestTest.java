@@ -368,6 +368,7 @@ public class WMTSRestTest {
         when(tileLayer.getGridSubsets()).thenReturn(subsets.keySet());
 
         when(tld.getLayerList()).thenReturn(Arrays.asList(tileLayer));
+        when(tld.getLayerSnapshot()).thenReturn(Arrays.asList(tileLayer));
 
         when(tileLayer.getTile(any(ConveyorTile.class)))
                 .thenAnswer(
@@ -11,6 +11,7 @@ import static org.hamcrest.Matchers.hasEntry;
 import static org.hamcrest.Matchers.hasProperty;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.startsWith;
 import static org.junit.Assert.*;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.argThat;
@@ -191,6 +192,7 @@ public class WMTSServiceTest {
                             Collections.<ParameterFilter>emptyList(),
                             false);
             when(tld.getLayerList()).thenReturn(Arrays.asList(tileLayer, tileLayerUn));
+            when(tld.getLayerSnapshot()).thenReturn(Arrays.asList(tileLayer, tileLayerUn));
 
             // add styles
             StringParameterFilter styles = new StringParameterFilter();
@@ -467,6 +469,7 @@ public class WMTSServiceTest {
         TileLayer tileLayer =
                 mockTileLayer("mockLayer", gridSetNames, Collections.<ParameterFilter>emptyList());
         when(tld.getLayerList()).thenReturn(Collections.singletonList(tileLayer));
+        when(tld.getLayerSnapshot()).thenReturn(Collections.singletonList(tileLayer));
         Conveyor conv = service.getConveyor(req, resp);
         assertNotNull(conv);
         assertEquals(Conveyor.RequestHandler.SERVICE, conv.reqHandler);
@@ -573,6 +576,7 @@ public class WMTSServiceTest {
                             Collections.<ParameterFilter>emptyList(),
                             false);
             when(tld.getLayerList()).thenReturn(Arrays.asList(tileLayer, tileLayerUn));
+            when(tld.getLayerSnapshot()).thenReturn(Arrays.asList(tileLayer, tileLayerUn));
             GridSubset wgs84Subset = mock(GridSubset.class);
             when(wgs84Subset.getOriginalExtent()).thenReturn(new BoundingBox(-42d, -24d, 40d, 50d));
             GridSubset googleSubset = mock(GridSubset.class);
@@ -658,6 +662,7 @@ public class WMTSServiceTest {
                     mockTileLayer(
                             "mockLayer", gridSetNames, Collections.singletonList(styleFilter));
             when(tld.getLayerList()).thenReturn(Arrays.asList(tileLayer));
+            when(tld.getLayerSnapshot()).thenReturn(Arrays.asList(tileLayer));
         }
 
         Conveyor conv = service.getConveyor(req, resp);
@@ -741,6 +746,7 @@ public class WMTSServiceTest {
                     mockTileLayer(
                             "mockLayer", gridSetNames, Collections.singletonList(styleFilter));
             when(tld.getLayerList()).thenReturn(Arrays.asList(tileLayer));
+            when(tld.getLayerSnapshot()).thenReturn(Arrays.asList(tileLayer));
         }
 
         Conveyor conv = service.getConveyor(req, resp);
@@ -824,6 +830,7 @@ public class WMTSServiceTest {
                     mockTileLayer(
                             "mockLayer", gridSetNames, Collections.singletonList(styleFilter));
             when(tld.getLayerList()).thenReturn(Arrays.asList(tileLayer));
+            when(tld.getLayerSnapshot()).thenReturn(Arrays.asList(tileLayer));
         }
 
         Conveyor conv = service.getConveyor(req, resp);
@@ -951,6 +958,7 @@ public class WMTSServiceTest {
                             gridSetNames,
                             Arrays.asList(styleFilter, elevationDimension, timeDimension));
             when(tld.getLayerList()).thenReturn(Arrays.asList(tileLayer));
+            when(tld.getLayerSnapshot()).thenReturn(Arrays.asList(tileLayer));
         }
 
         Conveyor conv = service.getConveyor(req, resp);
@@ -1055,6 +1063,7 @@ public class WMTSServiceTest {
                             (String) any()))
                     .thenReturn(Collections.unmodifiableMap(map));
             when(tld.getLayerList()).thenReturn(Arrays.asList(tileLayer));
+            when(tld.getLayerSnapshot()).thenReturn(Arrays.asList(tileLayer));
         }
 
         Conveyor conv = service.getConveyor(req, resp);
@@ -1154,6 +1163,7 @@ public class WMTSServiceTest {
         TileLayer tileLayer = mock(TileLayer.class);
         when(tld.getTileLayer(layerName)).thenReturn(tileLayer);
         when(tld.getLayerList()).thenReturn(Collections.singleton(tileLayer));
+        when(tld.getLayerSnapshot()).thenReturn(Collections.singletonList(tileLayer));
         when(tileLayer.getGridSubset("testGridset")).thenReturn(subset);
         when(tileLayer.getInfoMimeTypes()).thenReturn(Collections.singletonList(XMLMime.gml));
         // doThrow(new SecurityException()).when(secDisp).checkSecurity(Mockito.any());
@@ -1234,6 +1244,7 @@ public class WMTSServiceTest {
         TileLayer tileLayer = mock(TileLayer.class);
         when(tld.getTileLayer(layerName)).thenReturn(tileLayer);
         when(tld.getLayerList()).thenReturn(Collections.singleton(tileLayer));
+        when(tld.getLayerSnapshot()).thenReturn(Collections.singletonList(tileLayer));
         when(tileLayer.getGridSubset("testGridset")).thenReturn(subset);
         when(tileLayer.getInfoMimeTypes()).thenReturn(Collections.singletonList(XMLMime.gml));
         doThrow(new SecurityException()).when(secDisp).checkSecurity(Mockito.any());
@@ -1288,4 +1299,74 @@ public class WMTSServiceTest {
             assertThat(resp.getContentAsString(), not(containsString("TEST FEATURE INFO")));
         }
     }
+
+    @Test
+    public void testGetTileBundle() throws Exception {
+        SecurityDispatcher secDisp = mock(SecurityDispatcher.class);
+        GeoWebCacheDispatcher gwcd = mock(GeoWebCacheDispatcher.class);
+        GridSetBroker gsb = mock(GridSetBroker.class);
+
+        service =
+                new WMTSService(sb, tld, gsb, mock(RuntimeStats.class), new NullURLMangler(), gwcd);
+        service.setSecurityDispatcher(secDisp);
+
+        GridSubset subset = mock(GridSubset.class);
+        when(subset.getName()).thenReturn("testGridset");
+        when(subset.getNumTilesHigh(2)).thenReturn(7L);
+        when(subset.getGridIndex("testGridset:2")).thenReturn(2L);
+        when(subset.getCoverage(2)).thenReturn(new long[] {1, 1, 8, 8});
+
+        String layerName = "mockLayer";
+        TileLayer tileLayer = mock(TileLayer.class);
+        when(tld.getTileLayer(layerName)).thenReturn(tileLayer);
+        when(tileLayer.getGridSubset("testGridset")).thenReturn(subset);
+        when(tileLayer.getTile(any(ConveyorTile.class)))
+                .thenAnswer(
+                        invocation -> {
+                            ConveyorTile tile = (ConveyorTile) invocation.getArguments()[0];
+                            long[] index = tile.getTileIndex();
+                            String content = "TILE " + index[0] + "," + index[1];
+                            tile.setBlob(new ByteArrayResource(content.getBytes()));
+                            return tile;
+                        });
+        when(sb.getAll(Mockito.anyList())).thenReturn(new boolean[] {false, false});
+
+        MockHttpServletRequest req = new MockHttpServletRequest();
+        MockHttpServletResponse resp = new MockHttpServletResponse();
+        req.addParameter("service", "WMTS");
+        req.addParameter("version", "1.0.0");
+        req.addParameter("request", "GetTileBundle");
+        req.addParameter("layer", layerName);
+        req.addParameter("format", "image/png");
+        req.addParameter("tilematrixset", "testGridset");
+        req.addParameter("tilematrix", "testGridset:2");
+        req.addParameter("tiles", "3,4;5,4");
+
+        Conveyor conv = service.getConveyor(req, resp);
+        assertThat(conv, hasProperty("hint", equalTo("GetTileBundle".toLowerCase())));
+        assertThat(conv, hasProperty("requestHandler", is(RequestHandler.SERVICE)));
+
+        service.handleRequest(conv);
+
+        // the two tiles were looked up in the storage together, and rows are flipped
+        Mockito.verify(sb).getAll(Mockito.anyList());
+        assertThat(resp.getContentType(), startsWith("multipart/mixed; boundary="));
+        String content = resp.getContentAsString();
+        assertThat(content, containsString("TileMatrix: testGridset:2"));
+        assertThat(content, containsString("TileRow: 3\r\nTileCol: 4\r\n\r\nTILE 4,3"));
+        assertThat(content, containsString("TileRow: 5\r\nTileCol: 4\r\n\r\nTILE 4,1"));
+
+        // too many tiles
+        req.removeParameter("tiles");
+        req.addParameter("mintilerow", "0");
+        req.addParameter("maxtilerow", "100");
+        req.addParameter("mintilecol", "0");
+        req.addParameter("maxtilecol", "100");
+        try {
+            service.handleRequest(service.getConveyor(req, new MockHttpServletResponse()));
+            fail("Expected OWSException");
+        } catch (OWSException e) {
+            assertEquals(400, e.getResponseCode());
+        }
+    }
 }